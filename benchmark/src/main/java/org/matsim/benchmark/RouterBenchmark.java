@@ -0,0 +1,113 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.io.MatsimNetworkReader;
+import org.matsim.core.router.AStarLandmarksFactory;
+import org.matsim.core.router.ContractionHierarchiesFactory;
+import org.matsim.core.router.DijkstraFactory;
+import org.matsim.core.router.FastAStarLandmarksFactory;
+import org.matsim.core.router.FastDijkstraFactory;
+import org.matsim.core.router.costcalculators.FreespeedTravelTimeAndDisutility;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.LeastCostPathCalculator.Path;
+import org.matsim.core.router.util.LeastCostPathCalculatorFactory;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.examples.ExamplesUtils;
+
+/**
+ * Compares the least cost path calculators on random queries in a network. Usage:
+ * <code>RouterBenchmark [networkFile] [numberOfQueries]</code>, by default the Berlin example network is used.
+ */
+public class RouterBenchmark {
+
+	private static final Logger log = Logger.getLogger(RouterBenchmark.class);
+
+	public static void main(String[] args) {
+		Network network = NetworkUtils.createNetwork();
+		MatsimNetworkReader reader = new MatsimNetworkReader(network);
+		if (args.length > 0) {
+			reader.readFile(args[0]);
+		} else {
+			reader.readURL(IOUtils.extendUrl(ExamplesUtils.getTestScenarioURL("berlin"), "network.xml.gz"));
+		}
+		int numberOfQueries = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+		List<Node> nodes = new ArrayList<>(network.getNodes().values());
+		Random random = new Random(4711);
+		Node[] fromNodes = new Node[numberOfQueries];
+		Node[] toNodes = new Node[numberOfQueries];
+		double[] times = new double[numberOfQueries];
+		for (int i = 0; i < numberOfQueries; i++) {
+			fromNodes[i] = nodes.get(random.nextInt(nodes.size()));
+			toNodes[i] = nodes.get(random.nextInt(nodes.size()));
+			times[i] = 5 * 3600 + random.nextInt(16 * 3600);
+		}
+
+		FreespeedTravelTimeAndDisutility travelTimeAndDisutility = new FreespeedTravelTimeAndDisutility(new PlanCalcScoreConfigGroup());
+		LeastCostPathCalculatorFactory[] factories = {
+				new DijkstraFactory(),
+				new FastDijkstraFactory(),
+				new AStarLandmarksFactory(1),
+				new FastAStarLandmarksFactory(1),
+				new ContractionHierarchiesFactory()
+		};
+		double[] referenceCosts = null;
+		for (LeastCostPathCalculatorFactory factory : factories) {
+			long start = System.nanoTime();
+			LeastCostPathCalculator router = factory.createPathCalculator(network, travelTimeAndDisutility, travelTimeAndDisutility);
+			long preprocessed = System.nanoTime();
+			// the first routes include lazy initializations, e.g. the customization of the contraction hierarchy
+			router.calcLeastCostPath(fromNodes[0], toNodes[0], times[0], null, null);
+			long warmedUp = System.nanoTime();
+
+			double[] costs = new double[numberOfQueries];
+			for (int i = 0; i < numberOfQueries; i++) {
+				Path path = router.calcLeastCostPath(fromNodes[i], toNodes[i], times[i], null, null);
+				costs[i] = path == null ? Double.POSITIVE_INFINITY : path.travelCost;
+			}
+			long end = System.nanoTime();
+
+			int differentCosts = 0;
+			if (referenceCosts == null) {
+				referenceCosts = costs;
+			} else {
+				for (int i = 0; i < numberOfQueries; i++) {
+					if (Math.abs(referenceCosts[i] - costs[i]) > 1e-3) {
+						differentCosts++;
+					}
+				}
+			}
+			log.info(String.format("%-35s preprocessing: %8.1f ms, first route: %8.1f ms, %d routes: %8.1f ms (%.3f ms/route), different costs: %d",
+					factory.getClass().getSimpleName(), (preprocessed - start) / 1e6, (warmedUp - preprocessed) / 1e6,
+					numberOfQueries, (end - warmedUp) / 1e6, (end - warmedUp) / 1e6 / numberOfQueries, differentCosts));
+		}
+	}
+
+}
@@ -0,0 +1,152 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.benchmark.jmh;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.utils.collections.TimingWheel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the data structures available to keep the agents performing an activity in the QSim: the priority queue of
+ * the default activity engine and the {@link TimingWheel}. Each invocation schedules the activity ends of a synthetic
+ * population, wakes all agents up second by second over one day, and reschedules some activity ends on the way, as
+ * within-day replanning would.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class ActivityEndsQueueBenchmark {
+
+	private static final int END_OF_DAY = 24 * 3600;
+
+	@Param({"1000000", "10000000"})
+	public int agents;
+
+	@Param({"0", "100"})
+	public int reschedules;
+
+	private Id<Person>[] agentIds;
+	private double[] activityEndTimes;
+	private int[] rescheduledAgents;
+	private double[] rescheduledTimes;
+
+	private static final class AgentEntry {
+		private final Id<Person> agentId;
+		private final double activityEndTime;
+
+		AgentEntry(Id<Person> agentId, double activityEndTime) {
+			this.agentId = agentId;
+			this.activityEndTime = activityEndTime;
+		}
+	}
+
+	@Setup
+	public void setup() {
+		Random random = new Random(4711);
+		this.agentIds = new Id[this.agents];
+		this.activityEndTimes = new double[this.agents];
+		for (int i = 0; i < this.agents; i++) {
+			this.agentIds[i] = Id.createPersonId(i);
+			// activity ends at full minutes, as in many synthetic populations
+			this.activityEndTimes[i] = 60 * random.nextInt(END_OF_DAY / 60);
+		}
+		this.rescheduledAgents = new int[this.reschedules];
+		this.rescheduledTimes = new double[this.reschedules];
+		for (int i = 0; i < this.reschedules; i++) {
+			this.rescheduledAgents[i] = random.nextInt(this.agents);
+			this.rescheduledTimes[i] = END_OF_DAY / 2.0 + random.nextInt(END_OF_DAY / 2);
+		}
+	}
+
+	@Benchmark
+	public long priorityQueue() {
+		Queue<AgentEntry> queue = new PriorityBlockingQueue<>(500,
+				Comparator.comparingDouble((AgentEntry e) -> e.activityEndTime).thenComparing((e0, e1) -> e1.agentId.compareTo(e0.agentId)));
+		for (int i = 0; i < this.agents; i++) {
+			queue.add(new AgentEntry(this.agentIds[i], this.activityEndTimes[i]));
+		}
+		long woken = 0;
+		for (int time = 0; time <= END_OF_DAY; time++) {
+			if (time == END_OF_DAY / 2) {
+				for (int i = 0; i < this.reschedules; i++) {
+					Id<Person> agentId = this.agentIds[this.rescheduledAgents[i]];
+					Iterator<AgentEntry> iterator = queue.iterator();
+					while (iterator.hasNext()) {
+						if (iterator.next().agentId == agentId) {
+							iterator.remove();
+							queue.add(new AgentEntry(agentId, this.rescheduledTimes[i]));
+							break;
+						}
+					}
+				}
+			}
+			while (queue.peek() != null && queue.peek().activityEndTime <= time) {
+				woken += queue.poll().agentId.index();
+			}
+		}
+		return woken;
+	}
+
+	@Benchmark
+	public long timingWheel() {
+		TimingWheel<Id<Person>> wheel = new TimingWheel<>((a0, a1) -> a1.compareTo(a0));
+		for (int i = 0; i < this.agents; i++) {
+			wheel.add(this.agentIds[i], this.activityEndTimes[i]);
+		}
+		long woken = 0;
+		for (int time = 0; time <= END_OF_DAY; time++) {
+			if (time == END_OF_DAY / 2) {
+				for (int i = 0; i < this.reschedules; i++) {
+					Id<Person> agentId = this.agentIds[this.rescheduledAgents[i]];
+					if (wheel.remove(agentId)) {
+						wheel.add(agentId, this.rescheduledTimes[i]);
+					}
+				}
+			}
+			Id<Person> agentId;
+			while ((agentId = wheel.poll(time)) != null) {
+				woken += agentId.index();
+			}
+		}
+		return woken;
+	}
+
+}
@@ -0,0 +1,139 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.benchmark.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.router.FastDijkstraFactory;
+import org.matsim.core.router.costcalculators.FreespeedTravelTimeAndDisutility;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.LeastCostPathCalculator.Path;
+
+/**
+ * Synthetic scenarios of configurable size, used by the benchmarks in this package.
+ */
+final class BenchmarkFixtures {
+
+	private BenchmarkFixtures() {
+	}
+
+	/**
+	 * Creates a grid of <code>size</code> x <code>size</code> nodes, 500m apart, with links in both directions between neighbouring nodes.
+	 */
+	static Network createGridNetwork(int size) {
+		Network network = NetworkUtils.createNetwork();
+		createGridNetwork(network, size);
+		return network;
+	}
+
+	/**
+	 * Adds a grid of <code>size</code> x <code>size</code> nodes to the given network, see {@link #createGridNetwork(int)}.
+	 */
+	static void createGridNetwork(Network network, int size) {
+		Node[][] nodes = new Node[size][size];
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				nodes[x][y] = NetworkUtils.createAndAddNode(network, Id.createNodeId(x + "_" + y), new Coord(x * 500.0, y * 500.0));
+			}
+		}
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				if (x + 1 < size) {
+					addLinks(network, nodes[x][y], nodes[x + 1][y]);
+				}
+				if (y + 1 < size) {
+					addLinks(network, nodes[x][y], nodes[x][y + 1]);
+				}
+			}
+		}
+	}
+
+	private static void addLinks(Network network, Node node1, Node node2) {
+		NetworkUtils.createAndAddLink(network, Id.createLinkId(node1.getId() + "-" + node2.getId()), node1, node2, 500.0, 13.9, 1000.0, 1.0);
+		NetworkUtils.createAndAddLink(network, Id.createLinkId(node2.getId() + "-" + node1.getId()), node2, node1, 500.0, 13.9, 1000.0, 1.0);
+	}
+
+	/**
+	 * Adds persons with a car trip between two random links and back to the population. The routes are the free speed shortest paths.
+	 */
+	static void createCarCommuters(Scenario scenario, int count, long seed) {
+		Network network = scenario.getNetwork();
+		Population population = scenario.getPopulation();
+		PopulationFactory pf = population.getFactory();
+		List<Link> links = new ArrayList<>(network.getLinks().values());
+		FreespeedTravelTimeAndDisutility freespeed = new FreespeedTravelTimeAndDisutility(new PlanCalcScoreConfigGroup());
+		LeastCostPathCalculator router = new FastDijkstraFactory().createPathCalculator(network, freespeed, freespeed);
+		Random random = new Random(seed);
+		for (int i = 0; i < count; i++) {
+			Link homeLink = links.get(random.nextInt(links.size()));
+			Link workLink = links.get(random.nextInt(links.size()));
+			while (workLink == homeLink) {
+				workLink = links.get(random.nextInt(links.size()));
+			}
+			Person person = pf.createPerson(Id.createPersonId(i));
+			Plan plan = pf.createPlan();
+			Activity home = pf.createActivityFromLinkId("h", homeLink.getId());
+			home.setEndTime(6 * 3600 + random.nextInt(3 * 3600));
+			plan.addActivity(home);
+			plan.addLeg(createLeg(pf, router, homeLink, workLink));
+			Activity work = pf.createActivityFromLinkId("w", workLink.getId());
+			work.setEndTime(16 * 3600 + random.nextInt(3 * 3600));
+			plan.addActivity(work);
+			plan.addLeg(createLeg(pf, router, workLink, homeLink));
+			plan.addActivity(pf.createActivityFromLinkId("h", homeLink.getId()));
+			person.addPlan(plan);
+			population.addPerson(person);
+		}
+	}
+
+	private static Leg createLeg(PopulationFactory pf, LeastCostPathCalculator router, Link fromLink, Link toLink) {
+		Leg leg = pf.createLeg(TransportMode.car);
+		Path path = router.calcLeastCostPath(fromLink.getToNode(), toLink.getFromNode(), 0.0, null, null);
+		NetworkRoute route = RouteUtils.createLinkNetworkRouteImpl(fromLink.getId(), toLink.getId());
+		List<Id<Link>> linkIds = new ArrayList<>(path.links.size());
+		for (Link link : path.links) {
+			linkIds.add(link.getId());
+		}
+		route.setLinkIds(fromLink.getId(), linkIds, toLink.getId());
+		route.setTravelTime(path.travelTime);
+		leg.setRoute(route);
+		return leg;
+	}
+
+}
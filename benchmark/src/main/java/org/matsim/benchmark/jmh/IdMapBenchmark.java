@@ -0,0 +1,95 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.benchmark.jmh;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.IdMap;
+import org.matsim.api.core.v01.population.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares lookups in an {@link IdMap} with lookups in a {@link HashMap}, for random keys.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdMapBenchmark {
+
+	private static final int NUMBER_OF_LOOKUPS = 4096;
+
+	@Param({"1000", "100000", "1000000"})
+	public int size;
+
+	private IdMap<Person, Integer> idMap;
+	private Map<Id<Person>, Integer> hashMap;
+	private Id<Person>[] keys;
+	private int lookup = 0;
+
+	@Setup
+	public void setup() {
+		this.idMap = new IdMap<>(Person.class, this.size);
+		this.hashMap = new HashMap<>();
+		for (int i = 0; i < this.size; i++) {
+			Id<Person> id = Id.createPersonId("bench_" + i);
+			this.idMap.put(id, i);
+			this.hashMap.put(id, i);
+		}
+		Random random = new Random(4711);
+		this.keys = new Id[NUMBER_OF_LOOKUPS];
+		for (int i = 0; i < NUMBER_OF_LOOKUPS; i++) {
+			this.keys[i] = Id.createPersonId("bench_" + random.nextInt(this.size));
+		}
+	}
+
+	private Id<Person> nextKey() {
+		int i = this.lookup;
+		this.lookup = (i + 1) % NUMBER_OF_LOOKUPS;
+		return this.keys[i];
+	}
+
+	@Benchmark
+	public Integer idMapGet() {
+		return this.idMap.get(nextKey());
+	}
+
+	@Benchmark
+	public Integer hashMapGet() {
+		return this.hashMap.get(nextKey());
+	}
+
+}
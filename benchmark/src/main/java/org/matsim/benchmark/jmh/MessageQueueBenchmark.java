@@ -0,0 +1,117 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.benchmark.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.matsim.core.mobsim.jdeqsim.CalendarMessageQueue;
+import org.matsim.core.mobsim.jdeqsim.Message;
+import org.matsim.core.mobsim.jdeqsim.MessageQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the throughput of the message queues available to JDEQSim, the priority queue based {@link MessageQueue} and
+ * the {@link CalendarMessageQueue}.  Each invocation runs the classical hold model: a fixed number of messages is kept
+ * in the queue, and every message taken out schedules a new one a little later, with time increments typical for
+ * traversing links.  With <code>pooling</code>, the handled message is reused for the new one instead of allocating it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class MessageQueueBenchmark {
+
+	private static final int HOLD_OPERATIONS = 20_000_000;
+
+	@Param({"10000", "1000000"})
+	public int messages;
+
+	@Param({"false", "true"})
+	public boolean pooling;
+
+	private double[] initialTimes;
+	private double[] timeIncrements;
+
+	private static final class HoldMessage extends Message {
+		@Override
+		public void processEvent() {
+		}
+
+		@Override
+		public void handleMessage() {
+		}
+	}
+
+	@Setup
+	public void setup() {
+		Random random = new Random(4711);
+		this.initialTimes = new double[this.messages];
+		for (int i = 0; i < this.messages; i++) {
+			this.initialTimes[i] = random.nextDouble() * 3600;
+		}
+		// link travel times are mostly short, some messages (e.g. activity ends) are scheduled hours ahead
+		this.timeIncrements = new double[1 << 16];
+		for (int i = 0; i < this.timeIncrements.length; i++) {
+			this.timeIncrements[i] = random.nextInt(20) == 0 ? random.nextDouble() * 4 * 3600 : random.nextDouble() * 60;
+		}
+	}
+
+	@Benchmark
+	public double priorityQueue() {
+		return hold(new MessageQueue());
+	}
+
+	@Benchmark
+	public double calendarQueue() {
+		return hold(new CalendarMessageQueue());
+	}
+
+	private double hold(MessageQueue queue) {
+		for (double time : this.initialTimes) {
+			Message m = new HoldMessage();
+			m.setMessageArrivalTime(time);
+			queue.putMessage(m);
+		}
+		double now = 0;
+		int mask = this.timeIncrements.length - 1;
+		for (int i = 0; i < HOLD_OPERATIONS; i++) {
+			Message m = queue.getNextMessage();
+			now = m.getMessageArrivalTime();
+			Message next = this.pooling ? m : new HoldMessage();
+			next.setMessageArrivalTime(now + this.timeIncrements[i & mask]);
+			queue.putMessage(next);
+		}
+		return now;
+	}
+
+}
@@ -0,0 +1,92 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.benchmark.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.PrepareForSimUtils;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.mobsim.qsim.QSimBuilder;
+import org.matsim.core.network.io.MatsimNetworkReader;
+import org.matsim.core.population.io.PopulationReader;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.examples.ExamplesUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a complete run of the QSim with car traffic only, which is dominated by the link dynamics
+ * (<code>QueueWithBuffer.doSimStep</code> and the node moves). The scenario is either the equil example with 2000
+ * agents, or a synthetic grid given as <code>grid[size]-[agents]</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class QSimBenchmark {
+
+	@Param({"equil", "grid30-10000", "grid100-100000"})
+	public String scenario;
+
+	@Param({"1", "4"})
+	public int threads;
+
+	private Scenario qsimScenario;
+
+	@Setup
+	public void setup() {
+		Config config = ConfigUtils.createConfig();
+		config.qsim().setNumberOfThreads(this.threads);
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		if (this.scenario.equals("equil")) {
+			new MatsimNetworkReader(scenario.getNetwork()).readURL(IOUtils.extendUrl(ExamplesUtils.getTestScenarioURL("equil"), "network.xml"));
+			new PopulationReader(scenario).readURL(IOUtils.extendUrl(ExamplesUtils.getTestScenarioURL("equil"), "plans2000.xml.gz"));
+		} else {
+			String[] parts = this.scenario.substring(4).split("-");
+			BenchmarkFixtures.createGridNetwork(scenario.getNetwork(), Integer.parseInt(parts[0]));
+			BenchmarkFixtures.createCarCommuters(scenario, Integer.parseInt(parts[1]), 4711);
+		}
+		PrepareForSimUtils.createDefaultPrepareForSim(scenario).run();
+		this.qsimScenario = scenario;
+	}
+
+	@Benchmark
+	public void runQSim() {
+		EventsManager events = EventsUtils.createEventsManager();
+		new QSimBuilder(this.qsimScenario.getConfig()).useDefaults().build(this.qsimScenario, events).run();
+	}
+
+}
@@ -0,0 +1,132 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.benchmark.jmh;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.io.MatsimNetworkReader;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.examples.ExamplesUtils;
+import org.matsim.pt.transitSchedule.api.TransitScheduleReader;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+import org.matsim.vehicles.MatsimVehicleReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.sbb.matsim.routing.pt.raptor.RaptorParameters;
+import ch.sbb.matsim.routing.pt.raptor.RaptorStaticConfig;
+import ch.sbb.matsim.routing.pt.raptor.RaptorUtils;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptor;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorCore;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorData;
+
+/**
+ * Measures the preparation of the {@link SwissRailRaptorData} and the route and tree queries of {@link SwissRailRaptor}
+ * in the pt-tutorial example, between random stops at random times.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SwissRailRaptorBenchmark {
+
+	private static final int NUMBER_OF_QUERIES = 1024;
+
+	private Scenario scenario;
+	private RaptorStaticConfig raptorConfig;
+	private RaptorParameters raptorParameters;
+	private SwissRailRaptor raptor;
+	private TransitStopFacility[] fromStops;
+	private TransitStopFacility[] toStops;
+	private double[] times;
+	private int query = 0;
+
+	@Setup
+	public void setup() {
+		Config config = ConfigUtils.createConfig();
+		config.transit().setUseTransit(true);
+		this.scenario = ScenarioUtils.createScenario(config);
+		URL context = ExamplesUtils.getTestScenarioURL("pt-tutorial");
+		new MatsimNetworkReader(this.scenario.getNetwork()).readURL(IOUtils.extendUrl(context, "multimodalnetwork.xml"));
+		new TransitScheduleReader(this.scenario).readURL(IOUtils.extendUrl(context, "transitschedule.xml"));
+		new MatsimVehicleReader(this.scenario.getTransitVehicles()).readURL(IOUtils.extendUrl(context, "transitVehicles.xml"));
+
+		this.raptorConfig = RaptorUtils.createStaticConfig(config);
+		this.raptorParameters = RaptorUtils.createParameters(config);
+		SwissRailRaptorData data = prepareData();
+		this.raptor = new SwissRailRaptor.Builder(data, config).build();
+
+		List<TransitStopFacility> stops = new ArrayList<>(this.scenario.getTransitSchedule().getFacilities().values());
+		Random random = new Random(4711);
+		this.fromStops = new TransitStopFacility[NUMBER_OF_QUERIES];
+		this.toStops = new TransitStopFacility[NUMBER_OF_QUERIES];
+		this.times = new double[NUMBER_OF_QUERIES];
+		for (int i = 0; i < NUMBER_OF_QUERIES; i++) {
+			this.fromStops[i] = stops.get(random.nextInt(stops.size()));
+			this.toStops[i] = stops.get(random.nextInt(stops.size()));
+			this.times[i] = 6 * 3600 + random.nextInt(12 * 3600);
+		}
+	}
+
+	private int nextQuery() {
+		int i = this.query;
+		this.query = (i + 1) % NUMBER_OF_QUERIES;
+		return i;
+	}
+
+	@Benchmark
+	public SwissRailRaptorData prepareData() {
+		return SwissRailRaptorData.create(this.scenario.getTransitSchedule(), this.scenario.getTransitVehicles(), this.raptorConfig, this.scenario.getNetwork(), null);
+	}
+
+	@Benchmark
+	public List<Leg> calcRoute() {
+		int i = nextQuery();
+		return this.raptor.calcRoute(this.fromStops[i], this.toStops[i], this.times[i], null);
+	}
+
+	@Benchmark
+	public Map<Id<TransitStopFacility>, SwissRailRaptorCore.TravelInfo> calcTree() {
+		int i = nextQuery();
+		return this.raptor.calcTree(this.fromStops[i], this.times[i], this.raptorParameters, null);
+	}
+
+}
@@ -94,6 +94,7 @@ public class CalculateSkimMatrices {
     private final String outputDirectory;
     private final int numberOfThreads;
     private Map<String, Coord[]> coordsPerZone = null;
+    private int ptRowsPerTile = 0;
 
     public CalculateSkimMatrices(String outputDirectory, int numberOfThreads) {
         this.outputDirectory = outputDirectory;
@@ -113,6 +114,14 @@ public class CalculateSkimMatrices {
         this.numberOfThreads = numberOfThreads;
     }
 
+    /**
+     * If set to a positive number, the PT matrices are not kept on the heap, but memory-mapped from binary files in a sub-directory
+     * of the output directory, with the given number of rows per tile. Use this for large numbers of zones.
+     */
+    public void setPtRowsPerTile(int rowsPerTile) {
+        this.ptRowsPerTile = rowsPerTile;
+    }
+
     private static <T> void combineMatrices(FloatMatrix<T> matrix1, FloatMatrix<T> matrix2) {
         Set<T> ids = matrix2.id2index.keySet();
         for (T fromId : ids) {
@@ -419,8 +428,9 @@ public class CalculateSkimMatrices {
         RaptorParameters raptorParameters = RaptorUtils.createParameters(config);
 
         log.info("calc PT matrices for " + Time.writeTime(startTime) + " - " + Time.writeTime(endTime));
+        File tileDirectory = this.ptRowsPerTile > 0 ? new File(outputDirectory, prefix + "pt_tiles") : null;
         PTSkimMatrices.PtIndicators<String> matrices = PTSkimMatrices.calculateSkimMatrices(
-                raptorData, this.coordsPerZone, startTime, endTime, 120, raptorParameters, this.numberOfThreads, trainDetector);
+                raptorData, this.coordsPerZone, startTime, endTime, 120, raptorParameters, this.numberOfThreads, trainDetector, tileDirectory, this.ptRowsPerTile);
 
         log.info("write PT matrices to " + outputDirectory + (prefix.isEmpty() ? "" : (" with prefix " + prefix)));
         FloatMatrixIO.writeAsCSV(matrices.adaptionTimeMatrix, outputDirectory + "/" + prefix + PT_ADAPTIONTIMES_FILENAME);
@@ -432,6 +442,7 @@ public class CalculateSkimMatrices {
         FloatMatrixIO.writeAsCSV(matrices.transferCountMatrix, outputDirectory + "/" + prefix + PT_TRANSFERCOUNTS_FILENAME);
         FloatMatrixIO.writeAsCSV(matrices.trainTravelTimeShareMatrix, outputDirectory + "/" + prefix + PT_TRAINSHARE_BYTIME_FILENAME);
         FloatMatrixIO.writeAsCSV(matrices.trainDistanceShareMatrix, outputDirectory + "/" + prefix + PT_TRAINSHARE_BYDISTANCE_FILENAME);
+        matrices.close();
     }
 
     private String findZone(Coord coord, SpatialIndex zonesQt, String zonesIdAttributeName) {
@@ -4,10 +4,19 @@
 
 package ch.sbb.matsim.analysis.skims;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.matsim.core.utils.io.UncheckedIOException;
 
 /**
  * A simple m x m matrix storing float values, using arbitrary objects to identify rows and columns. The list of identifying objects must be known before-hand when instantiating a matrix.
@@ -26,42 +35,144 @@ import java.util.Set;
  *         So, as long as the matrix has entries in at least 1/16.5 = 6% or 1/25 = 4% of all cells, the simple float array should be more efficient.
  *         <p>
  *         For larger matrices the absolute volumes become even more impressive. For an 8000x8000 matrix, the float array will use 250MB, while the alternatives will use 4.5 or 6.5 GB respectively.
+ *         <p>
+ *         The cells are stored in tiles of complete rows. For very large matrices, the tiles can be memory-mapped from a file instead of being kept on the heap, see
+ *         {@link #FloatMatrix(Set, float, File, int)}. Only the tiles actually accessed are mapped, and the operating system decides which parts of them stay in memory, so the heap usage does not
+ *         depend on the number of zones. The file starts with a header containing the zone ids (see {@link FloatMatrixIO#readAsBinary(String, FloatMatrixIO.IdConverter)}), followed by the cells in
+ *         row-major order.
  */
 public class FloatMatrix<T> {
 
+    static final int BINARY_MAGIC = 0x464d5458; // "FMTX"
+    static final int BINARY_VERSION = 1;
+    /** tiles of heap matrices are limited to 512 MB, as arrays can not have more than 2^31 elements */
+    private static final int MAX_HEAP_TILE_CELLS = 1 << 27;
+    /** mapped tiles are limited to 2 GB, the maximum size of {@link FileChannel#map(FileChannel.MapMode, long, long)} */
+    private static final int MAX_MAPPED_TILE_BYTES = Integer.MAX_VALUE;
+
     final Map<T, Integer> id2index;
     private final int size;
-    private final float[] data;
+    private final int rowsPerTile;
+    private final AtomicReferenceArray<FloatBuffer> tiles;
+    private final MappedByteBuffer[] mappedTiles;
+    private final FileChannel channel;
+    private final FileChannel.MapMode mapMode;
+    private final long dataOffset;
 
     public FloatMatrix(Set<T> zones, float defaultValue) {
         this.size = zones.size();
-        this.id2index = new HashMap<>((int) (this.size * 1.5));
-        this.data = new float[this.size * this.size];
-        Arrays.fill(this.data, defaultValue);
+        this.id2index = createIndex(zones);
+        this.rowsPerTile = Math.max(1, Math.min(this.size, MAX_HEAP_TILE_CELLS / Math.max(1, this.size)));
+        this.tiles = new AtomicReferenceArray<>(getTileCount());
+        this.mappedTiles = null;
+        this.channel = null;
+        this.mapMode = null;
+        this.dataOffset = 0;
+        for (int tile = 0; tile < this.tiles.length(); tile++) {
+            float[] data = new float[getRowsInTile(tile) * this.size];
+            if (defaultValue != 0) {
+                Arrays.fill(data, defaultValue);
+            }
+            this.tiles.set(tile, FloatBuffer.wrap(data));
+        }
+    }
+
+    /**
+     * Creates a matrix stored in the given file, which will be overwritten. The file is mapped into memory in tiles of <code>rowsPerTile</code> rows each. The number of rows is reduced if a tile
+     * would be larger than 2 GB.
+     */
+    public FloatMatrix(Set<T> zones, float defaultValue, File file, int rowsPerTile) {
+        this.size = zones.size();
+        this.id2index = createIndex(zones);
+        this.rowsPerTile = getMappedRowsPerTile(rowsPerTile, this.size);
+        this.tiles = new AtomicReferenceArray<>(getTileCount());
+        this.mappedTiles = new MappedByteBuffer[this.tiles.length()];
+        this.mapMode = FileChannel.MapMode.READ_WRITE;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(0);
+            raf.writeInt(BINARY_MAGIC);
+            raf.writeInt(BINARY_VERSION);
+            raf.writeInt(this.size);
+            raf.writeLong(0); // offset of the cells, written once the zone ids are written
+            for (T id : zones) {
+                raf.writeUTF(id.toString());
+            }
+            this.dataOffset = raf.getFilePointer();
+            raf.seek(12);
+            raf.writeLong(this.dataOffset);
+            raf.setLength(this.dataOffset + 4L * this.size * this.size);
+            this.channel = raf.getChannel();
+        } catch (IOException e) {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException closeException) {
+                    e.addSuppressed(closeException);
+                }
+            }
+            throw new UncheckedIOException(e);
+        }
+        if (defaultValue != 0) {
+            for (int tile = 0; tile < this.tiles.length(); tile++) {
+                FloatBuffer buffer = getTile(tile);
+                for (int i = 0, n = buffer.capacity(); i < n; i++) {
+                    buffer.put(i, defaultValue);
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens an existing binary matrix, see {@link FloatMatrixIO#readAsBinary(String, FloatMatrixIO.IdConverter)}.
+     */
+    FloatMatrix(Collection<T> zones, FileChannel channel, long dataOffset, int rowsPerTile) {
+        this.size = zones.size();
+        this.id2index = createIndex(zones);
+        this.rowsPerTile = getMappedRowsPerTile(rowsPerTile, this.size);
+        this.tiles = new AtomicReferenceArray<>(getTileCount());
+        this.mappedTiles = new MappedByteBuffer[this.tiles.length()];
+        this.channel = channel;
+        this.mapMode = FileChannel.MapMode.READ_ONLY;
+        this.dataOffset = dataOffset;
+    }
+
+    private static int getMappedRowsPerTile(int rowsPerTile, int size) {
+        int maxRows = MAX_MAPPED_TILE_BYTES / 4 / Math.max(1, size);
+        return Math.max(1, Math.min(rowsPerTile, Math.min(size, maxRows)));
+    }
+
+    private static <T> Map<T, Integer> createIndex(Collection<T> zones) {
+        Map<T, Integer> id2index = new HashMap<>((int) (zones.size() * 1.5));
         int index = 0;
         for (T t : zones) {
-            this.id2index.put(t, index);
+            id2index.put(t, index);
             index++;
         }
+        return id2index;
     }
 
     public float set(T from, T to, float value) {
-        int index = getIndex(from, to);
-        float oldValue = this.data[index];
-        this.data[index] = value;
+        int fromIndex = this.id2index.get(from);
+        FloatBuffer tile = getTile(fromIndex / this.rowsPerTile);
+        int index = getIndexInTile(fromIndex, to);
+        float oldValue = tile.get(index);
+        tile.put(index, value);
         return oldValue;
     }
 
     public float get(T from, T to) {
-        int index = getIndex(from, to);
-        return this.data[index];
+        int fromIndex = this.id2index.get(from);
+        return getTile(fromIndex / this.rowsPerTile).get(getIndexInTile(fromIndex, to));
     }
 
     public float add(T from, T to, float value) {
-        int index = getIndex(from, to);
-        float oldValue = this.data[index];
-        float newValue = oldValue + value;
-        this.data[index] = newValue;
+        int fromIndex = this.id2index.get(from);
+        FloatBuffer tile = getTile(fromIndex / this.rowsPerTile);
+        int index = getIndexInTile(fromIndex, to);
+        float newValue = tile.get(index) + value;
+        tile.put(index, newValue);
         return newValue;
     }
 
@@ -72,10 +183,11 @@ public class FloatMatrix<T> {
      * @return the new value
      */
     public float multiply(T from, T to, float factor) {
-        int index = getIndex(from, to);
-        float oldValue = this.data[index];
-        float newValue = oldValue * factor;
-        this.data[index] = newValue;
+        int fromIndex = this.id2index.get(from);
+        FloatBuffer tile = getTile(fromIndex / this.rowsPerTile);
+        int index = getIndexInTile(fromIndex, to);
+        float newValue = tile.get(index) * factor;
+        tile.put(index, newValue);
         return newValue;
     }
 
@@ -85,14 +197,85 @@ public class FloatMatrix<T> {
      * @param factor the multiplication factor
      */
     public void multiply(float factor) {
-        for (int i = 0; i < this.data.length; i++) {
-            this.data[i] *= factor;
+        for (int t = 0; t < this.tiles.length(); t++) {
+            FloatBuffer tile = getTile(t);
+            for (int i = 0, n = tile.capacity(); i < n; i++) {
+                tile.put(i, tile.get(i) * factor);
+            }
         }
     }
 
-    private int getIndex(T from, T to) {
-        int fromIndex = this.id2index.get(from);
+    /**
+     * Writes all changes of a memory-mapped matrix to its file. Does nothing for matrices kept on the heap.
+     */
+    public void flush() {
+        for (int tile = 0; tile < this.tiles.length(); tile++) {
+            flushTile(tile);
+        }
+    }
+
+    /**
+     * Flushes and closes the file of a memory-mapped matrix. The matrix can still be accessed afterwards as long as it is referenced. Does nothing for matrices kept on the heap.
+     */
+    public void close() {
+        if (this.channel != null) {
+            flush();
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    void flushTile(int tile) {
+        if (this.mappedTiles != null && this.mapMode == FileChannel.MapMode.READ_WRITE) {
+            MappedByteBuffer buffer;
+            synchronized (this.mappedTiles) {
+                buffer = this.mappedTiles[tile];
+            }
+            if (buffer != null) {
+                buffer.force();
+            }
+        }
+    }
+
+    int getTileCount() {
+        return (this.size + this.rowsPerTile - 1) / this.rowsPerTile;
+    }
+
+    int getTileIndex(T from) {
+        return this.id2index.get(from) / this.rowsPerTile;
+    }
+
+    int getRowsInTile(int tile) {
+        return Math.min(this.rowsPerTile, this.size - tile * this.rowsPerTile);
+    }
+
+    private FloatBuffer getTile(int tile) {
+        FloatBuffer buffer = this.tiles.get(tile);
+        if (buffer == null) {
+            synchronized (this.mappedTiles) {
+                buffer = this.tiles.get(tile);
+                if (buffer == null) {
+                    long position = this.dataOffset + 4L * tile * this.rowsPerTile * this.size;
+                    long length = 4L * getRowsInTile(tile) * this.size;
+                    try {
+                        MappedByteBuffer mapped = this.channel.map(this.mapMode, position, length);
+                        this.mappedTiles[tile] = mapped;
+                        buffer = mapped.asFloatBuffer();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    this.tiles.set(tile, buffer);
+                }
+            }
+        }
+        return buffer;
+    }
+
+    private int getIndexInTile(int fromIndex, T to) {
         int toIndex = this.id2index.get(to);
-        return fromIndex * this.size + toIndex;
+        return (fromIndex % this.rowsPerTile) * this.size + toIndex;
     }
 }
@@ -4,18 +4,29 @@
 
 package ch.sbb.matsim.analysis.skims;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.matsim.core.utils.io.IOUtils;
 
 /**
- * Helper methods to write and read matrices as CSV files (well, actually semi-colon separated files).
+ * Helper methods to write and read matrices as CSV files (well, actually semi-colon separated files), or in the binary format also used by memory-mapped matrices.
  *
  * @author mrieser / SBB
  */
@@ -24,6 +35,8 @@ public final class FloatMatrixIO {
     private final static String SEP = ";";
     private final static String HEADER = "FROM" + SEP + "TO" + SEP + "VALUE";
     private final static String NL = "\n";
+    /** tiles of about 64 MB when reading binary matrices */
+    private final static int BINARY_TILE_CELLS = 1 << 24;
 
     public static <T> void writeAsCSV(FloatMatrix<T> matrix, String filename) throws IOException {
         try (BufferedWriter writer = IOUtils.getBufferedWriter(filename)) {
@@ -79,6 +92,47 @@ public final class FloatMatrixIO {
         }
     }
 
+    /**
+     * Writes the matrix in the binary format of memory-mapped matrices.
+     */
+    public static <T> void writeAsBinary(FloatMatrix<T> matrix, String filename) {
+        T[] zoneIds = getSortedIds(matrix);
+        Set<T> zones = new LinkedHashSet<>(Arrays.asList(zoneIds));
+        FloatMatrix<T> binaryMatrix = new FloatMatrix<>(zones, 0.0f, new File(filename), Math.max(1, BINARY_TILE_CELLS / Math.max(1, zoneIds.length)));
+        for (T fromZoneId : zoneIds) {
+            for (T toZoneId : zoneIds) {
+                binaryMatrix.set(fromZoneId, toZoneId, matrix.get(fromZoneId, toZoneId));
+            }
+        }
+        binaryMatrix.close();
+    }
+
+    /**
+     * Opens a binary matrix, e.g. one written by a memory-mapped matrix. Only the header is read immediately, the cells are mapped tile by tile when they are first accessed, so the heap usage
+     * does not depend on the size of the matrix. The returned matrix is read-only.
+     */
+    public static <T> FloatMatrix<T> readAsBinary(String filename, IdConverter<T> idConverter) throws IOException {
+        FileChannel channel = new RandomAccessFile(filename, "r").getChannel();
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            int magic = in.readInt();
+            int version = in.readInt();
+            if (magic != FloatMatrix.BINARY_MAGIC || version != FloatMatrix.BINARY_VERSION) {
+                throw new IOException("File " + filename + " is not a binary matrix of a supported version.");
+            }
+            int size = in.readInt();
+            long dataOffset = in.readLong();
+            List<T> zoneIds = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                zoneIds.add(idConverter.parse(in.readUTF()));
+            }
+            return new FloatMatrix<>(zoneIds, channel, dataOffset, Math.max(1, BINARY_TILE_CELLS / Math.max(1, size)));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
     private static <T> T[] getSortedIds(FloatMatrix<T> matrix) {
         // the array-creation is only safe as long as the generated array is only within this class!
         @SuppressWarnings("unchecked")
@@ -17,6 +17,7 @@ import org.matsim.pt.transitSchedule.api.TransitLine;
 import org.matsim.pt.transitSchedule.api.TransitRoute;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -24,6 +25,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.function.BiPredicate;
 
 /**
@@ -48,6 +50,9 @@ import java.util.function.BiPredicate;
  * <p>
  * If no connection can be found between two zones (can happen when there is no transit stop in a zone), the corresponding matrix cells contain the value "0" for the perceived frequency, and
  * "Infinity" for all other skim matrices.
+ * <p>
+ * For large numbers of zones, the matrices can be memory-mapped from files instead of being kept on the heap. The averages of a row are calculated by the worker that handled the origin zone, as
+ * soon as it is finished, and a tile of rows is written to its file once all its rows are finished. This way, the heap usage does not depend on the number of zones.
  *
  * @author mrieser / SBB
  */
@@ -58,11 +63,25 @@ public class PTSkimMatrices {
 
     public static <T> PTSkimMatrices.PtIndicators<T> calculateSkimMatrices(SwissRailRaptorData raptorData, Map<T, Coord[]> coordsPerZone, double minDepartureTime, double maxDepartureTime,
             double stepSize_seconds, RaptorParameters parameters, int numberOfThreads, BiPredicate<TransitLine, TransitRoute> trainDetector) {
+        return calculateSkimMatrices(raptorData, coordsPerZone, minDepartureTime, maxDepartureTime, stepSize_seconds, parameters, numberOfThreads, trainDetector, null, 0);
+    }
+
+    /**
+     * @param tileDirectory if not <code>null</code>, the matrices are memory-mapped from files in this directory, see {@link PtIndicators#PtIndicators(Set, File, int)}.
+     * @param rowsPerTile the number of rows per memory-mapped tile.
+     */
+    public static <T> PTSkimMatrices.PtIndicators<T> calculateSkimMatrices(SwissRailRaptorData raptorData, Map<T, Coord[]> coordsPerZone, double minDepartureTime, double maxDepartureTime,
+            double stepSize_seconds, RaptorParameters parameters, int numberOfThreads, BiPredicate<TransitLine, TransitRoute> trainDetector, File tileDirectory, int rowsPerTile) {
         // prepare calculation
         Set<T> zoneIds = coordsPerZone.keySet();
-        PtIndicators<T> pti = new PtIndicators<>(zoneIds);
+        PtIndicators<T> pti = tileDirectory == null ? new PtIndicators<>(zoneIds) : new PtIndicators<>(zoneIds, tileDirectory, rowsPerTile);
         Config config = ConfigUtils.createConfig();
 
+        AtomicIntegerArray unfinishedRowsPerTile = new AtomicIntegerArray(pti.dataCountMatrix.getTileCount());
+        for (int tile = 0; tile < unfinishedRowsPerTile.length(); tile++) {
+            unfinishedRowsPerTile.set(tile, pti.dataCountMatrix.getRowsInTile(tile));
+        }
+
         // do calculation
         ConcurrentLinkedQueue<T> originZones = new ConcurrentLinkedQueue<>(zoneIds);
 
@@ -70,7 +89,7 @@ public class PTSkimMatrices {
         Thread[] threads = new Thread[numberOfThreads];
         for (int i = 0; i < numberOfThreads; i++) {
             SwissRailRaptor raptor = new SwissRailRaptor.Builder(raptorData, config).build();
-            RowWorker<T> worker = new RowWorker<>(originZones, zoneIds, coordsPerZone, pti, raptor, parameters, minDepartureTime, maxDepartureTime, stepSize_seconds, counter, trainDetector);
+            RowWorker<T> worker = new RowWorker<>(originZones, zoneIds, coordsPerZone, pti, raptor, parameters, minDepartureTime, maxDepartureTime, stepSize_seconds, counter, trainDetector, unfinishedRowsPerTile);
             threads[i] = new Thread(worker, "PT-FrequencyMatrix-" + Time.writeTime(minDepartureTime) + "-" + Time.writeTime(maxDepartureTime) + "-" + i);
             threads[i].start();
         }
@@ -84,34 +103,6 @@ public class PTSkimMatrices {
             }
         }
 
-        for (T fromZoneId : zoneIds) {
-            for (T toZoneId : zoneIds) {
-                float count = pti.dataCountMatrix.get(fromZoneId, toZoneId);
-                if (count == 0) {
-                    pti.adaptionTimeMatrix.set(fromZoneId, toZoneId, Float.POSITIVE_INFINITY);
-                    pti.frequencyMatrix.set(fromZoneId, toZoneId, 0);
-                    pti.distanceMatrix.set(fromZoneId, toZoneId, Float.POSITIVE_INFINITY);
-                    pti.travelTimeMatrix.set(fromZoneId, toZoneId, Float.POSITIVE_INFINITY);
-                    pti.accessTimeMatrix.set(fromZoneId, toZoneId, Float.POSITIVE_INFINITY);
-                    pti.egressTimeMatrix.set(fromZoneId, toZoneId, Float.POSITIVE_INFINITY);
-                    pti.transferCountMatrix.set(fromZoneId, toZoneId, Float.POSITIVE_INFINITY);
-                    pti.trainDistanceShareMatrix.set(fromZoneId, toZoneId, Float.POSITIVE_INFINITY);
-                    pti.trainTravelTimeShareMatrix.set(fromZoneId, toZoneId, Float.POSITIVE_INFINITY);
-                } else {
-                    float avgFactor = 1.0f / count;
-                    float adaptionTime = pti.adaptionTimeMatrix.multiply(fromZoneId, toZoneId, avgFactor);
-                    pti.travelTimeMatrix.multiply(fromZoneId, toZoneId, avgFactor);
-                    pti.accessTimeMatrix.multiply(fromZoneId, toZoneId, avgFactor);
-                    pti.egressTimeMatrix.multiply(fromZoneId, toZoneId, avgFactor);
-                    pti.trainDistanceShareMatrix.multiply(fromZoneId, toZoneId, avgFactor);
-                    pti.trainTravelTimeShareMatrix.multiply(fromZoneId, toZoneId, avgFactor);
-                    pti.transferCountMatrix.multiply(fromZoneId, toZoneId, avgFactor);
-                    float frequency = (float) ((maxDepartureTime - minDepartureTime) / adaptionTime / 4.0);
-                    pti.frequencyMatrix.set(fromZoneId, toZoneId, frequency);
-                }
-            }
-        }
-
         return pti;
     }
 
@@ -128,9 +119,10 @@ public class PTSkimMatrices {
         private final double stepSize;
         private final Counter counter;
         private final BiPredicate<TransitLine, TransitRoute> trainDetector;
+        private final AtomicIntegerArray unfinishedRowsPerTile;
 
         RowWorker(ConcurrentLinkedQueue<T> originZones, Set<T> destinationZones, Map<T, Coord[]> coordsPerZone, PtIndicators<T> pti, SwissRailRaptor raptor, RaptorParameters parameters,
-                double minDepartureTime, double maxDepartureTime, double stepSize, Counter counter, BiPredicate<TransitLine, TransitRoute> trainDetector) {
+                double minDepartureTime, double maxDepartureTime, double stepSize, Counter counter, BiPredicate<TransitLine, TransitRoute> trainDetector, AtomicIntegerArray unfinishedRowsPerTile) {
             this.originZones = originZones;
             this.destinationZones = destinationZones;
             this.coordsPerZone = coordsPerZone;
@@ -142,6 +134,7 @@ public class PTSkimMatrices {
             this.stepSize = stepSize;
             this.counter = counter;
             this.trainDetector = trainDetector;
+            this.unfinishedRowsPerTile = unfinishedRowsPerTile;
         }
 
         private static Collection<TransitStopFacility> findStopCandidates(Coord coord, SwissRailRaptor raptor, RaptorParameters parameters) {
@@ -169,6 +162,43 @@ public class PTSkimMatrices {
                         calcForRow(fromZoneId, fromCoord);
                     }
                 }
+                finishRow(fromZoneId);
+                int tile = this.pti.dataCountMatrix.getTileIndex(fromZoneId);
+                if (this.unfinishedRowsPerTile.decrementAndGet(tile) == 0) {
+                    this.pti.flushTile(tile);
+                }
+            }
+        }
+
+        /**
+         * Calculates the averages of the row, once all values of the origin zone are added.
+         */
+        private void finishRow(T fromZoneId) {
+            PtIndicators<T> pti = this.pti;
+            for (T toZoneId : this.destinationZones) {
+                float count = pti.dataCountMatrix.get(fromZoneId, toZoneId);
+                if (count == 0) {
+                    pti.adaptionTimeMatrix.set(fromZoneId, toZoneId, Float.POSITIVE_INFINITY);
+                    pti.frequencyMatrix.set(fromZoneId, toZoneId, 0);
+                    pti.distanceMatrix.set(fromZoneId, toZoneId, Float.POSITIVE_INFINITY);
+                    pti.travelTimeMatrix.set(fromZoneId, toZoneId, Float.POSITIVE_INFINITY);
+                    pti.accessTimeMatrix.set(fromZoneId, toZoneId, Float.POSITIVE_INFINITY);
+                    pti.egressTimeMatrix.set(fromZoneId, toZoneId, Float.POSITIVE_INFINITY);
+                    pti.transferCountMatrix.set(fromZoneId, toZoneId, Float.POSITIVE_INFINITY);
+                    pti.trainDistanceShareMatrix.set(fromZoneId, toZoneId, Float.POSITIVE_INFINITY);
+                    pti.trainTravelTimeShareMatrix.set(fromZoneId, toZoneId, Float.POSITIVE_INFINITY);
+                } else {
+                    float avgFactor = 1.0f / count;
+                    float adaptionTime = pti.adaptionTimeMatrix.multiply(fromZoneId, toZoneId, avgFactor);
+                    pti.travelTimeMatrix.multiply(fromZoneId, toZoneId, avgFactor);
+                    pti.accessTimeMatrix.multiply(fromZoneId, toZoneId, avgFactor);
+                    pti.egressTimeMatrix.multiply(fromZoneId, toZoneId, avgFactor);
+                    pti.trainDistanceShareMatrix.multiply(fromZoneId, toZoneId, avgFactor);
+                    pti.trainTravelTimeShareMatrix.multiply(fromZoneId, toZoneId, avgFactor);
+                    pti.transferCountMatrix.multiply(fromZoneId, toZoneId, avgFactor);
+                    float frequency = (float) ((this.maxDepartureTime - this.minDepartureTime) / adaptionTime / 4.0);
+                    pti.frequencyMatrix.set(fromZoneId, toZoneId, frequency);
+                }
             }
         }
 
@@ -337,6 +367,45 @@ public class PTSkimMatrices {
             this.trainTravelTimeShareMatrix = new FloatMatrix<>(zones, 0);
             this.trainDistanceShareMatrix = new FloatMatrix<>(zones, 0);
         }
+
+        /**
+         * Creates the matrices memory-mapped from files in the given directory, see {@link FloatMatrix#FloatMatrix(Set, float, File, int)}. The files can be read again with
+         * {@link FloatMatrixIO#readAsBinary(String, FloatMatrixIO.IdConverter)}.
+         */
+        PtIndicators(Set<T> zones, File directory, int rowsPerTile) {
+            directory.mkdirs();
+            this.adaptionTimeMatrix = new FloatMatrix<>(zones, 0, new File(directory, "pt_adaptiontimes.bin"), rowsPerTile);
+            this.frequencyMatrix = new FloatMatrix<>(zones, 0, new File(directory, "pt_frequencies.bin"), rowsPerTile);
+
+            this.distanceMatrix = new FloatMatrix<>(zones, 0, new File(directory, "pt_distances.bin"), rowsPerTile);
+            this.travelTimeMatrix = new FloatMatrix<>(zones, 0, new File(directory, "pt_traveltimes.bin"), rowsPerTile);
+            this.accessTimeMatrix = new FloatMatrix<>(zones, 0, new File(directory, "pt_accesstimes.bin"), rowsPerTile);
+            this.egressTimeMatrix = new FloatMatrix<>(zones, 0, new File(directory, "pt_egresstimes.bin"), rowsPerTile);
+            this.transferCountMatrix = new FloatMatrix<>(zones, 0, new File(directory, "pt_transfercounts.bin"), rowsPerTile);
+            this.dataCountMatrix = new FloatMatrix<>(zones, 0, new File(directory, "pt_datacounts.bin"), rowsPerTile);
+            this.trainTravelTimeShareMatrix = new FloatMatrix<>(zones, 0, new File(directory, "pt_trainshare_bytime.bin"), rowsPerTile);
+            this.trainDistanceShareMatrix = new FloatMatrix<>(zones, 0, new File(directory, "pt_trainshare_bydistance.bin"), rowsPerTile);
+        }
+
+        private FloatMatrix<?>[] getMatrices() {
+            return new FloatMatrix<?>[] {this.adaptionTimeMatrix, this.frequencyMatrix, this.distanceMatrix, this.travelTimeMatrix, this.accessTimeMatrix, this.egressTimeMatrix,
+                    this.transferCountMatrix, this.dataCountMatrix, this.trainTravelTimeShareMatrix, this.trainDistanceShareMatrix};
+        }
+
+        void flushTile(int tile) {
+            for (FloatMatrix<?> matrix : getMatrices()) {
+                matrix.flushTile(tile);
+            }
+        }
+
+        /**
+         * Closes the files of memory-mapped matrices, does nothing if the matrices are kept on the heap.
+         */
+        public void close() {
+            for (FloatMatrix<?> matrix : getMatrices()) {
+                matrix.close();
+            }
+        }
     }
 
 }
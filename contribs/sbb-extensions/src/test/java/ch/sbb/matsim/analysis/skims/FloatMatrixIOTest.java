@@ -6,17 +6,23 @@ package ch.sbb.matsim.analysis.skims;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * @author mrieser / SBB
  */
 public class FloatMatrixIOTest {
 
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
     @Test
     public void testIO() throws IOException {
         Set<String> zoneIds = new HashSet<>();
@@ -55,4 +61,40 @@ public class FloatMatrixIOTest {
         Assert.assertEquals(27.0f, matrix2.get("tres", "dos"), epsilon);
         Assert.assertEquals(64.0f, matrix2.get("tres", "tres"), epsilon);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBinaryIO() throws IOException {
+        Set<String> zoneIds = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            zoneIds.add("zone" + i);
+        }
+        // 3 rows per tile results in 4 tiles, the last one only partially filled
+        File file = this.tmpFolder.newFile("matrix.bin");
+        FloatMatrix<String> matrix = new FloatMatrix<>(zoneIds, 1.0f, file, 3);
+        Assert.assertEquals(4, matrix.getTileCount());
+        for (String fromId : zoneIds) {
+            for (String toId : zoneIds) {
+                matrix.add(fromId, toId, fromId.hashCode() % 100 + toId.hashCode() % 7);
+            }
+        }
+        matrix.multiply(0.5f);
+        matrix.close();
+
+        FloatMatrix<String> matrix2 = FloatMatrixIO.readAsBinary(file.getAbsolutePath(), id -> id);
+        for (String fromId : zoneIds) {
+            for (String toId : zoneIds) {
+                Assert.assertEquals(0.5f * (1.0f + fromId.hashCode() % 100 + toId.hashCode() % 7), matrix2.get(fromId, toId), 1e-6f);
+            }
+        }
+        matrix2.close();
+
+        FloatMatrix<String> heapMatrix = new FloatMatrix<>(zoneIds, 0.0f);
+        heapMatrix.set("zone3", "zone7", 42.0f);
+        File file2 = this.tmpFolder.newFile("heapMatrix.bin");
+        FloatMatrixIO.writeAsBinary(heapMatrix, file2.getAbsolutePath());
+        FloatMatrix<String> matrix3 = FloatMatrixIO.readAsBinary(file2.getAbsolutePath(), id -> id);
+        Assert.assertEquals(42.0f, matrix3.get("zone3", "zone7"), 0.0f);
+        Assert.assertEquals(0.0f, matrix3.get("zone7", "zone3"), 0.0f);
+        matrix3.close();
+    }
+}
@@ -231,6 +231,23 @@ public class SwissRailRaptor implements TransitRouter {
         return this.calcLeastCostTree(accessStops, departureTime, parameters, person);
     }
 
+    /**
+     * Calculates the profile of all reachable stops for all departures from the given stops within the time window,
+     * see {@link SwissRailRaptorCore#calcProfile(double, double, Collection, int)}. This is much faster than calculating a
+     * tree for every departure time in the window.
+     */
+    public Map<Id<TransitStopFacility>, List<SwissRailRaptorCore.ProfileEntry>> calcProfile(Collection<TransitStopFacility> fromStops, double earliestDepartureTime, double latestDepartureTime, int maxTransfers) {
+        if (this.data.config.getOptimization() != RaptorStaticConfig.RaptorOptimization.OneToAllRouting && !this.treeWarningShown) {
+            log.warn("SwissRailRaptorData was not initialized with full support for tree calculations and may result in unexpected results. Use `RaptorStaticConfig.setOptimization(RaptorOptimization.OneToAllRouting)` to fix this issue.");
+            this.treeWarningShown = true;
+        }
+        List<InitialStop> accessStops = new ArrayList<>();
+        for (TransitStopFacility stop : fromStops) {
+            accessStops.add(new InitialStop(stop, 0, 0, 0, null));
+        }
+        return this.raptor.calcProfile(earliestDepartureTime, latestDepartureTime, accessStops, maxTransfers);
+    }
+
     private Map<Id<TransitStopFacility>, SwissRailRaptorCore.TravelInfo> calcLeastCostTree(Collection<InitialStop> accessStops, double departureTime, RaptorParameters parameters, Person person) {
         return this.raptor.calcLeastCostTree(departureTime, accessStops, parameters, person);
     }
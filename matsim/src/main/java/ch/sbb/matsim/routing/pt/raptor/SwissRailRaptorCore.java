@@ -57,7 +57,17 @@ public class SwissRailRaptorCore {
     private final RaptorTransferCostCalculator transferCostCalculator;
     private final RouteSegmentIteratorImpl routeSegmentIterator;
 
+    // state of the profile search, allocated on first use and re-used for all departures of a profile query
+    private int[][] earliestBoardingTimePerRouteStop;
+    private int[][] earliestArrivalTimePerRouteStop;
+    private int[][] earliestArrivalTimePerStop;
+    private BitSet markedRouteStops;
+    private BitSet nextMarkedRouteStops;
+    private BitSet arrivedRouteStops;
+    private BitSet[] improvedStopsPerRound;
+
     private final static int TIME_UNDEFINED = Integer.MIN_VALUE;
+    private final static int TIME_UNREACHED = Integer.MAX_VALUE;
 
     SwissRailRaptorCore(SwissRailRaptorData data, RaptorInVehicleCostCalculator inVehicleCostCalculator, RaptorTransferCostCalculator transferCostCalculator) {
         this.data = data;
@@ -534,6 +544,219 @@ public class SwissRailRaptorCore {
         return result;
     }
 
+    /**
+     * Calculates the profile of all stops reachable from the start stops for all departures within the given time
+     * window, using rRAPTOR: the departures are handled from the latest to the earliest one, and the arrival times
+     * found for later departures are kept, so each departure only has to handle the stops it reaches earlier than
+     * all later departures.
+     *
+     * In contrast to the other queries, the profile is based on time and number of transfers only, costs are not
+     * taken into account.
+     *
+     * @return for each reached stop the Pareto set of departure time at the origin (later is better), arrival time at
+     * the stop (earlier is better) and number of transfers (fewer is better), ordered by descending departure time.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<Id<TransitStopFacility>, List<ProfileEntry>> calcProfile(double earliestDepTime, double latestDepTime, Collection<InitialStop> startStops, int maxTransfers) {
+        int maxRounds = maxTransfers + 1;
+        initProfileState(maxRounds);
+
+        // all departure times at the origin that make it possible to board a departure at one of the start stops
+        List<Integer> originDepartureTimes = new ArrayList<>();
+        for (InitialStop stop : startStops) {
+            int[] routeStopIndices = this.data.routeStopsPerStopFacility.get(stop.stop);
+            if (routeStopIndices == null) {
+                continue;
+            }
+            for (int routeStopIndex : routeStopIndices) {
+                RRouteStop routeStop = this.data.routeStops[routeStopIndex];
+                RRoute route = this.data.routes[routeStop.transitRouteIndex];
+                for (int depIndex = route.indexFirstDeparture; depIndex < route.indexFirstDeparture + route.countDepartures; depIndex++) {
+                    int originDepTime = (int) (this.data.departures[depIndex] + routeStop.departureOffset - stop.accessTime);
+                    if (originDepTime >= earliestDepTime && originDepTime <= latestDepTime) {
+                        originDepartureTimes.add(originDepTime);
+                    }
+                }
+            }
+        }
+        originDepartureTimes.sort((t1, t2) -> Integer.compare(t2, t1));
+
+        List<ProfileEntry>[] profiles = new List[this.data.countStops];
+        int lastDepTime = TIME_UNREACHED;
+        for (int depTime : originDepartureTimes) {
+            if (depTime == lastDepTime) {
+                continue;
+            }
+            lastDepTime = depTime;
+
+            this.markedRouteStops.clear();
+            for (InitialStop stop : startStops) {
+                int[] routeStopIndices = this.data.routeStopsPerStopFacility.get(stop.stop);
+                if (routeStopIndices == null) {
+                    continue;
+                }
+                int timeAtStop = (int) (depTime + stop.accessTime);
+                for (int routeStopIndex : routeStopIndices) {
+                    if (improveProfileBoardingTime(0, routeStopIndex, timeAtStop, maxRounds)) {
+                        this.markedRouteStops.set(routeStopIndex);
+                    }
+                    // make sure we can transfer even at the start stop
+                    for (int transferIndex = this.data.routeStops[routeStopIndex].indexFirstTransfer, end = transferIndex + this.data.routeStops[routeStopIndex].countTransfers; transferIndex < end; transferIndex++) {
+                        RTransfer transfer = this.data.transfers[transferIndex];
+                        if (improveProfileBoardingTime(0, transfer.toRouteStop, timeAtStop + transfer.transferTime, maxRounds)) {
+                            this.markedRouteStops.set(transfer.toRouteStop);
+                        }
+                    }
+                }
+            }
+
+            for (int round = 1; round <= maxRounds && !this.markedRouteStops.isEmpty(); round++) {
+                exploreRoutesForProfile(round, maxRounds);
+                handleTransfersForProfile(round, maxRounds);
+                BitSet tmp = this.markedRouteStops;
+                this.markedRouteStops = this.nextMarkedRouteStops;
+                this.nextMarkedRouteStops = tmp;
+            }
+            addProfileEntries(depTime, maxRounds, profiles);
+        }
+
+        Map<Id<TransitStopFacility>, List<ProfileEntry>> result = new HashMap<>();
+        for (Map.Entry<TransitStopFacility, Integer> e : this.data.stopFacilityIndices.entrySet()) {
+            List<ProfileEntry> profile = profiles[e.getValue()];
+            if (profile != null) {
+                result.put(e.getKey().getId(), profile);
+            }
+        }
+        return result;
+    }
+
+    private void initProfileState(int maxRounds) {
+        if (this.earliestBoardingTimePerRouteStop == null || this.earliestBoardingTimePerRouteStop.length < maxRounds + 1) {
+            this.earliestBoardingTimePerRouteStop = new int[maxRounds + 1][this.data.countRouteStops];
+            this.earliestArrivalTimePerRouteStop = new int[maxRounds + 1][this.data.countRouteStops];
+            this.earliestArrivalTimePerStop = new int[maxRounds + 1][this.data.countStops];
+            this.markedRouteStops = new BitSet(this.data.countRouteStops);
+            this.nextMarkedRouteStops = new BitSet(this.data.countRouteStops);
+            this.arrivedRouteStops = new BitSet(this.data.countRouteStops);
+            this.improvedStopsPerRound = new BitSet[maxRounds + 1];
+            for (int round = 0; round <= maxRounds; round++) {
+                this.improvedStopsPerRound[round] = new BitSet(this.data.countStops);
+            }
+        }
+        for (int round = 0; round <= maxRounds; round++) {
+            Arrays.fill(this.earliestBoardingTimePerRouteStop[round], TIME_UNREACHED);
+            Arrays.fill(this.earliestArrivalTimePerRouteStop[round], TIME_UNREACHED);
+            Arrays.fill(this.earliestArrivalTimePerStop[round], TIME_UNREACHED);
+        }
+    }
+
+    /*
+     * The arrays per round always contain the earliest time using at most that many trips. An improvement in one round
+     * is thus also applied to all later rounds, this replaces copying the labels from round to round.
+     */
+
+    private boolean improveProfileBoardingTime(int round, int routeStopIndex, int time, int maxRounds) {
+        if (time >= this.earliestBoardingTimePerRouteStop[round][routeStopIndex]) {
+            return false;
+        }
+        for (int r = round; r <= maxRounds && time < this.earliestBoardingTimePerRouteStop[r][routeStopIndex]; r++) {
+            this.earliestBoardingTimePerRouteStop[r][routeStopIndex] = time;
+        }
+        return true;
+    }
+
+    private boolean improveProfileArrivalTime(int[][] earliestArrivalTimes, int round, int index, int time, int maxRounds) {
+        if (time >= earliestArrivalTimes[round][index]) {
+            return false;
+        }
+        for (int r = round; r <= maxRounds && time < earliestArrivalTimes[r][index]; r++) {
+            earliestArrivalTimes[r][index] = time;
+        }
+        return true;
+    }
+
+    private void improveProfileStopArrivalTime(int stopIndex, int round, int arrivalTime, int maxRounds) {
+        if (improveProfileArrivalTime(this.earliestArrivalTimePerStop, round, stopIndex, arrivalTime, maxRounds)) {
+            this.improvedStopsPerRound[round].set(stopIndex);
+        }
+    }
+
+    /**
+     * Adds the arrivals improved by the current departure to the profiles. This can only be done once the departure
+     * is completely handled, as an arrival may be improved several times within the same round.
+     */
+    private void addProfileEntries(int depTime, int maxRounds, List<ProfileEntry>[] profiles) {
+        for (int round = 1; round <= maxRounds; round++) {
+            BitSet improvedStops = this.improvedStopsPerRound[round];
+            int[] arrivalTimes = this.earliestArrivalTimePerStop[round];
+            int[] previousArrivalTimes = this.earliestArrivalTimePerStop[round - 1];
+            for (int stopIndex = improvedStops.nextSetBit(0); stopIndex >= 0; stopIndex = improvedStops.nextSetBit(stopIndex + 1)) {
+                int arrivalTime = arrivalTimes[stopIndex];
+                if (arrivalTime < previousArrivalTimes[stopIndex]) {
+                    List<ProfileEntry> profile = profiles[stopIndex];
+                    if (profile == null) {
+                        profile = new ArrayList<>(4);
+                        profiles[stopIndex] = profile;
+                    }
+                    profile.add(new ProfileEntry(depTime, arrivalTime, round - 1));
+                }
+            }
+            improvedStops.clear();
+        }
+    }
+
+    private void exploreRoutesForProfile(int round, int maxRounds) {
+        this.arrivedRouteStops.clear();
+        int[] boardingTimes = this.earliestBoardingTimePerRouteStop[round - 1];
+        int routeIndex = -1;
+        for (int firstRouteStopIndex = this.markedRouteStops.nextSetBit(0); firstRouteStopIndex >= 0; firstRouteStopIndex = this.markedRouteStops.nextSetBit(firstRouteStopIndex + 1)) {
+            RRouteStop firstRouteStop = this.data.routeStops[firstRouteStopIndex];
+            if (firstRouteStop.transitRouteIndex == routeIndex) {
+                continue; // we've handled this route already
+            }
+            routeIndex = firstRouteStop.transitRouteIndex;
+            RRoute route = this.data.routes[routeIndex];
+            int lastRouteStopIndex = route.indexFirstRouteStop + route.countRouteStops;
+            int departureIndex = -1;
+            for (int routeStopIndex = firstRouteStopIndex; routeStopIndex < lastRouteStopIndex; routeStopIndex++) {
+                RRouteStop routeStop = this.data.routeStops[routeStopIndex];
+                if (departureIndex >= 0) {
+                    int arrivalTime = this.data.departures[departureIndex] + routeStop.arrivalOffset;
+                    if (improveProfileArrivalTime(this.earliestArrivalTimePerRouteStop, round, routeStopIndex, arrivalTime, maxRounds)) {
+                        this.arrivedRouteStops.set(routeStopIndex);
+                        improveProfileStopArrivalTime(routeStop.stopFacilityIndex, round, arrivalTime, maxRounds);
+                    }
+                }
+                // check if we can catch an earlier departure at this stop
+                int boardingTime = boardingTimes[routeStopIndex];
+                if (boardingTime != TIME_UNREACHED && (departureIndex < 0 || boardingTime <= this.data.departures[departureIndex] + routeStop.departureOffset)) {
+                    int earlierDepartureIndex = findNextDepartureIndex(route, routeStop, boardingTime);
+                    if (earlierDepartureIndex >= 0 && (departureIndex < 0 || earlierDepartureIndex < departureIndex)) {
+                        departureIndex = earlierDepartureIndex;
+                    }
+                }
+            }
+            firstRouteStopIndex = lastRouteStopIndex - 1; // skip the other marked stops of this route
+        }
+    }
+
+    private void handleTransfersForProfile(int round, int maxRounds) {
+        this.nextMarkedRouteStops.clear();
+        int[] arrivalTimes = this.earliestArrivalTimePerRouteStop[round];
+        for (int routeStopIndex = this.arrivedRouteStops.nextSetBit(0); routeStopIndex >= 0; routeStopIndex = this.arrivedRouteStops.nextSetBit(routeStopIndex + 1)) {
+            RRouteStop routeStop = this.data.routeStops[routeStopIndex];
+            int arrivalTime = arrivalTimes[routeStopIndex];
+            for (int transferIndex = routeStop.indexFirstTransfer, end = transferIndex + routeStop.countTransfers; transferIndex < end; transferIndex++) {
+                RTransfer transfer = this.data.transfers[transferIndex];
+                int newArrivalTime = arrivalTime + transfer.transferTime;
+                if (improveProfileBoardingTime(round, transfer.toRouteStop, newArrivalTime, maxRounds)) {
+                    this.nextMarkedRouteStops.set(transfer.toRouteStop);
+                    improveProfileStopArrivalTime(this.data.routeStops[transfer.toRouteStop].stopFacilityIndex, round, newArrivalTime, maxRounds);
+                }
+            }
+        }
+    }
+
     private TravelInfo getTravelInfo(PathElement destination, RaptorParameters parameters) {
         PathElement firstStage = destination;
         PathElement secondStage = null;
@@ -967,6 +1190,27 @@ public class SwissRailRaptorCore {
         }
     }
 
+    /**
+     * One element of the profile of a stop: departing at the origin at {@link #departureTime}, the stop can be reached
+     * at {@link #arrivalTime} with {@link #transferCount} transfers.
+     */
+    public static final class ProfileEntry {
+        public final int departureTime;
+        public final int arrivalTime;
+        public final int transferCount;
+
+        ProfileEntry(int departureTime, int arrivalTime, int transferCount) {
+            this.departureTime = departureTime;
+            this.arrivalTime = arrivalTime;
+            this.transferCount = transferCount;
+        }
+
+        @Override
+        public String toString() {
+            return "[ProfileEntry dep=" + this.departureTime + " arr=" + this.arrivalTime + " transfers=" + this.transferCount + "]";
+        }
+    }
+
     private static class RouteSegmentIteratorImpl implements RouteSegmentIterator {
 
         SwissRailRaptorData data;
@@ -27,10 +27,12 @@ import org.matsim.vehicles.Vehicles;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -58,6 +60,7 @@ public class SwissRailRaptorData {
     final QuadTree<TransitStopFacility> stopsQT;
     final Map<String, Map<String, QuadTree<TransitStopFacility>>> stopFilterAttribute2Value2StopsQT;
     final OccupancyData occupancyData;
+    private long minimalTransferTimesHash;
 
     private SwissRailRaptorData(RaptorStaticConfig config, int countStops,
                                 RRoute[] routes, int[] departures, Vehicle[] departureVehicles, Id<Departure>[] departureIds, RRouteStop[] routeStops,
@@ -84,6 +87,207 @@ public class SwissRailRaptorData {
         log.info("Preparing data for SwissRailRaptor...");
         long startMillis = System.currentTimeMillis();
 
+        RouteData rd = prepareRoutes(schedule, transitVehicles, staticConfig, network);
+
+        // only put used transit stops into the quad tree
+        Set<TransitStopFacility> stops = rd.routeStopsPerStopFacility.keySet();
+        QuadTree<TransitStopFacility> stopsQT = TransitScheduleUtils.createQuadTreeOfTransitStopFacilities(stops);
+
+        Map<Integer, RTransfer[]> allTransfers = calculateRouteStopTransfers(schedule, stopsQT, rd.routeStopsPerStopFacility, rd.routeStops, staticConfig);
+        RTransfer[] transfers = assignTransfers(allTransfers, rd.routeStops);
+
+        SwissRailRaptorData data = new SwissRailRaptorData(staticConfig, stops.size(), rd.routes, rd.departures, rd.departureVehicles, rd.departureIds, rd.routeStops, transfers, rd.stopFacilityIndices, rd.routeStopsPerStopFacility, stopsQT, occupancyData);
+        data.minimalTransferTimesHash = calcMinimalTransferTimesHash(schedule.getMinimalTransferTimes());
+
+        long endMillis = System.currentTimeMillis();
+        log.info("SwissRailRaptor data preparation done. Took " + (endMillis - startMillis) / 1000 + " seconds.");
+        logStatistics(data);
+        return data;
+    }
+
+    /**
+     * Creates the data for a modified version of the transit schedule this data was created for, reusing as much as possible.
+     * <p>
+     * Routes and departures are always rebuilt, as this is cheap. The calculation of the transfers between route stops, which
+     * dominates the time required by {@link #create(TransitSchedule, Vehicles, RaptorStaticConfig, Network, OccupancyData)}, is only
+     * done for transit routes that were added, removed or modified since. A transit route is considered unmodified if the same
+     * object is still part of the same transit line, with the same stops, offsets and first and last departure. The transfers
+     * between unmodified routes are taken over from this data, only the transfers from and to route stops of modified routes are
+     * searched again in the spatial index of the stop facilities.
+     * <p>
+     * If the minimal transfer times of the schedule have changed, all transfers are calculated from scratch.
+     */
+    public SwissRailRaptorData update(TransitSchedule schedule, @Nullable Vehicles transitVehicles, Network network) {
+        if (calcMinimalTransferTimesHash(schedule.getMinimalTransferTimes()) != this.minimalTransferTimesHash) {
+            log.info("Minimal transfer times have changed, SwissRailRaptor data must be prepared from scratch.");
+            return create(schedule, transitVehicles, this.config, network, this.occupancyData);
+        }
+        log.info("Updating data for SwissRailRaptor...");
+        long startMillis = System.currentTimeMillis();
+
+        RouteData rd = prepareRoutes(schedule, transitVehicles, this.config, network);
+        RRouteStop[] routeStops = rd.routeStops;
+
+        Set<TransitStopFacility> stops = rd.routeStopsPerStopFacility.keySet();
+        // stop facilities which are still at their position in the spatial index
+        Map<TransitStopFacility, Boolean> unmovedStops = new HashMap<>();
+        boolean reuseStopsQT = stops.equals(this.routeStopsPerStopFacility.keySet());
+        if (reuseStopsQT) {
+            for (TransitStopFacility stop : stops) {
+                if (!unmovedStops.computeIfAbsent(stop, this::isAtIndexedPosition)) {
+                    reuseStopsQT = false;
+                    break;
+                }
+            }
+        }
+        QuadTree<TransitStopFacility> stopsQT = reuseStopsQT
+                ? this.stopsQT
+                : TransitScheduleUtils.createQuadTreeOfTransitStopFacilities(stops);
+
+        // find the unmodified routes and map their route stops to the new indices
+        Map<TransitRoute, Integer> previousRouteIndices = new HashMap<>((int) (this.routes.length * 1.5));
+        for (int routeIndex = 0; routeIndex < this.routes.length; routeIndex++) {
+            RRoute route = this.routes[routeIndex];
+            if (route.countRouteStops > 0) {
+                previousRouteIndices.put(this.routeStops[route.indexFirstRouteStop].route, routeIndex);
+            }
+        }
+        int[] previousToNewRouteStop = new int[this.countRouteStops];
+        Arrays.fill(previousToNewRouteStop, -1);
+        BitSet modifiedRouteStops = new BitSet(routeStops.length);
+        int countModifiedRoutes = 0;
+        for (int routeIndex = 0; routeIndex < rd.routes.length; routeIndex++) {
+            RRoute route = rd.routes[routeIndex];
+            if (route.countRouteStops == 0) {
+                continue;
+            }
+            Integer previousRouteIndex = previousRouteIndices.get(routeStops[route.indexFirstRouteStop].route);
+            if (previousRouteIndex != null && isUnmodifiedRoute(this.routes[previousRouteIndex], route, routeStops, rd.departures, unmovedStops)) {
+                int indexFirstPreviousRouteStop = this.routes[previousRouteIndex].indexFirstRouteStop;
+                for (int i = 0; i < route.countRouteStops; i++) {
+                    previousToNewRouteStop[indexFirstPreviousRouteStop + i] = route.indexFirstRouteStop + i;
+                }
+            } else {
+                modifiedRouteStops.set(route.indexFirstRouteStop, route.indexFirstRouteStop + route.countRouteStops);
+                countModifiedRoutes++;
+            }
+        }
+
+        Map<Integer, List<RTransfer>> newTransfers = new HashMap<>();
+
+        // take over the transfers between unmodified routes
+        for (int previousIndex = 0; previousIndex < this.countRouteStops; previousIndex++) {
+            int fromIndex = previousToNewRouteStop[previousIndex];
+            if (fromIndex < 0) {
+                continue;
+            }
+            RRouteStop previousRouteStop = this.routeStops[previousIndex];
+            for (int t = previousRouteStop.indexFirstTransfer, n = t + previousRouteStop.countTransfers; t < n; t++) {
+                RTransfer transfer = this.transfers[t];
+                int toIndex = previousToNewRouteStop[transfer.toRouteStop];
+                if (toIndex >= 0) {
+                    newTransfers.computeIfAbsent(fromIndex, k -> new ArrayList<>(5)).add(new RTransfer(fromIndex, toIndex, transfer.transferTime, transfer.transferDistance));
+                }
+            }
+        }
+
+        // search the transfers from and to the route stops of modified routes
+        Map<TransitStopFacility, List<TransitStopFacility>> mttFromStops = new HashMap<>();
+        Map<TransitStopFacility, List<TransitStopFacility>> mttToStops = new HashMap<>();
+        MinimalTransferTimes mtt = schedule.getMinimalTransferTimes();
+        MinimalTransferTimes.MinimalTransferTimesIterator iter = mtt.iterator();
+        while (iter.hasNext()) {
+            iter.next();
+            TransitStopFacility fromStop = schedule.getFacilities().get(iter.getFromStopId());
+            TransitStopFacility toStop = schedule.getFacilities().get(iter.getToStopId());
+            mttToStops.computeIfAbsent(fromStop, stop -> new ArrayList<>(5)).add(toStop);
+            mttFromStops.computeIfAbsent(toStop, stop -> new ArrayList<>(5)).add(fromStop);
+        }
+        double maxBeelineWalkConnectionDistance = this.config.getBeelineWalkConnectionDistance();
+        Set<TransitStopFacility> modifiedStops = new HashSet<>();
+        for (int index = modifiedRouteStops.nextSetBit(0); index >= 0; index = modifiedRouteStops.nextSetBit(index + 1)) {
+            modifiedStops.add(routeStops[index].routeStop.getStopFacility());
+        }
+        for (TransitStopFacility stop : modifiedStops) {
+            int[] stopRouteStopIndices = rd.routeStopsPerStopFacility.get(stop);
+            Collection<TransitStopFacility> nearbyStops = stopsQT.getDisk(stop.getCoord().getX(), stop.getCoord().getY(), maxBeelineWalkConnectionDistance);
+
+            // transfers from the modified route stops at this stop to any route stop
+            List<TransitStopFacility> toStops = new ArrayList<>(nearbyStops);
+            for (TransitStopFacility toStop : mttToStops.getOrDefault(stop, Collections.emptyList())) {
+                if (!toStops.contains(toStop)) {
+                    toStops.add(toStop);
+                }
+            }
+            for (TransitStopFacility toStop : toStops) {
+                int[] toRouteStopIndices = rd.routeStopsPerStopFacility.get(toStop);
+                if (toRouteStopIndices == null) {
+                    continue;
+                }
+                double transferTime = calcTransferTime(stop, toStop, mtt, this.config);
+                for (int fromIndex : stopRouteStopIndices) {
+                    if (modifiedRouteStops.get(fromIndex)) {
+                        addTransfers(fromIndex, toRouteStopIndices, null, stop, toStop, transferTime, routeStops, this.config, newTransfers);
+                    }
+                }
+            }
+
+            // transfers from unmodified route stops to the modified route stops at this stop
+            List<TransitStopFacility> fromStops = new ArrayList<>(nearbyStops);
+            for (TransitStopFacility fromStop : mttFromStops.getOrDefault(stop, Collections.emptyList())) {
+                if (!fromStops.contains(fromStop)) {
+                    fromStops.add(fromStop);
+                }
+            }
+            for (TransitStopFacility fromStop : fromStops) {
+                int[] fromRouteStopIndices = rd.routeStopsPerStopFacility.get(fromStop);
+                if (fromRouteStopIndices == null) {
+                    continue;
+                }
+                double transferTime = calcTransferTime(fromStop, stop, mtt, this.config);
+                for (int fromIndex : fromRouteStopIndices) {
+                    if (!modifiedRouteStops.get(fromIndex)) {
+                        addTransfers(fromIndex, stopRouteStopIndices, modifiedRouteStops, fromStop, stop, transferTime, routeStops, this.config, newTransfers);
+                    }
+                }
+            }
+        }
+
+        Map<Integer, RTransfer[]> allTransfers = new HashMap<>((int) (newTransfers.size() * 1.5));
+        for (Map.Entry<Integer, List<RTransfer>> e : newTransfers.entrySet()) {
+            allTransfers.put(e.getKey(), e.getValue().toArray(new RTransfer[0]));
+        }
+        RTransfer[] transfers = assignTransfers(allTransfers, routeStops);
+
+        SwissRailRaptorData data = new SwissRailRaptorData(this.config, stops.size(), rd.routes, rd.departures, rd.departureVehicles, rd.departureIds, routeStops, transfers, rd.stopFacilityIndices, rd.routeStopsPerStopFacility, stopsQT, this.occupancyData);
+        data.minimalTransferTimesHash = this.minimalTransferTimesHash;
+
+        long endMillis = System.currentTimeMillis();
+        log.info("SwissRailRaptor data update done. Took " + (endMillis - startMillis) / 1000 + " seconds.");
+        log.info("SwissRailRaptor statistics:  #modified routes = " + countModifiedRoutes);
+        logStatistics(data);
+        return data;
+    }
+
+    private static void logStatistics(SwissRailRaptorData data) {
+        log.info("SwissRailRaptor statistics:  #routes = " + data.routes.length);
+        log.info("SwissRailRaptor statistics:  #departures = " + data.departures.length);
+        log.info("SwissRailRaptor statistics:  #routeStops = " + data.routeStops.length);
+        log.info("SwissRailRaptor statistics:  #stopFacilities = " + data.countStops);
+        log.info("SwissRailRaptor statistics:  #transfers (between routeStops) = " + data.transfers.length);
+    }
+
+    private static final class RouteData {
+        RRoute[] routes;
+        int[] departures;
+        Vehicle[] departureVehicles;
+        Id<Departure>[] departureIds;
+        RRouteStop[] routeStops;
+        Map<TransitStopFacility, Integer> stopFacilityIndices;
+        Map<TransitStopFacility, int[]> routeStopsPerStopFacility;
+    }
+
+    private static RouteData prepareRoutes(TransitSchedule schedule, @Nullable Vehicles transitVehicles, RaptorStaticConfig staticConfig, Network network) {
         Map<Id<Vehicle>, Vehicle> vehicles = transitVehicles == null ? Collections.emptyMap() : transitVehicles.getVehicles();
         int countRoutes = 0;
         long countRouteStops = 0;
@@ -178,12 +382,18 @@ public class SwissRailRaptorData {
             }
         }
 
-        // only put used transit stops into the quad tree
-        Set<TransitStopFacility> stops = routeStopsPerStopFacility.keySet();
-        QuadTree<TransitStopFacility> stopsQT = TransitScheduleUtils.createQuadTreeOfTransitStopFacilities(stops);
-        int countStopFacilities = stops.size();
+        RouteData rd = new RouteData();
+        rd.routes = routes;
+        rd.departures = departures;
+        rd.departureVehicles = departureVehicles;
+        rd.departureIds = departureIds;
+        rd.routeStops = routeStops;
+        rd.stopFacilityIndices = stopFacilityIndices;
+        rd.routeStopsPerStopFacility = routeStopsPerStopFacility;
+        return rd;
+    }
 
-        Map<Integer, RTransfer[]> allTransfers = calculateRouteStopTransfers(schedule, stopsQT, routeStopsPerStopFacility, routeStops, staticConfig);
+    private static RTransfer[] assignTransfers(Map<Integer, RTransfer[]> allTransfers, RRouteStop[] routeStops) {
         long countTransfers = 0;
         for (RTransfer[] transfers : allTransfers.values()) {
             countTransfers += transfers.length;
@@ -204,26 +414,14 @@ public class SwissRailRaptorData {
                 indexTransfer += transferCount;
             }
         }
-
-        SwissRailRaptorData data = new SwissRailRaptorData(staticConfig, countStopFacilities, routes, departures, departureVehicles, departureIds, routeStops, transfers, stopFacilityIndices, routeStopsPerStopFacility, stopsQT, occupancyData);
-
-        long endMillis = System.currentTimeMillis();
-        log.info("SwissRailRaptor data preparation done. Took " + (endMillis - startMillis) / 1000 + " seconds.");
-        log.info("SwissRailRaptor statistics:  #routes = " + routes.length);
-        log.info("SwissRailRaptor statistics:  #departures = " + departures.length);
-        log.info("SwissRailRaptor statistics:  #routeStops = " + routeStops.length);
-        log.info("SwissRailRaptor statistics:  #stopFacilities = " + countStopFacilities);
-        log.info("SwissRailRaptor statistics:  #transfers (between routeStops) = " + transfers.length);
-        return data;
+        return transfers;
     }
 
     // calculate possible transfers between TransitRouteStops
     private static Map<Integer, RTransfer[]> calculateRouteStopTransfers(TransitSchedule schedule, QuadTree<TransitStopFacility> stopsQT, Map<TransitStopFacility, int[]> routeStopsPerStopFacility, RRouteStop[] routeStops, RaptorStaticConfig config) {
         Map<Integer, RTransfer[]> transfers = new HashMap<>(stopsQT.size() * 5);
         double maxBeelineWalkConnectionDistance = config.getBeelineWalkConnectionDistance();
-        double beelineWalkSpeed = config.getBeelineWalkSpeed();
         double beelineDistanceFactor = config.getBeelineWalkDistanceFactor();
-        double minimalTransferTime = config.getMinimalTransferTime();
 
         Map<TransitStopFacility, List<TransitStopFacility>> stopToStopsTransfers = new HashMap<>();
 
@@ -259,14 +457,7 @@ public class SwissRailRaptorData {
             for (TransitStopFacility toStop : nearbyStops) {
                 int[] toRouteStopIndices = routeStopsPerStopFacility.get(toStop);
                 double beelineDistance = CoordUtils.calcEuclideanDistance(fromCoord, toStop.getCoord());
-                double transferTime = beelineDistance / beelineWalkSpeed;
-                if (transferTime < minimalTransferTime) {
-                    transferTime = minimalTransferTime;
-                }
-
-                transferTime = mtt.get(fromStop.getId(), toStop.getId(), transferTime);
-
-                final double fixedTransferTime = transferTime; // variables must be effective final to be used in lambdas (below)
+                final double fixedTransferTime = calcTransferTime(fromStop, toStop, mtt, config); // variables must be effective final to be used in lambdas (below)
 
                 for (int fromRouteStopIndex : fromRouteStopIndices) {
                     RRouteStop fromRouteStop = routeStops[fromRouteStopIndex];
@@ -294,6 +485,86 @@ public class SwissRailRaptorData {
         return transfers;
     }
 
+    private static double calcTransferTime(TransitStopFacility fromStop, TransitStopFacility toStop, MinimalTransferTimes mtt, RaptorStaticConfig config) {
+        double beelineDistance = CoordUtils.calcEuclideanDistance(fromStop.getCoord(), toStop.getCoord());
+        double transferTime = beelineDistance / config.getBeelineWalkSpeed();
+        if (transferTime < config.getMinimalTransferTime()) {
+            transferTime = config.getMinimalTransferTime();
+        }
+        return mtt.get(fromStop.getId(), toStop.getId(), transferTime);
+    }
+
+    private static void addTransfers(int fromRouteStopIndex, int[] toRouteStopIndices, @Nullable BitSet toRouteStopFilter, TransitStopFacility fromStop, TransitStopFacility toStop,
+                                     double transferTime, RRouteStop[] routeStops, RaptorStaticConfig config, Map<Integer, List<RTransfer>> transfers) {
+        double maxBeelineWalkConnectionDistance = config.getBeelineWalkConnectionDistance();
+        double transferDistance = CoordUtils.calcEuclideanDistance(fromStop.getCoord(), toStop.getCoord()) * config.getBeelineWalkDistanceFactor();
+        RRouteStop fromRouteStop = routeStops[fromRouteStopIndex];
+        for (int toRouteStopIndex : toRouteStopIndices) {
+            if (toRouteStopFilter == null || toRouteStopFilter.get(toRouteStopIndex)) {
+                RRouteStop toRouteStop = routeStops[toRouteStopIndex];
+                if (isUsefulTransfer(fromRouteStop, toRouteStop, maxBeelineWalkConnectionDistance, config.getOptimization())) {
+                    transfers.computeIfAbsent(fromRouteStopIndex, k -> new ArrayList<>(5)).add(new RTransfer(fromRouteStopIndex, toRouteStopIndex, transferTime, transferDistance));
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if the transfers from and to <code>route</code> would be the same as the ones of <code>previousRoute</code> in this data.
+     * Only the properties of a route relevant to {@link #isUsefulTransfer} and the transfer times must be compared.
+     */
+    private boolean isUnmodifiedRoute(RRoute previousRoute, RRoute route, RRouteStop[] routeStops, int[] departures, Map<TransitStopFacility, Boolean> unmovedStops) {
+        if (previousRoute.countRouteStops != route.countRouteStops || (previousRoute.countDepartures == 0) != (route.countDepartures == 0)) {
+            return false;
+        }
+        if (route.countDepartures > 0) {
+            // departures are sorted per route
+            if (this.departures[previousRoute.indexFirstDeparture] != departures[route.indexFirstDeparture]
+                    || this.departures[previousRoute.indexFirstDeparture + previousRoute.countDepartures - 1] != departures[route.indexFirstDeparture + route.countDepartures - 1]) {
+                return false;
+            }
+        }
+        for (int i = 0; i < route.countRouteStops; i++) {
+            RRouteStop previousRouteStop = this.routeStops[previousRoute.indexFirstRouteStop + i];
+            RRouteStop routeStop = routeStops[route.indexFirstRouteStop + i];
+            if (previousRouteStop.routeStop != routeStop.routeStop || previousRouteStop.line != routeStop.line
+                    || previousRouteStop.arrivalOffset != routeStop.arrivalOffset || previousRouteStop.departureOffset != routeStop.departureOffset) {
+                return false;
+            }
+            TransitStopFacility stop = routeStop.routeStop.getStopFacility();
+            // the stop facility of the route stop could have been replaced, or the stop facility could have been moved
+            Integer previousStopFacilityIndex = this.stopFacilityIndices.get(stop);
+            if (previousStopFacilityIndex == null || previousStopFacilityIndex != previousRouteStop.stopFacilityIndex) {
+                return false;
+            }
+            boolean unmoved = unmovedStops.computeIfAbsent(stop, this::isAtIndexedPosition);
+            if (!unmoved) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the stop facility is in the spatial index of this data at its current coordinate.
+     */
+    private boolean isAtIndexedPosition(TransitStopFacility stop) {
+        return this.stopsQT.getDisk(stop.getCoord().getX(), stop.getCoord().getY(), 0).contains(stop);
+    }
+
+    private static long calcMinimalTransferTimesHash(MinimalTransferTimes mtt) {
+        // the iteration order is not defined, so just sum up the hashes of the single entries
+        long hash = 0;
+        MinimalTransferTimes.MinimalTransferTimesIterator iter = mtt.iterator();
+        while (iter.hasNext()) {
+            iter.next();
+            double seconds = iter.getSeconds();
+            long entryHash = 31L * iter.getFromStopId().hashCode() + iter.getToStopId().hashCode();
+            hash += entryHash * 1_000_003L + Double.hashCode(seconds);
+        }
+        return hash;
+    }
+
     private static boolean isUsefulTransfer(RRouteStop fromRouteStop, RRouteStop toRouteStop, double maxBeelineWalkConnectionDistance, RaptorStaticConfig.RaptorOptimization optimization) {
         if (fromRouteStop == toRouteStop) {
             return false;
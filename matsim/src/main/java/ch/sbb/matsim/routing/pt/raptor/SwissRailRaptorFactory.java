@@ -23,6 +23,7 @@ import javax.inject.Singleton;
 public class SwissRailRaptorFactory implements Provider<SwissRailRaptor> {
 
     private SwissRailRaptorData data = null;
+    private SwissRailRaptorData outdatedData = null;
     private final TransitSchedule schedule;
     private final Vehicles transitVehicles;
     private final RaptorStaticConfig raptorConfig;
@@ -54,7 +55,7 @@ public class SwissRailRaptorFactory implements Provider<SwissRailRaptor> {
         this.transferCostCalculator = transferCostCalculator;
 
         if (events != null) {
-            events.addHandler((TransitScheduleChangedEventHandler) event -> this.data = null);
+            events.addHandler((TransitScheduleChangedEventHandler) event -> invalidateData());
         }
     }
 
@@ -64,6 +65,17 @@ public class SwissRailRaptorFactory implements Provider<SwissRailRaptor> {
         return new SwissRailRaptor(data, this.raptorParametersForPerson, this.routeSelector, this.stopFinderProvider.get(), this.inVehicleCostCalculator, this.transferCostCalculator);
     }
 
+    /**
+     * Keeps the outdated data, so it can be updated incrementally for the changed schedule
+     * instead of being prepared from scratch.
+     */
+    synchronized private void invalidateData() {
+        if (this.data != null) {
+            this.outdatedData = this.data;
+        }
+        this.data = null;
+    }
+
     private SwissRailRaptorData getData() {
         if (this.data == null) {
             this.data = prepareData();
@@ -77,7 +89,12 @@ public class SwissRailRaptorFactory implements Provider<SwissRailRaptor> {
             // prevent doing the work twice.
             return this.data;
         }
-        this.data = SwissRailRaptorData.create(this.schedule, this.transitVehicles, this.raptorConfig, this.network, this.occupancyData);
+        if (this.outdatedData == null) {
+            this.data = SwissRailRaptorData.create(this.schedule, this.transitVehicles, this.raptorConfig, this.network, this.occupancyData);
+        } else {
+            this.data = this.outdatedData.update(this.schedule, this.transitVehicles, this.network);
+            this.outdatedData = null;
+        }
         return this.data;
     }
 
@@ -117,4 +117,21 @@ public final class PopulationWriter implements MatsimWriter {
 		writer.putAttributeConverters( attributeConverters );
 		writer.writeV6(stream);
 	}
+
+	/**
+	 * Writes the population in a binary format meant for checkpoints, see
+	 * {@link org.matsim.core.population.io.PopulationWriter#writeBinary(String)}.
+	 *
+	 * @param filename
+	 */
+	public void writeBinary(final String filename) {
+		writeBinary(filename, Runtime.getRuntime().availableProcessors());
+	}
+
+	public void writeBinary(final String filename, final int numberOfThreads) {
+		final org.matsim.core.population.io.PopulationWriter writer =
+				new org.matsim.core.population.io.PopulationWriter( transformation , this.population, this.network);
+		writer.putAttributeConverters( attributeConverters );
+		writer.writeBinary(filename, numberOfThreads);
+	}
 }
@@ -56,6 +56,10 @@ public final class QSimConfigGroup extends ReflectiveConfigGroup {
 	private static final String STUCK_TIME = "stuckTime";
 	private static final String REMOVE_STUCK_VEHICLES = "removeStuckVehicles";
 	private static final String NUMBER_OF_THREADS = "numberOfThreads";
+	private static final String NODE_PARTITIONING = "nodePartitioning";
+	private static final String NETSIM_ENGINE_SCHEDULING = "netsimEngineScheduling";
+	private static final String ACTIVITY_ENDS_QUEUE = "activityEndsQueue";
+	private static final String PARALLEL_DEPARTURES = "parallelDepartures";
 	private static final String TRAFFIC_DYNAMICS = "trafficDynamics";
 	private static final String SIM_STARTTIME_INTERPRETATION = "simStarttimeInterpretation";
 	private static final String USE_PERSON_ID_FOR_MISSING_VEHICLE_ID = "usePersonIdForMissingVehicleId";
@@ -87,6 +91,13 @@ public final class QSimConfigGroup extends ReflectiveConfigGroup {
 	private boolean usePersonIdForMissingVehicleId = true;
 	@Positive
 	private int numberOfThreads = 1;
+	public enum NodePartitioning { roundRobin, bisection, loadBalancedBisection }
+	private NodePartitioning nodePartitioning = NodePartitioning.roundRobin;
+	public enum NetsimEngineScheduling { threadpool, workStealing }
+	private NetsimEngineScheduling netsimEngineScheduling = NetsimEngineScheduling.threadpool;
+	public enum ActivityEndsQueue { priorityQueue, timingWheel }
+	private ActivityEndsQueue activityEndsQueue = ActivityEndsQueue.priorityQueue;
+	private boolean parallelDepartures = false;
 	private TrafficDynamics trafficDynamics = TrafficDynamics.queue ;
 	
 	private StarttimeInterpretation simStarttimeInterpretation = StarttimeInterpretation.maxOfStarttimeAndEarliestActivityEnd;
@@ -243,6 +254,24 @@ public final class QSimConfigGroup extends ReflectiveConfigGroup {
 		map.put(NUMBER_OF_THREADS, "Number of threads used for the QSim.  "
 				+ "Note that this setting is independent from the \"global\" threads setting.  "
 				+ "In contrast to earlier versions, the non-parallel special version is no longer there." ) ;
+		map.put(NODE_PARTITIONING, "How the nodes (and their out-links) are distributed to the threads of the QSim. "
+				+ NodePartitioning.roundRobin + ": nodes are assigned in turn (default). "
+				+ NodePartitioning.bisection + ": the network is split spatially by recursive bisection, such that neighbouring nodes are simulated by the same thread. "
+				+ NodePartitioning.loadBalancedBisection + ": like " + NodePartitioning.bisection + ", but from the second iteration on, the nodes are weighted by the work measured in the previous iteration." ) ;
+		map.put(NETSIM_ENGINE_SCHEDULING, "How the threads of the QSim are scheduled when moving nodes and links. "
+				+ NetsimEngineScheduling.threadpool + ": the work of each thread is submitted to a thread pool twice per time step (default). "
+				+ NetsimEngineScheduling.workStealing + ": the threads live for the whole mobsim and are synchronized by barriers; "
+				+ "a thread that is done with its own nodes or links helps the other threads with theirs." ) ;
+		map.put(ACTIVITY_ENDS_QUEUE, "Data structure used by the activity engine to keep the agents performing an activity. "
+				+ ActivityEndsQueue.priorityQueue + ": a priority queue sorted by activity end time (default). "
+				+ ActivityEndsQueue.timingWheel + ": buckets per second; faster for large populations and when activity ends are rescheduled often. "
+				+ "Agents leave their activities in the same order with both options." ) ;
+		map.put(PARALLEL_DEPARTURES, "If true and " + NUMBER_OF_THREADS + " > 1, the agents ending their activities in the same time step "
+				+ "are processed in parallel, partitioned by the thread that simulates their departure link. This includes the departure "
+				+ "on the network, but not departure handlers that are not thread-safe, e.g. teleportation. The events of each agent are "
+				+ "emitted together, in the order in which the agents end their activities, independent of the threads. "
+				+ "Only the activities of the standard plan-based agents are ended in parallel; other agents, e.g. dynamic agents, "
+				+ "end their activities one after the other afterwards." ) ;
 		map.put(REMOVE_STUCK_VEHICLES, REMOVE_STUCK_VEHICLES_STRING );
 		map.put(STUCK_TIME, STUCK_TIME_STRING );
 
@@ -424,6 +453,46 @@ public final class QSimConfigGroup extends ReflectiveConfigGroup {
 		this.numberOfThreads = numberOfThreads;
 	}
 
+	@StringGetter(NODE_PARTITIONING)
+	public NodePartitioning getNodePartitioning() {
+		return this.nodePartitioning;
+	}
+
+	@StringSetter(NODE_PARTITIONING)
+	public void setNodePartitioning(NodePartitioning nodePartitioning) {
+		this.nodePartitioning = nodePartitioning;
+	}
+
+	@StringGetter(NETSIM_ENGINE_SCHEDULING)
+	public NetsimEngineScheduling getNetsimEngineScheduling() {
+		return this.netsimEngineScheduling;
+	}
+
+	@StringSetter(NETSIM_ENGINE_SCHEDULING)
+	public void setNetsimEngineScheduling(NetsimEngineScheduling netsimEngineScheduling) {
+		this.netsimEngineScheduling = netsimEngineScheduling;
+	}
+
+	@StringGetter(ACTIVITY_ENDS_QUEUE)
+	public ActivityEndsQueue getActivityEndsQueue() {
+		return this.activityEndsQueue;
+	}
+
+	@StringSetter(ACTIVITY_ENDS_QUEUE)
+	public void setActivityEndsQueue(ActivityEndsQueue activityEndsQueue) {
+		this.activityEndsQueue = activityEndsQueue;
+	}
+
+	@StringGetter(PARALLEL_DEPARTURES)
+	public boolean isParallelDepartures() {
+		return this.parallelDepartures;
+	}
+
+	@StringSetter(PARALLEL_DEPARTURES)
+	public void setParallelDepartures(boolean parallelDepartures) {
+		this.parallelDepartures = parallelDepartures;
+	}
+
 	@StringGetter(SIM_STARTTIME_INTERPRETATION)
 	public StarttimeInterpretation getSimStarttimeInterpretation() {
 		return simStarttimeInterpretation;
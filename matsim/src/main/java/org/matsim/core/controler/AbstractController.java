@@ -24,6 +24,7 @@ import org.matsim.analysis.IterationStopWatch;
 import org.matsim.core.config.Config;
 import org.matsim.core.controler.listener.ControlerListener;
 import org.matsim.core.gbl.MatsimRandom;
+import org.matsim.core.utils.io.IOUtils;
 import org.matsim.core.utils.io.UncheckedIOException;
 import org.matsim.utils.MemoryObserver;
 
@@ -71,6 +72,8 @@ import org.matsim.utils.MemoryObserver;
 
     protected final void run(final Config config) {
         MemoryObserver.start(60);
+        final int previousCompressionThreads = IOUtils.getCompressionThreads();
+        IOUtils.setCompressionThreads(config.controler().getCompressionThreads());
         MatsimRuntimeModifications.MyRunnable runnable = new MatsimRuntimeModifications.MyRunnable() {
             @Override
             public void run() throws MatsimRuntimeModifications.UnexpectedShutdownException {
@@ -86,8 +89,12 @@ import org.matsim.utils.MemoryObserver;
                 controlerListenerManagerImpl.fireControlerShutdownEvent(unexpected, thisIteration == null ? -1 : thisIteration);
             }
         };
-        MatsimRuntimeModifications.run(runnable);
-        OutputDirectoryLogging.closeOutputDirLogging();
+        try {
+            MatsimRuntimeModifications.run(runnable);
+            OutputDirectoryLogging.closeOutputDirLogging();
+        } finally {
+            IOUtils.setCompressionThreads(previousCompressionThreads);
+        }
         MemoryObserver.stop();
     }
 
@@ -79,12 +79,14 @@ public final class Controler implements ControlerI, MatsimServices, AllowsConfig
 		changeEvents("change_events.xml"),
 		counts("counts.xml"),
 		population("plans.xml"),
+		populationBinary("plans.bin"),
 		experiencedPlans("experienced_plans.xml"),
 		households("households.xml"),
 		facilities("facilities.xml"),
 		events("events.xml"),
 		eventsPb("events.pb"),
 		eventsJson("events.ndjson"),
+		eventsBinary("events.bin"),
 		transitSchedule("transitSchedule.xml"),
 		transitVehicles("transitVehicles.xml"),
 		vehicles("vehicles.xml"),
@@ -61,9 +61,19 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes the final state of the scenario to the output directory. The files are independent of each other, so they
+ * are written in parallel, using the global number of threads.
+ */
 @Singleton
 final class DumpDataAtEndImpl implements DumpDataAtEnd, ShutdownListener {
 	private static final Logger log = Logger.getLogger( DumpDataAtEndImpl.class );
@@ -119,26 +129,58 @@ final class DumpDataAtEndImpl implements DumpDataAtEnd, ShutdownListener {
 		if ( event.isUnexpected() ) {
 			return ;
 		}
-		dumpPlans();
-		dumpNetwork();
-		dumpConfig();
-		dumpFacilities();
-		dumpNetworkChangeEvents();
-
-		dumpTransitSchedule();
-		dumpTransitVehicles();
-		dumpVehicles();
-		dumpHouseholds();
-		dumpLanes();
-		dumpCounts();
+		// nothing changes the scenario anymore, so the writers only read it
+		List<Runnable> dumps = new ArrayList<>();
+		dumps.add(this::dumpPlans);
+		dumps.add(this::dumpNetwork);
+		dumps.add(this::dumpConfig);
+		dumps.add(this::dumpFacilities);
+		dumps.add(this::dumpNetworkChangeEvents);
+
+		dumps.add(this::dumpTransitSchedule);
+		dumps.add(this::dumpTransitVehicles);
+		dumps.add(this::dumpVehicles);
+		dumps.add(this::dumpHouseholds);
+		dumps.add(this::dumpLanes);
+		dumps.add(this::dumpCounts);
 
 		if (!event.isUnexpected() && this.vspConfig.isWritingOutputEvents() && (this.controlerConfigGroup.getWriteEventsInterval()!=0)) {
-			dumpOutputEvents(event.getIteration());
+			dumps.add(() -> dumpOutputEvents(event.getIteration()));
 		}
-		dumpOutputTrips(event.getIteration());
-        dumpOutputLegs(event.getIteration());
-		dumpExperiencedPlans(event.getIteration()) ;
+		dumps.add(() -> dumpOutputTrips(event.getIteration()));
+		dumps.add(() -> dumpOutputLegs(event.getIteration()));
+		dumps.add(() -> dumpExperiencedPlans(event.getIteration()));
+
+		runInParallel(dumps);
+	}
 
+	private void runInParallel(List<Runnable> dumps) {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, this.config.global().getNumberOfThreads()));
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (Runnable dump : dumps) {
+				futures.add(executor.submit(dump));
+			}
+			// wait for all files before reporting the first failure, so no file is left half-written
+			RuntimeException failure = null;
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException(e);
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		} finally {
+			executor.shutdown();
+		}
 	}
 
 	private void dumpOutputEvents(int iteration) {
@@ -155,12 +197,23 @@ final class DumpDataAtEndImpl implements DumpDataAtEnd, ShutdownListener {
 					case json:
 						file = Controler.DefaultFiles.eventsJson;
 						break;
+					case binary:
+						file = Controler.DefaultFiles.eventsBinary;
+						break;
 					default:
 						continue;
 				}
 
-				File toFile = new File(this.controlerIO.getOutputFilename(file));
-				File fromFile = new File(this.controlerIO.getIterationFilename(iteration, file));
+				File toFile;
+				File fromFile;
+				if (format == ControlerConfigGroup.EventsFileFormat.binary) {
+					// binary events are never compressed
+					toFile = new File(this.controlerIO.getOutputFilename(file, ControlerConfigGroup.CompressionType.none));
+					fromFile = new File(this.controlerIO.getIterationFilename(iteration, file, ControlerConfigGroup.CompressionType.none));
+				} else {
+					toFile = new File(this.controlerIO.getOutputFilename(file));
+					fromFile = new File(this.controlerIO.getIterationFilename(iteration, file));
+				}
 				try {
 					Files.copy(fromFile.toPath(), toFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
 				} catch (IOException e) {
@@ -20,9 +20,18 @@
 
 package org.matsim.core.controler.corelisteners;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.apache.log4j.Logger;
 import org.matsim.analysis.IterationStopWatch;
 import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
 import org.matsim.api.core.v01.population.Population;
 import org.matsim.api.core.v01.population.PopulationWriter;
 import org.matsim.core.config.Config;
@@ -30,7 +39,11 @@ import org.matsim.core.config.groups.ControlerConfigGroup;
 import org.matsim.core.controler.Controler;
 import org.matsim.core.controler.OutputDirectoryHierarchy;
 import org.matsim.core.controler.events.BeforeMobsimEvent;
+import org.matsim.core.controler.events.ShutdownEvent;
 import org.matsim.core.controler.listener.BeforeMobsimListener;
+import org.matsim.core.controler.listener.ShutdownListener;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.utils.objectattributes.attributable.AttributesUtils;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
@@ -42,12 +55,16 @@ import org.matsim.core.utils.geometry.transformations.TransformationFactory;
  * complete plans regularly at the start of an iteration
  * ({@link ControlerConfigGroup#getWritePlansInterval()} as well as in the first
  * iteration, just in case someone might check that the replanning worked
- * correctly in the first iteration.
+ * correctly in the first iteration. Additionally writes checkpoints of the population in a binary format
+ * ({@link ControlerConfigGroup#getWriteCheckpointInterval()}), which allow to resume the run from that iteration.
+ * <p>
+ * The files are written in the background from a copy of the population, so the iteration can go on while the
+ * plans are being written. At most one dump is in progress at any time; the next dump and the shutdown wait for it.
  *
  * @author mrieser
  */
 @Singleton
-final class PlansDumpingImpl implements PlansDumping, BeforeMobsimListener {
+final class PlansDumpingImpl implements PlansDumping, BeforeMobsimListener, ShutdownListener {
 
 	static final private Logger log = Logger.getLogger(PlansDumpingImpl.class);
 
@@ -60,10 +77,20 @@ final class PlansDumpingImpl implements PlansDumping, BeforeMobsimListener {
 
 	private int writeMoreUntilIteration;
 
+	private int writeCheckpointInterval;
+
+	private final ExecutorService writerExecutor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "PlansDumping");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private Future<?> pendingDump = null;
+
 	@Inject
 	PlansDumpingImpl(ControlerConfigGroup config) {
 		this.writePlansInterval = config.getWritePlansInterval();
 		this.writeMoreUntilIteration = config.getWritePlansUntilIteration() ;
+		this.writeCheckpointInterval = config.getWriteCheckpointInterval();
 	}
 
 	@Override
@@ -71,28 +98,118 @@ final class PlansDumpingImpl implements PlansDumping, BeforeMobsimListener {
 		final boolean writingPlansAtAll = writePlansInterval > 0;
 		final boolean regularWritePlans = writingPlansAtAll && (event.getIteration()>0 && event.getIteration() % writePlansInterval== 0);
 		final boolean earlyIteration = event.getIteration() <= writeMoreUntilIteration ;
-		if ( writingPlansAtAll && (regularWritePlans || earlyIteration) ) {
-			stopwatch.beginOperation("dump all plans");
-			log.info("dumping plans...");
-			final String inputCRS = config.plans().getInputCRS();
-			final String internalCRS = config.global().getCoordinateSystem();
-
-			if ( inputCRS == null ) {
-				new PopulationWriter(population, network).write(controlerIO.getIterationFilename(event.getIteration(), Controler.DefaultFiles.population));
+		final boolean writePlans = writingPlansAtAll && (regularWritePlans || earlyIteration);
+		final boolean writeCheckpoint = writeCheckpointInterval > 0 && event.getIteration() % writeCheckpointInterval == 0;
+		if ( !writePlans && !writeCheckpoint ) {
+			return;
+		}
+
+		awaitPendingDump();
+
+		stopwatch.beginOperation("copy plans for dump");
+		// scoring and replanning change the plans while they are being written, so the writers get their own copy
+		final Population snapshot = copyPopulation(population);
+		stopwatch.endOperation("copy plans for dump");
+
+		final int iteration = event.getIteration();
+		pendingDump = writerExecutor.submit(() -> {
+			if ( writePlans ) {
+				dumpPlans(snapshot, iteration);
 			}
-			else {
-				log.info( "re-projecting population from "+internalCRS+" back to "+inputCRS+" for export" );
+			if ( writeCheckpoint ) {
+				writeCheckpoint(snapshot, iteration);
+			}
+		});
+	}
+
+	@Override
+	public void notifyShutdown(final ShutdownEvent event) {
+		try {
+			awaitPendingDump();
+		} catch (RuntimeException e) {
+			if ( !event.isUnexpected() ) {
+				throw e;
+			}
+			log.error("plans dump failed.", e);
+		} finally {
+			writerExecutor.shutdown();
+		}
+	}
 
-				final CoordinateTransformation transformation =
-						TransformationFactory.getCoordinateTransformation(
-								internalCRS,
-								inputCRS );
+	private void awaitPendingDump() {
+		if ( pendingDump == null ) {
+			return;
+		}
+		try {
+			pendingDump.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("plans dump failed", e.getCause());
+		} finally {
+			pendingDump = null;
+		}
+	}
+
+	private void dumpPlans(final Population population, final int iteration) {
+		log.info("dumping plans...");
+		final String inputCRS = config.plans().getInputCRS();
+		final String internalCRS = config.global().getCoordinateSystem();
+
+		if ( inputCRS == null ) {
+			new PopulationWriter(population, network).write(controlerIO.getIterationFilename(iteration, Controler.DefaultFiles.population));
+		}
+		else {
+			log.info( "re-projecting population from "+internalCRS+" back to "+inputCRS+" for export" );
+
+			final CoordinateTransformation transformation =
+					TransformationFactory.getCoordinateTransformation(
+							internalCRS,
+							inputCRS );
+
+			new PopulationWriter(transformation, population, network).write(controlerIO.getIterationFilename(iteration, Controler.DefaultFiles.population));
+		}
+		log.info("finished plans dump.");
+	}
+
+	private void writeCheckpoint(final Population population, final int iteration) {
+		String filename = controlerIO.getIterationFilename(iteration, Controler.DefaultFiles.populationBinary, ControlerConfigGroup.CompressionType.none);
+		log.info("writing checkpoint to " + filename + " ...");
+		// coordinates are kept in the internal coordinate system, as the run is resumed from this file
+		new PopulationWriter(population, network).writeBinary(filename, config.global().getNumberOfThreads());
+		log.info("finished writing checkpoint.");
+	}
 
-				new PopulationWriter(transformation, population, network).write(controlerIO.getIterationFilename(event.getIteration(), Controler.DefaultFiles.population));
+	/**
+	 * Copies the persons with their plans and attributes, which is all the writers need. Routes are cloned, the
+	 * values of the attributes are shared.
+	 */
+	private Population copyPopulation(final Population population) {
+		Population copy = PopulationUtils.createPopulation(config, network);
+		copy.setName(population.getName());
+		AttributesUtils.copyTo(population.getAttributes(), copy.getAttributes());
+		for (Person person : population.getPersons().values()) {
+			Person personCopy = copy.getFactory().createPerson(person.getId());
+			AttributesUtils.copyAttributesFromTo(person, personCopy);
+			for (Plan plan : person.getPlans()) {
+				Plan planCopy = copy.getFactory().createPlan();
+				PopulationUtils.copyFromTo(plan, planCopy);
+				// copyFromTo() drops the z coordinate of the activities; coords are immutable, so share them
+				for (int i = 0; i < plan.getPlanElements().size(); i++) {
+					PlanElement pe = plan.getPlanElements().get(i);
+					if (pe instanceof Activity) {
+						((Activity) planCopy.getPlanElements().get(i)).setCoord(((Activity) pe).getCoord());
+					}
+				}
+				personCopy.addPlan(planCopy);
+				if (plan == person.getSelectedPlan()) {
+					personCopy.setSelectedPlan(planCopy);
+				}
 			}
-			log.info("finished plans dump.");
-			stopwatch.endOperation("dump all plans");
+			copy.addPerson(personCopy);
 		}
+		return copy;
 	}
 
 }
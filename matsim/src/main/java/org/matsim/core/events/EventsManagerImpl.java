@@ -119,6 +119,19 @@ public final class EventsManagerImpl implements EventsManager {
 
 	private long counter = 0;
 	private long nextCounterMsg = 1;
+	private final boolean logEventCount;
+
+	public EventsManagerImpl() {
+		this(true);
+	}
+
+	/**
+	 * @param logEventCount whether the number of processed events should be logged from time to time. Managers that
+	 *            only serve a part of the handlers (e.g. in {@link ParallelEventsManagerImpl}) switch this off.
+	 */
+	/*package*/ EventsManagerImpl(final boolean logEventCount) {
+		this.logEventCount = logEventCount;
+	}
 
 	private HandlerData findHandler(final Class<? extends Event> evklass) {
 		for (HandlerData handler : this.handlerData) {
@@ -132,7 +145,7 @@ public final class EventsManagerImpl implements EventsManager {
 	@Override
 	public void processEvent(final Event event) {
 		this.counter++;
-		if (this.counter == this.nextCounterMsg) {
+		if (this.logEventCount && this.counter == this.nextCounterMsg) {
 			this.nextCounterMsg *= 4;
 			log.info(" event # " + this.counter);
 		}
@@ -236,6 +249,10 @@ public final class EventsManagerImpl implements EventsManager {
 		}
 	}
 
+	/*package*/ boolean hasHandlersFor(final Class<? extends Event> eventClass) {
+		return getHandlersForClass(eventClass).length > 0;
+	}
+
 	private HandlerInfo[] getHandlersForClass(final Class<? extends Event> eventClass) {
 		HandlerInfo[] cache = this.cacheHandlers.get(eventClass);
 		if (cache != null) {
@@ -0,0 +1,561 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.ActivityEndEvent;
+import org.matsim.api.core.v01.events.ActivityStartEvent;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.HasFacilityId;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.PersonArrivalEvent;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.events.PersonEntersVehicleEvent;
+import org.matsim.api.core.v01.events.PersonLeavesVehicleEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.api.experimental.events.TeleportationArrivalEvent;
+import org.matsim.core.api.internal.HasPersonId;
+import org.matsim.core.events.MatsimEventsReader.CustomEventMapper;
+import org.matsim.core.events.algorithms.EventWriterBinary;
+import org.matsim.core.utils.io.UncheckedIOException;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.vehicles.Vehicle;
+import org.xml.sax.Attributes;
+
+/**
+ * Reads events written by {@link EventWriterBinary}. When reading from a file, each chunk is memory-mapped and the
+ * columns are accessed in place, only the strings of the dictionary are decoded (once per file).
+ * <p>
+ * The most frequent events (link, activity, leg and vehicle events) are created directly from the typed columns:
+ * numbers are taken from the double column and the ids of a dictionary string are created only once. All other
+ * events are created by the same code as for xml events, so custom event mappers work the same way.
+ */
+public final class EventsReaderBinary {
+
+	private final static Logger LOG = Logger.getLogger(EventsReaderBinary.class);
+	private final static int HEADER_SIZE = EventWriterBinary.MAGIC.length + 4;
+
+	// Event types created from the typed columns, 0 for all others.
+	private final static byte LINK_LEAVE = 1;
+	private final static byte LINK_ENTER = 2;
+	private final static byte VEHICLE_ENTERS_TRAFFIC = 3;
+	private final static byte VEHICLE_LEAVES_TRAFFIC = 4;
+	private final static byte ACTIVITY_END = 5;
+	private final static byte ACTIVITY_START = 6;
+	private final static byte PERSON_ARRIVAL = 7;
+	private final static byte PERSON_DEPARTURE = 8;
+	private final static byte PERSON_ENTERS_VEHICLE = 9;
+	private final static byte PERSON_LEAVES_VEHICLE = 10;
+	private final static byte TELEPORTATION_ARRIVAL = 11;
+
+	// Attributes of these events, -1 for all others.
+	private final static byte PERSON = 0;
+	private final static byte LINK = 1;
+	private final static byte VEHICLE = 2;
+	private final static byte FACILITY = 3;
+	private final static byte ACT_TYPE = 4;
+	private final static byte LEG_MODE = 5;
+	private final static byte NETWORK_MODE = 6;
+	private final static byte POSITION = 7;
+	private final static byte X = 8;
+	private final static byte Y = 9;
+	private final static byte DISTANCE = 10;
+	private final static byte MODE = 11;
+	private final static int SLOTS = 12;
+
+	// Types of the ids created from the dictionary strings.
+	private final static int PERSON_IDS = 0;
+	private final static int LINK_IDS = 1;
+	private final static int VEHICLE_IDS = 2;
+	private final static int FACILITY_IDS = 3;
+
+	private final EventsManager events;
+	private final EventsReaderXMLv1 delegate;
+	private String[] dictionary = new String[1024];
+	private byte[] eventTypes = new byte[1024];
+	private byte[] slots = new byte[1024];
+	private int dictionarySize = 0;
+	// the ids and interned strings created from the dictionary strings, indexed like the dictionary
+	private final Id<?>[][] ids = new Id<?>[FACILITY_IDS + 1][];
+	private String[] internedStrings = null;
+	private String[] chunkStrings = new String[16];
+
+	// the chunk which is read and the positions of its attribute columns
+	private ByteBuffer chunk;
+	private int keys;
+	private int values;
+	private int kinds;
+	private int numbers;
+	// the attribute of the current event stored in each slot, -1 if the event does not have it
+	private final int[] slotAttributes = new int[SLOTS];
+
+	public EventsReaderBinary(final EventsManager events) {
+		this.events = events;
+		this.delegate = new EventsReaderXMLv1(events);
+		Arrays.fill(this.slotAttributes, -1);
+	}
+
+	public void addCustomEventMapper(String eventType, CustomEventMapper cem) {
+		this.delegate.addCustomEventMapper(eventType, cem);
+	}
+
+	void parse(final String filename) throws UncheckedIOException {
+		LOG.info("starting to parse binary events from file " + filename + " ...");
+		clearDictionary();
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+			long size = channel.size();
+			readHeader(channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE));
+			long position = HEADER_SIZE;
+			ByteBuffer lengthBuffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			while (position < size) {
+				lengthBuffer.clear();
+				readFully(channel, lengthBuffer, position);
+				int length = lengthBuffer.getInt(0);
+				ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position + 4, length);
+				processChunk(chunk.order(ByteOrder.LITTLE_ENDIAN));
+				position += 4 + length;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	void parse(final InputStream stream) throws UncheckedIOException {
+		clearDictionary();
+		try {
+			ReadableByteChannel channel = Channels.newChannel(stream);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			if (!readFully(channel, header)) {
+				throw new EOFException("binary events file is missing its header");
+			}
+			header.flip();
+			readHeader(header);
+			ByteBuffer lengthBuffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			ByteBuffer chunk = ByteBuffer.allocate(0);
+			while (true) {
+				lengthBuffer.clear();
+				if (!readFully(channel, lengthBuffer)) {
+					break;
+				}
+				int length = lengthBuffer.getInt(0);
+				if (chunk.capacity() < length) {
+					chunk = ByteBuffer.allocate(length);
+				}
+				chunk.clear().limit(length);
+				if (!readFully(channel, chunk)) {
+					throw new EOFException("binary events file ends within a chunk");
+				}
+				chunk.flip();
+				processChunk(chunk.order(ByteOrder.LITTLE_ENDIAN));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	void parse(final URL url) throws UncheckedIOException {
+		if ("file".equals(url.getProtocol())) {
+			try {
+				parse(Paths.get(url.toURI()).toString());
+			} catch (URISyntaxException e) {
+				throw new UncheckedIOException(e);
+			}
+		} else {
+			try (InputStream stream = url.openStream()) {
+				parse(stream);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	private static void readHeader(ByteBuffer header) throws IOException {
+		byte[] magic = new byte[EventWriterBinary.MAGIC.length];
+		header.get(magic);
+		if (!Arrays.equals(magic, EventWriterBinary.MAGIC)) {
+			throw new IOException("not a binary events file.");
+		}
+		int version = header.order(ByteOrder.LITTLE_ENDIAN).getInt();
+		if (version != EventWriterBinary.VERSION) {
+			throw new IOException("unsupported version of binary events file: " + version);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("binary events file ends within a chunk");
+			}
+		}
+	}
+
+	/** @return false if the end of the stream was reached before any byte was read. */
+	private static boolean readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				if (buffer.position() == 0) {
+					return false;
+				}
+				throw new EOFException("binary events file ends within a chunk");
+			}
+		}
+		return true;
+	}
+
+	private void clearDictionary() {
+		this.dictionarySize = 0;
+		Arrays.fill(this.ids, null);
+		this.internedStrings = null;
+	}
+
+	private void addToDictionary(String string) {
+		if (this.dictionarySize == this.dictionary.length) {
+			this.dictionary = Arrays.copyOf(this.dictionary, this.dictionary.length * 2);
+			this.eventTypes = Arrays.copyOf(this.eventTypes, this.dictionary.length);
+			this.slots = Arrays.copyOf(this.slots, this.dictionary.length);
+		}
+		this.dictionary[this.dictionarySize] = string;
+		this.eventTypes[this.dictionarySize] = eventType(string);
+		this.slots[this.dictionarySize] = slot(string);
+		this.dictionarySize++;
+	}
+
+	private static byte eventType(String type) {
+		switch (type) {
+			case LinkLeaveEvent.EVENT_TYPE: return LINK_LEAVE;
+			case LinkEnterEvent.EVENT_TYPE: return LINK_ENTER;
+			case VehicleEntersTrafficEvent.EVENT_TYPE: return VEHICLE_ENTERS_TRAFFIC;
+			case VehicleLeavesTrafficEvent.EVENT_TYPE: return VEHICLE_LEAVES_TRAFFIC;
+			case ActivityEndEvent.EVENT_TYPE: return ACTIVITY_END;
+			case ActivityStartEvent.EVENT_TYPE: return ACTIVITY_START;
+			case PersonArrivalEvent.EVENT_TYPE: return PERSON_ARRIVAL;
+			case PersonDepartureEvent.EVENT_TYPE: return PERSON_DEPARTURE;
+			case PersonEntersVehicleEvent.EVENT_TYPE: return PERSON_ENTERS_VEHICLE;
+			case PersonLeavesVehicleEvent.EVENT_TYPE: return PERSON_LEAVES_VEHICLE;
+			case TeleportationArrivalEvent.EVENT_TYPE: return TELEPORTATION_ARRIVAL;
+			default: return 0;
+		}
+	}
+
+	private static byte slot(String key) {
+		switch (key) {
+			case HasPersonId.ATTRIBUTE_PERSON: return PERSON;
+			case LinkLeaveEvent.ATTRIBUTE_LINK: return LINK;
+			case LinkLeaveEvent.ATTRIBUTE_VEHICLE: return VEHICLE;
+			case HasFacilityId.ATTRIBUTE_FACILITY: return FACILITY;
+			case ActivityEndEvent.ATTRIBUTE_ACTTYPE: return ACT_TYPE;
+			case PersonArrivalEvent.ATTRIBUTE_LEGMODE: return LEG_MODE;
+			case VehicleEntersTrafficEvent.ATTRIBUTE_NETWORKMODE: return NETWORK_MODE;
+			case VehicleEntersTrafficEvent.ATTRIBUTE_POSITION: return POSITION;
+			case Event.ATTRIBUTE_X: return X;
+			case Event.ATTRIBUTE_Y: return Y;
+			case TeleportationArrivalEvent.ATTRIBUTE_DISTANCE: return DISTANCE;
+			case TeleportationArrivalEvent.ATTRIBUTE_MODE: return MODE;
+			default: return -1;
+		}
+	}
+
+	private static String readString(ByteBuffer chunk) {
+		int length = chunk.getInt();
+		byte[] bytes = new byte[length];
+		chunk.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private void processChunk(ByteBuffer chunk) {
+		int eventCount = chunk.getInt();
+		int attributeCount = chunk.getInt();
+		chunk.getInt(); // number of numbers, the column is the last one
+		int newStrings = chunk.getInt();
+		for (int i = 0; i < newStrings; i++) {
+			addToDictionary(readString(chunk));
+		}
+		int chunkStringCount = chunk.getInt();
+		if (this.chunkStrings.length < chunkStringCount) {
+			this.chunkStrings = new String[chunkStringCount];
+		}
+		for (int i = 0; i < chunkStringCount; i++) {
+			this.chunkStrings[i] = readString(chunk);
+		}
+
+		int times = chunk.position();
+		int types = times + 8 * eventCount;
+		int attributesEnd = types + 4 * eventCount;
+		this.chunk = chunk;
+		this.keys = attributesEnd + 4 * eventCount;
+		this.values = this.keys + 4 * attributeCount;
+		this.kinds = this.values + 4 * attributeCount;
+		this.numbers = this.kinds + attributeCount;
+
+		ChunkAttributes atts = new ChunkAttributes();
+		for (int i = 0; i < eventCount; i++) {
+			atts.end = chunk.getInt(attributesEnd + 4 * i);
+			double time = chunk.getDouble(times + 8 * i);
+			int type = chunk.getInt(types + 4 * i);
+			Event event = this.eventTypes[type] == 0 ? null : createEvent(this.eventTypes[type], time, atts.start, atts.end);
+			if (event != null) {
+				this.events.processEvent(event);
+			} else {
+				this.delegate.startEvent(time, this.dictionary[type], atts);
+			}
+			atts.start = atts.end;
+		}
+		this.chunk = null;
+	}
+
+	/**
+	 * Creates the event from the typed columns, the same way {@link EventsReaderXMLv1} does from the strings.
+	 *
+	 * @return null if a required attribute is missing, the event is then created by {@link EventsReaderXMLv1}.
+	 */
+	private Event createEvent(byte eventType, double time, int start, int end) {
+		for (int attribute = start; attribute < end; attribute++) {
+			int slot = this.slots[this.chunk.getInt(this.keys + 4 * attribute)];
+			if (slot >= 0) {
+				this.slotAttributes[slot] = attribute;
+			}
+		}
+		try {
+			switch (eventType) {
+				case LINK_LEAVE:
+					return has(VEHICLE) && has(LINK) ? new LinkLeaveEvent(time, vehicleId(), linkId()) : null;
+				case LINK_ENTER:
+					return has(VEHICLE) && has(LINK) ? new LinkEnterEvent(time, vehicleId(), linkId()) : null;
+				case VEHICLE_ENTERS_TRAFFIC:
+					return has(PERSON) && has(LINK) && has(VEHICLE) && has(POSITION) ? new VehicleEntersTrafficEvent(time,
+							personId(), linkId(), vehicleId(), string(NETWORK_MODE), number(POSITION)) : null;
+				case VEHICLE_LEAVES_TRAFFIC:
+					// the vehicle is optional
+					return has(PERSON) && has(LINK) && has(POSITION) ? new VehicleLeavesTrafficEvent(time,
+							personId(), linkId(), has(VEHICLE) ? vehicleId() : null, string(NETWORK_MODE), number(POSITION)) : null;
+				case ACTIVITY_END:
+					return has(PERSON) && has(LINK) ? new ActivityEndEvent(time, personId(), linkId(),
+							has(FACILITY) ? id(FACILITY, FACILITY_IDS, ActivityFacility.class) : null, string(ACT_TYPE)) : null;
+				case ACTIVITY_START:
+					if (!has(PERSON) || !has(LINK) || has(X) != has(Y)) {
+						return null;
+					}
+					return new ActivityStartEvent(time, personId(), linkId(),
+							has(FACILITY) ? id(FACILITY, FACILITY_IDS, ActivityFacility.class) : null, string(ACT_TYPE),
+							has(X) ? new Coord(number(X), number(Y)) : null);
+				case PERSON_ARRIVAL:
+					return has(PERSON) && has(LINK) ? new PersonArrivalEvent(time, personId(), linkId(), internedString(LEG_MODE)) : null;
+				case PERSON_DEPARTURE:
+					return has(PERSON) && has(LINK) ? new PersonDepartureEvent(time, personId(), linkId(), internedString(LEG_MODE)) : null;
+				case PERSON_ENTERS_VEHICLE:
+					return has(PERSON) && has(VEHICLE) ? new PersonEntersVehicleEvent(time, personId(), vehicleId()) : null;
+				case PERSON_LEAVES_VEHICLE:
+					return has(PERSON) && has(VEHICLE) ? new PersonLeavesVehicleEvent(time, personId(), vehicleId()) : null;
+				case TELEPORTATION_ARRIVAL:
+					return has(PERSON) && has(DISTANCE) ? new TeleportationArrivalEvent(time, personId(), number(DISTANCE), string(MODE)) : null;
+				default:
+					return null;
+			}
+		} finally {
+			Arrays.fill(this.slotAttributes, -1);
+		}
+	}
+
+	private boolean has(int slot) {
+		int attribute = this.slotAttributes[slot];
+		return attribute >= 0 && kind(attribute) != EventWriterBinary.VALUE_NULL;
+	}
+
+	private Id<Person> personId() {
+		return id(PERSON, PERSON_IDS, Person.class);
+	}
+
+	private Id<Link> linkId() {
+		return id(LINK, LINK_IDS, Link.class);
+	}
+
+	private Id<Vehicle> vehicleId() {
+		return id(VEHICLE, VEHICLE_IDS, Vehicle.class);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> Id<T> id(int slot, int idType, Class<T> type) {
+		int attribute = this.slotAttributes[slot];
+		if (kind(attribute) != EventWriterBinary.VALUE_STRING) {
+			return Id.create(value(attribute), type);
+		}
+		int index = index(attribute);
+		Id<?>[] ids = this.ids[idType];
+		if (ids == null || ids.length < this.dictionarySize) {
+			ids = this.ids[idType] = ids == null ? new Id<?>[this.dictionary.length] : Arrays.copyOf(ids, this.dictionary.length);
+		}
+		if (ids[index] == null) {
+			ids[index] = Id.create(this.dictionary[index], type);
+		}
+		return (Id<T>) ids[index];
+	}
+
+	private String internedString(int slot) {
+		int attribute = this.slotAttributes[slot];
+		if (attribute < 0 || kind(attribute) != EventWriterBinary.VALUE_STRING) {
+			String value = attribute < 0 ? null : value(attribute);
+			return value == null ? null : value.intern();
+		}
+		int index = index(attribute);
+		String[] interned = this.internedStrings;
+		if (interned == null || interned.length < this.dictionarySize) {
+			interned = this.internedStrings = interned == null ? new String[this.dictionary.length] : Arrays.copyOf(interned, this.dictionary.length);
+		}
+		if (interned[index] == null) {
+			interned[index] = this.dictionary[index].intern();
+		}
+		return interned[index];
+	}
+
+	private String string(int slot) {
+		int attribute = this.slotAttributes[slot];
+		return attribute < 0 ? null : value(attribute);
+	}
+
+	private double number(int slot) {
+		int attribute = this.slotAttributes[slot];
+		if (kind(attribute) == EventWriterBinary.VALUE_DOUBLE) {
+			return this.chunk.getDouble(this.numbers + 8 * index(attribute));
+		}
+		return Double.parseDouble(value(attribute));
+	}
+
+	private byte kind(int attribute) {
+		return this.chunk.get(this.kinds + attribute);
+	}
+
+	private int index(int attribute) {
+		return this.chunk.getInt(this.values + 4 * attribute);
+	}
+
+	private String value(int attribute) {
+		switch (kind(attribute)) {
+			case EventWriterBinary.VALUE_STRING:
+				return this.dictionary[index(attribute)];
+			case EventWriterBinary.VALUE_CHUNK_STRING:
+				return this.chunkStrings[index(attribute)];
+			case EventWriterBinary.VALUE_DOUBLE:
+				return Double.toString(this.chunk.getDouble(this.numbers + 8 * index(attribute)));
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * The attributes of one event, read directly from the key and value columns of the chunk.
+	 */
+	private final class ChunkAttributes implements Attributes {
+		int start = 0;
+		int end = 0;
+
+		@Override
+		public int getLength() {
+			return this.end - this.start;
+		}
+
+		@Override
+		public String getURI(int index) {
+			return "";
+		}
+
+		@Override
+		public String getLocalName(int index) {
+			if (index < 0 || index >= getLength()) {
+				return null;
+			}
+			return dictionary[chunk.getInt(keys + 4 * (this.start + index))];
+		}
+
+		@Override
+		public String getQName(int index) {
+			return getLocalName(index);
+		}
+
+		@Override
+		public String getType(int index) {
+			return index < 0 || index >= getLength() ? null : "CDATA";
+		}
+
+		@Override
+		public String getValue(int index) {
+			if (index < 0 || index >= getLength()) {
+				return null;
+			}
+			return value(this.start + index);
+		}
+
+		@Override
+		public int getIndex(String uri, String localName) {
+			return getIndex(localName);
+		}
+
+		@Override
+		public int getIndex(String qName) {
+			for (int i = 0, n = getLength(); i < n; i++) {
+				if (qName.equals(getLocalName(i))) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public String getType(String uri, String localName) {
+			return getType(getIndex(localName));
+		}
+
+		@Override
+		public String getType(String qName) {
+			return getType(getIndex(qName));
+		}
+
+		@Override
+		public String getValue(String uri, String localName) {
+			return getValue(getIndex(localName));
+		}
+
+		@Override
+		public String getValue(String qName) {
+			return getValue(getIndex(qName));
+		}
+	}
+}
@@ -98,6 +98,14 @@ public final class EventsReaderXMLv1 extends MatsimXmlEventsParser {
 	private void startEvent(final Attributes atts) {
 		double time = Double.parseDouble(atts.getValue("time"));
 		String eventType = atts.getValue("type");
+		startEvent(time, eventType, atts);
+	}
+
+	/**
+	 * Creates the event from its attributes. Used by other readers (e.g. {@link EventsReaderBinary}) that already know
+	 * time and type of the event, <code>atts</code> does not need to contain them.
+	 */
+	void startEvent(final double time, final String eventType, final Attributes atts) {
 
 		// === material related to wait2link below here ===
 		if (LinkLeaveEvent.EVENT_TYPE.equals(eventType)) {
@@ -19,6 +19,12 @@
 package org.matsim.core.events;
 
 import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.log4j.Logger;
@@ -53,6 +59,14 @@ import javax.inject.Inject;
  * (not really needed, but can make performance slightly faster in larger
  * simulations).
  *
+ * Every handler is run by exactly one thread, and a thread only receives the
+ * events of the types its handlers are interested in. The time spent in each
+ * handler is sampled while events are processed; after each iteration, the
+ * handlers are re-distributed among the threads such that the expected work
+ * per thread is balanced (longest handlers first, each to the thread with the
+ * least work so far). Handlers added before the first measurement are assigned
+ * round-robin.
+ *
  * @see <a href="http://www.matsim.org/node/238">http://www.matsim.org/node/238</a>
  * @author rashid_waraich
  *
@@ -61,10 +75,11 @@ public final class ParallelEventsManagerImpl implements EventsManager {
 
 	private boolean parallelMode = true;
 	private int numberOfThreads;
-	private EventsManagerImpl[] events = null;
+	private final List<HandlerSlot> handlers = new ArrayList<>();
+	private HandlerGroup[] groups = null;
 	private ProcessEventThread[] eventsProcessThread = null;
 	private Thread[] threads = null;
-	private int numberOfAddedEventsHandler = 0;
+	private final Map<Class<? extends Event>, ProcessEventThread[]> threadsForEventClass = new ConcurrentHashMap<>();
 	private final AtomicBoolean hadException = new AtomicBoolean(false);
 	private final ExceptionHandler uncaughtExceptionHandler = new ExceptionHandler(hadException);
 
@@ -110,30 +125,73 @@ public final class ParallelEventsManagerImpl implements EventsManager {
 	@Override
 	public void processEvent(final Event event) {
 		if (parallelMode) {
-			for (int i = 0; i < eventsProcessThread.length; i++) {
-				eventsProcessThread[i].processEvent(event);
+			for (ProcessEventThread thread : getThreadsForEventClass(event.getClass())) {
+				thread.processEvent(event);
 			}
 		} else {
-			for (int i = 0; i < eventsProcessThread.length; i++) {
-				eventsProcessThread[i].getEvents().processEvent(event);
+			for (int i = 0; i < groups.length; i++) {
+				groups[i].processEvent(event);
+			}
+		}
+	}
+
+	private ProcessEventThread[] getThreadsForEventClass(final Class<? extends Event> eventClass) {
+		ProcessEventThread[] threads = this.threadsForEventClass.get(eventClass);
+		if (threads == null) {
+			synchronized (this) {
+				List<ProcessEventThread> list = new ArrayList<>();
+				for (int i = 0; i < numberOfThreads; i++) {
+					if (groups[i].hasHandlersFor(eventClass)) {
+						list.add(eventsProcessThread[i]);
+					}
+				}
+				threads = list.toArray(new ProcessEventThread[0]);
+				this.threadsForEventClass.put(eventClass, threads);
 			}
 		}
+		return threads;
 	}
 
 	@Override
 	public void addHandler(final EventHandler handler) {
 		synchronized (this) {
-			log.info("adding Event-Handler " + handler.getClass().getName() + " to thread " + numberOfAddedEventsHandler);
-			events[numberOfAddedEventsHandler].addHandler(handler);
-			numberOfAddedEventsHandler = (numberOfAddedEventsHandler + 1) % numberOfThreads;
+			HandlerSlot slot = new HandlerSlot(handler);
+			slot.thread = getLeastLoadedThread();
+			log.info("adding Event-Handler " + handler.getClass().getName() + " to thread " + slot.thread);
+			this.handlers.add(slot);
+			updateGroups();
+		}
+	}
+
+	private int getLeastLoadedThread() {
+		// handlers without measurements count as average handlers; without any measurements this is round-robin
+		double[] load = new double[numberOfThreads];
+		double known = 0;
+		int knownCount = 0;
+		for (HandlerSlot slot : this.handlers) {
+			if (slot.measured) {
+				known += slot.cost;
+				knownCount++;
+			}
+		}
+		double defaultCost = knownCount == 0 ? 1.0 : Math.max(known / knownCount, Double.MIN_NORMAL);
+		for (HandlerSlot slot : this.handlers) {
+			load[slot.thread] += slot.measured ? slot.cost : defaultCost;
 		}
+		int best = 0;
+		for (int i = 1; i < numberOfThreads; i++) {
+			if (load[i] < load[best]) {
+				best = i;
+			}
+		}
+		return best;
 	}
 
 	@Override
 	public void resetHandlers(final int iteration) {
 		synchronized (this) {
-			for (int i = 0; i < events.length; i++) {
-				events[i].resetHandlers(iteration);
+			for (HandlerSlot slot : this.handlers) {
+				slot.events.resetHandlers(iteration);
 			}
 		}
 	}
@@ -141,29 +199,83 @@ public final class ParallelEventsManagerImpl implements EventsManager {
 	@Override
 	public void removeHandler(final EventHandler handler) {
 		synchronized (this) {
-			for (int i = 0; i < events.length; i++) {
-				events[i].removeHandler(handler);
+			this.handlers.removeIf(slot -> slot.handler == handler);
+			updateGroups();
+		}
+	}
+
+	/**
+	 * Rebuilds the handlers of each thread after the assignment has changed. The groups are replaced by new
+	 * objects, so threads currently processing events see either the old or the new assignment.
+	 */
+	private void updateGroups() {
+		List<List<HandlerSlot>> slots = new ArrayList<>();
+		for (int i = 0; i < numberOfThreads; i++) {
+			slots.add(new ArrayList<>());
+		}
+		for (HandlerSlot slot : this.handlers) {
+			slots.get(slot.thread).add(slot);
+		}
+		for (int i = 0; i < numberOfThreads; i++) {
+			this.groups[i].setSlots(slots.get(i).toArray(new HandlerSlot[0]));
+		}
+		this.threadsForEventClass.clear();
+	}
+
+	/**
+	 * Assigns the handlers to threads based on the cost measured in the last iteration: the most expensive handler
+	 * goes first, each handler goes to the thread with the least work assigned so far.
+	 */
+	private void rebalance() {
+		boolean measured = false;
+		for (HandlerSlot slot : this.handlers) {
+			if (slot.samples > 0) {
+				slot.cost = slot.sampledNanos * (double) HandlerSlot.SAMPLE_INTERVAL;
+				slot.measured = true;
+				measured = true;
 			}
+			slot.sampledNanos = 0;
+			slot.samples = 0;
+		}
+		if (!measured) {
+			return;
 		}
+		HandlerSlot[] sorted = this.handlers.toArray(new HandlerSlot[0]);
+		Arrays.sort(sorted, Comparator.comparingDouble((HandlerSlot slot) -> slot.cost).reversed());
+		double[] load = new double[numberOfThreads];
+		for (HandlerSlot slot : sorted) {
+			int best = 0;
+			for (int i = 1; i < numberOfThreads; i++) {
+				if (load[i] < load[best]) {
+					best = i;
+				}
+			}
+			slot.thread = best;
+			load[best] += slot.cost;
+		}
+		updateGroups();
 	}
 
 	private void printEventHandlers() {
 		synchronized (this) {
-			for (int i = 0; i < events.length; i++) {
+			for (int i = 0; i < numberOfThreads; i++) {
 				log.info("registered event handlers for thread " + i + ":");
-				events[i].printEventHandlers();
+				for (HandlerSlot slot : this.handlers) {
+					if (slot.thread == i) {
+						log.info("  - " + slot.handler.getClass().getName() + (slot.measured ? ", estimated time [ms]: " + (long) (slot.cost / 1e6) : ""));
+					}
+				}
 			}
 		}
 	}
 
 	private void init(int numberOfThreads) {
 		this.numberOfThreads = numberOfThreads;
-		this.events = new EventsManagerImpl[numberOfThreads];
+		this.groups = new HandlerGroup[numberOfThreads];
 		this.eventsProcessThread = new ProcessEventThread[numberOfThreads];
 		this.threads = new Thread[numberOfThreads];
-		// the additional 1 is for the simulation barrier
 		for (int i = 0; i < numberOfThreads; i++) {
-			events[i] = new EventsManagerImpl();
+			groups[i] = new HandlerGroup();
 		}
 	}
 
@@ -186,7 +298,12 @@ public final class ParallelEventsManagerImpl implements EventsManager {
 		} catch (InterruptedException e) {
 			e.printStackTrace();
 		}
-		
+
+		// distribute the handlers for the next iteration according to their measured cost
+		synchronized (this) {
+			rebalance();
+		}
+
 		// list which threads had which handlers to debug performance issues
 		printEventHandlers();
 
@@ -210,16 +327,123 @@ public final class ParallelEventsManagerImpl implements EventsManager {
 	public void initProcessing() {
 		// reset this class, so that it can be reused for the next iteration
 		for (int i = 0; i < numberOfThreads; i++) {
-			this.eventsProcessThread[i] = new ProcessEventThread(events[i], preInputBufferMaxLength);
+			this.eventsProcessThread[i] = new ProcessEventThread(groups[i], preInputBufferMaxLength);
 			this.threads[i] = new Thread(eventsProcessThread[i], "Events-" + i);
 			this.threads[i].setUncaughtExceptionHandler(this.uncaughtExceptionHandler);
 			this.threads[i].start();
 		}
-		
+		this.threadsForEventClass.clear();
+
 		// (re-)activate parallel mode while the mobsim is running
 		this.parallelMode = true;
 	}
 
+	/**
+	 * A single handler, with its own manager (to find the handler methods) and the time spent in it.
+	 */
+	private static final class HandlerSlot {
+		// measure only every n-th event, System.nanoTime() is not free either
+		static final int SAMPLE_INTERVAL = 16;
+
+		final EventHandler handler;
+		final EventsManagerImpl events = new EventsManagerImpl(false);
+		int thread;
+		// only accessed by the thread processing this handler, or after it was joined
+		long counter = 0;
+		long samples = 0;
+		long sampledNanos = 0;
+		double cost = 0;
+		boolean measured = false;
+
+		HandlerSlot(EventHandler handler) {
+			this.handler = handler;
+			this.events.addHandler(handler);
+		}
+
+		void processEvent(Event event) {
+			if (++this.counter % SAMPLE_INTERVAL == 0) {
+				long start = System.nanoTime();
+				this.events.processEvent(event);
+				this.sampledNanos += System.nanoTime() - start;
+				this.samples++;
+			} else {
+				this.events.processEvent(event);
+			}
+		}
+	}
+
+	/**
+	 * The handlers of one thread.
+	 */
+	private static final class HandlerGroup implements EventsManager {
+		private volatile HandlerSlot[] slots = new HandlerSlot[0];
+		private final Map<Class<? extends Event>, HandlerSlot[]> slotsForEventClass = new ConcurrentHashMap<>();
+
+		void setSlots(HandlerSlot[] slots) {
+			this.slotsForEventClass.clear();
+			this.slots = slots;
+		}
+
+		boolean hasHandlersFor(Class<? extends Event> eventClass) {
+			return getSlotsForEventClass(eventClass).length > 0;
+		}
+
+		private HandlerSlot[] getSlotsForEventClass(Class<? extends Event> eventClass) {
+			HandlerSlot[] result = this.slotsForEventClass.get(eventClass);
+			if (result == null) {
+				HandlerSlot[] slots = this.slots;
+				List<HandlerSlot> list = new ArrayList<>();
+				for (HandlerSlot slot : slots) {
+					if (slot.events.hasHandlersFor(eventClass)) {
+						list.add(slot);
+					}
+				}
+				result = list.toArray(new HandlerSlot[0]);
+				if (slots == this.slots) {
+					this.slotsForEventClass.put(eventClass, result);
+				}
+			}
+			return result;
+		}
+
+		@Override
+		public void processEvent(Event event) {
+			for (HandlerSlot slot : getSlotsForEventClass(event.getClass())) {
+				slot.processEvent(event);
+			}
+		}
+
+		@Override
+		public void addHandler(EventHandler handler) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void removeHandler(EventHandler handler) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void resetHandlers(int iteration) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void initProcessing() {
+			// nothing to do in this implementation
+		}
+
+		@Override
+		public void afterSimStep(double time) {
+			// nothing to do in this implementation
+		}
+
+		@Override
+		public void finishProcessing() {
+			// nothing to do in this implementation
+		}
+	}
+
 	/**
 	 * @author mrieser
 	 */
@@ -15,15 +15,12 @@
  *   See also COPYING, LICENSE and WARRANTY file                           *
  *                                                                         *
  * *********************************************************************** */
-
 package org.matsim.core.events;
 
-import java.lang.InterruptedException;
-
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.matsim.api.core.v01.events.Event;
 import org.matsim.core.api.experimental.events.EventsManager;
@@ -31,69 +28,130 @@ import org.matsim.core.gbl.Gbl;
 
 /**
  * The wrapper around the Events class for allowing parallelization.
+ * <p>
+ * Producers collect events in a buffer which is handed over to the event handling thread as a whole once it is
+ * full. The hand-over uses a single-producer/single-consumer ring buffer of such batches (producers are serialized
+ * by the lock of this object), so the consumer does not need any lock. If the ring is full, further batches are
+ * put into an unbounded overflow queue until the consumer has caught up, so producers never block. This is
+ * important as event handlers may create events themselves.
  *
  * @author rashid_waraich
  */
 /*package*/ class ProcessEventThread implements Runnable {
-	private final List<Event> preInputBuffer;
-	private final BlockingQueue<Event> eventQueue;
+	// must be a power of 2
+	private static final int RING_CAPACITY = 64;
+	private static final int RING_MASK = RING_CAPACITY - 1;
+	private static final int SPINS_BEFORE_PARK = 100;
+
+	private final Event[][] ring = new Event[RING_CAPACITY][];
+	// the next slot to read, only written by the consumer
+	private final AtomicLong head = new AtomicLong();
+	// the next slot to write, only written by the producer (holding the lock)
+	private final AtomicLong tail = new AtomicLong();
+	// batches that did not fit into the ring; if not empty, all new batches go here to keep the order
+	private final ConcurrentLinkedQueue<Event[]> overflow = new ConcurrentLinkedQueue<>();
+	private volatile Thread consumer = null;
+	private volatile boolean consumerWaiting = false;
+
+	private final Event[] preInputBuffer;
+	private int preInputBufferSize = 0;
 	private final EventsManager events;
-	private final int preInputBufferMaxLength;
 
 	public ProcessEventThread(
 			final EventsManager events,
 			final int preInputBufferMaxLength) {
 		this.events = events;
-		this.preInputBufferMaxLength = preInputBufferMaxLength;
-		eventQueue = new LinkedBlockingQueue<Event>();
-		preInputBuffer = new ArrayList<Event>( preInputBufferMaxLength + 1);
+		this.preInputBuffer = new Event[Math.max(1, preInputBufferMaxLength + 1)];
 	}
 
 	public synchronized void processEvent(final Event event) {
-		// first approach (quick on office computer, but not on satawal)
-		// eventQueue.add(event);
-
-		// second approach, lesser locking => faster on Satawal
-		preInputBuffer.add(event);
-		if (preInputBuffer.size() > preInputBufferMaxLength) {
+		preInputBuffer[preInputBufferSize++] = event;
+		if (preInputBufferSize == preInputBuffer.length) {
 			emptyPreBuffer();
 		}
 	}
 
 	private void emptyPreBuffer() {
-		eventQueue.addAll( preInputBuffer );
-		preInputBuffer.clear();
+		if (preInputBufferSize == 0) {
+			return;
+		}
+		Event[] batch = Arrays.copyOf(preInputBuffer, preInputBufferSize);
+		Arrays.fill(preInputBuffer, 0, preInputBufferSize, null);
+		preInputBufferSize = 0;
+
+		long t = tail.get();
+		if (overflow.isEmpty() && t - head.get() < RING_CAPACITY) {
+			ring[(int) (t & RING_MASK)] = batch;
+			tail.set(t + 1);
+		} else {
+			overflow.add(batch);
+		}
+		if (consumerWaiting) {
+			LockSupport.unpark(consumer);
+		}
+	}
+
+	/**
+	 * @return the next batch of events, or <code>null</code> if there is none. Ring entries are always older than
+	 *         overflow entries, so the ring is drained first.
+	 */
+	private Event[] poll() {
+		long h = head.get();
+		if (h < tail.get()) {
+			int index = (int) (h & RING_MASK);
+			Event[] batch = ring[index];
+			ring[index] = null;
+			head.set(h + 1);
+			return batch;
+		}
+		return overflow.poll();
+	}
+
+	private Event[] take() {
+		int spins = 0;
+		while (true) {
+			Event[] batch = poll();
+			if (batch != null) {
+				return batch;
+			}
+			if (spins < SPINS_BEFORE_PARK) {
+				spins++;
+				Thread.onSpinWait();
+			} else {
+				consumerWaiting = true;
+				if (head.get() == tail.get() && overflow.isEmpty()) {
+					LockSupport.parkNanos(this, 1_000_000);
+				}
+				consumerWaiting = false;
+			}
+		}
 	}
 
 	@Override
 	public void run() {
-		try {
-			// process events, until LastEventOfIteration arrives
-			while (true) {
-				// take waits for an element to exist before returning:
-				//  - thread sleeps until there is an event to process
-				//  - we do not have to bother checking if the element exists
-				Event nextEvent = eventQueue.take();
+		this.consumer = Thread.currentThread();
+		// process events, until LastEventOfIteration arrives
+		while (true) {
+			Event[] batch = take();
+			for (int i = 0; i < batch.length; i++) {
+				Event nextEvent = batch[i];
 				if (nextEvent instanceof LastEventOfIteration) {
-					Gbl.printCurrentThreadCpuTime();
-					
-					// if there are more events generated after end of simulation 
+					// if there are more events generated after end of simulation
 					// (generated in events handler), process them before stopping events handling.
 					// in order to do this, LastEventOfIteration is moved to the back of the queue.
-					if (eventQueue.size()>0){
-						processEvent(nextEvent);
-						emptyPreBuffer();
-						nextEvent = eventQueue.take();
-					} else {
-						return;
+					synchronized (this) {
+						if (i < batch.length - 1 || preInputBufferSize > 0 || head.get() < tail.get() || !overflow.isEmpty()) {
+							processEvent(nextEvent);
+							emptyPreBuffer();
+							continue;
+						}
 					}
+					Gbl.printCurrentThreadCpuTime();
+					return;
 				}
 				getEvents().processEvent(nextEvent);
 			}
 		}
-		catch ( InterruptedException e ) {
-			throw new RuntimeException( e );
-		}
 	}
 
 	// schedule LastEventOfIteration and flush buffered events
@@ -103,7 +161,7 @@ import org.matsim.core.gbl.Gbl;
 	public synchronized void close() {
 		processEvent(new LastEventOfIteration(0.0));
 		emptyPreBuffer();
-	} 
+	}
 
 	public EventsManager getEvents() {
 		return events;
@@ -0,0 +1,312 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events.algorithms;
+
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.core.utils.io.UncheckedIOException;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes events in a compact, column-oriented binary format which can be read much faster than xml,
+ * see {@link org.matsim.core.events.MatsimEventsReader}.
+ * <p>
+ * Numbers (coordinates, distances, amounts, ...) are stored in a typed column. Event types, attribute names and
+ * other strings (mostly ids and modes) are stored only once in a dictionary and referenced by their index. Once the
+ * dictionary contains {@link #MAX_DICTIONARY_SIZE} strings, new strings are stored in the chunk they are used in,
+ * so the memory needed for writing does not grow with the number of events.
+ * <p>
+ * The events are written in chunks of up to {@link #CHUNK_SIZE} events. Every chunk contains the strings added to
+ * the dictionary in this chunk and the chunk's own strings, followed by the fixed-width columns of the chunk (little
+ * endian):
+ * <pre>
+ * int     chunk length in bytes (excluding this field)
+ * int     n = number of events
+ * int     m = number of attributes
+ * int     d = number of attributes with a number as value
+ * int     k = number of new dictionary strings, followed by k times (int length, utf-8 bytes)
+ * int     l = number of strings of this chunk, followed by l times (int length, utf-8 bytes)
+ * double  time[n]
+ * int     type[n]            dictionary index of the event type
+ * int     attributesEnd[n]   exclusive end of the event's attributes in the attribute columns
+ * int     key[m]             dictionary index of the attribute name
+ * int     value[m]           depending on kind: index in the dictionary, the chunk's strings or the number column
+ * byte    kind[m]            one of the VALUE_* constants
+ * double  number[d]
+ * </pre>
+ * The file starts with the 8 bytes {@link #MAGIC} and an int with the {@link #VERSION}. Files are not compressed,
+ * as this would prevent memory-mapping the chunks while reading.
+ */
+public class EventWriterBinary implements EventWriter, BasicEventHandler {
+
+	public static final byte[] MAGIC = "MATSIMEB".getBytes(StandardCharsets.US_ASCII);
+	public static final int VERSION = 2;
+	public static final int CHUNK_SIZE = 1 << 16;
+	public static final int MAX_DICTIONARY_SIZE = 1 << 22;
+
+	public static final byte VALUE_NULL = 0;
+	public static final byte VALUE_STRING = 1;
+	public static final byte VALUE_CHUNK_STRING = 2;
+	public static final byte VALUE_DOUBLE = 3;
+
+	private final WritableByteChannel out;
+	private final Map<String, Integer> dictionary = new HashMap<>();
+	private final List<byte[]> newStrings = new ArrayList<>();
+	private final List<byte[]> chunkStrings = new ArrayList<>();
+
+	private final double[] times = new double[CHUNK_SIZE];
+	private final int[] types = new int[CHUNK_SIZE];
+	private final int[] attributesEnd = new int[CHUNK_SIZE];
+	private int[] keys = new int[CHUNK_SIZE * 4];
+	private int[] values = new int[CHUNK_SIZE * 4];
+	private byte[] kinds = new byte[CHUNK_SIZE * 4];
+	private double[] numbers = new double[CHUNK_SIZE];
+	private int eventCount = 0;
+	private int attributeCount = 0;
+	private int numberCount = 0;
+
+	public EventWriterBinary(final String outfilename) {
+		try {
+			this.out = new FileOutputStream(outfilename).getChannel();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		writeHeader();
+	}
+
+	public EventWriterBinary(final OutputStream stream) {
+		this.out = Channels.newChannel(stream);
+		writeHeader();
+	}
+
+	private void writeHeader() {
+		ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 4).order(ByteOrder.LITTLE_ENDIAN);
+		header.put(MAGIC);
+		header.putInt(VERSION);
+		header.flip();
+		write(header);
+	}
+
+	@Override
+	public void handleEvent(final Event event) {
+		this.times[this.eventCount] = event.getTime();
+		this.types[this.eventCount] = intern(event.getEventType());
+		// link events are the majority of all events, their attributes are taken directly from the event
+		if (event.getClass() == LinkEnterEvent.class) {
+			LinkEnterEvent linkEnter = (LinkEnterEvent) event;
+			addAttribute(LinkEnterEvent.ATTRIBUTE_VEHICLE, linkEnter.getVehicleId().toString());
+			addAttribute(LinkEnterEvent.ATTRIBUTE_LINK, linkEnter.getLinkId().toString());
+		} else if (event.getClass() == LinkLeaveEvent.class) {
+			LinkLeaveEvent linkLeave = (LinkLeaveEvent) event;
+			addAttribute(LinkLeaveEvent.ATTRIBUTE_VEHICLE, linkLeave.getVehicleId().toString());
+			addAttribute(LinkLeaveEvent.ATTRIBUTE_LINK, linkLeave.getLinkId().toString());
+		} else {
+			for (Map.Entry<String, String> entry : event.getAttributes().entrySet()) {
+				String key = entry.getKey();
+				if (!Event.ATTRIBUTE_TIME.equals(key) && !Event.ATTRIBUTE_TYPE.equals(key)) {
+					addAttribute(key, entry.getValue());
+				}
+			}
+		}
+		this.attributesEnd[this.eventCount] = this.attributeCount;
+		this.eventCount++;
+		if (this.eventCount == CHUNK_SIZE) {
+			writeChunk();
+		}
+	}
+
+	private void addAttribute(String key, String value) {
+		if (this.attributeCount == this.keys.length) {
+			this.keys = Arrays.copyOf(this.keys, this.keys.length * 2);
+			this.values = Arrays.copyOf(this.values, this.values.length * 2);
+			this.kinds = Arrays.copyOf(this.kinds, this.kinds.length * 2);
+		}
+		this.keys[this.attributeCount] = intern(key);
+		setValue(this.attributeCount, value);
+		this.attributeCount++;
+	}
+
+	private void setValue(int attribute, String value) {
+		if (value == null) {
+			this.kinds[attribute] = VALUE_NULL;
+			return;
+		}
+		if (isNumber(value)) {
+			double number = parseDouble(value);
+			// only numbers which are read back as the same string are stored as numbers, e.g. "1.50" is kept as string
+			if (Double.toString(number).equals(value)) {
+				if (this.numberCount == this.numbers.length) {
+					this.numbers = Arrays.copyOf(this.numbers, this.numbers.length * 2);
+				}
+				this.kinds[attribute] = VALUE_DOUBLE;
+				this.values[attribute] = this.numberCount;
+				this.numbers[this.numberCount++] = number;
+				return;
+			}
+		}
+		Integer index = this.dictionary.get(value);
+		if (index != null || this.dictionary.size() < MAX_DICTIONARY_SIZE) {
+			this.kinds[attribute] = VALUE_STRING;
+			this.values[attribute] = index != null ? index : intern(value);
+		} else {
+			this.kinds[attribute] = VALUE_CHUNK_STRING;
+			this.values[attribute] = this.chunkStrings.size();
+			this.chunkStrings.add(value.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * @return true for the numbers written by {@link Double#toString(double)}, which always contain a '.'.
+	 * Integers are mostly ids and are stored in the dictionary.
+	 */
+	private static boolean isNumber(String value) {
+		boolean dot = false;
+		for (int i = 0, n = value.length(); i < n; i++) {
+			char c = value.charAt(i);
+			if (c == '.') {
+				dot = true;
+			} else if ((c < '0' || c > '9') && c != '-' && c != 'E') {
+				return false;
+			}
+		}
+		return dot && value.charAt(0) != 'E';
+	}
+
+	private static double parseDouble(String value) {
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	private int intern(String s) {
+		Integer index = this.dictionary.get(s);
+		if (index == null) {
+			index = this.dictionary.size();
+			this.dictionary.put(s, index);
+			this.newStrings.add(s.getBytes(StandardCharsets.UTF_8));
+		}
+		return index;
+	}
+
+	/** The number of strings in the dictionary, for tests. */
+	int dictionarySize() {
+		return this.dictionary.size();
+	}
+
+	private void writeChunk() {
+		int n = this.eventCount;
+		int m = this.attributeCount;
+		int d = this.numberCount;
+		int length = 5 * 4 + n * (8 + 4 + 4) + m * (4 + 4 + 1) + d * 8;
+		for (byte[] s : this.newStrings) {
+			length += 4 + s.length;
+		}
+		for (byte[] s : this.chunkStrings) {
+			length += 4 + s.length;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(4 + length).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(length);
+		buffer.putInt(n);
+		buffer.putInt(m);
+		buffer.putInt(d);
+		putStrings(buffer, this.newStrings);
+		putStrings(buffer, this.chunkStrings);
+		for (int i = 0; i < n; i++) {
+			buffer.putDouble(this.times[i]);
+		}
+		for (int i = 0; i < n; i++) {
+			buffer.putInt(this.types[i]);
+		}
+		for (int i = 0; i < n; i++) {
+			buffer.putInt(this.attributesEnd[i]);
+		}
+		for (int i = 0; i < m; i++) {
+			buffer.putInt(this.keys[i]);
+		}
+		for (int i = 0; i < m; i++) {
+			buffer.putInt(this.values[i]);
+		}
+		buffer.put(this.kinds, 0, m);
+		for (int i = 0; i < d; i++) {
+			buffer.putDouble(this.numbers[i]);
+		}
+		buffer.flip();
+		write(buffer);
+
+		this.newStrings.clear();
+		this.chunkStrings.clear();
+		this.eventCount = 0;
+		this.attributeCount = 0;
+		this.numberCount = 0;
+	}
+
+	private static void putStrings(ByteBuffer buffer, List<byte[]> strings) {
+		buffer.putInt(strings.size());
+		for (byte[] s : strings) {
+			buffer.putInt(s.length);
+			buffer.put(s);
+		}
+	}
+
+	private void write(ByteBuffer buffer) {
+		try {
+			while (buffer.hasRemaining()) {
+				this.out.write(buffer);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void closeFile() {
+		if (this.eventCount > 0) {
+			writeChunk();
+		}
+		try {
+			this.out.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void reset(final int iter) {
+	}
+
+}
@@ -73,6 +73,16 @@ public interface MobsimAgent extends NetworkAgent, Identifiable<Person> {
      */
     public void endActivityAndComputeNextState(final double now);
 
+    /**
+     * @return <code>true</code> if {@link #endActivityAndComputeNextState(double)} only changes the state of this agent and
+     * throws events, so that it may be called concurrently for different agents, see
+     * {@link org.matsim.core.config.groups.QSimConfigGroup#isParallelDepartures()}.  The default is <code>false</code>; the
+     * activities of such agents are then ended one after the other, after the parallel part.
+     */
+    default boolean isActivityEndThreadSafe() {
+        return false;
+    }
+
     /**
      * Informs the agent that the leg has ended.  The agent is responsible for what comes next.
      *
@@ -20,7 +20,6 @@
 package org.matsim.core.mobsim.hermes;
 
 import org.matsim.api.core.v01.Id;
-import org.matsim.core.events.EventArray;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 
 import java.util.ArrayList;
@@ -40,11 +39,18 @@ class Agent {
 
 		public void add(long element) {
 			if (size == array.length) {
-				array = Arrays.copyOf(array, array.length * 2);
+				array = Arrays.copyOf(array, Math.max(8, array.length * 2));
 			}
 			array[size++] = element;
 		}
 
+		/**
+		 * Shrinks the array to the elements added so far.
+		 */
+		public void trimToSize() {
+			array = Arrays.copyOf(array, size);
+		}
+
 		public int size() {
 			return size;
 		}
@@ -97,7 +103,8 @@ class Agent {
     // <0110> StopDepartType  | 4 bits unused | 16 bit event id  | 8 bits unused   | 16 bit route id | 16 station id
     protected final PlanArray plan; // TODO - use a byte buffer instead of a long[]...
 
-    protected final EventArray events;
+    // Templates of the events generated while executing the plan, see EventTemplates.
+    protected final EventTemplates events;
 
     // Current position in plan. Using this index in the plan will yield what
     // the agent is doing currently. Note that we trigger the corresponding
@@ -109,6 +116,9 @@ class Agent {
     // Timestamp of when the agent will be ready to exit link.
     protected int linkFinishTime;
 
+    // Position of the agent in the wakeup queue it is in, only used with several realms (see Realm).
+    protected long wakeupKey;
+
     // Number of passengers that this agent can take (zero for personal vehicles)
     private int capacity;
 
@@ -123,7 +133,7 @@ class Agent {
 
     private final static List<Agent> NO_PASSENGERS = Collections.emptyList();
 
-    public Agent(int id, int capacity, PlanArray plan, EventArray events) {
+    public Agent(int id, int capacity, PlanArray plan, EventTemplates events) {
         this.id = id;
         this.plan = plan;
         this.events = events;
@@ -159,7 +169,7 @@ class Agent {
         return this.plan;
     }
 
-    public EventArray events() {
+    public EventTemplates events() {
         return this.events;
     }
 
@@ -317,6 +327,20 @@ class Agent {
         }
     }
 
+    /**
+     * Resets the progress of the agent to the beginning of its plan, keeping the plan, the events and the stops served
+     * by a transit vehicle. Used to simulate the same plan again in the next iteration.
+     */
+    public void rewind() {
+        planIndex = 0;
+        eventsIndex = 0;
+        linkFinishTime = 0;
+        if (this.passengersByStop != null) {
+            passengersInside = 0;
+            this.passengersByStop.rewind();
+        }
+    }
+
     public static long prepareLinkEntry(int eventid, int linkid, int velocity, int pcecategory) {
         long l = preparePlanEventEntry(LinkType, eventid, prepareLinkEntryElement(linkid, velocity, pcecategory));
         return l;
@@ -403,6 +427,13 @@ class Agent {
             this.currentStopIdx = -1;
         }
 
+        public void rewind() {
+            for (int i = 0; i < this.size; i++) {
+                this.passengers[i].clear();
+            }
+            this.currentStopIdx = -1;
+        }
+
         public void addStop(int stopId) {
             if (this.size == this.stopIds.length) {
                 this.stopIds = Arrays.copyOf(this.stopIds, this.stopIds.length * 2);
@@ -0,0 +1,170 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.hermes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventArray;
+
+/**
+ * Events in the order in which they happened during the simulation. The events are not stored as objects but as
+ * references to the {@link EventTemplates} of the agents, together with the time at which they happened. The
+ * {@link Event} objects are created in {@link #flush(EventsManager, Agent[])}, in chunks, while passing them to the
+ * events manager.
+ */
+class EventBuffer {
+
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	// Marks entries that refer to an event in prebuiltEvents instead of an agent's event template.
+	private static final int PREBUILT = -1;
+
+	// Entries of three ints: <agent id> <event id> <time>
+	private int[] entries = new int[3 * 1024];
+	private int size;
+	private final List<Event> prebuiltEvents = new ArrayList<>();
+	// Position of each entry in the single-realm order, only used to merge the events of several realms (see Realm).
+	private long[] keys = new long[0];
+
+	/**
+	 * Adds a reference to the event {@code eventid} of the given agent.
+	 */
+	public void add(Agent agent, int eventid, int time) {
+		add(agent.id(), eventid, time);
+	}
+
+	/**
+	 * Adds an event that was already created, e.g. the precomputed events of deterministic pt.
+	 */
+	public void add(Event event) {
+		add(PREBUILT, this.prebuiltEvents.size(), (int) event.getTime());
+		this.prebuiltEvents.add(event);
+	}
+
+	/**
+	 * Same as {@link #add(Agent, int, int)}, but also stores the position of the event used by
+	 * {@link #addAllInKeyOrder(EventBuffer[])}.
+	 */
+	public void add(Agent agent, int eventid, int time, long key) {
+		add(agent, eventid, time);
+		setKey(key);
+	}
+
+	/**
+	 * Same as {@link #add(Event)}, but also stores the position of the event used by
+	 * {@link #addAllInKeyOrder(EventBuffer[])}.
+	 */
+	public void add(Event event, long key) {
+		add(event);
+		setKey(key);
+	}
+
+	/**
+	 * Appends the events of the other buffers to this one, ordered by their keys, and clears the other buffers. The
+	 * events of each of the other buffers must have been added with increasing keys.
+	 */
+	public void addAllInKeyOrder(EventBuffer[] others) {
+		int total = 0;
+		int[] prebuiltOffsets = new int[others.length];
+		for (int b = 0; b < others.length; b++) {
+			total += others[b].size;
+			prebuiltOffsets[b] = this.prebuiltEvents.size();
+			this.prebuiltEvents.addAll(others[b].prebuiltEvents);
+		}
+		ensureCapacity(this.size + total);
+		int[] next = new int[others.length];
+		for (int n = 0; n < total; n++) {
+			int min = -1;
+			for (int b = 0; b < others.length; b++) {
+				if (next[b] < others[b].size && (min < 0 || others[b].keys[next[b]] < others[min].keys[next[min]])) {
+					min = b;
+				}
+			}
+			int i = 3 * next[min]++;
+			int j = 3 * this.size++;
+			int[] src = others[min].entries;
+			this.entries[j] = src[i];
+			this.entries[j + 1] = src[i] == PREBUILT ? src[i + 1] + prebuiltOffsets[min] : src[i + 1];
+			this.entries[j + 2] = src[i + 2];
+		}
+		for (EventBuffer other : others) {
+			other.clear();
+		}
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public void clear() {
+		this.size = 0;
+		this.prebuiltEvents.clear();
+	}
+
+	/**
+	 * Creates the events and passes them to the events manager, then clears the buffer.
+	 */
+	public void flush(EventsManager eventsManager, Agent[] agents) {
+		for (int start = 0; start < this.size; start += CHUNK_SIZE) {
+			int end = Math.min(this.size, start + CHUNK_SIZE);
+			// a new array per chunk, the events manager might process the chunk asynchronously.
+			EventArray chunk = new EventArray(end - start);
+			for (int i = start; i < end; i++) {
+				chunk.add(get(i, agents));
+			}
+			eventsManager.processEvents(chunk);
+		}
+		clear();
+	}
+
+	Event get(int index, Agent[] agents) {
+		int agentId = this.entries[3 * index];
+		int eventId = this.entries[3 * index + 1];
+		if (agentId == PREBUILT) {
+			return this.prebuiltEvents.get(eventId);
+		}
+		return agents[agentId].events().createEvent(eventId, this.entries[3 * index + 2]);
+	}
+
+	private void add(int agentId, int eventid, int time) {
+		ensureCapacity(this.size + 1);
+		int j = 3 * this.size++;
+		this.entries[j] = agentId;
+		this.entries[j + 1] = eventid;
+		this.entries[j + 2] = time;
+	}
+
+	private void setKey(long key) {
+		if (this.keys.length < this.size) {
+			this.keys = Arrays.copyOf(this.keys, this.entries.length / 3);
+		}
+		this.keys[this.size - 1] = key;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (3 * capacity > this.entries.length) {
+			this.entries = Arrays.copyOf(this.entries, Math.max(3 * capacity, this.entries.length + this.entries.length / 2));
+		}
+	}
+}
@@ -0,0 +1,342 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.hermes;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.ActivityEndEvent;
+import org.matsim.api.core.v01.events.ActivityStartEvent;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.PersonArrivalEvent;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.events.PersonEntersVehicleEvent;
+import org.matsim.api.core.v01.events.PersonLeavesVehicleEvent;
+import org.matsim.api.core.v01.events.TransitDriverStartsEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.AgentWaitingForPtEvent;
+import org.matsim.core.api.experimental.events.TeleportationArrivalEvent;
+import org.matsim.core.api.experimental.events.VehicleArrivesAtFacilityEvent;
+import org.matsim.core.api.experimental.events.VehicleDepartsAtFacilityEvent;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.pt.transitSchedule.api.Departure;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+import org.matsim.vehicles.Vehicle;
+
+/**
+ * The events an agent will generate while executing its plan. Instead of keeping one {@link Event} object per planned
+ * event (most of which are only needed for a short moment when they are passed to the events manager), the events are
+ * stored as templates in primitive arrays: the indices of the ids an event refers to, with the type of the event kept
+ * in the upper bits of the first one. Strings (activity types and modes) are replaced by indices into a shared string
+ * table, coordinates, distances and scheduled pt times are stored in a separate double array.
+ * <p>
+ * The templates of a type always have the same length, so only the position of every {@code 1 << CHECKPOINT_SHIFT}-th
+ * event is stored and the events in between are found by skipping the templates before them. Once all templates of an
+ * agent are added, {@link #trimToSize()} drops the unused capacity of the arrays.
+ * <p>
+ * The {@link Event} objects are only created by {@link #createEvent(int, int)}, once the time of the event is known and
+ * the event is flushed to the events manager.
+ */
+class EventTemplates {
+
+	static final int ActivityStartType          =  0;
+	static final int ActivityEndType            =  1;
+	static final int PersonDepartureType        =  2;
+	static final int PersonArrivalType          =  3;
+	static final int PersonEntersVehicleType    =  4;
+	static final int PersonLeavesVehicleType    =  5;
+	static final int VehicleEntersTrafficType   =  6;
+	static final int VehicleLeavesTrafficType   =  7;
+	static final int LinkEnterType              =  8;
+	static final int LinkLeaveType              =  9;
+	static final int AgentWaitingForPtType      = 10;
+	static final int TeleportationArrivalType   = 11;
+	static final int TransitDriverStartsType    = 12;
+	static final int VehicleArrivesAtStopType   = 13;
+	static final int VehicleDepartsAtStopType   = 14;
+
+	// Number of ints of the template of each type.
+	private static final int[] LENGTHS = { 5, 4, 3, 3, 2, 2, 4, 4, 2, 2, 3, 3, 5, 3, 3 };
+
+	// The type is stored above the first field of a template, which is the index of a person or a vehicle.
+	private static final int FIELD_BITS = 27;
+	private static final int FIELD_MASK = (1 << FIELD_BITS) - 1;
+
+	private static final int CHECKPOINT_SHIFT = 3;
+	private static final int CHECKPOINT_MASK = (1 << CHECKPOINT_SHIFT) - 1;
+
+	private static final double[] NO_DOUBLES = new double[0];
+
+	private static final int NONE = -1;
+
+	// Strings referenced by the templates of all agents. Agents are generated in parallel, hence the synchronization.
+	private static final Map<String, Integer> stringIndices = new HashMap<>();
+	private static volatile String[] strings = new String[16];
+
+	// Position of the template of every (1 << CHECKPOINT_SHIFT)-th event in data.
+	private int[] checkpoints;
+	// Templates, one after the other: <type|first id> <more ids and string indices, depending on the type>
+	private int[] data;
+	private double[] doubles;
+	private int size;
+	private int dataSize;
+	private int doublesSize;
+
+	EventTemplates() {
+		this.checkpoints = new int[4];
+		this.data = new int[64];
+		this.doubles = NO_DOUBLES;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public int type(int eventid) {
+		return this.data[offset(eventid)] >>> FIELD_BITS;
+	}
+
+	public void clear() {
+		this.size = 0;
+		this.dataSize = 0;
+		this.doublesSize = 0;
+	}
+
+	/**
+	 * Shrinks the arrays to the templates added so far. Templates can still be added afterwards.
+	 */
+	void trimToSize() {
+		this.checkpoints = Arrays.copyOf(this.checkpoints, (this.size + CHECKPOINT_MASK) >> CHECKPOINT_SHIFT);
+		this.data = Arrays.copyOf(this.data, this.dataSize);
+		this.doubles = this.doublesSize == 0 ? NO_DOUBLES : Arrays.copyOf(this.doubles, this.doublesSize);
+	}
+
+	void addActivityStart(Id<Person> person, Id<Link> link, Id<ActivityFacility> facility, String actType, Coord coord) {
+		int coordIndex = NONE;
+		if (coord != null) {
+			coordIndex = addDouble(coord.getX());
+			addDouble(coord.getY());
+		}
+		add(ActivityStartType, person.index(), link.index(), index(facility), stringIndex(actType), coordIndex);
+	}
+
+	void addActivityEnd(Id<Person> person, Id<Link> link, Id<ActivityFacility> facility, String actType) {
+		add(ActivityEndType, person.index(), link.index(), index(facility), stringIndex(actType));
+	}
+
+	void addPersonDeparture(Id<Person> person, Id<Link> link, String mode) {
+		add(PersonDepartureType, person.index(), link.index(), stringIndex(mode));
+	}
+
+	void addPersonArrival(Id<Person> person, Id<Link> link, String mode) {
+		add(PersonArrivalType, person.index(), link.index(), stringIndex(mode));
+	}
+
+	void addPersonEntersVehicle(Id<Person> person, Id<Vehicle> vehicle) {
+		add(PersonEntersVehicleType, person.index(), vehicle.index());
+	}
+
+	void addPersonLeavesVehicle(Id<Person> person, Id<Vehicle> vehicle) {
+		add(PersonLeavesVehicleType, person.index(), vehicle.index());
+	}
+
+	void addVehicleEntersTraffic(Id<Person> person, Id<Link> link, Id<Vehicle> vehicle, String mode) {
+		add(VehicleEntersTrafficType, person.index(), link.index(), vehicle.index(), stringIndex(mode));
+	}
+
+	void addVehicleLeavesTraffic(Id<Person> person, Id<Link> link, Id<Vehicle> vehicle, String mode) {
+		add(VehicleLeavesTrafficType, person.index(), link.index(), vehicle.index(), stringIndex(mode));
+	}
+
+	void addLinkEnter(Id<Vehicle> vehicle, Id<Link> link) {
+		add(LinkEnterType, vehicle.index(), link.index());
+	}
+
+	void addLinkLeave(Id<Vehicle> vehicle, Id<Link> link) {
+		add(LinkLeaveType, vehicle.index(), link.index());
+	}
+
+	void addAgentWaitingForPt(Id<Person> person, Id<TransitStopFacility> access, Id<TransitStopFacility> egress) {
+		add(AgentWaitingForPtType, person.index(), access.index(), egress.index());
+	}
+
+	void addTeleportationArrival(Id<Person> person, double distance, String mode) {
+		add(TeleportationArrivalType, person.index(), stringIndex(mode), addDouble(distance));
+	}
+
+	void addTransitDriverStarts(Id<Person> driver, Id<Vehicle> vehicle, Id<TransitLine> line, Id<TransitRoute> route, Id<Departure> departure) {
+		add(TransitDriverStartsType, driver.index(), vehicle.index(), line.index(), route.index(), departure.index());
+	}
+
+	/**
+	 * @param scheduledTime the time the vehicle is scheduled to arrive at the stop, used to compute the delay.
+	 */
+	void addVehicleArrivesAtStop(Id<Vehicle> vehicle, Id<TransitStopFacility> stop, double scheduledTime) {
+		add(VehicleArrivesAtStopType, vehicle.index(), stop.index(), addDouble(scheduledTime));
+	}
+
+	/**
+	 * @param scheduledTime the time the vehicle is scheduled to depart from the stop, used to compute the delay.
+	 */
+	void addVehicleDepartsAtStop(Id<Vehicle> vehicle, Id<TransitStopFacility> stop, double scheduledTime) {
+		add(VehicleDepartsAtStopType, vehicle.index(), stop.index(), addDouble(scheduledTime));
+	}
+
+	/**
+	 * Sets the vehicle of a {@link PersonEntersVehicleEvent} or {@link PersonLeavesVehicleEvent}, which is only known
+	 * during the simulation for pt passengers.
+	 */
+	void setVehicle(int eventid, Id<Vehicle> vehicle) {
+		int offset = offset(eventid);
+		int type = this.data[offset] >>> FIELD_BITS;
+		if (type != PersonEntersVehicleType && type != PersonLeavesVehicleType) {
+			throw new RuntimeException(String.format("vehicle id could not be set for event: %d", eventid));
+		}
+		this.data[offset + 1] = vehicle.index();
+	}
+
+	Event createEvent(int eventid, int time) {
+		int o = offset(eventid);
+		int[] d = this.data;
+		int first = d[o] & FIELD_MASK;
+		switch (d[o] >>> FIELD_BITS) {
+			case ActivityStartType: {
+				Coord coord = d[o + 4] == NONE ? null : new Coord(this.doubles[d[o + 4]], this.doubles[d[o + 4] + 1]);
+				return new ActivityStartEvent(time, Id.get(first, Person.class), Id.get(d[o + 1], Link.class),
+						id(d[o + 2], ActivityFacility.class), string(d[o + 3]), coord);
+			}
+			case ActivityEndType:
+				return new ActivityEndEvent(time, Id.get(first, Person.class), Id.get(d[o + 1], Link.class),
+						id(d[o + 2], ActivityFacility.class), string(d[o + 3]));
+			case PersonDepartureType:
+				return new PersonDepartureEvent(time, Id.get(first, Person.class), Id.get(d[o + 1], Link.class), string(d[o + 2]));
+			case PersonArrivalType:
+				return new PersonArrivalEvent(time, Id.get(first, Person.class), Id.get(d[o + 1], Link.class), string(d[o + 2]));
+			case PersonEntersVehicleType:
+				return new PersonEntersVehicleEvent(time, Id.get(first, Person.class), Id.get(d[o + 1], Vehicle.class));
+			case PersonLeavesVehicleType:
+				return new PersonLeavesVehicleEvent(time, Id.get(first, Person.class), Id.get(d[o + 1], Vehicle.class));
+			case VehicleEntersTrafficType:
+				return new VehicleEntersTrafficEvent(time, Id.get(first, Person.class), Id.get(d[o + 1], Link.class),
+						Id.get(d[o + 2], Vehicle.class), string(d[o + 3]), 1);
+			case VehicleLeavesTrafficType:
+				return new VehicleLeavesTrafficEvent(time, Id.get(first, Person.class), Id.get(d[o + 1], Link.class),
+						Id.get(d[o + 2], Vehicle.class), string(d[o + 3]), 1);
+			case LinkEnterType:
+				return new LinkEnterEvent(time, Id.get(first, Vehicle.class), Id.get(d[o + 1], Link.class));
+			case LinkLeaveType:
+				return new LinkLeaveEvent(time, Id.get(first, Vehicle.class), Id.get(d[o + 1], Link.class));
+			case AgentWaitingForPtType:
+				return new AgentWaitingForPtEvent(time, Id.get(first, Person.class),
+						Id.get(d[o + 1], TransitStopFacility.class), Id.get(d[o + 2], TransitStopFacility.class));
+			case TeleportationArrivalType:
+				return new TeleportationArrivalEvent(time, Id.get(first, Person.class), this.doubles[d[o + 2]], string(d[o + 1]));
+			case TransitDriverStartsType:
+				return new TransitDriverStartsEvent(time, Id.get(first, Person.class), Id.get(d[o + 1], Vehicle.class),
+						Id.get(d[o + 2], TransitLine.class), Id.get(d[o + 3], TransitRoute.class), Id.get(d[o + 4], Departure.class));
+			case VehicleArrivesAtStopType:
+				return new VehicleArrivesAtFacilityEvent(time, Id.get(first, Vehicle.class),
+						Id.get(d[o + 1], TransitStopFacility.class), time - this.doubles[d[o + 2]]);
+			case VehicleDepartsAtStopType:
+				return new VehicleDepartsAtFacilityEvent(time, Id.get(first, Vehicle.class),
+						Id.get(d[o + 1], TransitStopFacility.class), time - this.doubles[d[o + 2]]);
+			default:
+				throw new RuntimeException(String.format("unknown event template type %d, event %d", d[o] >>> FIELD_BITS, eventid));
+		}
+	}
+
+	private int offset(int eventid) {
+		int offset = this.checkpoints[eventid >> CHECKPOINT_SHIFT];
+		for (int i = eventid & ~CHECKPOINT_MASK; i < eventid; i++) {
+			offset += LENGTHS[this.data[offset] >>> FIELD_BITS];
+		}
+		return offset;
+	}
+
+	private void add(int type, int... fields) {
+		if (fields[0] < 0 || fields[0] > FIELD_MASK) {
+			throw new RuntimeException(String.format("Hermes supports ids with an index of at most %d, got %d", FIELD_MASK, fields[0]));
+		}
+		if ((this.size & CHECKPOINT_MASK) == 0) {
+			int checkpoint = this.size >> CHECKPOINT_SHIFT;
+			if (checkpoint == this.checkpoints.length) {
+				this.checkpoints = Arrays.copyOf(this.checkpoints, Math.max(4, this.checkpoints.length * 2));
+			}
+			this.checkpoints[checkpoint] = this.dataSize;
+		}
+		if (this.dataSize + fields.length > this.data.length) {
+			this.data = Arrays.copyOf(this.data, Math.max(this.data.length * 2, this.dataSize + fields.length));
+		}
+		this.data[this.dataSize] = (type << FIELD_BITS) | fields[0];
+		System.arraycopy(fields, 1, this.data, this.dataSize + 1, fields.length - 1);
+		this.dataSize += fields.length;
+		this.size++;
+	}
+
+	private int addDouble(double value) {
+		if (this.doublesSize == this.doubles.length) {
+			this.doubles = Arrays.copyOf(this.doubles, Math.max(4, this.doubles.length * 2));
+		}
+		this.doubles[this.doublesSize] = value;
+		return this.doublesSize++;
+	}
+
+	private static int index(Id<?> id) {
+		return id == null ? NONE : id.index();
+	}
+
+	private static <T> Id<T> id(int index, Class<T> type) {
+		return index == NONE ? null : Id.get(index, type);
+	}
+
+	private static int stringIndex(String string) {
+		if (string == null) {
+			return NONE;
+		}
+		synchronized (stringIndices) {
+			Integer index = stringIndices.get(string);
+			if (index == null) {
+				index = stringIndices.size();
+				String[] table = strings;
+				if (index == table.length) {
+					table = Arrays.copyOf(table, table.length * 2);
+				}
+				table[index] = string;
+				strings = table;
+				stringIndices.put(string, index);
+			}
+			return index;
+		}
+	}
+
+	private static String string(int index) {
+		return index == NONE ? null : strings[index];
+	}
+}
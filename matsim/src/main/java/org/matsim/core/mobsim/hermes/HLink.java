@@ -153,6 +153,12 @@ class HLink {
     private int nextFreeFlowSlot;
 	private int lastPush;
 	private final int stuckTimePeriod;
+	// Position of the link in the wakeup queue it is in, only used with several realms (see Realm).
+	long wakeupKey;
+	// With several realms: in timestep blockedTimestep, the link is used by work that is processed sequentially, so all
+	// work that is processed after blockedFrom must not touch the link before that.
+	private int blockedTimestep = -1;
+	private long blockedFrom;
 
     public HLink(int id, int capacity, int length, int velocity,  float flowCapacityperSecond, int stuckTimePeriod) {
         this.id = id;
@@ -179,7 +185,7 @@ class HLink {
 		this.lastUpdate = 0;
 		this.currentCapacity = initialCapacity;
 		this.flowLeftInTimestep = flowCapacityPerS;
-
+		this.blockedTimestep = -1;
 	}
 
 	public boolean push(Agent agent, int timestep, float storageCapacityPCU) {
@@ -241,6 +247,21 @@ class HLink {
     	}
     }
 
+    /**
+     * Returns true if work with the given position in the processing order of the timestep must not touch this link
+     * because work processed before it (in the sequential phase) uses the link. Positions are compared unsigned.
+     */
+    boolean isBlocked(int timestep, long position) {
+        return blockedTimestep == timestep && Long.compareUnsigned(blockedFrom, position) < 0;
+    }
+
+    void block(int timestep, long position) {
+        if (blockedTimestep != timestep || Long.compareUnsigned(position, blockedFrom) < 0) {
+            blockedTimestep = timestep;
+            blockedFrom = position;
+        }
+    }
+
     public int velocity() {
         return this.velocity;
     }
@@ -30,7 +30,8 @@ import org.matsim.core.mobsim.framework.Mobsim;
 final class Hermes implements Mobsim {
 
 	final private static Logger log = Logger.getLogger(Hermes.class);
-	private Realm realm;
+	private Realm[] realms;
+	private EventBuffer sortedEvents;
 	private Agent[] agents;
 	private ScenarioImporter si;
 	private final Scenario scenario;
@@ -44,12 +45,12 @@ final class Hermes implements Mobsim {
 	private void importScenario() throws Exception {
 		si = ScenarioImporter.instance(scenario, eventsManager);
 		si.generate();
-		this.realm = si.realm;
+		this.realms = si.realms;
 		this.agents = si.hermes_agents;
 	}
 
 	private void processEvents() {
-        eventsManager.processEvents(realm.getSortedEvents());
+		sortedEvents.flush(eventsManager, agents);
 
 		for (Agent agent : agents) {
 			if (agent != null && !agent.finished() && !agent.isTransitVehicle()) {
@@ -72,9 +73,16 @@ final class Hermes implements Mobsim {
 			eventsManager.initProcessing();
 
 			time = System.currentTimeMillis();
-			realm.run();
+			if (realms.length == 1) {
+				realms[0].run();
+				sortedEvents = realms[0].getSortedEvents();
+			} else {
+				RealmScheduler scheduler = new RealmScheduler(realms, eventsManager, agents);
+				scheduler.run();
+				sortedEvents = scheduler.getSortedEvents();
+			}
 			log.info(String.format(
-					"Hermes took %d ms", System.currentTimeMillis() - time));
+					"Hermes took %d ms (%d realms)", System.currentTimeMillis() - time, realms.length));
 
 			time = System.currentTimeMillis();
 			processEvents();
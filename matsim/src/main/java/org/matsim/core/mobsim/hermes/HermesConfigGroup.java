@@ -43,6 +43,10 @@ public final class HermesConfigGroup extends ReflectiveConfigGroup {
     public static final int MAX_EVENTS_AGENT = 65536;
 
     private static final String DETPT = "useDeterministicPt";
+    private static final String REALMS = "numberOfRealms";
+    private static final String REALMSDESC = "Number of realms the network is split into. Each realm is simulated by its own thread."
+            + " Agents crossing realm boundaries and pt boarding are synchronized after every simulated second."
+            + " The events are the same for any number of realms.";
 
     // Number of simulation steps
     public static int SIM_STEPS = 30 * 60 * 60;
@@ -74,6 +78,9 @@ public final class HermesConfigGroup extends ReflectiveConfigGroup {
     @Positive
     private int stuckTime = 10;
 
+    @Positive
+    private int numberOfRealms = 1;
+
     public Set<String> getMainModes() {
         return mainModes;
     }
@@ -120,6 +127,16 @@ public final class HermesConfigGroup extends ReflectiveConfigGroup {
         this.stuckTime = stuckTime;
     }
 
+    @StringGetter(REALMS)
+    public int getNumberOfRealms() {
+        return numberOfRealms;
+    }
+
+    @StringSetter(REALMS)
+    public void setNumberOfRealms(int numberOfRealms) {
+        this.numberOfRealms = numberOfRealms;
+    }
+
     @StringSetter(FLOW_CAPACITY_FACTOR)
     public void setFlowCapacityFactor(double flowCapacityFactor) {
         this.flowCapacityFactor = flowCapacityFactor;
@@ -156,6 +173,7 @@ public final class HermesConfigGroup extends ReflectiveConfigGroup {
         comments.put(END_TIME, "Simulation End Time");
         comments.put(STUCKTIMEPARAM, STUCKTIMEPARAMDESC);
         comments.put(DETPT, DETPTDESC);
+        comments.put(REALMS, REALMSDESC);
         return comments;
     }
 
@@ -21,14 +21,8 @@ package org.matsim.core.mobsim.hermes;
 import org.apache.log4j.Logger;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.IdMap;
-import org.matsim.api.core.v01.events.ActivityEndEvent;
 import org.matsim.api.core.v01.events.Event;
-import org.matsim.api.core.v01.events.PersonEntersVehicleEvent;
-import org.matsim.api.core.v01.events.PersonLeavesVehicleEvent;
 import org.matsim.core.api.experimental.events.EventsManager;
-import org.matsim.core.api.experimental.events.VehicleArrivesAtFacilityEvent;
-import org.matsim.core.api.experimental.events.VehicleDepartsAtFacilityEvent;
-import org.matsim.core.events.EventArray;
 import org.matsim.core.events.ParallelEventsManager;
 import org.matsim.core.utils.collections.IntArrayMap;
 import org.matsim.core.utils.misc.Time;
@@ -37,8 +31,26 @@ import org.matsim.vehicles.Vehicle;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.ToLongFunction;
 
 class Realm {
+    // With several realms, the work of all realms is done in the order of a single realm, so that the simulation and
+    // its events do not depend on the number of realms. A single realm processes the agents and then the links waking
+    // up in a timestep in the order in which they were put into the wakeup queues. This order is recorded in wakeup keys:
+    // <timestep of scheduling + 1> <phase> <rank> <step>, where rank is the position of the scheduling agent or link
+    // within its phase of that timestep and step counts the schedulings and events of that agent or link. Events are
+    // tagged with the lower part of the key, their position within the timestep.
+    static final int AGENT_PHASE = 0;
+    static final int PT_PHASE = 1;
+    static final int LINK_PHASE = 2;
+    private static final int STEP_BITS = 16;
+    private static final int RANK_BITS = 25;
+    private static final int POSITION_BITS = 2 + RANK_BITS + STEP_BITS;
+    // Last timestep that fits into a wakeup key.
+    static final int MAX_KEYED_TIMESTEP = (1 << (63 - POSITION_BITS)) - 2;
+
 	private final ScenarioImporter si;
     // Global array of links.
     // Note: the id of the link is its index in the array.
@@ -56,15 +68,45 @@ class Realm {
     // line id of a particular route
     private final int[] line_of_route;
     // queue of sorted events by time
-    private EventArray sorted_events;
+    private EventBuffer sorted_events;
     // MATSim event manager.
     private final EventsManager eventsManager;
     // Current timestamp
     private int secs;
+    // Index of this realm and realm index of each link (by link id). The latter is null if there is only one realm.
+    private final int realmId;
+    private final int[] realm_of_link;
+    // All realms of the simulation (including this one), used to hand over links owned by other realms.
+    private Realm[] realms;
+    // Agents and links that need to access state owned by other realms (links of other realms or pt stops), or links
+    // used by such work. These are processed sequentially after all realms finished the current timestamp.
+    private final ArrayList<DeferredStep> deferred = new ArrayList<>();
+    // True if this realm is allowed to touch state owned by other realms.
+    private boolean exclusive;
+    // With several realms: the agents and links of the current timestamp in processing order.
+    private final StepQueue<Agent> stepAgents = new StepQueue<>();
+    private final StepQueue<HLink> stepLinks = new StepQueue<>();
+    // With several realms: links of other realms that may be entered from this realm in the current timestamp, together
+    // with the processing order of the agent or link entering them.
+    private int[] claimedLinks = new int[16];
+    private long[] claimOrders = new long[16];
+    private int claims;
+    // With several realms: the agent or link that is currently processed.
+    private int currentPhase;
+    private int currentRank;
+    private int currentStep;
+    private long currentOrder;
     Logger log = Logger.getLogger(Realm.class);
 
     public Realm(ScenarioImporter scenario, EventsManager eventsManager) throws Exception {
+        this(scenario, eventsManager, 0, null);
+    }
+
+    public Realm(ScenarioImporter scenario, EventsManager eventsManager, int realmId, int[] realm_of_link) throws Exception {
     	this.si = scenario;
+        this.realmId = realmId;
+        this.realm_of_link = realm_of_link;
+        this.exclusive = realm_of_link == null;
         this.links = scenario.hermes_links;
         // The plus one is necessary because we peek into the next slot on each tick.
         this.delayedLinksByWakeupTime = new ArrayList<>();
@@ -72,16 +114,29 @@ class Realm {
         this.agent_stops = scenario.agent_stops;
         this.route_stops_by_route_no = scenario.route_stops_by_route_no;
         this.line_of_route = scenario.line_of_route;
-        this.sorted_events = new EventArray();
+        this.sorted_events = new EventBuffer();
         this.eventsManager = eventsManager;
 
 	// the last position is to store events that will not happen...
+        // Queues are only created on demand as there is one set of queues per realm.
         for (int i = 0; i <= HermesConfigGroup.SIM_STEPS + 1; i++) {
-            delayedLinksByWakeupTime.add(new ArrayDeque<>());
-            delayedAgentsByWakeupTime.add(new ArrayDeque<>());
+            delayedLinksByWakeupTime.add(null);
+            delayedAgentsByWakeupTime.add(null);
         }
     }
 
+    void setRealms(Realm[] realms) {
+        this.realms = realms;
+    }
+
+    int realmId() {
+        return this.realmId;
+    }
+
+    private Realm realmOf(HLink link) {
+        return realm_of_link == null ? this : realms[realm_of_link[link.id()]];
+    }
+
     public void log(int time, String s) {
         if (HermesConfigGroup.DEBUG_REALMS) {
             log.debug(String.format("Hermes [ time = %d ] %s", time, s));
@@ -90,13 +145,139 @@ class Realm {
 
     private void add_delayed_agent(Agent agent, int until) {
         if (HermesConfigGroup.DEBUG_REALMS) log(secs, String.format("agent %d delayed until %d", agent.id, until));
-        delayedAgentsByWakeupTime.get(Math.min(until, HermesConfigGroup.SIM_STEPS + 1)).add(agent);
+        if (realm_of_link != null) {
+            agent.wakeupKey = nextWakeupKey();
+        }
+        wakeupQueue(delayedAgentsByWakeupTime, until).add(agent);
     }
 
     private void add_delayed_link(HLink link, int until) {
         if (HermesConfigGroup.DEBUG_REALMS)
             log(secs, String.format("link %d delayed until %d size %d peek agent %d", link.id(), until, link.queue().size(), link.queue().peek().id));
-        delayedLinksByWakeupTime.get(Math.min(until, HermesConfigGroup.SIM_STEPS + 1)).add(link);
+        if (realm_of_link != null) {
+            link.wakeupKey = nextWakeupKey();
+        }
+        // Links are always woken up by the realm that owns them.
+        wakeupQueue(realmOf(link).delayedLinksByWakeupTime, until).add(link);
+    }
+
+    /**
+     * Schedules an agent before the simulation starts. Agents must be scheduled in the order of their ids.
+     */
+    void scheduleAgent(Agent agent, int until) {
+        agent.wakeupKey = agent.id;
+        wakeupQueue(delayedAgentsByWakeupTime, until).add(agent);
+    }
+
+    /**
+     * Schedules a link before the simulation starts. Links must be scheduled in the order of their ids.
+     */
+    void scheduleLink(HLink link, int until) {
+        link.wakeupKey = link.id();
+        wakeupQueue(delayedLinksByWakeupTime, until).add(link);
+    }
+
+    // Position of the next event or scheduling of the current agent or link within the timestamp.
+    private long nextPosition() {
+        if (currentStep == 1 << STEP_BITS) {
+            throw new RuntimeException(String.format(
+                    "Hermes: more than %d events of one agent or link in one timestep, use a single realm", 1 << STEP_BITS));
+        }
+        return ((long) currentPhase << (RANK_BITS + STEP_BITS)) | ((long) currentRank << STEP_BITS) | currentStep++;
+    }
+
+    private long nextWakeupKey() {
+        return ((long) (secs + 1) << POSITION_BITS) | nextPosition();
+    }
+
+    // Processing order of an agent or link within a timestamp, to be compared unsigned: agents before links.
+    private static long order(int phase, long wakeupKey) {
+        return phase == LINK_PHASE ? wakeupKey | Long.MIN_VALUE : wakeupKey;
+    }
+
+    private void startStep(int phase, int rank, long wakeupKey) {
+        currentPhase = phase;
+        currentRank = rank;
+        currentStep = 0;
+        currentOrder = order(phase, wakeupKey);
+    }
+
+    private static <T> ArrayDeque<T> wakeupQueue(ArrayList<ArrayDeque<T>> queues, int until) {
+        int slot = Math.min(until, HermesConfigGroup.SIM_STEPS + 1);
+        ArrayDeque<T> queue = queues.get(slot);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            queues.set(slot, queue);
+        }
+        return queue;
+    }
+
+    /**
+     * Returns true if the next step of the agent touches state owned by other realms. This is the case if the agent
+     * enters a link owned by another realm or if it interacts with the (shared) agents waiting in pt stops. It is also
+     * the case if the agent enters a link that is used by work that comes before it and is processed sequentially.
+     */
+    private boolean requiresExclusiveAccess(Agent agent) {
+        if (exclusive || agent.finished()) {
+            return false;
+        }
+        long planentry = agent.nextPlan();
+        switch (Agent.getPlanHeader(planentry)) {
+            case Agent.LinkType:
+                int linkid = Agent.getLinkPlanEntry(planentry);
+                return realm_of_link[linkid] != realmId || links[linkid].isBlocked(secs, currentOrder);
+            case Agent.WaitType:
+            case Agent.StopDepartType:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Link that the agent enters in its next step, -1 if the next step does not enter a link.
+    private static int nextLinkOf(Agent agent) {
+        if (agent.finished()) {
+            return -1;
+        }
+        long planentry = agent.nextPlan();
+        return Agent.getPlanHeader(planentry) == Agent.LinkType ? Agent.getLinkPlanEntry(planentry) : -1;
+    }
+
+    /**
+     * Defers the rest of the current agent (if link is null) or link to the sequential phase. The links of this realm
+     * that it may still use are blocked for all work that comes after it in this timestamp.
+     */
+    private void defer(Agent agent, HLink link) {
+        deferred.add(new DeferredStep(agent, link, currentPhase, currentRank, currentStep, currentOrder));
+        if (link == null) {
+            blockOwnLink(nextLinkOf(agent));
+        } else {
+            blockOwnLink(link.id());
+            for (Agent waiting : link.queue()) {
+                if (waiting.linkFinishTime > secs) {
+                    break;
+                }
+                blockOwnLink(nextLinkOf(waiting));
+            }
+        }
+    }
+
+    private void blockOwnLink(int linkid) {
+        if (linkid >= 0 && realm_of_link[linkid] == realmId) {
+            links[linkid].block(secs, currentOrder);
+        }
+    }
+
+    private void claimLinkOfOtherRealm(Agent agent, long order) {
+        int linkid = nextLinkOf(agent);
+        if (linkid >= 0 && realm_of_link[linkid] != realmId) {
+            if (claims == claimedLinks.length) {
+                claimedLinks = Arrays.copyOf(claimedLinks, 2 * claims);
+                claimOrders = Arrays.copyOf(claimOrders, 2 * claims);
+            }
+            claimedLinks[claims] = linkid;
+            claimOrders[claims++] = order;
+        }
     }
 
     private void advanceAgentandSetEventTime(Agent agent) {
@@ -274,6 +455,10 @@ class Realm {
     }
 
     protected int processAgentActivities(Agent agent) {
+        if (requiresExclusiveAccess(agent)) {
+            defer(agent, null);
+            return 0;
+        }
         boolean finished = agent.finished();
         // if finished, install times on last event.
         if (finished) {
@@ -289,8 +474,21 @@ class Realm {
 
     protected int processLinks(HLink link) {
         int routed = 0;
+        if (!exclusive && link.isBlocked(secs, currentOrder)) {
+            // the link is used by sequentially processed work that comes before it.
+            defer(null, link);
+            return routed;
+        }
         Agent agent = link.queue().peek();
-        while (agent.linkFinishTime <= secs && link.flow(secs, agent.getFlowCapacityPCUE())) {
+        while (agent.linkFinishTime <= secs) {
+            if (requiresExclusiveAccess(agent)) {
+                // the remaining agents on this link are processed once all realms are done with this timestamp.
+                defer(null, link);
+                return routed;
+            }
+            if (!link.flow(secs, agent.getFlowCapacityPCUE())) {
+                break;
+            }
             boolean finished = agent.finished();
             // if finished, install times on last event.
             if (finished) {
@@ -316,15 +514,30 @@ class Realm {
     }
 
     public void run() throws Exception {
-    	int routed = 0;
-        Agent agent = null;
-        HLink link = null;
-
         while (secs != HermesConfigGroup.SIM_STEPS) {
             if (secs % 3600 == 0) {
                 log.info("Hermes running at " + Time.writeTime(secs));
             }
-            while ((agent = delayedAgentsByWakeupTime.get(secs).poll()) != null) {
+            processTimestep(secs);
+            if (HermesConfigGroup.CONCURRENT_EVENT_PROCESSING && secs % 3600 == 0 && sorted_events.size() > 0) {
+                sorted_events.flush(eventsManager, si.hermes_agents);
+            }
+            secs += 1;
+        }
+    }
+
+    /**
+     * Processes all agents and links that wake up at the given timestamp if there is only one realm.
+     */
+    void processTimestep(int time) {
+        int routed = 0;
+        Agent agent = null;
+        HLink link = null;
+        this.secs = time;
+
+        ArrayDeque<Agent> agents = delayedAgentsByWakeupTime.get(secs);
+        if (agents != null) {
+            while ((agent = agents.poll()) != null) {
                 if (HermesConfigGroup.DEBUG_REALMS) {
                     log(secs, String.format("Processing agent %d", agent.id));
                 }
@@ -332,78 +545,241 @@ class Realm {
 
             }
             delayedAgentsByWakeupTime.set(secs, null);
-            if (si.isDeterministicPt()) {
-                for (Event e : si.getDeterministicPtEvents().get(secs)) {
-                    sorted_events.add(e);
-                }
-                si.getDeterministicPtEvents().get(secs).clear();
+        }
+        if (si.isDeterministicPt() && realmId == 0) {
+            // the precomputed events are kept for the next iterations.
+            for (Event e : si.getDeterministicPtEvents().get(secs)) {
+                sorted_events.add(e);
             }
+        }
 
-            while ((link = delayedLinksByWakeupTime.get(secs).poll()) != null) {
+        ArrayDeque<HLink> links = delayedLinksByWakeupTime.get(secs);
+        if (links != null) {
+            while ((link = links.poll()) != null) {
                 if (HermesConfigGroup.DEBUG_REALMS) {
                     log(secs, String.format("Processing link %d", link.id()));
                 }
                 routed += processLinks(link);
             }
             delayedLinksByWakeupTime.set(secs, null);
-            if (HermesConfigGroup.DEBUG_REALMS && routed > 0) {
-                log(secs, String.format("Processed %d agents", routed));
+        }
+        if (HermesConfigGroup.DEBUG_REALMS && routed > 0) {
+            log(secs, String.format("Processed %d agents", routed));
+        }
+    }
+
+    /**
+     * With several realms: takes the agents and links of this realm that wake up at the given timestamp and records the
+     * links of other realms they may enter. All realms must be prepared before {@link #processPreparedTimestep()}.
+     */
+    void prepareTimestep(int time) {
+        this.secs = time;
+        stepAgents.fill(delayedAgentsByWakeupTime.get(secs), agent -> agent.wakeupKey);
+        stepLinks.fill(delayedLinksByWakeupTime.get(secs), link -> link.wakeupKey);
+        delayedAgentsByWakeupTime.set(secs, null);
+        delayedLinksByWakeupTime.set(secs, null);
+
+        claims = 0;
+        for (int i = 0; i < stepAgents.size; i++) {
+            claimLinkOfOtherRealm(stepAgents.get(i), order(AGENT_PHASE, stepAgents.keys[i]));
+        }
+        for (int i = 0; i < stepLinks.size; i++) {
+            long order = order(LINK_PHASE, stepLinks.keys[i]);
+            // only the agents at the head of the link that are ready to leave can be processed.
+            for (Agent agent : stepLinks.get(i).queue()) {
+                if (agent.linkFinishTime > secs) {
+                    break;
+                }
+                claimLinkOfOtherRealm(agent, order);
             }
-            if (HermesConfigGroup.CONCURRENT_EVENT_PROCESSING && secs % 3600 == 0 && sorted_events.size() > 0) {
-                eventsManager.processEvents(sorted_events);
-                sorted_events = new EventArray();
+        }
+    }
+
+    /**
+     * With several realms: processes the prepared agents and links in the order of a single realm. Work that touches
+     * other realms, and work that touches links used by such work before it, is deferred until
+     * {@link #processDeferred(Realm[], EventBuffer)} is called.
+     */
+    void processPreparedTimestep() {
+        StepQueue<?>[] agentQueues = new StepQueue<?>[realms.length];
+        StepQueue<?>[] linkQueues = new StepQueue<?>[realms.length];
+        for (int i = 0; i < realms.length; i++) {
+            agentQueues[i] = realms[i].stepAgents;
+            linkQueues[i] = realms[i].stepLinks;
+        }
+        stepAgents.rank(agentQueues);
+        stepLinks.rank(linkQueues);
+
+        // links of this realm that other realms enter are processed sequentially from the first agent or link entering them.
+        for (Realm other : realms) {
+            for (int i = 0; i < other.claims; i++) {
+                int linkid = other.claimedLinks[i];
+                if (realm_of_link[linkid] == realmId) {
+                    links[linkid].block(secs, other.claimOrders[i]);
+                }
             }
+        }
 
-            routed = 0;
-            secs += 1;
+        for (int i = 0; i < stepAgents.size; i++) {
+            startStep(AGENT_PHASE, stepAgents.ranks[i], stepAgents.keys[i]);
+            processAgentActivities(stepAgents.get(i));
+        }
+        if (si.isDeterministicPt() && realmId == 0) {
+            startStep(PT_PHASE, 0, 0);
+            for (Event e : si.getDeterministicPtEvents().get(secs)) {
+                sorted_events.add(e, nextPosition());
+            }
+        }
+        for (int i = 0; i < stepLinks.size; i++) {
+            startStep(LINK_PHASE, stepLinks.ranks[i], stepLinks.keys[i]);
+            processLinks(stepLinks.get(i));
+        }
+    }
+
+    /**
+     * Processes the agents and links that the realms deferred in {@link #processPreparedTimestep()}, in the order of a
+     * single realm, and adds their events to the given buffer. Must only be called while no realm is running.
+     */
+    static void processDeferred(Realm[] realms, EventBuffer events) {
+        int[] next = new int[realms.length];
+        while (true) {
+            int first = -1;
+            for (int i = 0; i < realms.length; i++) {
+                if (next[i] < realms[i].deferred.size() && (first < 0 || Long.compareUnsigned(
+                        realms[i].deferred.get(next[i]).order, realms[first].deferred.get(next[first]).order) < 0)) {
+                    first = i;
+                }
+            }
+            if (first < 0) {
+                break;
+            }
+            realms[first].processDeferred(realms[first].deferred.get(next[first]++), events);
+        }
+        for (Realm realm : realms) {
+            realm.deferred.clear();
+        }
+    }
+
+    private void processDeferred(DeferredStep step, EventBuffer events) {
+        EventBuffer realmEvents = sorted_events;
+        sorted_events = events;
+        exclusive = true;
+        currentPhase = step.phase;
+        currentRank = step.rank;
+        currentStep = step.step;
+        currentOrder = step.order;
+        if (step.link == null) {
+            processAgentActivities(step.agent);
+        } else {
+            processLinks(step.link);
         }
+        exclusive = false;
+        sorted_events = realmEvents;
     }
 
     public void setEventTime(Agent agent, int eventid, int time, boolean lastevent) {
         if (eventid != 0) {
-        	EventArray agentevents = agent.events();
-            Event event = agentevents.get(eventid);
+            EventTemplates agentevents = agent.events();
+            // This drops the actend that is not issued by QSim.
+            boolean dropLast = lastevent && agentevents.type(eventid) == EventTemplates.ActivityEndType;
 
             for (; agent.eventsIndex <= eventid; agent.eventsIndex++) {
-            	agentevents.get(agent.eventsIndex).setTime(time);
                 if (HermesConfigGroup.DEBUG_REALMS)
-                    log(secs, String.format("agent %d setEventTime (eventsIndex=%d) %s", agent.id, agent.eventsIndex, agentevents.get(agent.eventsIndex).toString()));
-                sorted_events.add(agentevents.get(agent.eventsIndex));
-            }
-
-            // Fix delay for PT events.
-            if (event instanceof VehicleArrivesAtFacilityEvent) {
-                VehicleArrivesAtFacilityEvent vaafe = (VehicleArrivesAtFacilityEvent) event;
-                vaafe.setDelay(vaafe.getTime() - vaafe.getDelay());
-
+                    log(secs, String.format("agent %d setEventTime (eventsIndex=%d) %s", agent.id, agent.eventsIndex, agentevents.createEvent(agent.eventsIndex, time).toString()));
+                if (agent.eventsIndex != eventid || !dropLast) {
+                    if (realm_of_link == null) {
+                        sorted_events.add(agent, agent.eventsIndex, time);
+                    } else {
+                        sorted_events.add(agent, agent.eventsIndex, time, nextPosition());
+                    }
+                }
             }
-            else if (event instanceof VehicleDepartsAtFacilityEvent) {
-			    VehicleDepartsAtFacilityEvent vdafe = (VehicleDepartsAtFacilityEvent) event;
-			    vdafe.setDelay(vdafe.getTime() - vdafe.getDelay());
-		    }
-		    // This removes actend that is not issued by QSim.
-		    else if (lastevent && event instanceof ActivityEndEvent) {
-		        sorted_events.removeLast();
-		    }
         }
     }
 
     public void setEventVehicle(Agent agent, int eventid, int vehicleid) {
         if (eventid != 0) {
-            Event event = agent.events().get(eventid);
-            Id<Vehicle> vid = Id.get(si.matsim_id(vehicleid,  true), Vehicle.class);
-            if (event instanceof PersonEntersVehicleEvent) {
-                ((PersonEntersVehicleEvent)event).setVehicleId(vid);
-            } else if (event instanceof PersonLeavesVehicleEvent) {
-                ((PersonLeavesVehicleEvent)event).setVehicleId(vid);
-            } else {
-                throw new RuntimeException(
-                    String.format("vehicle id could not be set for event: %d", eventid));
-            }
+            agent.events().setVehicle(eventid, Id.get(si.matsim_id(vehicleid, true), Vehicle.class));
+        }
+    }
+
+    EventBuffer getSortedEvents() { return this.sorted_events; }
+
+    /**
+     * Agent or link whose processing was deferred to the sequential phase, with its position in the processing order.
+     */
+    private static final class DeferredStep {
+        final Agent agent;
+        final HLink link;
+        final int phase;
+        final int rank;
+        final int step;
+        final long order;
+
+        DeferredStep(Agent agent, HLink link, int phase, int rank, int step, long order) {
+            this.agent = agent;
+            this.link = link;
+            this.phase = phase;
+            this.rank = rank;
+            this.step = step;
+            this.order = order;
         }
     }
 
-    ArrayList<ArrayDeque<HLink>> delayedLinks() { return this.delayedLinksByWakeupTime; }
-    ArrayList<ArrayDeque<Agent>> delayedAgents() { return this.delayedAgentsByWakeupTime; }
-    EventArray getSortedEvents() { return this.sorted_events; }
+    /**
+     * Agents or links of one realm waking up in a timestamp, sorted by their wakeup keys, with their rank among the
+     * agents or links of all realms.
+     */
+    private static final class StepQueue<T> {
+        private Object[] items = new Object[16];
+        private long[] keys = new long[16];
+        private int[] ranks = new int[16];
+        private int size;
+
+        @SuppressWarnings("unchecked")
+        void fill(ArrayDeque<T> queue, ToLongFunction<T> wakeupKey) {
+            Arrays.fill(items, 0, size, null);
+            size = queue == null ? 0 : queue.size();
+            if (size > items.length) {
+                items = new Object[size];
+                keys = new long[size];
+                ranks = new int[size];
+            }
+            if (size > 0) {
+                queue.toArray(items);
+                Arrays.sort((T[]) items, 0, size, Comparator.comparingLong(wakeupKey));
+                for (int i = 0; i < size; i++) {
+                    keys[i] = wakeupKey.applyAsLong((T) items[i]);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        T get(int index) {
+            return (T) items[index];
+        }
+
+        void rank(StepQueue<?>[] queues) {
+            long total = 0;
+            for (int i = 0; i < size; i++) {
+                ranks[i] = i;
+            }
+            for (StepQueue<?> other : queues) {
+                total += other.size;
+                if (other == this) {
+                    continue;
+                }
+                for (int i = 0, j = 0; i < size; i++) {
+                    while (j < other.size && other.keys[j] < keys[i]) {
+                        j++;
+                    }
+                    ranks[i] += j;
+                }
+            }
+            if (total >= 1 << RANK_BITS) {
+                throw new RuntimeException(String.format(
+                        "Hermes: more than %d agents or links in one timestep, use a single realm", 1 << RANK_BITS));
+            }
+        }
+    }
 }
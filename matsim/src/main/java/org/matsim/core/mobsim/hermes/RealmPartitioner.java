@@ -0,0 +1,81 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+package org.matsim.core.mobsim.hermes;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+
+/**
+ * Splits the links of a network into spatially compact realms of (roughly) the same number of links, using recursive
+ * coordinate bisection. Each bisection cuts along the longer side of the bounding box of the links to be split, which
+ * keeps the number of links at realm boundaries (and therefore the number of agents crossing realms) low.
+ * <p>
+ * The result only depends on the link coordinates and ids, so the partitioning is the same for every run.
+ */
+final class RealmPartitioner {
+
+	private RealmPartitioner() {
+	}
+
+	/**
+	 * @return the realm index for each link, indexed by {@code Id<Link>.index()}.
+	 */
+	static int[] partition(Network network, int numberOfLinkIds, int numberOfRealms) {
+		int[] realm_of_link = new int[numberOfLinkIds];
+		List<Link> links = new ArrayList<>(network.getLinks().values());
+		bisect(links, 0, numberOfRealms, realm_of_link);
+		return realm_of_link;
+	}
+
+	private static void bisect(List<Link> links, int firstRealm, int numberOfRealms, int[] realm_of_link) {
+		if (numberOfRealms == 1 || links.size() <= 1) {
+			for (Link link : links) {
+				realm_of_link[link.getId().index()] = firstRealm;
+			}
+			return;
+		}
+
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (Link link : links) {
+			double x = link.getCoord().getX();
+			double y = link.getCoord().getY();
+			minX = Math.min(minX, x);
+			minY = Math.min(minY, y);
+			maxX = Math.max(maxX, x);
+			maxY = Math.max(maxY, y);
+		}
+
+		Comparator<Link> comparator = (maxX - minX) >= (maxY - minY) ?
+				Comparator.comparingDouble(l -> l.getCoord().getX()) :
+				Comparator.comparingDouble(l -> l.getCoord().getY());
+		links.sort(comparator.thenComparingInt(l -> l.getId().index()));
+
+		int lowerRealms = numberOfRealms / 2;
+		int split = (int) ((long) links.size() * lowerRealms / numberOfRealms);
+		bisect(links.subList(0, split), firstRealm, lowerRealms, realm_of_link);
+		bisect(links.subList(split, links.size()), firstRealm + lowerRealms, numberOfRealms - lowerRealms, realm_of_link);
+	}
+}
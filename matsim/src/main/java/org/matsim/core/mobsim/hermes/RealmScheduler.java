@@ -0,0 +1,126 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+package org.matsim.core.mobsim.hermes;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.utils.misc.Time;
+
+/**
+ * Runs several {@link Realm}s in parallel, one thread per realm. All realms process the same timestamp and are
+ * synchronized twice per simulated second: once after every realm has recorded which links of other realms it may
+ * enter, and once when all realms are done with the timestamp. Then, the work that touches more than one realm (agents
+ * crossing realm boundaries, pt boarding, and work on links used by these) is processed sequentially, and the events
+ * of all realms are merged. Both happen in the order of a single realm, so the produced events are the same as with a
+ * single realm and do not depend on thread scheduling.
+ */
+class RealmScheduler {
+
+	final private static Logger log = Logger.getLogger(RealmScheduler.class);
+
+	private final Realm[] realms;
+	private final EventsManager eventsManager;
+	private final Agent[] agents;
+	// Merged events of all realms.
+	private final EventBuffer sorted_events = new EventBuffer();
+	// Events of the sequentially processed work of the current timestamp.
+	private final EventBuffer deferred_events = new EventBuffer();
+	// Timestamp that is currently being processed.
+	private int secs = 0;
+
+	RealmScheduler(Realm[] realms, EventsManager eventsManager, Agent[] agents) {
+		if (HermesConfigGroup.SIM_STEPS > Realm.MAX_KEYED_TIMESTEP) {
+			throw new RuntimeException(String.format(
+					"Hermes supports an end time of at most %d seconds with several realms", Realm.MAX_KEYED_TIMESTEP));
+		}
+		this.realms = realms;
+		this.eventsManager = eventsManager;
+		this.agents = agents;
+	}
+
+	public void run() throws Exception {
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		CyclicBarrier prepared = new CyclicBarrier(realms.length);
+		CyclicBarrier processed = new CyclicBarrier(realms.length, this::finishTimestep);
+		Thread[] threads = new Thread[realms.length];
+
+		for (int i = 0; i < realms.length; i++) {
+			Realm realm = realms[i];
+			threads[i] = new Thread(() -> {
+				try {
+					for (int time = 0; time < HermesConfigGroup.SIM_STEPS; time++) {
+						realm.prepareTimestep(time);
+						prepared.await();
+						realm.processPreparedTimestep();
+						processed.await();
+					}
+				} catch (BrokenBarrierException | InterruptedException e) {
+					// another realm failed, its exception is reported.
+				} catch (Throwable t) {
+					failure.compareAndSet(null, t);
+					// stops the other realms, also if they did not reach a barrier yet.
+					for (Thread thread : threads) {
+						if (thread != Thread.currentThread()) {
+							thread.interrupt();
+						}
+					}
+				}
+			}, "hermes-realm-" + i);
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		if (failure.get() != null) {
+			throw new RuntimeException("Hermes realm failed", failure.get());
+		}
+	}
+
+	private void finishTimestep() {
+		if (secs % 3600 == 0) {
+			log.info("Hermes running at " + Time.writeTime(secs));
+		}
+
+		Realm.processDeferred(realms, deferred_events);
+
+		EventBuffer[] buffers = new EventBuffer[realms.length + 1];
+		for (int i = 0; i < realms.length; i++) {
+			buffers[i] = realms[i].getSortedEvents();
+		}
+		buffers[realms.length] = deferred_events;
+		sorted_events.addAllInKeyOrder(buffers);
+
+		if (HermesConfigGroup.CONCURRENT_EVENT_PROCESSING && secs % 3600 == 0 && sorted_events.size() > 0) {
+			sorted_events.flush(eventsManager, agents);
+		}
+		secs += 1;
+	}
+
+	EventBuffer getSortedEvents() {
+		return this.sorted_events;
+	}
+}
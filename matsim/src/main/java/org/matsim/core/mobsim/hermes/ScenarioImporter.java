@@ -24,32 +24,19 @@ import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.IdMap;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.TransportMode;
-import org.matsim.api.core.v01.events.ActivityEndEvent;
-import org.matsim.api.core.v01.events.ActivityStartEvent;
 import org.matsim.api.core.v01.events.Event;
 import org.matsim.api.core.v01.events.LinkEnterEvent;
 import org.matsim.api.core.v01.events.LinkLeaveEvent;
-import org.matsim.api.core.v01.events.PersonArrivalEvent;
-import org.matsim.api.core.v01.events.PersonDepartureEvent;
-import org.matsim.api.core.v01.events.PersonEntersVehicleEvent;
-import org.matsim.api.core.v01.events.PersonLeavesVehicleEvent;
-import org.matsim.api.core.v01.events.TransitDriverStartsEvent;
-import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
-import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.population.Activity;
 import org.matsim.api.core.v01.population.Leg;
 import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
 import org.matsim.api.core.v01.population.PlanElement;
 import org.matsim.api.core.v01.population.Population;
 import org.matsim.api.core.v01.population.Route;
-import org.matsim.core.api.experimental.events.AgentWaitingForPtEvent;
 import org.matsim.core.api.experimental.events.EventsManager;
-import org.matsim.core.api.experimental.events.TeleportationArrivalEvent;
-import org.matsim.core.api.experimental.events.VehicleArrivesAtFacilityEvent;
-import org.matsim.core.api.experimental.events.VehicleDepartsAtFacilityEvent;
-import org.matsim.core.events.EventArray;
 import org.matsim.core.mobsim.hermes.Agent.PlanArray;
 import org.matsim.core.population.routes.GenericRouteImpl;
 import org.matsim.core.population.routes.NetworkRoute;
@@ -76,6 +63,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 
 class ScenarioImporter {
 
@@ -114,7 +103,8 @@ class ScenarioImporter {
 	// Note: in order to make MATSim Agent ids, some positions in the array might be null.
 	protected Agent[] hermes_agents;
 
-	protected Realm realm;
+	// Realms of the simulation. Each link (and the agents on it) is owned by exactly one realm.
+	protected Realm[] realms;
 	private final boolean deterministicPt;
 	// Agents waiting in pt stations. Should be used as follows:
 	// agent_stops.get(curr station id).get(line id) -> queue of agents
@@ -127,6 +117,16 @@ class ScenarioImporter {
 	private final int numberOfThreads;
 	private final List<List<Event>> deterministicPtEvents;
 
+	// Selected plan of each person agent (indexed by hermes id) at the time its plan was imported, and a fingerprint
+	// of the plan's elements. Agents whose selected plan is unchanged are not imported again in the next iteration.
+	private Plan[] imported_plans;
+	private long[] imported_fingerprints;
+	// Iteration in which each person agent was last seen in the population.
+	private int[] seen_in_generation;
+	private int generation = 0;
+	// Transit schedule and vehicles do not change between iterations, so the transit vehicle plans are only imported once.
+	private boolean transitPlansGenerated = false;
+
 	private ScenarioImporter(Scenario scenario, EventsManager eventsManager) {
 		numberOfThreads = Math.min(scenario.getConfig().global().getNumberOfThreads(), Runtime.getRuntime().availableProcessors());
 		this.deterministicPt = scenario.getConfig().hermes().isDeterministicPt();
@@ -208,10 +208,10 @@ class ScenarioImporter {
 						link.reset();
 					}
 				}
-				// reset agent plans and events
+				// rewind agents, plans and events are kept and only re-imported if the selected plan changes
 				for (int i = 0; i < hermes_agents.length; i++) {
 					if (hermes_agents[i] != null) {
-						hermes_agents[i].reset();
+						hermes_agents[i].rewind();
 					}
 				}
 				// reset agent_stops
@@ -308,7 +308,18 @@ class ScenarioImporter {
 	}
 
 	private void generateRealms() throws Exception {
-		realm = new Realm(this, eventsManager);
+		int realmCount = scenario.getConfig().hermes().getNumberOfRealms();
+		int[] realm_of_link = null;
+		if (realmCount > 1) {
+			realm_of_link = RealmPartitioner.partition(scenario.getNetwork(), hermes_links.length, realmCount);
+		}
+		realms = new Realm[realmCount];
+		for (int i = 0; i < realmCount; i++) {
+			realms[i] = new Realm(this, eventsManager, i, realm_of_link);
+		}
+		for (Realm realm : realms) {
+			realm.setRealms(realms);
+		}
 
 		// Put agents in their initial location (link or activity center)
 		for (Agent agent : hermes_agents) {
@@ -330,7 +341,7 @@ class ScenarioImporter {
 				case Agent.SleepForType:
 				case Agent.SleepUntilType:
 					int sleep = Agent.getSleepPlanEntry(planentry);
-					realm.delayedAgents().get(Math.min(sleep, scenario.getConfig().hermes().getEndTime() + 1)).add(agent);
+					realms[initialRealm(agent, realm_of_link)].scheduleAgent(agent, Math.min(sleep, scenario.getConfig().hermes().getEndTime() + 1));
 					break;
 				default:
 					Logger.getLogger(getClass()).error(String.format("ERROR -> unknown plan element type %d", type));
@@ -341,16 +352,33 @@ class ScenarioImporter {
 			if (link != null) {
 				int nextwakeup = link.nexttime();
 				if (nextwakeup > 0) {
-					realm.delayedLinks().get(nextwakeup).add(link);
+					realms[realm_of_link == null ? 0 : realm_of_link[link.id()]].scheduleLink(link, nextwakeup);
 				}
 			}
 		}
 	}
 
+	/**
+	 * Agents starting with an activity are placed in the realm owning the first link they will enter, so that their
+	 * departure does not need to cross realms.
+	 */
+	private static int initialRealm(Agent agent, int[] realm_of_link) {
+		if (realm_of_link == null) {
+			return 0;
+		}
+		for (int i = 0; i < agent.plan().size(); i++) {
+			long planentry = agent.plan().get(i);
+			if (Agent.getPlanHeader(planentry) == Agent.LinkType) {
+				return realm_of_link[Agent.getLinkPlanEntry(planentry)];
+			}
+		}
+		return 0;
+	}
+
 	private void processPlanActivity(
 			Id<Person> id,
 			PlanArray flatplan,
-			EventArray events,
+			EventTemplates events,
 			Activity act) {
 		int time = 0;
 		int eventid = 0;
@@ -374,7 +402,7 @@ class ScenarioImporter {
 
 		// hack to avoid a actstart as first event (hermes does not have it).
 		if (flatplan.size() != 0) {
-			events.add(new ActivityStartEvent(0, id, linkid, facid, type, act.getCoord()));
+			events.addActivityStart(id, linkid, facid, type, act.getCoord());
 			eventid = events.size() - 1;
 		} else {
 			eventid = 0;
@@ -390,13 +418,13 @@ class ScenarioImporter {
 			// TODO - better way to handle this?
 			flatplan.add(Agent.prepareSleepForEntry(eventid, 0));
 		}
-		events.add(new ActivityEndEvent(0, id, linkid, facid, type));
+		events.addActivityEnd(id, linkid, facid, type);
 	}
 
 	private void processPlanNetworkRoute(
 			Person person,
 			PlanArray flatplan,
-			EventArray events,
+			EventTemplates events,
 			Leg leg,
 			NetworkRoute netroute,
 			Agent agent) {
@@ -419,23 +447,23 @@ class ScenarioImporter {
 		if (agent.getStorageCapacityPCUE() == -1) {
 			agent.setStorageCapacityPCUE(getStorageCapacityPCE(pcuCategory));
 		}
-		events.add(new PersonEntersVehicleEvent(0, id, vid));
-		events.add(new VehicleEntersTrafficEvent(0, id, startLId, vid, leg.getMode(), 1));
+		events.addPersonEntersVehicle(id, vid);
+		events.addVehicleEntersTraffic(id, startLId, vid, leg.getMode());
 		if (netroute.getLinkIds().size() > 1 || !startLId.equals(endLId)) {
-			events.add(new LinkLeaveEvent(0, vid, startLId));
+			events.addLinkLeave(vid, startLId);
 		}
 		for (Id<org.matsim.api.core.v01.network.Link> linkid : netroute.getLinkIds()) {
 			int linkId = linkid.index();
-			events.add(new LinkEnterEvent(0, vid, linkid));
+			events.addLinkEnter(vid, linkid);
 			flatplan.add(Agent.prepareLinkEntry(events.size() - 1, linkId, velocity, pcuCategory));
-			events.add(new LinkLeaveEvent(0, vid, linkid));
+			events.addLinkLeave(vid, linkid);
 		}
 		if (netroute.getLinkIds().size() > 1 || !startLId.equals(endLId)) {
-			events.add(new LinkEnterEvent(0, vid, endLId));
+			events.addLinkEnter(vid, endLId);
 			flatplan.add(Agent.prepareLinkEntry(events.size() - 1, egressId, velocity, pcuCategory));
 		}
-		events.add(new VehicleLeavesTrafficEvent(0, id, endLId, vid, leg.getMode(), 1));
-		events.add(new PersonLeavesVehicleEvent(0, id, vid));
+		events.addVehicleLeavesTraffic(id, endLId, vid, leg.getMode());
+		events.addPersonLeavesVehicle(id, vid);
 	}
 
 	private void populateStops(int srcStopId, int lineId) {
@@ -446,7 +474,7 @@ class ScenarioImporter {
 	private void processPlanTransitRoute(
 			Id<Person> id,
 			PlanArray flatplan,
-			EventArray events,
+			EventTemplates events,
 			TransitPassengerRoute troute) {
 		Id<TransitStopFacility> access = troute.getAccessStopId();
 		Id<TransitStopFacility> egress = troute.getEgressStopId();
@@ -460,18 +488,18 @@ class ScenarioImporter {
 		// this will be replaced dynamically
 		Id<Vehicle> vid = Id.createVehicleId("tr_X");
 		// Add public transport access
-		events.add(new AgentWaitingForPtEvent(0, id, access, egress));
+		events.addAgentWaitingForPt(id, access, egress);
 		flatplan.add(Agent.prepareWaitEntry(events.size() - 1, routeNo, accessid));
-		events.add(new PersonEntersVehicleEvent(0, id, vid));
+		events.addPersonEntersVehicle(id, vid);
 		flatplan.add(Agent.prepareAccessEntry(events.size() - 1, routeNo, accessid));
-		events.add(new PersonLeavesVehicleEvent(0, id, vid));
+		events.addPersonLeavesVehicle(id, vid);
 		flatplan.add(Agent.prepareEgressEntry(events.size() - 1, routeNo, egressid));
 	}
 
 	private void processPlanElement(
 			Person person,
 			PlanArray flatplan,
-			EventArray events,
+			EventTemplates events,
 			PlanElement element,
 			Agent agent) {
 		var id = person.getId();
@@ -484,7 +512,7 @@ class ScenarioImporter {
 				return;
 			}
 
-			events.add(new PersonDepartureEvent(0, id, route.getStartLinkId(), leg.getMode()));
+			events.addPersonDeparture(id, route.getStartLinkId(), leg.getMode());
 			if (route instanceof NetworkRoute) {
 				if (scenario.getConfig().hermes().getMainModes().contains(leg.getMode())) {
 					processPlanNetworkRoute(person, flatplan, events, leg, (NetworkRoute) route, agent);
@@ -500,7 +528,7 @@ class ScenarioImporter {
 				throw new RuntimeException("Route type not supported by Hermes: " + route.getRouteType() + "\n Person:" + id + "\n Leg" + leg + "\n Leg" + route);
 			}
 
-			events.add(new PersonArrivalEvent(0, id, route.getEndLinkId(), leg.getMode()));
+			events.addPersonArrival(id, route.getEndLinkId(), leg.getMode());
 
 		} else if (element instanceof Activity) {
 			processPlanActivity(id, flatplan, events, (Activity) element);
@@ -509,20 +537,20 @@ class ScenarioImporter {
 		}
 	}
 
-	private void processTeleport(Id<Person> id, PlanArray flatplan, EventArray events, Leg element, Route route, String mode) {
+	private void processTeleport(Id<Person> id, PlanArray flatplan, EventTemplates events, Leg element, Route route, String mode) {
 		double routeTravelTime = route.getTravelTime().orElse(0.0);
 		double legTravelTime = element.getTravelTime().orElse(0.0);
 		int time = Math.max(0, (int) Math.round(Math.max(routeTravelTime, legTravelTime)) - 2);
 		//2 second is deducted as this is the maximum possible loss during interaction activities
 		flatplan.add(Agent.prepareSleepForEntry(events.size() - 1, time));
-		events.add(new TeleportationArrivalEvent(0, id, route.getDistance(), mode));
+		events.addTeleportationArrival(id, route.getDistance(), mode);
 	}
 
 	private void generateAgent(
 			int agent_id,
 			int capacity,
 			PlanArray flatplan,
-			EventArray events) {
+			EventTemplates events) {
 
 		if (events.size() >= HermesConfigGroup.MAX_EVENTS_AGENT) {
 			throw new RuntimeException("exceeded maximum number of agent events");
@@ -552,7 +580,7 @@ class ScenarioImporter {
 	private static class TransitRouteContext {
 		final Agent agent;
 		final PlanArray flatplan;
-		final EventArray flatevents;
+		final EventTemplates flatevents;
 		final TransitLine tl;
 		final TransitRoute tr;
 		final int routeNo;
@@ -680,14 +708,14 @@ class ScenarioImporter {
 					c.flatplan.add(Agent.prepareSleepUntilEntry(0, (int) arrivalTime));
 				}
 
-				c.flatevents.add(new VehicleArrivesAtFacilityEvent(0, c.vehId, stopId, arrivalTime));
+				c.flatevents.addVehicleArrivesAtStop(c.vehId, stopId, arrivalTime);
 				c.flatplan.add(Agent.prepareStopArrivalEntry(c.flatevents.size() - 1, c.routeNo, stopIdIndex));
 				c.agent.setServeStop(stopIdIndex);
 
 				// no event associated to stop delay
 				c.flatplan.add(Agent.prepareStopDelayEntry((int) departureTime, c.routeNo, stopIdIndex));
 
-				c.flatevents.add(new VehicleDepartsAtFacilityEvent(0, c.vehId, stopId, departureTime));
+				c.flatevents.addVehicleDepartsAtStop(c.vehId, stopId, departureTime);
 				c.flatplan.add(Agent.prepareStopDepartureEntry(c.flatevents.size() - 1, c.routeNo, stopIdIndex));
 
 				c.time = (int) departureTime;
@@ -741,7 +769,7 @@ class ScenarioImporter {
 
 		TransitRouteContext context = new TransitRouteContext(agent, tl, tr, routeNo, depart, this.scenario.getNetwork());
 		PlanArray flatplan = agent.plan;
-		EventArray flatevents = agent.events;
+		EventTemplates flatevents = agent.events;
 
 		VehicleType vt = v.getType();
 		NetworkRoute nr = tr.getRoute();
@@ -750,11 +778,11 @@ class ScenarioImporter {
 		String legmode = TransportMode.pt;
 
 		// Prepare to leave
-		flatevents.add(new TransitDriverStartsEvent(0, driverid, v.getId(), tl.getId(), tr.getId(), depart.getId()));
-		flatevents.add(new PersonDepartureEvent(0, driverid, nr.getStartLinkId(), legmode));
-		flatevents.add(new PersonEntersVehicleEvent(0, driverid, v.getId()));
+		flatevents.addTransitDriverStarts(driverid, v.getId(), tl.getId(), tr.getId(), depart.getId());
+		flatevents.addPersonDeparture(driverid, nr.getStartLinkId(), legmode);
+		flatevents.addPersonEntersVehicle(driverid, v.getId());
 
-		flatevents.add(new VehicleEntersTrafficEvent(context.time, driverid, nr.getStartLinkId(), v.getId(), legmode, 1));
+		flatevents.addVehicleEntersTraffic(driverid, nr.getStartLinkId(), v.getId(), legmode);
 
 		// Sleep until the time of departure
 		//  the very first flat plan entry does not handle events, so actually add two entries, so the events are correctly handled
@@ -772,14 +800,14 @@ class ScenarioImporter {
 		// last link
 		generateDeterministicVehicleOnLink(context, nr.getEndLinkId(), true, false);
 
-		flatevents.add(new VehicleLeavesTrafficEvent(0, driverid, nr.getEndLinkId(), v.getId(), legmode, 1));
-		flatevents.add(new PersonLeavesVehicleEvent(0, driverid, v.getId()));
-		flatevents.add(new PersonArrivalEvent(0, driverid, nr.getEndLinkId(), legmode));
+		flatevents.addVehicleLeavesTraffic(driverid, nr.getEndLinkId(), v.getId(), legmode);
+		flatevents.addPersonLeavesVehicle(driverid, v.getId());
+		flatevents.addPersonArrival(driverid, nr.getEndLinkId(), legmode);
 	}
 
 	private void generateNondeterministicVehicleOnLink(TransitRouteContext c, Id<Link> linkId, boolean generateLinkEnterEvent, boolean generateLinkLeaveEvent, int velocity, int pcuCategory) {
 		if (generateLinkEnterEvent) {
-			c.flatevents.add(new LinkEnterEvent(0, c.vehId, linkId));
+			c.flatevents.addLinkEnter(c.vehId, linkId);
 			c.flatplan.add(Agent.prepareLinkEntry(c.flatevents.size() - 1, linkId.index(), velocity, pcuCategory));
 		}
 
@@ -795,14 +823,14 @@ class ScenarioImporter {
 				double arrivalTime = arrivalOffsetHelper(c.depart, routeStop);
 				double departureTime = departureOffsetHelper(c.depart, routeStop);
 
-				c.flatevents.add(new VehicleArrivesAtFacilityEvent(0, c.vehId, stopId, arrivalTime));
+				c.flatevents.addVehicleArrivesAtStop(c.vehId, stopId, arrivalTime);
 				c.flatplan.add(Agent.prepareStopArrivalEntry(c.flatevents.size() - 1, c.routeNo, stopIdIndex));
 				c.agent.setServeStop(stopIdIndex);
 
 				// no event associated to stop delay
 				c.flatplan.add(Agent.prepareStopDelayEntry((int) departureTime, c.routeNo, stopIdIndex));
 
-				c.flatevents.add(new VehicleDepartsAtFacilityEvent(0, c.vehId, stopId, departureTime));
+				c.flatevents.addVehicleDepartsAtStop(c.vehId, stopId, departureTime);
 				c.flatplan.add(Agent.prepareStopDepartureEntry(c.flatevents.size() - 1, c.routeNo, stopIdIndex));
 
 				c.stopidx++;
@@ -812,7 +840,7 @@ class ScenarioImporter {
 		}
 
 		if (generateLinkLeaveEvent) {
-			c.flatevents.add(new LinkLeaveEvent(0, c.vehId, linkId));
+			c.flatevents.addLinkLeave(c.vehId, linkId);
 		}
 	}
 
@@ -825,7 +853,7 @@ class ScenarioImporter {
 		int routeNo = this.route_numbers.get(tl.getId()).get(tr.getId());
 		TransitRouteContext context = new TransitRouteContext(agent, tl, tr, routeNo, depart, this.scenario.getNetwork());
 		PlanArray flatplan = agent.plan;
-		EventArray flatevents = agent.events;
+		EventTemplates flatevents = agent.events;
 		Vehicle v = this.scenario.getTransitVehicles().getVehicles().get(depart.getVehicleId());
 		VehicleType vt = v.getType();
 		NetworkRoute nr = tr.getRoute();
@@ -840,10 +868,10 @@ class ScenarioImporter {
 		flatplan.add(Agent.prepareSleepUntilEntry(0, (int) Math.round(depart.getDepartureTime())));
 
 		// Prepare to leave
-		flatevents.add(new TransitDriverStartsEvent(0, driverid, v.getId(), tl.getId(), tr.getId(), depart.getId()));
-		flatevents.add(new PersonDepartureEvent(0, driverid, nr.getStartLinkId(), legmode));
-		flatevents.add(new PersonEntersVehicleEvent(0, driverid, v.getId()));
-		flatevents.add(new VehicleEntersTrafficEvent(0, driverid, nr.getStartLinkId(), v.getId(), legmode, 1));
+		flatevents.addTransitDriverStarts(driverid, v.getId(), tl.getId(), tr.getId(), depart.getId());
+		flatevents.addPersonDeparture(driverid, nr.getStartLinkId(), legmode);
+		flatevents.addPersonEntersVehicle(driverid, v.getId());
+		flatevents.addVehicleEntersTraffic(driverid, nr.getStartLinkId(), v.getId(), legmode);
 
 		generateNondeterministicVehicleOnLink(context, nr.getStartLinkId(), false, true, velocity, pcuCategory);
 
@@ -853,9 +881,9 @@ class ScenarioImporter {
 
 		generateNondeterministicVehicleOnLink(context, nr.getEndLinkId(), true, false, velocity, pcuCategory);
 
-		flatevents.add(new VehicleLeavesTrafficEvent(0, driverid, nr.getEndLinkId(), v.getId(), legmode, 1));
-		flatevents.add(new PersonLeavesVehicleEvent(0, driverid, v.getId()));
-		flatevents.add(new PersonArrivalEvent(0, driverid, nr.getEndLinkId(), legmode));
+		flatevents.addVehicleLeavesTraffic(driverid, nr.getEndLinkId(), v.getId(), legmode);
+		flatevents.addPersonLeavesVehicle(driverid, v.getId());
+		flatevents.addPersonArrival(driverid, nr.getEndLinkId(), legmode);
 	}
 
 	private void generateTransitVehiclePlans() {
@@ -879,19 +907,97 @@ class ScenarioImporter {
 				}
 			}
 		});
-
+		for (Vehicle vehicle : vehicles.values()) {
+			Agent agent = hermes_agents[hermes_id(vehicle.getId().index(), true)];
+			agent.plan().trimToSize();
+			agent.events().trimToSize();
+		}
 	}
 
 	private void generatePersonPlans() {
 		Population population = scenario.getPopulation();
+		int currentGeneration = ++generation;
+		AtomicInteger imported = new AtomicInteger();
 		population.getPersons().values().parallelStream().forEach((person) -> {
 			int hermes_id = hermes_id(person.getId().index(), false);
-			PlanArray plan = hermes_agents[hermes_id].plan();
-			EventArray events = hermes_agents[hermes_id].events();
-			for (PlanElement element : person.getSelectedPlan().getPlanElements()) {
-				processPlanElement(person, plan, events, element, hermes_agents[hermes_id]);
+			Agent agent = hermes_agents[hermes_id];
+			Plan selectedPlan = person.getSelectedPlan();
+			long fingerprint = fingerprint(selectedPlan);
+			seen_in_generation[hermes_id] = currentGeneration;
+			if (imported_plans[hermes_id] == selectedPlan && imported_fingerprints[hermes_id] == fingerprint) {
+				return;
 			}
+			agent.reset();
+			PlanArray plan = agent.plan();
+			EventTemplates events = agent.events();
+			for (PlanElement element : selectedPlan.getPlanElements()) {
+				processPlanElement(person, plan, events, element, agent);
+			}
+			plan.trimToSize();
+			events.trimToSize();
+			imported_plans[hermes_id] = selectedPlan;
+			imported_fingerprints[hermes_id] = fingerprint;
+			imported.incrementAndGet();
 		});
+		// persons that were removed from the population must not be simulated with their old plan.
+		for (int hermes_id = 0; hermes_id < agent_persons; hermes_id++) {
+			if (imported_plans[hermes_id] != null && seen_in_generation[hermes_id] != currentGeneration) {
+				hermes_agents[hermes_id].reset();
+				imported_plans[hermes_id] = null;
+			}
+		}
+		log.info(String.format("Hermes imported %d of %d plans", imported.get(), population.getPersons().size()));
+	}
+
+	/**
+	 * Computes a fingerprint of the plan elements that are relevant for Hermes. The contents of the routes are included,
+	 * so that routes which are modified in place (e.g. by {@link NetworkRoute#setLinkIds}) change the fingerprint as well.
+	 */
+	private static long fingerprint(Plan plan) {
+		long hash = plan.getPlanElements().size();
+		for (PlanElement element : plan.getPlanElements()) {
+			hash = 31 * hash + System.identityHashCode(element);
+			if (element instanceof Leg) {
+				Leg leg = (Leg) element;
+				hash = 31 * hash + leg.getMode().hashCode();
+				hash = 31 * hash + Double.hashCode(leg.getTravelTime().orElse(Double.NaN));
+				hash = fingerprint(hash, leg.getRoute());
+			} else if (element instanceof Activity) {
+				Activity act = (Activity) element;
+				hash = 31 * hash + act.getType().hashCode();
+				hash = 31 * hash + Objects.hashCode(act.getLinkId());
+				hash = 31 * hash + Objects.hashCode(act.getFacilityId());
+				hash = 31 * hash + Double.hashCode(act.getEndTime().orElse(Double.NaN));
+				hash = 31 * hash + Double.hashCode(act.getMaximumDuration().orElse(Double.NaN));
+			}
+		}
+		return hash;
+	}
+
+	private static long fingerprint(long hash, Route route) {
+		if (route == null) {
+			return 31 * hash;
+		}
+		hash = 31 * hash + route.getClass().hashCode();
+		hash = 31 * hash + Objects.hashCode(route.getStartLinkId());
+		hash = 31 * hash + Objects.hashCode(route.getEndLinkId());
+		hash = 31 * hash + Double.hashCode(route.getTravelTime().orElse(Double.NaN));
+		hash = 31 * hash + Double.hashCode(route.getDistance());
+		if (route instanceof NetworkRoute) {
+			NetworkRoute netroute = (NetworkRoute) route;
+			hash = 31 * hash + Objects.hashCode(netroute.getVehicleId());
+			for (Id<Link> linkId : netroute.getLinkIds()) {
+				hash = 31 * hash + linkId.hashCode();
+			}
+		} else if (route instanceof TransitPassengerRoute) {
+			TransitPassengerRoute troute = (TransitPassengerRoute) route;
+			hash = 31 * hash + Objects.hashCode(troute.getAccessStopId());
+			hash = 31 * hash + Objects.hashCode(troute.getEgressStopId());
+			hash = 31 * hash + Objects.hashCode(troute.getLineId());
+			hash = 31 * hash + Objects.hashCode(troute.getRouteId());
+			hash = 31 * hash + Double.hashCode(troute.getBoardingTime().orElse(Double.NaN));
+		}
+		return hash;
 	}
 
 	private void generateAgents() {
@@ -900,12 +1006,15 @@ class ScenarioImporter {
 		agent_persons = Id.getNumberOfIds(Person.class);
 		int nagents = agent_persons + Id.getNumberOfIds(Vehicle.class);
 		hermes_agents = new Agent[nagents];
+		imported_plans = new Plan[agent_persons];
+		imported_fingerprints = new long[agent_persons];
+		seen_in_generation = new int[agent_persons];
 
 		// Generate persons
 		for (Person person : population.getPersons().values()) {
 			int hermes_id = hermes_id(person.getId().index(), false);
 			assert hermes_agents[hermes_id] == null;
-			generateAgent(hermes_id, 0, new PlanArray(), new EventArray());
+			generateAgent(hermes_id, 0, new PlanArray(), new EventTemplates());
 		}
 
 		// Generate vehicles
@@ -914,7 +1023,7 @@ class ScenarioImporter {
 			int capacity = vc.getSeats() + vc.getStandingRoom();
 			int hermes_id = hermes_id(vehicle.getId().index(), true);
 			assert hermes_agents[hermes_id] == null;
-			generateAgent(hermes_id, capacity, new PlanArray(), new EventArray());
+			generateAgent(hermes_id, capacity, new PlanArray(), new EventTemplates());
 		}
 	}
 
@@ -936,7 +1045,10 @@ class ScenarioImporter {
 
 	private void generatePlans() {
 		generatePersonPlans();
-		generateTransitVehiclePlans();
+		if (!transitPlansGenerated) {
+			generateTransitVehiclePlans();
+			transitPlansGenerated = true;
+		}
 	}
 
 	public float getFlowCapacityPCE(int index) {
@@ -0,0 +1,195 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.jdeqsim;
+
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+
+/**
+ * A message queue for the near-monotone time stamps of traffic simulations, organized like a calendar queue.
+ * <ul>
+ * <li>Messages of the current bucket (one second by default) are kept in a small priority queue.</li>
+ * <li>Messages of the following buckets of the current block of 4096 buckets are appended unsorted to their bucket.  A
+ * bucket is only sorted, by moving it into the priority queue, when the simulation reaches it.</li>
+ * <li>All later messages are appended unsorted to an overflow list, which is distributed into the buckets whenever the
+ * simulation enters a new block.</li>
+ * </ul>
+ * Putting a message into the queue is thus O(1), and taking it out is O(log n) with n only the number of messages in one
+ * bucket.  Messages with the same time stamp come out ordered by priority like in {@link MessageQueue}; messages with the
+ * same time stamp and priority may come out in a different order than there.
+ */
+public class CalendarMessageQueue extends MessageQueue {
+
+	private static final int BLOCK_BITS = 12;
+	private static final int NUMBER_OF_BUCKETS = 1 << BLOCK_BITS;
+	private static final int BUCKET_MASK = NUMBER_OF_BUCKETS - 1;
+	// keeps the block computations free of overflows, even for messages at Double.MAX_VALUE
+	private static final long MAX_BUCKET = Long.MAX_VALUE >> 2;
+
+	private final double bucketWidth;
+	private final PriorityQueue<Message> currentMessages = new PriorityQueue<>();
+	private final ArrayList<Message>[] buckets;
+	private final ArrayList<Message> overflow = new ArrayList<>();
+
+	private long currentBucket = -1;
+	private long blockStart = 0;
+	private int numberOfMessagesInBuckets = 0;
+	private long earliestOverflowBucket = Long.MAX_VALUE;
+
+	/** all messages, including the dead ones */
+	private int size = 0;
+	/** as in {@link MessageQueue}: decremented when a message is removed and when it is fetched */
+	private int queueSize = 0;
+
+	public CalendarMessageQueue() {
+		this(1.0);
+	}
+
+	/**
+	 * @param bucketWidth the time covered by one bucket, in seconds
+	 */
+	@SuppressWarnings("unchecked")
+	public CalendarMessageQueue(double bucketWidth) {
+		if (!(bucketWidth > 0)) {
+			throw new IllegalArgumentException("bucket width must be positive: " + bucketWidth);
+		}
+		this.bucketWidth = bucketWidth;
+		this.buckets = new ArrayList[NUMBER_OF_BUCKETS];
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+			this.buckets[i] = new ArrayList<>();
+		}
+	}
+
+	@Override
+	public void putMessage(Message m) {
+		add(m);
+		this.size++;
+		this.queueSize++;
+	}
+
+	@Override
+	public void removeMessage(Message m) {
+		m.killMessage();
+		this.queueSize--;
+	}
+
+	@Override
+	public Message getNextMessage() {
+		while (this.size > 0) {
+			if (this.currentMessages.isEmpty()) {
+				advanceToNextBucket();
+			}
+			Message m = this.currentMessages.poll();
+			this.size--;
+			// skip over dead messages
+			if (m.isAlive()) {
+				this.queueSize--;
+				return m;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	@Override
+	public int getQueueSize() {
+		return this.queueSize;
+	}
+
+	private void add(Message m) {
+		long bucket = getBucket(m.getMessageArrivalTime());
+		if (bucket <= this.currentBucket) {
+			this.currentMessages.add(m);
+		} else if (bucket < this.blockStart + NUMBER_OF_BUCKETS) {
+			this.buckets[(int) (bucket & BUCKET_MASK)].add(m);
+			this.numberOfMessagesInBuckets++;
+		} else {
+			this.overflow.add(m);
+			this.earliestOverflowBucket = Math.min(this.earliestOverflowBucket, bucket);
+		}
+	}
+
+	/**
+	 * Moves the next non-empty bucket into the priority queue.  Must only be called if there are messages in the buckets
+	 * or in the overflow.
+	 */
+	private void advanceToNextBucket() {
+		if (this.numberOfMessagesInBuckets == 0) {
+			// nothing left in this block, jump directly to the block of the earliest message
+			this.blockStart = this.earliestOverflowBucket & ~BUCKET_MASK;
+			this.currentBucket = this.blockStart - 1;
+			distributeOverflow();
+		}
+		while (true) {
+			this.currentBucket++;
+			if (this.currentBucket >= this.blockStart + NUMBER_OF_BUCKETS) {
+				this.blockStart += NUMBER_OF_BUCKETS;
+				distributeOverflow();
+			}
+			ArrayList<Message> bucket = this.buckets[(int) (this.currentBucket & BUCKET_MASK)];
+			if (!bucket.isEmpty()) {
+				this.currentMessages.addAll(bucket);
+				this.numberOfMessagesInBuckets -= bucket.size();
+				bucket.clear();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Moves the messages of the current block from the overflow into their buckets.
+	 */
+	private void distributeOverflow() {
+		if (this.earliestOverflowBucket >= this.blockStart + NUMBER_OF_BUCKETS) {
+			return;
+		}
+		this.earliestOverflowBucket = Long.MAX_VALUE;
+		int remaining = 0;
+		for (int i = 0; i < this.overflow.size(); i++) {
+			Message m = this.overflow.get(i);
+			long bucket = getBucket(m.getMessageArrivalTime());
+			if (bucket < this.blockStart + NUMBER_OF_BUCKETS) {
+				this.buckets[(int) (bucket & BUCKET_MASK)].add(m);
+				this.numberOfMessagesInBuckets++;
+			} else {
+				// keep the later messages at the front of the list
+				this.overflow.set(remaining++, m);
+				this.earliestOverflowBucket = Math.min(this.earliestOverflowBucket, bucket);
+			}
+		}
+		this.overflow.subList(remaining, this.overflow.size()).clear();
+	}
+
+	private long getBucket(double time) {
+		double bucket = Math.floor(time / this.bucketWidth);
+		if (bucket >= MAX_BUCKET) {
+			return MAX_BUCKET;
+		}
+		if (bucket <= -MAX_BUCKET) {
+			return -MAX_BUCKET;
+		}
+		return (long) bucket;
+	}
+
+}
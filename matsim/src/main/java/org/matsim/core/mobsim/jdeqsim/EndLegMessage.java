@@ -132,4 +132,9 @@ public class EndLegMessage extends EventMessage {
 
 	}
 
+	@Override
+	public void recycleMessage() {
+		MessageFactory.disposeEndLegMessage(this);
+	}
+
 }
@@ -19,6 +19,8 @@
 
 package org.matsim.core.mobsim.jdeqsim;
 
+import java.util.Map;
+
 import org.matsim.core.config.ReflectiveConfigGroup;
 import org.matsim.core.utils.misc.OptionalTime;
 import org.matsim.core.utils.misc.Time;
@@ -58,6 +60,11 @@ public class JDEQSimConfigGroup extends ReflectiveConfigGroup {
 	public final static String CAR_SIZE = "carSize";
 	public final static String GAP_TRAVEL_SPEED = "gapTravelSpeed";
 	public final static String END_TIME = "endTime";
+	public final static String MESSAGE_QUEUE = "messageQueue";
+	public final static String MESSAGE_POOLING = "messagePooling";
+	public final static String NUMBER_OF_THREADS = "numberOfThreads";
+
+	public enum MessageQueueType { priorityQueue, calendarQueue }
 
 	// INPUT
 	private OptionalTime simulationEndTime = OptionalTime.undefined();
@@ -72,11 +79,30 @@ public class JDEQSimConfigGroup extends ReflectiveConfigGroup {
 	 * 'stuckTime' for entering next road, it will enter the next. in seconds
 	 */
 	private double squeezeTime = 1800;
+	private MessageQueueType messageQueue = MessageQueueType.priorityQueue;
+	private boolean messagePooling = false;
+	private int numberOfThreads = 1;
 
 	public JDEQSimConfigGroup() {
 		super(NAME);
 	}
 
+	@Override
+	public Map<String, String> getComments() {
+		Map<String, String> map = super.getComments();
+		map.put(MESSAGE_QUEUE, "Data structure of the scheduler. "
+				+ MessageQueueType.priorityQueue + ": a binary heap over all messages (default). "
+				+ MessageQueueType.calendarQueue + ": buckets of one second that are only sorted when the simulation reaches them; "
+				+ "faster for large scenarios. Messages with the same time and priority may be processed in a different order.");
+		map.put(MESSAGE_POOLING, "If true, messages are reused after they have been handled instead of being garbage collected. "
+				+ "The pool is shared by all simulations in the same JVM, so do not enable this for simulations that run concurrently.");
+		map.put(NUMBER_OF_THREADS, "If larger than 1, the roads are partitioned among this number of threads, which simulate them in parallel. "
+				+ "The results are the same for any number of threads larger than 1. With a single thread, the sequential scheduler is used, "
+				+ "which processes messages with the same time and priority in a different order, so the results may differ if vehicles compete "
+				+ "for a road at the same time. Message pooling and the message queue setting are not used in parallel mode.");
+		return map;
+	}
+
 	// should garbage collection of messages be activated
 	private static boolean GC_MESSAGES = false;
 
@@ -152,6 +178,36 @@ public class JDEQSimConfigGroup extends ReflectiveConfigGroup {
 		this.minimumInFlowCapacity = minimumInFlowCapacity;
 	}
 
+	@StringGetter(MESSAGE_QUEUE)
+	public MessageQueueType getMessageQueue() {
+		return messageQueue;
+	}
+
+	@StringSetter(MESSAGE_QUEUE)
+	public void setMessageQueue(MessageQueueType messageQueue) {
+		this.messageQueue = messageQueue;
+	}
+
+	@StringGetter(MESSAGE_POOLING)
+	public boolean isMessagePooling() {
+		return messagePooling;
+	}
+
+	@StringSetter(MESSAGE_POOLING)
+	public void setMessagePooling(boolean messagePooling) {
+		this.messagePooling = messagePooling;
+	}
+
+	@StringGetter(NUMBER_OF_THREADS)
+	public int getNumberOfThreads() {
+		return numberOfThreads;
+	}
+
+	@StringSetter(NUMBER_OF_THREADS)
+	public void setNumberOfThreads(int numberOfThreads) {
+		this.numberOfThreads = numberOfThreads;
+	}
+
 	@StringGetter(SQUEEZE_TIME)
 	public double getSqueezeTime() {
 		return squeezeTime;
@@ -66,7 +66,7 @@ public class JDEQSimulation implements Mobsim {
 		Timer t = new Timer();
 		t.startTimer();
 
-		Scheduler scheduler = new Scheduler(new MessageQueue(), config.getSimulationEndTime().orElse(Double.MAX_VALUE));
+		Scheduler scheduler = createScheduler();
 		Road.setAllRoads(new HashMap<Id<Link>, Road>());
 
 		// initialize network
@@ -86,4 +86,19 @@ public class JDEQSimulation implements Mobsim {
 		log.info("Time needed for one iteration (only JDEQSimulation part): " + t.getMeasuredTime() + "[ms]");
 		events.finishProcessing();
 	}
+
+	/*package*/ Scheduler createScheduler() {
+		double endTime = config.getSimulationEndTime().orElse(Double.MAX_VALUE);
+		if (config.getNumberOfThreads() > 1) {
+			if (config.isMessagePooling()) {
+				log.warn("Message pooling is not supported with more than one thread and is switched off.");
+			}
+			// messages pooled by an earlier simulation must not be shared among the threads
+			MessageFactory.GC_ALL_MESSAGES();
+			return new ParallelScheduler(this.scenario.getNetwork(), config.getNumberOfThreads(), config.getNumberOfThreads(), endTime);
+		}
+		Scheduler scheduler = new Scheduler(MessageQueue.create(config), endTime);
+		scheduler.setMessagePooling(config.isMessagePooling());
+		return scheduler;
+	}
 }
@@ -51,4 +51,9 @@ public class LeaveRoadMessage extends EventMessage {
 		eventsManager.processEvent(event);
 	}
 
+	@Override
+	public void recycleMessage() {
+		MessageFactory.disposeLeaveRoadMessage(this);
+	}
+
 }
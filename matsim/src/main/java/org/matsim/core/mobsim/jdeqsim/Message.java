@@ -120,4 +120,11 @@ public abstract class Message implements Comparable<Message> {
 		return isAlive;
 	}
 
+	/**
+	 * Called by the scheduler after the message has been handled, if messages are pooled (see
+	 * {@link JDEQSimConfigGroup#isMessagePooling()}).  The message must not be referenced by anybody afterwards.
+	 */
+	public void recycleMessage() {
+	}
+
 }
@@ -93,4 +93,18 @@ public class MessageQueue {
 		return queueSize;
 	}
 
+	/**
+	 * @return a new, empty message queue of the type configured in {@link JDEQSimConfigGroup#getMessageQueue()}
+	 */
+	public static MessageQueue create(JDEQSimConfigGroup config) {
+		switch (config.getMessageQueue()) {
+			case priorityQueue:
+				return new MessageQueue();
+			case calendarQueue:
+				return new CalendarMessageQueue();
+			default:
+				throw new RuntimeException("Unknown message queue: " + config.getMessageQueue());
+		}
+	}
+
 }
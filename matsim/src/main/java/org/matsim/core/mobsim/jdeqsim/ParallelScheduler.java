@@ -0,0 +1,664 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.jdeqsim;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.IdMap;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.handler.EventHandler;
+import org.matsim.core.gbl.Gbl;
+import org.matsim.core.mobsim.qsim.qnetsimengine.BisectionPartitioner;
+
+/**
+ * A scheduler which handles the messages of different roads in parallel, see {@link JDEQSimConfigGroup#getNumberOfThreads()}.
+ * <p>
+ * The roads are partitioned by their from-node (see {@link BisectionPartitioner}), and every partition has its own message
+ * queue. The simulation advances in windows whose length is the shortest time a vehicle needs from entering or becoming the
+ * front car of a road until it asks to enter a road of another partition. Within a window, the partitions handle their own
+ * messages in parallel. A message which is sent to another partition and is due within the same window is handled
+ * afterwards, in a single thread; this is always the case for the message to leave the previous road, which has no delay at all.
+ * If the road of such a message has already handled a message which comes later, all messages handled by the road in this
+ * window are undone, together with everything they caused, and handled again in the right order.
+ * <p>
+ * The order of the messages must not depend on the partitioning, so it is given by a key instead of by the message queue:
+ * the time of the message, followed by a path of its priority, the index of the person and the number of the message
+ * among the messages sent by the same message. A message sent for the same time as the message that sent it extends the
+ * path of the sender. Thus, the events do not depend on the number of partitions and threads. The sequential
+ * {@link Scheduler} handles messages with the same time and priority in the order of its heap instead, which cannot be
+ * reproduced by a key. Its events are the same as long as no such messages compete for a road, e.g. vehicles which
+ * want to enter the same road at the same time; otherwise the vehicles may be handled in a different order.
+ * <p>
+ * All messages must be sent to a {@link Road}. Message pooling is not supported.
+ */
+final class ParallelScheduler extends Scheduler {
+
+	private static final Logger log = Logger.getLogger(ParallelScheduler.class);
+
+	// even on networks with very short links between partitions, a window should hold enough messages to be worth a synchronization
+	private static final double MIN_WINDOW_SIZE = 1.0;
+	// the events of a window are buffered until it is complete
+	private static final double MAX_WINDOW_SIZE = 60.0;
+
+	private enum Phase { SETUP, PARALLEL, LATE, DONE }
+
+	private enum State { QUEUED, PROCESSED, SKIPPED, UNDONE, CANCELLED }
+
+	private final int numberOfThreads;
+	private final double simulationEndTime;
+	private final IdMap<Node, Integer> nodePartitions;
+	private final IdMap<Link, RoadLog> roadLogs = new IdMap<>(Link.class);
+	private final Partition[] partitions;
+	private final ThreadLocal<Entry> currentEntry = new ThreadLocal<>();
+
+	// the messages which are handled after the parallel phase of a window
+	private final PriorityQueue<Entry> lateEntries = new PriorityQueue<>();
+	private final List<Entry> lateSkipped = new ArrayList<>();
+	private final List<RoadLog> lateTouched = new ArrayList<>();
+
+	private Phase phase = Phase.SETUP;
+	private int window = 0;
+	private double windowEnd;
+	private double simTime = 0;
+	private double hourlyLogTime = 3600;
+
+	private long lateMessages = 0;
+	private long rollbacks = 0;
+	private long undoneMessages = 0;
+
+	ParallelScheduler(Network network, int numberOfPartitions, int numberOfThreads, double simulationEndTime) {
+		super(new MessageQueue(), simulationEndTime);
+		this.numberOfThreads = numberOfThreads;
+		this.simulationEndTime = simulationEndTime;
+		this.nodePartitions = new BisectionPartitioner(false).partition(network.getNodes().values(), numberOfPartitions);
+		this.partitions = new Partition[numberOfPartitions];
+		for (int i = 0; i < numberOfPartitions; i++) {
+			this.partitions[i] = new Partition(i);
+		}
+	}
+
+	@Override
+	public void schedule(Message m) {
+		if (this.phase == Phase.DONE) {
+			return;
+		}
+		Entry parent = this.currentEntry.get();
+		RoadLog roadLog = getRoadLog(getRoad(m));
+		if (parent == null) {
+			if (this.phase != Phase.SETUP) {
+				throw new IllegalStateException("Messages can only be scheduled during the setup or while handling another message.");
+			}
+			this.partitions[roadLog.partition].queue.add(new Entry(m, roadLog, null, 0));
+			return;
+		}
+		Entry entry = new Entry(m, roadLog, parent, parent.numberOfChildren++);
+		parent.addChild(entry);
+		if (this.phase == Phase.LATE) {
+			if (entry.time < this.windowEnd) {
+				this.lateEntries.add(entry);
+			} else {
+				this.partitions[roadLog.partition].queue.add(entry);
+			}
+		} else {
+			Partition partition = this.partitions[parent.roadLog.partition];
+			if (roadLog.partition == partition.index) {
+				partition.queue.add(entry);
+			} else {
+				partition.outbox.add(entry);
+			}
+		}
+	}
+
+	@Override
+	public void unschedule(Message m) {
+		m.killMessage();
+		Entry entry = this.currentEntry.get();
+		if (entry != null) {
+			entry.addKilled(m);
+		}
+	}
+
+	@Override
+	public void startSimulation() {
+		for (Road road : Road.getAllRoads().values()) {
+			getRoadLog(road);
+		}
+		double windowSize = getWindowSize();
+		log.info("Simulating " + this.partitions.length + " partitions with " + this.numberOfThreads + " threads in windows of " + windowSize + "s.");
+
+		EventsManager events = Message.eventsManager;
+		Message.setEventsManager(new EventsBuffer(events));
+		ExecutorService executor = null;
+		if (this.numberOfThreads > 1 && this.partitions.length > 1) {
+			executor = Executors.newFixedThreadPool(this.numberOfThreads, runnable -> {
+				Thread thread = new Thread(runnable, "JDEQSim");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		try {
+			double windowStart;
+			while ((windowStart = getNextMessageTime()) < this.simulationEndTime) {
+				this.window++;
+				this.simTime = windowStart;
+				this.windowEnd = Math.min(windowStart + windowSize, this.simulationEndTime);
+				handlePartitions(executor);
+				handleLateMessages();
+				processEvents(events);
+				printLog();
+			}
+			// like the sequential scheduler, handle the first message at or after the end time
+			handleLastMessage(events);
+		} finally {
+			if (executor != null) {
+				executor.shutdown();
+			}
+			Message.setEventsManager(events);
+		}
+		log.info(this.window + " windows, " + this.lateMessages + " messages to other partitions within the same window, "
+				+ this.rollbacks + " rollbacks which undid " + this.undoneMessages + " messages.");
+	}
+
+	@Override
+	public double getSimTime() {
+		return this.simTime;
+	}
+
+	private double getWindowSize() {
+		double lookahead = Double.POSITIVE_INFINITY;
+		for (RoadLog roadLog : this.roadLogs.values()) {
+			Link link = roadLog.road.getLink();
+			Integer toPartition = this.nodePartitions.get(link.getToNode().getId());
+			if (toPartition != null && toPartition != roadLog.partition) {
+				lookahead = Math.min(lookahead, Math.min(link.getLength() / link.getFreespeed(), roadLog.road.inverseOutFlowCapacity));
+			}
+		}
+		return Math.max(MIN_WINDOW_SIZE, Math.min(MAX_WINDOW_SIZE, lookahead));
+	}
+
+	private double getNextMessageTime() {
+		double time = Double.POSITIVE_INFINITY;
+		for (Partition partition : this.partitions) {
+			Entry entry = partition.peek();
+			if (entry != null) {
+				time = Math.min(time, entry.time);
+			}
+		}
+		return time;
+	}
+
+	private void handlePartitions(ExecutorService executor) {
+		this.phase = Phase.PARALLEL;
+		if (executor == null) {
+			for (Partition partition : this.partitions) {
+				partition.call();
+			}
+			return;
+		}
+		try {
+			for (Future<Void> future : executor.invokeAll(Arrays.asList(this.partitions))) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private void handleLateMessages() {
+		this.phase = Phase.LATE;
+		for (Partition partition : this.partitions) {
+			for (Entry entry : partition.outbox) {
+				if (entry.time < this.windowEnd) {
+					this.lateEntries.add(entry);
+					this.lateMessages++;
+				} else {
+					this.partitions[entry.roadLog.partition].queue.add(entry);
+				}
+			}
+			partition.outbox.clear();
+		}
+		Entry entry;
+		while ((entry = this.lateEntries.poll()) != null) {
+			RoadLog roadLog = entry.roadLog;
+			if (entry.state == State.QUEUED && entry.message.isAlive() && roadLog.window == this.window && !roadLog.processed.isEmpty()
+					&& roadLog.processed.get(roadLog.processed.size() - 1).compareTo(entry) > 0) {
+				undo(roadLog);
+				this.lateEntries.add(entry);
+			} else {
+				handle(entry, this.lateSkipped, this.lateTouched);
+			}
+		}
+	}
+
+	private void handleLastMessage(EventsManager events) {
+		Partition first = null;
+		Entry entry = null;
+		for (Partition partition : this.partitions) {
+			Entry head = partition.peek();
+			if (head != null && (entry == null || head.compareTo(entry) < 0)) {
+				first = partition;
+				entry = head;
+			}
+		}
+		if (first != null) {
+			first.queue.poll();
+			this.phase = Phase.DONE;
+			this.window++;
+			this.simTime = entry.time;
+			handle(entry, this.lateSkipped, this.lateTouched);
+			processEvents(events);
+		}
+	}
+
+	/**
+	 * Handles the message of the entry, unless it has been cancelled or killed in the meantime.
+	 */
+	private void handle(Entry entry, List<Entry> skipped, List<RoadLog> touched) {
+		if (entry.state == State.CANCELLED) {
+			return;
+		}
+		if (!entry.message.isAlive()) {
+			entry.state = State.SKIPPED;
+			skipped.add(entry);
+			return;
+		}
+		RoadLog roadLog = entry.roadLog;
+		if (roadLog.window != this.window) {
+			roadLog.window = this.window;
+			roadLog.snapshot = roadLog.road.saveState();
+			touched.add(roadLog);
+		}
+		roadLog.processed.add(entry);
+		if (entry.message instanceof EndRoadMessage || entry.message instanceof StartingLegMessage || entry.message instanceof EndLegMessage) {
+			// only these messages change the vehicle
+			entry.vehicleState = ((EventMessage) entry.message).vehicle.saveState();
+		}
+		entry.state = State.PROCESSED;
+		this.currentEntry.set(entry);
+		try {
+			processMessage(entry.message);
+		} finally {
+			this.currentEntry.remove();
+		}
+	}
+
+	/**
+	 * Undoes all messages the road has handled in the current window, and all messages which depend on them: the
+	 * messages they have sent and the messages handled afterwards by the same roads. The undone messages are queued
+	 * again, unless they have been sent by another undone message.
+	 */
+	private void undo(RoadLog first) {
+		this.rollbacks++;
+		List<Entry> undone = new ArrayList<>();
+		List<RoadLog> restored = new ArrayList<>();
+		Deque<Entry> stack = new ArrayDeque<>();
+		first.restored = true;
+		restored.add(first);
+		stack.addAll(first.processed);
+		while (!stack.isEmpty()) {
+			Entry entry = stack.pop();
+			if (entry.state != State.PROCESSED) {
+				continue;
+			}
+			entry.state = State.UNDONE;
+			undone.add(entry);
+			if (!entry.roadLog.restored) {
+				entry.roadLog.restored = true;
+				restored.add(entry.roadLog);
+				stack.addAll(entry.roadLog.processed);
+			}
+			if (entry.children != null) {
+				stack.addAll(entry.children);
+			}
+		}
+		// the vehicles end up in their state before their earliest undone message
+		undone.sort(Collections.reverseOrder());
+		for (Entry entry : undone) {
+			if (entry.vehicleState != null) {
+				((EventMessage) entry.message).vehicle.restoreState(entry.vehicleState);
+			}
+		}
+		for (RoadLog roadLog : restored) {
+			roadLog.road.restoreState(roadLog.snapshot);
+			roadLog.processed.clear();
+			roadLog.restored = false;
+		}
+		for (Entry entry : undone) {
+			if (entry.killed != null) {
+				for (Message killed : entry.killed) {
+					killed.reviveMessage();
+				}
+			}
+			if (entry.children != null) {
+				for (Entry child : entry.children) {
+					child.state = State.CANCELLED;
+				}
+			}
+			entry.reset();
+		}
+		for (Entry entry : undone) {
+			if (entry.state == State.UNDONE) {
+				entry.state = State.QUEUED;
+				this.lateEntries.add(entry);
+			}
+		}
+		requeueRevived(this.lateSkipped);
+		for (Partition partition : this.partitions) {
+			requeueRevived(partition.skipped);
+		}
+		this.undoneMessages += undone.size();
+	}
+
+	private void requeueRevived(List<Entry> skipped) {
+		skipped.removeIf(entry -> {
+			if (entry.state == State.SKIPPED && entry.message.isAlive()) {
+				entry.state = State.QUEUED;
+				this.lateEntries.add(entry);
+				return true;
+			}
+			return entry.state != State.SKIPPED;
+		});
+	}
+
+	/**
+	 * Passes on the events of all messages handled in the current window, in the order of the messages.
+	 */
+	private void processEvents(EventsManager events) {
+		List<Entry> handled = new ArrayList<>();
+		collectHandled(this.lateTouched, handled);
+		this.lateSkipped.clear();
+		for (Partition partition : this.partitions) {
+			collectHandled(partition.touched, handled);
+			partition.skipped.clear();
+		}
+		Collections.sort(handled);
+		for (Entry entry : handled) {
+			if (entry.events != null) {
+				for (Event event : entry.events) {
+					events.processEvent(event);
+				}
+			}
+			entry.reset();
+		}
+	}
+
+	private static void collectHandled(List<RoadLog> touched, List<Entry> handled) {
+		for (RoadLog roadLog : touched) {
+			handled.addAll(roadLog.processed);
+			roadLog.processed.clear();
+			roadLog.snapshot = null;
+		}
+		touched.clear();
+	}
+
+	private RoadLog getRoadLog(Road road) {
+		RoadLog roadLog = this.roadLogs.get(road.getLink().getId());
+		if (roadLog == null || roadLog.road != road) {
+			if (this.phase != Phase.SETUP) {
+				throw new IllegalStateException("Road " + road.getLink().getId() + " has been created after the start of the simulation.");
+			}
+			roadLog = new RoadLog(road, this.nodePartitions.get(road.getLink().getFromNode().getId()));
+			this.roadLogs.put(road.getLink().getId(), roadLog);
+		}
+		return roadLog;
+	}
+
+	private static Road getRoad(Message m) {
+		if (m instanceof EndRoadMessage) {
+			// the end of a road is handled by the road the vehicle requests to enter next
+			return Road.getRoad(((EndRoadMessage) m).vehicle.getNextLinkId());
+		}
+		return (Road) m.getReceivingUnit();
+	}
+
+	private void printLog() {
+		// print output each hour
+		if (this.simTime / this.hourlyLogTime > 1) {
+			this.hourlyLogTime = this.simTime + 3600;
+			log.info("Simulation at " + this.simTime / 3600 + "[h]");
+			Gbl.printMemoryUsage();
+		}
+	}
+
+	private static int comparePaths(long[] path0, long[] path1) {
+		int length = Math.min(path0.length, path1.length);
+		for (int i = 0; i < length; i++) {
+			int result = Long.compare(path0[i], path1[i]);
+			if (result != 0) {
+				return result;
+			}
+		}
+		return Integer.compare(path0.length, path1.length);
+	}
+
+	/**
+	 * A scheduled message, together with its key and what is needed to undo it.
+	 */
+	private static final class Entry implements Comparable<Entry> {
+
+		private static final long[] ROOT_PATH = new long[0];
+
+		final Message message;
+		final RoadLog roadLog;
+		final double time;
+		final long[] path;
+		// the key of the sender only breaks ties between messages which were sent for a later time
+		final double senderTime;
+		final long[] senderPath;
+
+		State state = State.QUEUED;
+		int numberOfChildren = 0;
+		List<Entry> children = null;
+		List<Message> killed = null;
+		List<Event> events = null;
+		Vehicle.State vehicleState = null;
+
+		Entry(Message message, RoadLog roadLog, Entry sender, int childIndex) {
+			this.message = message;
+			this.roadLog = roadLog;
+			this.time = message.getMessageArrivalTime();
+			long element = getPathElement(message, childIndex);
+			if (sender != null && sender.time == this.time) {
+				this.path = Arrays.copyOf(sender.path, sender.path.length + 1);
+				this.path[sender.path.length] = element;
+			} else {
+				this.path = new long[] { element };
+			}
+			this.senderTime = sender == null ? Double.NEGATIVE_INFINITY : sender.time;
+			this.senderPath = sender == null ? ROOT_PATH : sender.path;
+		}
+
+		private static long getPathElement(Message message, int childIndex) {
+			// a higher priority comes first
+			long priority = Math.max(0, Math.min(0xFFFF, 0x7FFF - message.priority));
+			long person = 0;
+			if (message instanceof EventMessage && ((EventMessage) message).vehicle != null) {
+				person = ((EventMessage) message).vehicle.getOwnerPerson().getId().index();
+			}
+			return priority << 48 | person << 16 | Math.min(childIndex, 0xFFFF);
+		}
+
+		void addChild(Entry child) {
+			if (this.children == null) {
+				this.children = new ArrayList<>(2);
+			}
+			this.children.add(child);
+		}
+
+		void addKilled(Message m) {
+			if (this.killed == null) {
+				this.killed = new ArrayList<>(1);
+			}
+			this.killed.add(m);
+		}
+
+		void addEvent(Event event) {
+			if (this.events == null) {
+				this.events = new ArrayList<>(2);
+			}
+			this.events.add(event);
+		}
+
+		// forgets what is only needed while the current window may still be undone
+		void reset() {
+			this.numberOfChildren = 0;
+			this.children = null;
+			this.killed = null;
+			this.events = null;
+			this.vehicleState = null;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			int result = Double.compare(this.time, other.time);
+			if (result == 0) {
+				result = comparePaths(this.path, other.path);
+			}
+			if (result == 0) {
+				result = Double.compare(this.senderTime, other.senderTime);
+			}
+			if (result == 0) {
+				result = comparePaths(this.senderPath, other.senderPath);
+			}
+			return result;
+		}
+	}
+
+	private static final class RoadLog {
+		final Road road;
+		final int partition;
+		// the window in which the road has last handled a message, and its state before that window
+		int window = 0;
+		Road.State snapshot = null;
+		// the messages handled in the current window, in the order of their keys
+		final List<Entry> processed = new ArrayList<>();
+		boolean restored = false;
+
+		RoadLog(Road road, int partition) {
+			this.road = road;
+			this.partition = partition;
+		}
+	}
+
+	private final class Partition implements Callable<Void> {
+		final int index;
+		final PriorityQueue<Entry> queue = new PriorityQueue<>();
+		// messages to roads of other partitions, sent in the current window
+		final List<Entry> outbox = new ArrayList<>();
+		final List<Entry> skipped = new ArrayList<>();
+		final List<RoadLog> touched = new ArrayList<>();
+
+		Partition(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public Void call() {
+			Entry entry;
+			while ((entry = this.queue.peek()) != null && entry.time < windowEnd) {
+				this.queue.poll();
+				handle(entry, this.skipped, this.touched);
+			}
+			return null;
+		}
+
+		// only between windows, when cancelled or killed messages cannot come back
+		Entry peek() {
+			Entry entry;
+			while ((entry = this.queue.peek()) != null && (entry.state == State.CANCELLED || !entry.message.isAlive())) {
+				this.queue.poll();
+			}
+			return entry;
+		}
+	}
+
+	/**
+	 * Attaches the events to the message which is currently handled, so they can be passed on in the right order
+	 * once the window is complete.
+	 */
+	private final class EventsBuffer implements EventsManager {
+
+		private final EventsManager delegate;
+
+		EventsBuffer(EventsManager delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void processEvent(Event event) {
+			Entry entry = currentEntry.get();
+			if (entry != null) {
+				entry.addEvent(event);
+			} else {
+				this.delegate.processEvent(event);
+			}
+		}
+
+		@Override
+		public void addHandler(EventHandler handler) {
+			this.delegate.addHandler(handler);
+		}
+
+		@Override
+		public void removeHandler(EventHandler handler) {
+			this.delegate.removeHandler(handler);
+		}
+
+		@Override
+		public void resetHandlers(int iteration) {
+			this.delegate.resetHandlers(iteration);
+		}
+
+		@Override
+		public void initProcessing() {
+			this.delegate.initProcessing();
+		}
+
+		@Override
+		public void afterSimStep(double time) {
+			this.delegate.afterSimStep(time);
+		}
+
+		@Override
+		public void finishProcessing() {
+			this.delegate.finishProcessing();
+		}
+	}
+
+}
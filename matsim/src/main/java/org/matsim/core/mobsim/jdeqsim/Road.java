@@ -340,4 +340,46 @@ public class Road extends SimUnit {
 		return getAllRoads().get(linkId);
 	}
 
+	/**
+	 * A copy of the mutable state of a road, which allows the {@link ParallelScheduler} to undo the messages it has
+	 * handled too early.
+	 */
+	static final class State {
+		private final LinkedList<Double> gap;
+		private final LinkedList<Vehicle> interestedInEnteringRoad;
+		private final double timeOfLastEnteringVehicle;
+		private final double timeOfLastLeavingVehicle;
+		private final int noOfCarsPromisedToEnterRoad;
+		private final LinkedList<Vehicle> carsOnTheRoad;
+		private final LinkedList<Double> earliestDepartureTimeOfCar;
+		private final LinkedList<DeadlockPreventionMessage> deadlockPreventionMessages;
+
+		private State(Road road) {
+			this.gap = road.gap == null ? null : new LinkedList<>(road.gap);
+			this.interestedInEnteringRoad = new LinkedList<>(road.interestedInEnteringRoad);
+			this.timeOfLastEnteringVehicle = road.timeOfLastEnteringVehicle;
+			this.timeOfLastLeavingVehicle = road.timeOfLastLeavingVehicle;
+			this.noOfCarsPromisedToEnterRoad = road.noOfCarsPromisedToEnterRoad;
+			this.carsOnTheRoad = new LinkedList<>(road.carsOnTheRoad);
+			this.earliestDepartureTimeOfCar = new LinkedList<>(road.earliestDepartureTimeOfCar);
+			this.deadlockPreventionMessages = new LinkedList<>(road.deadlockPreventionMessages);
+		}
+	}
+
+	State saveState() {
+		return new State(this);
+	}
+
+	// the state may be restored more than once, so the lists are copied again
+	void restoreState(State state) {
+		this.gap = state.gap == null ? null : new LinkedList<>(state.gap);
+		this.interestedInEnteringRoad = new LinkedList<>(state.interestedInEnteringRoad);
+		this.timeOfLastEnteringVehicle = state.timeOfLastEnteringVehicle;
+		this.timeOfLastLeavingVehicle = state.timeOfLastLeavingVehicle;
+		this.noOfCarsPromisedToEnterRoad = state.noOfCarsPromisedToEnterRoad;
+		this.carsOnTheRoad = new LinkedList<>(state.carsOnTheRoad);
+		this.earliestDepartureTimeOfCar = new LinkedList<>(state.earliestDepartureTimeOfCar);
+		this.deadlockPreventionMessages = new LinkedList<>(state.deadlockPreventionMessages);
+	}
+
 }
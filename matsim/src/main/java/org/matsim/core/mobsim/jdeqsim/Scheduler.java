@@ -35,6 +35,7 @@ public class Scheduler {
 	private double simulationStartTime = System.currentTimeMillis();
 	private final double simulationEndTime;
 	private double hourlyLogTime = 3600;
+	private boolean messagePooling = false;
 
 	public Scheduler(MessageQueue queue) {
 		this(queue, Double.MAX_VALUE);
@@ -53,19 +54,33 @@ public class Scheduler {
 		queue.removeMessage(m);
 	}
 
+	/**
+	 * If set, the messages are recycled after they have been handled, see {@link Message#recycleMessage()}.
+	 */
+	public void setMessagePooling(boolean messagePooling) {
+		this.messagePooling = messagePooling;
+	}
+
 	public void startSimulation() {
 		Message m;
 		while (!queue.isEmpty() && simTime < simulationEndTime) {
 			m = queue.getNextMessage();
 			if (m != null) {
 				simTime = m.getMessageArrivalTime();
-				m.processEvent();
-				m.handleMessage();
+				processMessage(m);
 			}
 			printLog();
 		}
 	}
 
+	protected final void processMessage(Message m) {
+		m.processEvent();
+		m.handleMessage();
+		if (messagePooling) {
+			m.recycleMessage();
+		}
+	}
+
 	public double getSimTime() {
 		return simTime;
 	}
@@ -83,4 +83,9 @@ public class StartingLegMessage extends EventMessage {
 
 	}
 
+	@Override
+	public void recycleMessage() {
+		MessageFactory.disposeStartingLegMessage(this);
+	}
+
 }
@@ -296,4 +296,48 @@ public class Vehicle extends SimUnit {
 		return this.activityEndTimeInterpretation ;
 	}
 
+	/**
+	 * The link of the road the vehicle requests to enter when it reaches the end of its current road (see
+	 * {@link EndRoadMessage}).
+	 */
+	Id<Link> getNextLinkId() {
+		if (isCurrentLegFinished()) {
+			Plan plan = getOwnerPerson().getSelectedPlan();
+			return ((Activity) plan.getPlanElements().get(getLegIndex() + 1)).getLinkId();
+		}
+		return getCurrentLinkRoute()[getLinkIndex() + 1];
+	}
+
+	/**
+	 * A copy of the position of the vehicle in its plan, which allows the {@link ParallelScheduler} to undo the
+	 * messages it has handled too early.
+	 */
+	static final class State {
+		private final Leg currentLeg;
+		private final int legIndex;
+		private final Id<Link> currentLinkId;
+		private final int linkIndex;
+		private final Id<Link>[] currentLinkRoute;
+
+		private State(Vehicle vehicle) {
+			this.currentLeg = vehicle.currentLeg;
+			this.legIndex = vehicle.legIndex;
+			this.currentLinkId = vehicle.currentLinkId;
+			this.linkIndex = vehicle.linkIndex;
+			this.currentLinkRoute = vehicle.currentLinkRoute;
+		}
+	}
+
+	State saveState() {
+		return new State(this);
+	}
+
+	void restoreState(State state) {
+		this.currentLeg = state.currentLeg;
+		this.legIndex = state.legIndex;
+		this.currentLinkId = state.currentLinkId;
+		this.linkIndex = state.linkIndex;
+		this.currentLinkRoute = state.currentLinkRoute;
+	}
+
 }
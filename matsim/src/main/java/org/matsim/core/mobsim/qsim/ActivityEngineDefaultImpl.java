@@ -19,7 +19,9 @@
 
 package org.matsim.core.mobsim.qsim;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.PriorityBlockingQueue;
 
@@ -100,16 +102,34 @@ class ActivityEngineDefaultImpl implements ActivityEngine {
 	@Override
 	public void doSimStep(double time) {
 		beforeFirstSimStep = false;
-		while (activityEndsList.peek() != null) {
-			if (activityEndsList.peek().activityEndTime <= time) {
+		if (!internalInterface.getMobsim().isParallelDepartures()) {
+			while (activityEndsList.peek() != null) {
+				if (activityEndsList.peek().activityEndTime <= time) {
+					MobsimAgent agent = activityEndsList.poll().agent;
+					unregisterAgentAtActivityLocation(agent);
+					agent.endActivityAndComputeNextState(time);
+					internalInterface.arrangeNextAgentState(agent);
+				} else {
+					return;
+				}
+			}
+			return;
+		}
+		// With parallel departures, the agents are handed over in batches, so that the QSim can process them in parallel.
+		// All agents of a batch have left the queue before the first activity ends, so an agent whose activity end is
+		// rescheduled by another agent of the same batch (e.g. by within-day replanning) still ends its activity now.
+		// Agents that start an activity which is already over do not go through the queue (see handleActivity), but
+		// within-day replanning may reschedule an activity end into the past while a batch is processed.
+		List<MobsimAgent> endingAgents = new ArrayList<>();
+		do {
+			endingAgents.clear();
+			while (activityEndsList.peek() != null && activityEndsList.peek().activityEndTime <= time) {
 				MobsimAgent agent = activityEndsList.poll().agent;
 				unregisterAgentAtActivityLocation(agent);
-				agent.endActivityAndComputeNextState(time);
-				internalInterface.arrangeNextAgentState(agent);
-			} else {
-				return;
+				endingAgents.add(agent);
 			}
-		}
+			internalInterface.endActivitiesAndArrangeNextAgentStates(time, endingAgents);
+		} while (!endingAgents.isEmpty());
 	}
 
 	@Override
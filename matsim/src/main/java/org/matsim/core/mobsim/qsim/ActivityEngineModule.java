@@ -28,7 +28,17 @@ public class ActivityEngineModule extends AbstractQSimModule {
 
 	@Override
 	protected void configureQSim() {
-		bind( ActivityEngineDefaultImpl.class ).in( Singleton.class );
-		addQSimComponentBinding( COMPONENT_NAME ).to( ActivityEngineDefaultImpl.class );
+		switch ( getConfig().qsim().getActivityEndsQueue() ) {
+			case priorityQueue:
+				bind( ActivityEngineDefaultImpl.class ).in( Singleton.class );
+				addQSimComponentBinding( COMPONENT_NAME ).to( ActivityEngineDefaultImpl.class );
+				break;
+			case timingWheel:
+				bind( ActivityEngineWithTimingWheel.class ).in( Singleton.class );
+				addQSimComponentBinding( COMPONENT_NAME ).to( ActivityEngineWithTimingWheel.class );
+				break;
+			default:
+				throw new RuntimeException( "Unknown activity ends queue: " + getConfig().qsim().getActivityEndsQueue() );
+		}
 	}
 }
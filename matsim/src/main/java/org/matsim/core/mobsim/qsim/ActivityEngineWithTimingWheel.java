@@ -0,0 +1,187 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.PersonStuckEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.mobsim.framework.MobsimAgent;
+import org.matsim.core.mobsim.framework.MobsimAgent.State;
+import org.matsim.core.utils.collections.TimingWheel;
+
+/**
+ * Same behavior as {@link ActivityEngineDefaultImpl}, but keeps the agents in a {@link TimingWheel} instead of a
+ * priority queue. Adding an agent and rescheduling its activity end take constant time, and agents wake up in the
+ * same order. Only the {@link PersonStuckEvent}s at the end of the simulation are thrown in a different order.
+ */
+class ActivityEngineWithTimingWheel implements ActivityEngine {
+
+	private final EventsManager eventsManager;
+
+	/**
+	 * Agents with the same activity end time leave in the same order as in {@link ActivityEngineDefaultImpl},
+	 * i.e. the one with the larger id first.
+	 * <p>
+	 * Access needs to be synchronized since agents may start activities from multiple threads in the parallel qsim.
+	 */
+	private final TimingWheel<MobsimAgent> activityEnds = new TimingWheel<>((a0, a1) -> a1.getId().compareTo(a0.getId()));
+
+	private InternalInterface internalInterface;
+
+	// See ActivityEngineDefaultImpl.handleActivity for the reason for this.
+	private boolean beforeFirstSimStep = true;
+
+	@Inject
+	ActivityEngineWithTimingWheel(EventsManager eventsManager) {
+		this.eventsManager = eventsManager;
+	}
+
+	@Override
+	public void onPrepareSim() {
+		// Nothing to do here
+	}
+
+	@Override
+	public void doSimStep(double time) {
+		beforeFirstSimStep = false;
+		MobsimAgent agent;
+		if (!internalInterface.getMobsim().isParallelDepartures()) {
+			while ((agent = pollActivityEnd(time)) != null) {
+				unregisterAgentAtActivityLocation(agent);
+				agent.endActivityAndComputeNextState(time);
+				internalInterface.arrangeNextAgentState(agent);
+			}
+			return;
+		}
+		// handed over in batches, see ActivityEngineDefaultImpl
+		List<MobsimAgent> endingAgents = new ArrayList<>();
+		do {
+			endingAgents.clear();
+			while ((agent = pollActivityEnd(time)) != null) {
+				unregisterAgentAtActivityLocation(agent);
+				endingAgents.add(agent);
+			}
+			internalInterface.endActivitiesAndArrangeNextAgentStates(time, endingAgents);
+		} while (!endingAgents.isEmpty());
+	}
+
+	private MobsimAgent pollActivityEnd(double time) {
+		synchronized (activityEnds) {
+			return activityEnds.poll(time);
+		}
+	}
+
+	@Override
+	public void afterSim() {
+		double now = this.internalInterface.getMobsim().getSimTimer().getTimeOfDay();
+		synchronized (activityEnds) {
+			for (MobsimAgent agent : activityEnds.getElements()) {
+				// since we are at an activity, it is not plausible to assume that the agents know mode or destination
+				// link id.  Thus generating the event with ``null'' in the corresponding entries.  kai, mar'12
+				eventsManager.processEvent(new PersonStuckEvent(now, agent.getId(), null, null));
+			}
+			activityEnds.clear();
+		}
+	}
+
+	@Override
+	public void setInternalInterface(InternalInterface internalInterface) {
+		this.internalInterface = internalInterface;
+	}
+
+	@Override
+	public boolean handleActivity(MobsimAgent agent) {
+		if (agent.getActivityEndTime() == Double.POSITIVE_INFINITY) {
+			// This is the last planned activity.
+			// So the agent goes to sleep.
+			internalInterface.getMobsim().getAgentCounter().decLiving();
+		} else if (agent.getActivityEndTime() <= internalInterface.getMobsim().getSimTimer().getTimeOfDay() && !beforeFirstSimStep) {
+			// This activity is already over (planned for 0 duration)
+			// So we proceed immediately.
+			agent.endActivityAndComputeNextState(internalInterface.getMobsim().getSimTimer().getTimeOfDay());
+			internalInterface.arrangeNextAgentState(agent) ;
+		} else {
+			// The agent commences an activity on this link.
+			synchronized (activityEnds) {
+				activityEnds.add(agent, agent.getActivityEndTime());
+			}
+			internalInterface.registerAdditionalAgentOnLink(agent);
+		}
+		return true;
+	}
+
+	/**
+	 * For within-day replanning. Tells this engine that the activityEndTime the agent reports may have changed since
+	 * the agent was added to this engine through handleActivity.
+	 *
+	 * @param agent The agent.
+	 */
+	@Override
+	public void rescheduleActivityEnd(final MobsimAgent agent) {
+		if ( agent.getState()!=State.ACTIVITY ) {
+			return ;
+		}
+
+		double newActivityEndTime = agent.getActivityEndTime();
+		boolean wasScheduled;
+		synchronized (activityEnds) {
+			wasScheduled = activityEnds.remove(agent);
+		}
+
+		if (!wasScheduled) {
+			if (newActivityEndTime == Double.POSITIVE_INFINITY) {
+				// agent was de-activated and still should be de-activated - nothing to do here
+			} else {
+				// re-activate the agent
+				synchronized (activityEnds) {
+					activityEnds.add(agent, newActivityEndTime);
+				}
+				internalInterface.registerAdditionalAgentOnLink(agent);
+				((org.matsim.core.mobsim.qsim.AgentCounter) internalInterface.getMobsim().getAgentCounter()).incLiving();
+			}
+		} else if (newActivityEndTime == Double.POSITIVE_INFINITY) {
+			// After the re-planning the agent's current activity has changed to its last activity.
+			// Therefore the agent is de-activated. cdobler, oct'11
+			unregisterAgentAtActivityLocation(agent);
+			internalInterface.getMobsim().getAgentCounter().decLiving();
+		} else {
+			// The activity is just rescheduled during the day, so we keep the agent active. cdobler, oct'11
+			synchronized (activityEnds) {
+				activityEnds.add(agent, newActivityEndTime);
+			}
+		}
+	}
+
+	private void unregisterAgentAtActivityLocation(final MobsimAgent agent) {
+		Id<Person> agentId = agent.getId();
+		Id<Link> linkId = agent.getCurrentLinkId();
+		if (linkId != null) { // may be bushwacking
+			internalInterface.unregisterAdditionalAgentOnLink(agentId, linkId);
+		}
+	}
+
+}
@@ -0,0 +1,96 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim;
+
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventArray;
+import org.matsim.core.events.handler.EventHandler;
+
+/**
+ * Delegates to another events manager, except for events that are thrown by a thread which currently processes departures
+ * in parallel (see {@link ParallelDepartureProcessor}).  Those events are collected per agent and passed on later, in the
+ * order in which the agents ended their activities.
+ * <p>
+ * All events managers through which events may be thrown while departing need to be wrapped: the one of the mobsim, which
+ * is used by the agents, and the one of the network links.
+ */
+public final class DepartureEventsBuffer implements EventsManager {
+
+	private static final ThreadLocal<EventArray> buffer = new ThreadLocal<>();
+
+	private final EventsManager delegate;
+
+	public DepartureEventsBuffer(EventsManager delegate) {
+		this.delegate = delegate;
+	}
+
+	/**
+	 * From now on, events thrown by the current thread are added to <code>events</code>.
+	 */
+	static void startBuffering(EventArray events) {
+		buffer.set(events);
+	}
+
+	static void stopBuffering() {
+		buffer.remove();
+	}
+
+	@Override
+	public void processEvent(Event event) {
+		EventArray events = buffer.get();
+		if (events != null) {
+			events.add(event);
+		} else {
+			this.delegate.processEvent(event);
+		}
+	}
+
+	@Override
+	public void addHandler(EventHandler handler) {
+		this.delegate.addHandler(handler);
+	}
+
+	@Override
+	public void removeHandler(EventHandler handler) {
+		this.delegate.removeHandler(handler);
+	}
+
+	@Override
+	public void resetHandlers(int iteration) {
+		this.delegate.resetHandlers(iteration);
+	}
+
+	@Override
+	public void initProcessing() {
+		this.delegate.initProcessing();
+	}
+
+	@Override
+	public void afterSimStep(double time) {
+		this.delegate.afterSimStep(time);
+	}
+
+	@Override
+	public void finishProcessing() {
+		this.delegate.finishProcessing();
+	}
+
+}
@@ -40,6 +40,19 @@ import java.util.List;
 public interface InternalInterface {
 	QSim getMobsim();
 	void arrangeNextAgentState( MobsimAgent agent );
+
+	/**
+	 * Ends the current activity of the agents and arranges their next state, like calling
+	 * {@link MobsimAgent#endActivityAndComputeNextState(double)} and {@link #arrangeNextAgentState(MobsimAgent)} for one
+	 * agent after the other.  The QSim may do this in parallel, see
+	 * {@link org.matsim.core.config.groups.QSimConfigGroup#isParallelDepartures()}.
+	 */
+	default void endActivitiesAndArrangeNextAgentStates( double now, List<MobsimAgent> agents ) {
+		for ( MobsimAgent agent : agents ) {
+			agent.endActivityAndComputeNextState( now );
+			arrangeNextAgentState( agent );
+		}
+	}
 	void registerAdditionalAgentOnLink(MobsimAgent agent);
 	MobsimAgent unregisterAdditionalAgentOnLink(Id<Person> agentId, Id<Link> linkId);
 
@@ -0,0 +1,230 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventArray;
+import org.matsim.core.mobsim.framework.MobsimAgent;
+import org.matsim.core.mobsim.qsim.interfaces.DepartureHandler;
+import org.matsim.core.mobsim.qsim.qnetsimengine.NetsimEngine;
+import org.matsim.core.mobsim.qsim.qnetsimengine.QNetsimEngineI;
+
+/**
+ * Ends the activities of the agents that leave their activities in the same time step and lets them depart, in parallel.
+ * <p>
+ * The agents are partitioned by the runner of the netsim engine that simulates their departure link, and each partition
+ * is processed by one thread.  Departures on the network thus only touch links that belong to the thread which handles
+ * them.  For each agent whose activity end is thread-safe (see {@link MobsimAgent#isActivityEndThreadSafe()}), the
+ * activity end, the departure event and the departure handlers which are thread-safe (see
+ * {@link DepartureHandler#isThreadSafe()}) run in parallel.  As soon as a departure handler is reached which is not
+ * thread-safe, e.g. teleportation, the agent's departure is suspended.
+ * <p>
+ * Afterwards, the agents are visited again one after the other, in the order in which they were passed in: their events,
+ * which were buffered by {@link DepartureEventsBuffer}, are passed on, and suspended departures as well as agents which
+ * do not depart (e.g. because they start another activity or abort) are handled.  The activities of the other agents,
+ * e.g. agents which call shared logic when their activity ends, are only ended now.  The event stream is therefore
+ * independent of the number of threads and of their timing.
+ */
+final class ParallelDepartureProcessor {
+	private static final Logger log = Logger.getLogger(ParallelDepartureProcessor.class);
+
+	/** the agent has departed */
+	private static final int DEPARTED = -1;
+	/** the agent does not depart; its next state needs to be arranged by the QSim */
+	private static final int ARRANGE = -2;
+	/** the agent's activity is ended in the sequential part */
+	private static final int END_ACTIVITY = -3;
+
+	private final QSim qsim;
+	private final EventsManager events;
+	private final int numberOfThreads;
+	private ExecutorService pool = null;
+
+	ParallelDepartureProcessor(QSim qsim, EventsManager events, int numberOfThreads) {
+		this.qsim = qsim;
+		this.events = events;
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	void endActivitiesAndArrangeNextAgentStates(double now, List<MobsimAgent> agents, InternalInterface internalInterface) {
+		final int n = agents.size();
+		final List<DepartureHandler> departureHandlers = internalInterface.getDepartureHandlers();
+		final EventArray[] agentEvents = new EventArray[n];
+		final int[] nextDepartureHandler = new int[n];
+
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (int[] partition : partition(agents)) {
+			tasks.add(() -> {
+				for (int i : partition) {
+					if (!agents.get(i).isActivityEndThreadSafe()) {
+						nextDepartureHandler[i] = END_ACTIVITY;
+						continue;
+					}
+					EventArray buffer = new EventArray(4);
+					agentEvents[i] = buffer;
+					DepartureEventsBuffer.startBuffering(buffer);
+					try {
+						nextDepartureHandler[i] = endActivityAndDepart(now, agents.get(i), departureHandlers);
+					} finally {
+						DepartureEventsBuffer.stopBuffering();
+					}
+				}
+				return null;
+			});
+		}
+
+		try {
+			for (Future<Void> future : getPool().invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+
+		for (int i = 0; i < n; i++) {
+			MobsimAgent agent = agents.get(i);
+			int next = nextDepartureHandler[i];
+			if (next == END_ACTIVITY) {
+				next = endActivityAndDepart(now, agent, departureHandlers);
+			} else {
+				this.events.processEvents(agentEvents[i]);
+			}
+			if (next == ARRANGE) {
+				internalInterface.arrangeNextAgentState(agent);
+			} else if (next != DEPARTED) {
+				continueDeparture(now, agent, departureHandlers, next);
+			}
+		}
+	}
+
+	/**
+	 * @return {@link #DEPARTED}, {@link #ARRANGE}, or the index of the first departure handler which could not be called.
+	 */
+	private int endActivityAndDepart(double now, MobsimAgent agent, List<DepartureHandler> departureHandlers) {
+		agent.endActivityAndComputeNextState(now);
+		if (agent.getState() != MobsimAgent.State.LEG) {
+			return ARRANGE;
+		}
+		// same as QSim.arrangeAgentDeparture
+		Id<Link> linkId = agent.getCurrentLinkId();
+		this.events.processEvent(new PersonDepartureEvent(now, agent.getId(), linkId, agent.getMode()));
+		for (int h = 0; h < departureHandlers.size(); h++) {
+			DepartureHandler departureHandler = departureHandlers.get(h);
+			if (!departureHandler.isThreadSafe()) {
+				return h;
+			}
+			if (departureHandler.handleDeparture(now, agent, linkId)) {
+				return DEPARTED;
+			}
+		}
+		return departureHandlers.size();
+	}
+
+	private static void continueDeparture(double now, MobsimAgent agent, List<DepartureHandler> departureHandlers, int first) {
+		Id<Link> linkId = agent.getCurrentLinkId();
+		for (int h = first; h < departureHandlers.size(); h++) {
+			if (departureHandlers.get(h).handleDeparture(now, agent, linkId)) {
+				return;
+			}
+		}
+		log.warn("no departure handler wanted to handle the departure of agent " + agent.getId());
+	}
+
+	/**
+	 * @return for each runner of the netsim engine, the indices of the agents departing on its links, in ascending order.
+	 */
+	private List<int[]> partition(List<MobsimAgent> agents) {
+		NetsimEngine netsimEngine = this.qsim.getNetsimEngine();
+		QNetsimEngineI qNetsimEngine = netsimEngine instanceof QNetsimEngineI ? (QNetsimEngineI) netsimEngine : null;
+		int numberOfPartitions = qNetsimEngine != null ? qNetsimEngine.getNumberOfRunners() : this.numberOfThreads;
+
+		int[] partitionOfAgent = new int[agents.size()];
+		int[] partitionSize = new int[numberOfPartitions];
+		for (int i = 0; i < agents.size(); i++) {
+			Id<Link> linkId = agents.get(i).getCurrentLinkId();
+			int p = qNetsimEngine != null && linkId != null ? qNetsimEngine.getRunnerIndex(linkId) : -1;
+			if (p < 0) {
+				// not simulated on the network, any partition will do
+				p = linkId == null ? 0 : Math.floorMod(linkId.hashCode(), numberOfPartitions);
+			}
+			partitionOfAgent[i] = p;
+			partitionSize[p]++;
+		}
+
+		int[][] partitions = new int[numberOfPartitions][];
+		for (int p = 0; p < numberOfPartitions; p++) {
+			partitions[p] = new int[partitionSize[p]];
+			partitionSize[p] = 0;
+		}
+		for (int i = 0; i < agents.size(); i++) {
+			int p = partitionOfAgent[i];
+			partitions[p][partitionSize[p]++] = i;
+		}
+
+		List<int[]> nonEmptyPartitions = new ArrayList<>();
+		for (int[] partition : partitions) {
+			if (partition.length > 0) {
+				nonEmptyPartitions.add(partition);
+			}
+		}
+		return nonEmptyPartitions;
+	}
+
+	private ExecutorService getPool() {
+		if (this.pool == null) {
+			this.pool = Executors.newFixedThreadPool(this.numberOfThreads, new NamedThreadFactory());
+		}
+		return this.pool;
+	}
+
+	void shutdown() {
+		if (this.pool != null) {
+			this.pool.shutdown();
+			this.pool = null;
+		}
+	}
+
+	private static class NamedThreadFactory implements ThreadFactory {
+		private int count = 0;
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "QSim_DepartureThread_" + count++);
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
@@ -103,6 +103,9 @@ public final class QSim extends Thread implements VisMobsim, Netsim, ActivityEnd
 
 	private final EventsManager events;
 
+	/** only with parallel departures, otherwise null */
+	private final ParallelDepartureProcessor parallelDepartureProcessor;
+
 	private NetsimEngine netEngine;
 
 	private final Collection<MobsimEngine> mobsimEngines = new ArrayList<>();
@@ -147,6 +150,15 @@ public final class QSim extends Thread implements VisMobsim, Netsim, ActivityEnd
 			QSim.this.arrangeNextAgentAction(agent);
 		}
 
+		@Override
+		public void endActivitiesAndArrangeNextAgentStates(double now, List<MobsimAgent> agents) {
+			if (QSim.this.parallelDepartureProcessor != null && agents.size() > 1) {
+				QSim.this.parallelDepartureProcessor.endActivitiesAndArrangeNextAgentStates(now, agents, this);
+			} else {
+				InternalInterface.super.endActivitiesAndArrangeNextAgentStates(now, agents);
+			}
+		}
+
 		@Override
 		public QSim getMobsim() {
 			return QSim.this;
@@ -207,10 +219,16 @@ public final class QSim extends Thread implements VisMobsim, Netsim, ActivityEnd
 	@Inject
 	private QSim( final Scenario sc, EventsManager events, Injector childInjector ) {
 		this.scenario = sc;
-		if ( sc.getConfig().qsim().getNumberOfThreads() > 1) {
+		final QSimConfigGroup qsimConfigGroup = sc.getConfig().qsim();
+		if ( qsimConfigGroup.getNumberOfThreads() > 1 && qsimConfigGroup.isParallelDepartures() ) {
+			this.events = new DepartureEventsBuffer( EventsUtils.getParallelFeedableInstance( events ) );
+			this.parallelDepartureProcessor = new ParallelDepartureProcessor( this, this.events, qsimConfigGroup.getNumberOfThreads() );
+		} else if ( qsimConfigGroup.getNumberOfThreads() > 1) {
 			this.events = EventsUtils.getParallelFeedableInstance( events );
+			this.parallelDepartureProcessor = null;
 		} else {
 			this.events = events;
+			this.parallelDepartureProcessor = null;
 		}
 		this.listenerManager = new MobsimListenerManager( this );
 		this.agentCounter = new org.matsim.core.mobsim.qsim.AgentCounter();
@@ -344,6 +362,10 @@ public final class QSim extends Thread implements VisMobsim, Netsim, ActivityEnd
 			}
 		}
 
+		if (this.parallelDepartureProcessor != null) {
+			this.parallelDepartureProcessor.shutdown();
+		}
+
 		if (gotException) throw new RuntimeException( "got exception while cleaning up the QSim. Please check the error messages above for details.");
 		events.finishProcessing();
 		if (analyzeRunTimes) {
@@ -559,6 +581,18 @@ public final class QSim extends Thread implements VisMobsim, Netsim, ActivityEnd
 		return this.netEngine.getNetsimNetwork();
 	}
 
+	/*package*/ NetsimEngine getNetsimEngine() {
+		return this.netEngine;
+	}
+
+	/**
+	 * @return <code>true</code> if the activity engines should hand over the agents whose activities end in a time step as
+	 * one batch, see {@link InternalInterface#endActivitiesAndArrangeNextAgentStates(double, List)}.
+	 */
+	/*package*/ boolean isParallelDepartures() {
+		return this.parallelDepartureProcessor != null;
+	}
+
 	@Override
 	public VisNetwork getVisNetwork() {
 		return this.netEngine.getNetsimNetwork();
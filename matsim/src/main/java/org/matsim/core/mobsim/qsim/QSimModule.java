@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.Set;
 
 import javax.inject.Inject;
+import javax.inject.Singleton;
 
 import org.matsim.core.config.Config;
 import org.matsim.core.controler.AbstractModule;
@@ -42,6 +43,8 @@ import org.matsim.core.mobsim.qsim.pt.TransitEngineModule;
 import org.matsim.core.mobsim.qsim.pt.TransitStopHandlerFactory;
 import org.matsim.core.mobsim.qsim.qnetsimengine.DefaultQNetworkFactory;
 import org.matsim.core.mobsim.qsim.qnetsimengine.QLanesNetworkFactory;
+import org.matsim.core.mobsim.qsim.qnetsimengine.QNetsimEnginePartitioner;
+import org.matsim.core.mobsim.qsim.qnetsimengine.QNetsimEnginePartitionerProvider;
 import org.matsim.core.mobsim.qsim.qnetsimengine.QNetsimEngineModule;
 import org.matsim.core.mobsim.qsim.qnetsimengine.QNetworkFactory;
 
@@ -110,6 +113,9 @@ public class QSimModule extends AbstractModule {
 		// I don't know why this is here.  kai, nov'18
 
 		bind(Mobsim.class).toProvider(QSimProvider.class);
+
+		bind(QNetsimEnginePartitioner.class).toProvider(QNetsimEnginePartitionerProvider.class).in(Singleton.class);
+		// controler scope, so that a partitioner measuring the work can use the work of the previous iteration.
 		
 		// yyyy the following will eventually be moved to QSim scope, and into QNetsimEngineModule:
 //		if ( config.qsim().isUseLanes() ) {
@@ -81,6 +81,12 @@ public class PersonDriverAgentImpl implements MobsimDriverAgent, MobsimPassenger
 		basicAgentDelegate.endActivityAndComputeNextState(now);
 	}
 
+	@Override
+	public final boolean isActivityEndThreadSafe() {
+		// only advances the own plan
+		return true;
+	}
+
 	@Override
 	public final Id<Vehicle> getPlannedVehicleId() {
 		return basicAgentDelegate.getPlannedVehicleId();
@@ -82,6 +82,11 @@ public final class TransitAgent implements MobsimDriverPassengerAgent, PlanAgent
 		basicAgentDelegate.endActivityAndComputeNextState(now);
 	}
 	@Override
+	public final boolean isActivityEndThreadSafe() {
+		// only advances the own plan
+		return true;
+	}
+	@Override
 	public final Id<Vehicle> getPlannedVehicleId() {
 		return basicAgentDelegate.getPlannedVehicleId();
 	}
@@ -178,6 +183,10 @@ public final class TransitAgent implements MobsimDriverPassengerAgent, PlanAgent
 	public final Id<TransitStopFacility> getDesiredDestinationStopId() {
 		return transitAgentDelegate.getDesiredDestinationStopId();
 	}
+	@Override
+	public final boolean isBoardingOnlyToDesiredDestination() {
+		return transitAgentDelegate.isBoardingOnlyToDesiredDestination();
+	}
 
 	@Override
 	public final PlanElement getPreviousPlanElement() {
@@ -114,6 +114,12 @@ public final class TransitAgentImpl implements PTPassengerAgent {
 		TransitPassengerRoute route = (TransitPassengerRoute) basicAgentDelegate.getCurrentLeg().getRoute();
 		return route.getEgressStopId();
 	}
+
+	@Override
+	public final boolean isBoardingOnlyToDesiredDestination() {
+		// both boarding acceptances check the egress stop
+		return true;
+	}
 	@Override
 	public Id<Link> getCurrentLinkId() {
 		return basicAgentDelegate.getCurrentLinkId() ;
@@ -38,4 +38,14 @@ public interface DepartureHandler extends QSimComponent {
 	 */
 	boolean handleDeparture(double now, MobsimAgent agent, Id<Link> linkId);
 
+	/**
+	 * @return <code>true</code> if {@link #handleDeparture(double, MobsimAgent, Id)} may be called concurrently for agents that
+	 * depart on links which are simulated by different threads of the netsim engine, see
+	 * {@link org.matsim.core.config.groups.QSimConfigGroup#isParallelDepartures()}.  The default is <code>false</code>; such
+	 * departures are then handled after the parallel part, in the same order as without parallel departures.
+	 */
+	default boolean isThreadSafe() {
+		return false;
+	}
+
 }
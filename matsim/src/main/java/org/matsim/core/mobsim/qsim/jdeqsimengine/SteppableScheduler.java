@@ -48,15 +48,13 @@ public class SteppableScheduler extends Scheduler implements Steppable {
 			return;
 		}
 		if (lookahead != null) {
-			lookahead.processEvent();
-			lookahead.handleMessage();
+			processMessage(lookahead);
 			lookahead = null;
 		}
 		while (!queue.isEmpty()) {
 			Message m = queue.getNextMessage();
 			if (m != null && m.getMessageArrivalTime() <= time) {
-				m.processEvent();
-				m.handleMessage();
+				processMessage(m);
 			} else {
 				lookahead = m;
 				return;
@@ -65,8 +65,27 @@ public interface PTPassengerAgent extends PassengerAgent {
 	 */
 	public Id<TransitStopFacility> getDesiredAccessStopId();
 	
+	/**
+	 * Asks a passenger which is waiting for or travelling in a transit vehicle about the stop where it wants to leave the vehicle.
+	 * <p>
+	 * If the passenger only boards vehicles which serve this stop (see {@link #isBoardingOnlyToDesiredDestination()}), the
+	 * {@link TransitStopAgentTracker} indexes the waiting passenger by it.  If the stop changes while the passenger is waiting,
+	 * e.g. due to within-day replanning, the tracker must be informed with
+	 * {@link TransitStopAgentTracker#updateDesiredDestination(PTPassengerAgent, Id)}.
+	 *
+	 * @return The transit stop id.
+	 */
 	public Id<TransitStopFacility> getDesiredDestinationStopId();
 
+	/**
+	 * @return <code>true</code> if {@link #getEnterTransitRoute(TransitLine, TransitRoute, List, TransitVehicle)} only returns
+	 * <code>true</code> if the stops to come contain {@link #getDesiredDestinationStopId()}, so that the passenger need not be asked
+	 * about other vehicles.  The default is <code>false</code>; such passengers are asked about every vehicle arriving at their stop.
+	 */
+	default boolean isBoardingOnlyToDesiredDestination() {
+		return false;
+	}
+
 	/**
 	 * @return a statistical weight, how many "real" agents this agent represents, e.g. "5.0" if you simulate a 20%-sample.
 	 */
@@ -20,6 +20,8 @@
 
 package org.matsim.core.mobsim.qsim.pt;
 
+import java.util.List;
+
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.core.mobsim.qsim.interfaces.MobsimVehicle;
@@ -37,6 +39,23 @@ public interface PassengerAccessEgress {
 	 */
 	public boolean handlePassengerEntering(final PTPassengerAgent agent, MobsimVehicle vehicle, Id<TransitStopFacility> fromStopFacilityId, final double time);
 
+	/**
+	 * Lets several agents waiting at the same stop enter the vehicle, in the given order.  The result is the same as
+	 * calling {@link #handlePassengerEntering(PTPassengerAgent, MobsimVehicle, Id, double)} for one agent after the other,
+	 * but implementations may handle all agents at once.
+	 *
+	 * @return the number of agents which entered the vehicle
+	 */
+	public default int handlePassengersEntering(final List<PTPassengerAgent> agents, MobsimVehicle vehicle, Id<TransitStopFacility> fromStopFacilityId, final double time) {
+		int entered = 0;
+		for (PTPassengerAgent agent : agents) {
+			if (handlePassengerEntering(agent, vehicle, fromStopFacilityId, time)) {
+				entered++;
+			}
+		}
+		return entered;
+	}
+
 	/** 
 	 * @param agent agent to be handled
 	 * @param time time the agent should be handled
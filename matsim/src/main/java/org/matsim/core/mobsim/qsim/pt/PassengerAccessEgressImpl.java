@@ -109,7 +109,7 @@ class PassengerAccessEgressImpl implements PassengerAccessEgress {
 		
 		if (this.isGeneratingDeniedBoardingEvents) {
 			
-			for (PTPassengerAgent agent : this.agentTracker.getAgentsAtFacility(stop.getId())) {
+			for (PTPassengerAgent agent : this.agentTracker.getAgentsAtFacility(stop.getId(), stopsToCome)) {
 				if (agent.getEnterTransitRoute(transitLine, transitRoute, stopsToCome, vehicle)) {
 					if (freeCapacity >= 1) {
 						passengersEntering.add(agent);
@@ -122,7 +122,7 @@ class PassengerAccessEgressImpl implements PassengerAccessEgress {
 
 		} else {
 		
-			for (PTPassengerAgent agent : this.agentTracker.getAgentsAtFacility(stop.getId())) {
+			for (PTPassengerAgent agent : this.agentTracker.getAgentsAtFacility(stop.getId(), stopsToCome)) {
 				if (freeCapacity == 0) {
 					break;
 				}
@@ -156,19 +156,39 @@ class PassengerAccessEgressImpl implements PassengerAccessEgress {
 		boolean handled = vehicle.addPassenger(passenger);
 		if(handled){
 			this.agentTracker.removeAgentFromStop(passenger, fromStopFacilityId);
-			MobsimAgent planAgent = (MobsimAgent) passenger;
-//			if (planAgent instanceof PersonDriverAgentImpl) { 
-				Id<Person> agentId = planAgent.getId();
-				Id<Link> linkId = planAgent.getCurrentLinkId();
-				this.internalInterface.unregisterAdditionalAgentOnLink(agentId, linkId) ;
-//			}
-			MobsimDriverAgent agent = (MobsimDriverAgent) passenger;
-			passenger.setVehicle(vehicle);
-			eventsManager.processEvent(new PersonEntersVehicleEvent(time, agent.getId(), vehicle.getVehicle().getId()));
+			passengerEntered(passenger, vehicle, time);
 		}
 		return handled;
 	}
 
+	@Override
+	public int handlePassengersEntering(List<PTPassengerAgent> passengers, MobsimVehicle vehicle, Id<TransitStopFacility> fromStopFacilityId, double time) {
+		List<PTPassengerAgent> entered = new ArrayList<>(passengers.size());
+		for (PTPassengerAgent passenger : passengers) {
+			if (vehicle.addPassenger(passenger)) {
+				entered.add(passenger);
+			}
+		}
+		// a single update of the waiting agents, instead of one per passenger
+		this.agentTracker.removeAgentsFromStop(entered, fromStopFacilityId);
+		for (PTPassengerAgent passenger : entered) {
+			passengerEntered(passenger, vehicle, time);
+		}
+		return entered.size();
+	}
+
+	private void passengerEntered(PTPassengerAgent passenger, MobsimVehicle vehicle, double time) {
+		MobsimAgent planAgent = (MobsimAgent) passenger;
+//		if (planAgent instanceof PersonDriverAgentImpl) { 
+			Id<Person> agentId = planAgent.getId();
+			Id<Link> linkId = planAgent.getCurrentLinkId();
+			this.internalInterface.unregisterAdditionalAgentOnLink(agentId, linkId) ;
+//		}
+		MobsimDriverAgent agent = (MobsimDriverAgent) passenger;
+		passenger.setVehicle(vehicle);
+		eventsManager.processEvent(new PersonEntersVehicleEvent(time, agent.getId(), vehicle.getVehicle().getId()));
+	}
+
 	@Override
 	public boolean handlePassengerLeaving(PTPassengerAgent passenger, MobsimVehicle vehicle, Id<Link> toLinkId, double time) {
 		boolean handled = vehicle.removePassenger(passenger);
@@ -48,9 +48,7 @@ public class SimpleTransitStopHandler implements TransitStopHandler {
 			for (PTPassengerAgent passenger : leavingPassengers) {
 				accessEgress.handlePassengerLeaving(passenger, vehicle, stop.getLinkId() , now);
 			}
-			for (PTPassengerAgent passenger : enteringPassengers) {
-				accessEgress.handlePassengerEntering(passenger, vehicle, stop.getId(), now);
-			}
+			accessEgress.handlePassengersEntering(enteringPassengers, vehicle, stop.getId(), now);
 		}
 		this.lastHandledStop = stop;
 		return stopTime;
@@ -20,20 +20,38 @@
 
 package org.matsim.core.mobsim.qsim.pt;
 
+import com.google.common.collect.Maps;
 import org.apache.log4j.Logger;
 import org.matsim.api.core.v01.Id;
 import org.matsim.core.api.experimental.events.AgentWaitingForPtEvent;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.mobsim.qsim.AgentTracker;
+import org.matsim.pt.transitSchedule.api.TransitRouteStop;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
+ * Keeps track of the agents waiting at transit stops. Agents may be added and removed concurrently, e.g. by several
+ * netsim threads; every stop has its own lock.
+ * <p>
+ * Besides the agents in the order of their arrival, every stop keeps an index of the agents by their desired
+ * destination stop. This way, {@link #getAgentsAtFacility(Id, List)} only has to look at the agents that travel to a
+ * stop served by the arriving vehicle, and not at all agents waiting at busy stops. Only agents which declare that they
+ * board no other vehicles are indexed (see {@link PTPassengerAgent#isBoardingOnlyToDesiredDestination()}); all other
+ * agents are candidates for every vehicle.
+ *
  * @author mrieser
  */
 public class TransitStopAgentTracker implements AgentTracker {
@@ -41,7 +59,125 @@ public class TransitStopAgentTracker implements AgentTracker {
 	private final static Logger log = Logger.getLogger(TransitStopAgentTracker.class);
 	
 	private final EventsManager events;
-	private final Map<Id<TransitStopFacility>, List<PTPassengerAgent>> agentsAtStops = new ConcurrentHashMap<>();
+	private final Map<Id<TransitStopFacility>, WaitingAgents> agentsAtStops = new ConcurrentHashMap<>();
+
+	/**
+	 * The agents waiting at one stop.
+	 */
+	private static final class WaitingAgents {
+		// agents in the order of their arrival; copy-on-write, so that the view can be iterated while agents come and go
+		private final List<PTPassengerAgent> agents = new CopyOnWriteArrayList<>();
+		private final List<PTPassengerAgent> agentsView = Collections.unmodifiableList(this.agents);
+		// the destination every agent is indexed with, null for agents which are candidates for every vehicle
+		private final Map<PTPassengerAgent, Id<TransitStopFacility>> destinations = new HashMap<>();
+		// agents by destination, with their arrival number
+		private final Map<Id<TransitStopFacility>, LinkedHashMap<PTPassengerAgent, Long>> agentsByDestination = new HashMap<>();
+		private long arrivals = 0;
+
+		synchronized boolean add(PTPassengerAgent agent) {
+			if (this.destinations.containsKey(agent)) {
+				return false;
+			}
+			Id<TransitStopFacility> destinationStopId = getIndexedDestination(agent);
+			this.agents.add(agent);
+			this.destinations.put(agent, destinationStopId);
+			this.agentsByDestination.computeIfAbsent(destinationStopId, k -> new LinkedHashMap<>()).put(agent, this.arrivals++);
+			return true;
+		}
+
+		synchronized boolean remove(PTPassengerAgent agent) {
+			if (!removeFromIndex(agent)) {
+				return false;
+			}
+			this.agents.remove(agent);
+			return true;
+		}
+
+		/**
+		 * @return the agents which were not waiting at the stop
+		 */
+		synchronized List<PTPassengerAgent> removeAll(Collection<PTPassengerAgent> agents) {
+			List<PTPassengerAgent> missing = new ArrayList<>(0);
+			Set<PTPassengerAgent> removed = new HashSet<>();
+			for (PTPassengerAgent agent : agents) {
+				if (removeFromIndex(agent)) {
+					removed.add(agent);
+				} else {
+					missing.add(agent);
+				}
+			}
+			// a single copy of the array
+			this.agents.removeAll(removed);
+			return missing;
+		}
+
+		synchronized boolean updateDestination(PTPassengerAgent agent) {
+			if (!this.destinations.containsKey(agent)) {
+				return false;
+			}
+			Id<TransitStopFacility> oldDestinationStopId = this.destinations.get(agent);
+			Id<TransitStopFacility> newDestinationStopId = getIndexedDestination(agent);
+			if (!Objects.equals(oldDestinationStopId, newDestinationStopId)) {
+				// the agent keeps its place in the order of arrival
+				Long arrival = removeFromIndex(oldDestinationStopId, agent);
+				this.destinations.put(agent, newDestinationStopId);
+				this.agentsByDestination.computeIfAbsent(newDestinationStopId, k -> new LinkedHashMap<>()).put(agent, arrival);
+			}
+			return true;
+		}
+
+		private boolean removeFromIndex(PTPassengerAgent agent) {
+			if (!this.destinations.containsKey(agent)) {
+				return false;
+			}
+			removeFromIndex(this.destinations.remove(agent), agent);
+			return true;
+		}
+
+		private Long removeFromIndex(Id<TransitStopFacility> destinationStopId, PTPassengerAgent agent) {
+			Map<PTPassengerAgent, Long> sameDestination = this.agentsByDestination.get(destinationStopId);
+			Long arrival = sameDestination.remove(agent);
+			if (sameDestination.isEmpty()) {
+				this.agentsByDestination.remove(destinationStopId);
+			}
+			return arrival;
+		}
+
+		List<PTPassengerAgent> getAgents() {
+			return this.agentsView;
+		}
+
+		synchronized List<PTPassengerAgent> getAgentsTravelingTo(List<TransitRouteStop> stopsToCome) {
+			List<Map.Entry<PTPassengerAgent, Long>> candidates = new ArrayList<>();
+			addCandidates(null, candidates);
+			List<Id<TransitStopFacility>> visited = new ArrayList<>(stopsToCome.size());
+			for (TransitRouteStop stop : stopsToCome) {
+				Id<TransitStopFacility> stopId = stop.getStopFacility().getId();
+				// routes may serve the same stop several times
+				if (!visited.contains(stopId)) {
+					visited.add(stopId);
+					addCandidates(stopId, candidates);
+				}
+			}
+			candidates.sort(Map.Entry.comparingByValue());
+			List<PTPassengerAgent> agents = new ArrayList<>(candidates.size());
+			for (Map.Entry<PTPassengerAgent, Long> candidate : candidates) {
+				agents.add(candidate.getKey());
+			}
+			return Collections.unmodifiableList(agents);
+		}
+
+		private void addCandidates(Id<TransitStopFacility> destinationStopId, List<Map.Entry<PTPassengerAgent, Long>> candidates) {
+			Map<PTPassengerAgent, Long> sameDestination = this.agentsByDestination.get(destinationStopId);
+			if (sameDestination != null) {
+				candidates.addAll(sameDestination.entrySet());
+			}
+		}
+
+		private static Id<TransitStopFacility> getIndexedDestination(PTPassengerAgent agent) {
+			return agent.isBoardingOnlyToDesiredDestination() ? agent.getDesiredDestinationStopId() : null;
+		}
+	}
 
 	public TransitStopAgentTracker(final EventsManager events) {
 		this.events = events;
@@ -51,11 +187,7 @@ public class TransitStopAgentTracker implements AgentTracker {
 		if (stopId == null) {
 			throw new NullPointerException("stop must not be null.");
 		}
-		List<PTPassengerAgent> agents = this.agentsAtStops.get(stopId);
-		if (agents == null) {
-			agents = new CopyOnWriteArrayList<>();// TODO check again. this might turn out to be slow, but we likely need something thread safe here. marcel/oct2014 
-			this.agentsAtStops.put(stopId, agents);
-		}
+		WaitingAgents agents = this.agentsAtStops.computeIfAbsent(stopId, k -> new WaitingAgents());
 		if ( !agents.add(agent) ) {
 			log.error("did NOT add agent " + agent.getId() + " since it was already there.");
 		}
@@ -67,7 +199,7 @@ public class TransitStopAgentTracker implements AgentTracker {
 		if (stopId == null) {
 			throw new NullPointerException("stopId must not be null.");
 		}
-		List<PTPassengerAgent> agents = this.agentsAtStops.get(stopId);
+		WaitingAgents agents = this.agentsAtStops.get(stopId);
 		if (agents != null) {
 			if (!agents.remove(agent)) {
 				log.error("Agent " + agent.getId() + " could not be removed from waiting at stop " + stopId);
@@ -77,16 +209,67 @@ public class TransitStopAgentTracker implements AgentTracker {
 		}
 	}
 
+	/**
+	 * Removes several agents which wait at the same stop at once, e.g. because they board the same vehicle.
+	 */
+	public void removeAgentsFromStop(final Collection<PTPassengerAgent> agents, final Id<TransitStopFacility> stopId) {
+		if (stopId == null) {
+			throw new NullPointerException("stopId must not be null.");
+		}
+		if (agents.isEmpty()) {
+			return;
+		}
+		WaitingAgents waitingAgents = this.agentsAtStops.get(stopId);
+		if (waitingAgents != null) {
+			for (PTPassengerAgent agent : waitingAgents.removeAll(agents)) {
+				log.error("Agent " + agent.getId() + " could not be removed from waiting at stop " + stopId);
+			}
+		} else {
+			log.error(agents.size() + " agents could not be removed from waiting at stop " + stopId + " since agents list was null.");
+		}
+	}
+
+	/**
+	 * Indexes a waiting agent again by its desired destination stop, which has changed while it was waiting, e.g. due to
+	 * within-day replanning. The agent keeps its place in the order of arrival.
+	 */
+	public void updateDesiredDestination(final PTPassengerAgent agent, final Id<TransitStopFacility> stopId) {
+		WaitingAgents agents = this.agentsAtStops.get(stopId);
+		if (agents == null || !agents.updateDestination(agent)) {
+			log.error("Agent " + agent.getId() + " is not waiting at stop " + stopId + ", its destination cannot be updated.");
+		}
+	}
+
+	/**
+	 * @return an unmodifiable view of the agents waiting at the stop, in the order of their arrival
+	 */
 	@Override
 	public List<PTPassengerAgent> getAgentsAtFacility(final Id<TransitStopFacility> stopId) {
-		List<PTPassengerAgent> agents = this.agentsAtStops.get(stopId);
+		WaitingAgents agents = this.agentsAtStops.get(stopId);
+		if (agents == null) {
+			return Collections.emptyList();
+		}
+		return agents.getAgents();
+	}
+
+	/**
+	 * Returns the agents waiting at the stop that travel to one of the given stops, in the order of their arrival at
+	 * the stop. Agents which are not indexed by their destination, see
+	 * {@link PTPassengerAgent#isBoardingOnlyToDesiredDestination()}, are always returned. The returned agents are thus
+	 * the only candidates to board a vehicle with the given stops to come.
+	 */
+	public List<PTPassengerAgent> getAgentsAtFacility(final Id<TransitStopFacility> stopId, final List<TransitRouteStop> stopsToCome) {
+		WaitingAgents agents = this.agentsAtStops.get(stopId);
 		if (agents == null) {
 			return Collections.emptyList();
 		}
-		return Collections.unmodifiableList(agents);
+		return agents.getAgentsTravelingTo(stopsToCome);
 	}
 
+	/**
+	 * @return a view of the agents waiting at each stop
+	 */
 	public Map<Id<TransitStopFacility>, List<PTPassengerAgent>> getAgentsAtStop() {
-		return this.agentsAtStops;
+		return Collections.unmodifiableMap(Maps.transformValues(this.agentsAtStops, WaitingAgents::getAgents));
 	}
 }
@@ -52,13 +52,14 @@ abstract class AbstractAgentSnapshotInfoBuilder {
 	private static int wrnCnt = 0;
 
 	private final Scenario scenario;
-	private final PositionInfo.LinkBasedBuilder builder;
+	private final ThreadLocal<PositionInfo.LinkBasedBuilder> builder;
 
 	AbstractAgentSnapshotInfoBuilder(Scenario sc, SnapshotLinkWidthCalculator linkWidthCalculator) {
 		this.scenario = sc;
 
-		// use same builder for all positions to avoid uncessary objects being created.
-		this.builder = new PositionInfo.LinkBasedBuilder().setLinkWidthCalculator(linkWidthCalculator);
+		// use same builder for all positions to avoid uncessary objects being created. One per thread, since snapshots
+		// may be collected by several threads.
+		this.builder = ThreadLocal.withInitial(() -> new PositionInfo.LinkBasedBuilder().setLinkWidthCalculator(linkWidthCalculator));
 	}
 
 	private static double computeHolePositionAndReturnDistance(double freespeedTraveltime, Hole hole, double now, double curvedLength) {
@@ -77,10 +78,10 @@ abstract class AbstractAgentSnapshotInfoBuilder {
 
 	public final int positionAgentsInActivities(final Collection<AgentSnapshotInfo> positions, Link link,
 												Collection<? extends MobsimAgent> agentsInActivities, int cnt2) {
-		builder.setVehicleId(null); // we don't have a vehicle in this case.
+		builder.get().setVehicleId(null); // we don't have a vehicle in this case.
 		for (MobsimAgent agent : agentsInActivities) {
 
-			var position = builder
+			var position = builder.get()
 					.setPersonId(agent.getId())
 					.setLinkId(link.getId())
 					.setFromCoord(link.getFromNode().getCoord())
@@ -112,7 +113,7 @@ abstract class AbstractAgentSnapshotInfoBuilder {
 
 		MobsimDriverAgent driverAgent = veh.getDriver();
 
-		var position = builder
+		var position = builder.get()
 				.setPersonId(driverAgent.getId())
 				.setVehicleId(veh.getId())
 				.setLinkId(veh.getCurrentLink().getId())
@@ -249,7 +250,7 @@ abstract class AbstractAgentSnapshotInfoBuilder {
 		for (var vehicle : vehicles) {
 			var link = vehicle.getCurrentLink();
 			for (var passenger : VisUtils.getPeopleInVehicle(vehicle)) {
-				var position = builder
+				var position = builder.get()
 						.setPersonId(passenger.getId())
 						.setVehicleId(vehicle.getId())
 						.setLinkId(link.getId())
@@ -276,7 +277,7 @@ abstract class AbstractAgentSnapshotInfoBuilder {
 
 		for (PassengerAgent passenger : passengers) {
 			int lanePos = laneInt - 2 * cnt;
-			var passengerPosition = builder
+			var passengerPosition = builder.get()
 					.setPersonId(passenger.getId())
 					.setVehicleId(passenger.getVehicle().getId())
 					.setLinkId(passenger.getCurrentLinkId())
@@ -299,7 +300,7 @@ abstract class AbstractAgentSnapshotInfoBuilder {
 		int lane = 20;
 		double speedValue = 1.;
 
-		var position = builder
+		var position = builder.get()
 				.setPersonId(Id.createPersonId("hole"))
 				.setVehicleId(Id.createVehicleId(veh.getId()))
 				.setLinkId(null)
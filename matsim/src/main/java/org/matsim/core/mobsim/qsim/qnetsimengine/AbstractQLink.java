@@ -107,6 +107,12 @@ abstract class AbstractQLink implements QLinkI {
 
 	private boolean active = false;
 
+	/*
+	 * Number of time steps in which this link was simulated. Only written by the runner
+	 * handling this link, and only if the QNetsimEnginePartitioner measures the work.
+	 */
+	/*package*/ long simStepCount = 0;
+
 	private TransitQLink transitQLink;
 	
 	private final QNodeI toQNode ;
@@ -131,6 +137,10 @@ abstract class AbstractQLink implements QLinkI {
 		return toQNode ;
 	}
 
+	/*package*/ final NetsimEngineContext getContext() {
+		return context;
+	}
+
 	/** 
 	 * Links are active while (see checkForActivity()): () vehicles move on it; () vehicles wait to enter; () vehicles wait at the transit stop.
 	 * Once all of those have left the link, the link is no longer active.  It then needs to be activated from the outside, which is done by
@@ -20,16 +20,21 @@
 
 package org.matsim.core.mobsim.qsim.qnetsimengine;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.IdMap;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.events.PersonLeavesVehicleEvent;
 import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.config.Config;
@@ -41,6 +46,7 @@ import org.matsim.core.gbl.Gbl;
 import org.matsim.core.mobsim.framework.MobsimAgent;
 import org.matsim.core.mobsim.framework.MobsimDriverAgent;
 import org.matsim.core.mobsim.framework.MobsimTimer;
+import org.matsim.core.mobsim.qsim.DepartureEventsBuffer;
 import org.matsim.core.mobsim.qsim.InternalInterface;
 import org.matsim.core.mobsim.qsim.QSim;
 import org.matsim.core.mobsim.qsim.interfaces.AgentCounter;
@@ -86,13 +92,21 @@ abstract class AbstractQNetsimEngine<A extends AbstractQNetsimEngineRunner> impl
 //	private final Set<QLinkI> linksToActivateInitially = new HashSet<>();
 	protected final int numOfThreads;
 	protected final QNetwork network;
+	private final QNetsimEnginePartitioner partitioner;
+
+	private final IdMap<Link, Integer> linkRunnerIndices = new IdMap<>(Link.class);
 
 	private double infoTime = 0;
 	private List<A> engines;
 	private InternalInterface internalInterface = null;
 	
 	AbstractQNetsimEngine(final QSim sim, QNetworkFactory netsimNetworkFactory) {
+		this(sim, netsimNetworkFactory, QNetsimEnginePartitionerProvider.createPartitioner(sim.getScenario().getConfig().qsim()));
+	}
+
+	AbstractQNetsimEngine(final QSim sim, QNetworkFactory netsimNetworkFactory, QNetsimEnginePartitioner partitioner) {
 		this.qsim = sim;
+		this.partitioner = partitioner;
 
 		final Config config = sim.getScenario().getConfig();
 		final QSimConfigGroup qSimConfigGroup = config.qsim();
@@ -129,6 +143,19 @@ abstract class AbstractQNetsimEngine<A extends AbstractQNetsimEngineRunner> impl
 		}
 		network.initialize(this, sim.getAgentCounter(), sim.getSimTimer() );
 
+		if (qSimConfigGroup.isParallelDepartures() && qSimConfigGroup.getNumberOfThreads() > 1) {
+			// departures may be handled by other threads; their events must be buffered like the agents' events
+			Set<NetsimEngineContext> contexts = Collections.newSetFromMap(new IdentityHashMap<>());
+			for (QLinkI link : network.getNetsimLinks().values()) {
+				if (link instanceof AbstractQLink) {
+					contexts.add(((AbstractQLink) link).getContext());
+				}
+			}
+			for (NetsimEngineContext context : contexts) {
+				context.setEventsManager(new DepartureEventsBuffer(context.getEventsManager()));
+			}
+		}
+
 		this.numOfThreads = sim.getScenario().getConfig().qsim().getNumberOfThreads();
 	}
 	
@@ -186,6 +213,11 @@ abstract class AbstractQNetsimEngine<A extends AbstractQNetsimEngineRunner> impl
 
 		finishMultiThreading();
 
+		printRunnerRunTimes();
+		if (this.partitioner.isMeasuringWork()) {
+			this.partitioner.notifyMeasuredWork(collectWorkPerNode());
+		}
+
 		/* Reset vehicles on ALL links. We cannot iterate only over the active links
 		 * (this.simLinksArray), because there may be links that have vehicles only
 		 * in the buffer (such links are *not* active, as the buffer gets emptied
@@ -352,11 +384,64 @@ abstract class AbstractQNetsimEngine<A extends AbstractQNetsimEngineRunner> impl
 		log.info("sum all run times / num threads: " + sum / this.numOfThreads);
 	}
 
+	/**
+	 * @return for each runner, the total time in nanoseconds spent moving its nodes and links
+	 */
+	public final long[] getRunnerRunTimes() {
+		long[] runTimes = new long[this.engines.size()];
+		for (int i = 0; i < runTimes.length; i++) {
+			runTimes[i] = this.engines.get(i).getNodesRunTime() + this.engines.get(i).getLinksRunTime();
+		}
+		return runTimes;
+	}
+
+	private void printRunnerRunTimes() {
+		long sum = 0;
+		long max = 0;
+		for (int i = 0; i < this.engines.size(); i++) {
+			AbstractQNetsimEngineRunner runner = this.engines.get(i);
+			long runTime = runner.getNodesRunTime() + runner.getLinksRunTime();
+			sum += runTime;
+			max = Math.max(max, runTime);
+			log.info("QNetsimEngineRunner #" + i + " run time: nodes " + runner.getNodesRunTime() / 1_000_000 + " ms, links "
+					+ runner.getLinksRunTime() / 1_000_000 + " ms");
+		}
+		if (sum > 0) {
+			log.info("QNetsimEngineRunner run time imbalance (max / average): " + (double) max * this.engines.size() / sum);
+		}
+	}
+
+	private IdMap<Node, Long> collectWorkPerNode() {
+		IdMap<Node, Long> workPerNode = new IdMap<>(Node.class, network.getNetsimNodes().size());
+		for (QNodeI node : network.getNetsimNodes().values()) {
+			long work = node instanceof AbstractQNode ? ((AbstractQNode) node).simStepCount : 0;
+			for (Link outLink : node.getNode().getOutLinks().values()) {
+				QLinkI qLink = network.getNetsimLink(outLink.getId());
+				if (qLink instanceof AbstractQLink) {
+					work += ((AbstractQLink) qLink).simStepCount;
+				}
+			}
+			workPerNode.put(node.getNode().getId(), work);
+		}
+		return workPerNode;
+	}
+
 	@Override
 	public final NetsimInternalInterface getNetsimInternalInterface() {
 		return ii;
 	}
 
+	@Override
+	public final int getNumberOfRunners() {
+		return this.engines.size();
+	}
+
+	@Override
+	public final int getRunnerIndex(Id<Link> linkId) {
+		Integer index = this.linkRunnerIndices.get(linkId);
+		return index == null ? -1 : index;
+	}
+
 	private final void printSimLog(double time) {
 		if (time >= this.infoTime) {
 			this.infoTime += INFO_PERIOD;
@@ -382,6 +467,7 @@ abstract class AbstractQNetsimEngine<A extends AbstractQNetsimEngineRunner> impl
 	 * Within the MoveThreads Links are only activated when a Vehicle is moved
 	 * over a Node which is processed by that Thread. So we can assign each QLink
 	 * to the Thread that handles its InNode.
+	 * Which thread handles which node is decided by the QNetsimEnginePartitioner.
 	 */
 	private void assignNetElementActivators() {
 
@@ -389,9 +475,18 @@ abstract class AbstractQNetsimEngine<A extends AbstractQNetsimEngineRunner> impl
 		int nodes[] = new int[this.engines.size()];
 		int links[] = new int[this.engines.size()];
 
-		int roundRobin = 0;
+		List<Node> networkNodes = new ArrayList<>(network.getNetsimNodes().size());
 		for (QNodeI node : network.getNetsimNodes().values()) {
-			int i = roundRobin % this.engines.size();
+			networkNodes.add(node.getNode());
+		}
+		IdMap<Node, Integer> partition = this.partitioner.partition(networkNodes, this.engines.size());
+		boolean measuringWork = this.partitioner.isMeasuringWork();
+		for (A engine : this.engines) {
+			engine.setMeasuringWork(measuringWork);
+		}
+
+		for (QNodeI node : network.getNetsimNodes().values()) {
+			int i = partition.get(node.getNode().getId());
 			if( node instanceof AbstractQNode){
 				((AbstractQNode) node).setNetElementActivationRegistry(this.engines.get(i));
 			}
@@ -404,6 +499,7 @@ abstract class AbstractQNetsimEngine<A extends AbstractQNetsimEngineRunner> impl
 
 				// removing qsim as "person in the middle".  not fully sure if this is the same in the parallel impl.  kai, oct'10
 				qLink.setNetElementActivationRegistry(this.engines.get(i));
+				this.linkRunnerIndices.put(outLink.getId(), i);
 
 				/*
 				 * If the QLink contains agents that end their activity in the first time
@@ -418,8 +514,6 @@ abstract class AbstractQNetsimEngine<A extends AbstractQNetsimEngineRunner> impl
 				links[i]++;
 
 			}
-
-			roundRobin++;
 		}
 
 		// print some statistics
@@ -70,6 +70,10 @@ abstract class AbstractQNetsimEngineRunner extends NetElementActivationRegistry
 	private boolean lockNodes = false;
 	private boolean lockLinks = false;
 
+	private boolean measuringWork = false;
+	/*package*/ long nodesRunTime = 0;
+	/*package*/ long linksRunTime = 0;
+
 	/*package*/ long[] runTimes;
 	private long startTime = 0;
 	{	
@@ -83,20 +87,41 @@ abstract class AbstractQNetsimEngineRunner extends NetElementActivationRegistry
 
 	public abstract void afterSim() ;
 
+	/*package*/ final void setMeasuringWork(boolean measuringWork) {
+		this.measuringWork = measuringWork;
+	}
+
+	/**
+	 * @return the total time in nanoseconds spent in {@link #moveNodes()}
+	 */
+	/*package*/ final long getNodesRunTime() {
+		return this.nodesRunTime;
+	}
+
+	/**
+	 * @return the total time in nanoseconds spent in {@link #moveLinks()}
+	 */
+	/*package*/ final long getLinksRunTime() {
+		return this.linksRunTime;
+	}
+
 	protected void moveNodes() {
+		long start = System.nanoTime();
 		boolean remainsActive;
 		this.lockNodes = true;
 		QNodeI node;
 		Iterator<QNodeI> simNodes = this.nodesQueue.iterator();
 		while (simNodes.hasNext()) {
 			node = simNodes.next();
-			remainsActive = node.doSimStep(time);
+			remainsActive = moveNode(node);
 			if (!remainsActive) simNodes.remove();
 		}
 		this.lockNodes = false;
+		this.nodesRunTime += System.nanoTime() - start;
 	}
 	
 	protected final void moveLinks() {
+		long start = System.nanoTime();
 		boolean remainsActive;
 		lockLinks = true;
 		QLinkI link;
@@ -104,11 +129,32 @@ abstract class AbstractQNetsimEngineRunner extends NetElementActivationRegistry
 		while (simLinks.hasNext()) {
 			link = simLinks.next();
 
-			remainsActive = link.doSimStep();
+			remainsActive = moveLink(link);
 
 			if (!remainsActive) simLinks.remove();
 		}
 		lockLinks = false;
+		this.linksRunTime += System.nanoTime() - start;
+	}
+
+	/**
+	 * Simulates a single node in the current time step. The node does not need to be registered with this runner.
+	 *
+	 * @return whether the node remains active
+	 */
+	/*package*/ final boolean moveNode(QNodeI node) {
+		if (this.measuringWork && node instanceof AbstractQNode) ((AbstractQNode) node).simStepCount++;
+		return node.doSimStep(this.time);
+	}
+
+	/**
+	 * Simulates a single link in the current time step. The link does not need to be registered with this runner.
+	 *
+	 * @return whether the link remains active
+	 */
+	/*package*/ final boolean moveLink(QLinkI link) {
+		if (this.measuringWork && link instanceof AbstractQLink) ((AbstractQLink) link).simStepCount++;
+		return link.doSimStep();
 	}
 
 	/*
@@ -117,13 +163,13 @@ abstract class AbstractQNetsimEngineRunner extends NetElementActivationRegistry
 	 * cdobler, sep'14
 	 */
 	@Override
-	protected final void registerLinkAsActive(QLinkI link) {
+	protected void registerLinkAsActive(QLinkI link) {
 		if (!lockLinks) linksList.add(link);
 		else throw new RuntimeException("Tried to activate a QLink at a time where this was not allowed. Aborting!");
 	}
 
 	@Override
-	public final int getNumberOfSimulatedLinks() {
+	public int getNumberOfSimulatedLinks() {
 		return this.linksList.size();
 	}
 
@@ -133,7 +179,7 @@ abstract class AbstractQNetsimEngineRunner extends NetElementActivationRegistry
 	 * cdobler, sep'14
 	 */
 	@Override
-	protected final void registerNodeAsActive(QNodeI node) {
+	protected void registerNodeAsActive(QNodeI node) {
 		if (!this.lockNodes) this.nodesQueue.add(node);
 		else throw new RuntimeException("Tried to activate a QNode at a time where this was not allowed. Aborting!");
 	}
@@ -145,7 +191,7 @@ abstract class AbstractQNetsimEngineRunner extends NetElementActivationRegistry
 	 * cdobler, sep'14
 	 */
 	@Override
-	public final int getNumberOfSimulatedNodes() {
+	public int getNumberOfSimulatedNodes() {
 		return this.nodesQueue.size();
 	}
 
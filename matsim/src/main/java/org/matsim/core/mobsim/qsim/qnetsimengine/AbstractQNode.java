@@ -51,6 +51,11 @@ abstract class AbstractQNode implements QNodeI {
 	
 	final Node node;
 
+	/*
+	 * Number of time steps in which this node was simulated. Only written by the runner
+	 * handling this node, and only if the QNetsimEnginePartitioner measures the work.
+	 */
+	/*package*/ long simStepCount = 0;
 	
 	
 	AbstractQNode(final Node n){
@@ -28,7 +28,7 @@ import org.matsim.core.mobsim.qsim.interfaces.AgentCounter;
 import org.matsim.vis.snapshotwriters.SnapshotLinkWidthCalculator;
 
 public class NetsimEngineContext {
-	private final EventsManager events;
+	private EventsManager events;
 	final  double effectiveCellSize;
 	private final AgentCounter agentCounter;
 	final AbstractAgentSnapshotInfoBuilder snapshotInfoBuilder;
@@ -56,6 +56,10 @@ public class NetsimEngineContext {
 		return events;
 	}
 
+	void setEventsManager(EventsManager events) {
+		this.events = events;
+	}
+
 	AgentCounter getAgentCounter() {
 		return agentCounter;
 	}
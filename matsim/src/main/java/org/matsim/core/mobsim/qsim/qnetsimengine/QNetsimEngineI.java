@@ -3,6 +3,7 @@ package org.matsim.core.mobsim.qsim.qnetsimengine;
 import java.util.Map;
 
 import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
 import org.matsim.core.mobsim.framework.MobsimAgent;
 import org.matsim.core.mobsim.qsim.interfaces.MobsimEngine;
 import org.matsim.vehicles.Vehicle;
@@ -35,4 +36,12 @@ public interface QNetsimEngineI extends MobsimEngine, NetsimEngine {
 	
 	NetsimInternalInterface getNetsimInternalInterface();
 
+	int getNumberOfRunners();
+
+	/**
+	 * @return the index of the runner that simulates the link, between 0 and {@link #getNumberOfRunners()}-1, or -1 if the
+	 * link is not simulated by this engine.  Only valid after {@link #onPrepareSim()}.
+	 */
+	int getRunnerIndex(Id<Link> linkId);
+
 }
\ No newline at end of file
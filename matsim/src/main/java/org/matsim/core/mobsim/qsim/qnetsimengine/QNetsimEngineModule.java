@@ -28,7 +28,16 @@ public class QNetsimEngineModule extends AbstractQSimModule {
 	
 	@Override
 	protected void configureQSim() {
-		bind(QNetsimEngineI.class).to(QNetsimEngineWithThreadpool.class).asEagerSingleton();
+		switch (this.getConfig().qsim().getNetsimEngineScheduling()) {
+			case threadpool:
+				bind(QNetsimEngineI.class).to(QNetsimEngineWithThreadpool.class).asEagerSingleton();
+				break;
+			case workStealing:
+				bind(QNetsimEngineI.class).to(QNetsimEngineWithWorkStealing.class).asEagerSingleton();
+				break;
+			default:
+				throw new RuntimeException("Unknown netsim engine scheduling: " + this.getConfig().qsim().getNetsimEngineScheduling());
+		}
 
 		bind(VehicularDepartureHandler.class).toProvider(QNetsimEngineDepartureHandlerProvider.class).asEagerSingleton();
 
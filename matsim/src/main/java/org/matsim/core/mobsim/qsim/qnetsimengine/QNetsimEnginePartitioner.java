@@ -0,0 +1,57 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim.qnetsimengine;
+
+import java.util.Collection;
+
+import org.matsim.api.core.v01.IdMap;
+import org.matsim.api.core.v01.network.Node;
+
+/**
+ * Decides which of the QNetsimEngine's runners (i.e. threads) simulates which node. The out-links of a node are
+ * always simulated by the same runner as the node.
+ * <p>
+ * A single instance is used for all iterations, so implementations may use the work measured in one mobsim
+ * to balance the load in the next one.
+ */
+public interface QNetsimEnginePartitioner {
+
+	/**
+	 * @param nodes the nodes to be simulated
+	 * @param numberOfRunners the number of runners
+	 * @return for each node, the index of its runner, in the range <code>[0, numberOfRunners)</code>
+	 */
+	IdMap<Node, Integer> partition(Collection<? extends Node> nodes, int numberOfRunners);
+
+	/**
+	 * @return <code>true</code> if the QNetsimEngine should count the simulation steps of each node and its out-links,
+	 * and report them to {@link #notifyMeasuredWork(IdMap)} after the mobsim.
+	 */
+	default boolean isMeasuringWork() {
+		return false;
+	}
+
+	/**
+	 * @param workPerNode for each node, the number of time steps in which the node or one of its out-links was active
+	 */
+	default void notifyMeasuredWork(IdMap<Node, Long> workPerNode) {
+	}
+
+}
@@ -0,0 +1,58 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim.qnetsimengine;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.matsim.core.config.Config;
+import org.matsim.core.config.groups.QSimConfigGroup;
+
+/**
+ * Creates the {@link QNetsimEnginePartitioner} configured in {@link QSimConfigGroup#getNodePartitioning()}.
+ */
+public final class QNetsimEnginePartitionerProvider implements Provider<QNetsimEnginePartitioner> {
+
+	private final QSimConfigGroup qsimConfig;
+
+	@Inject
+	QNetsimEnginePartitionerProvider(Config config) {
+		this.qsimConfig = config.qsim();
+	}
+
+	@Override
+	public QNetsimEnginePartitioner get() {
+		return createPartitioner(this.qsimConfig);
+	}
+
+	static QNetsimEnginePartitioner createPartitioner(QSimConfigGroup qsimConfig) {
+		switch (qsimConfig.getNodePartitioning()) {
+			case roundRobin:
+				return new RoundRobinPartitioner();
+			case bisection:
+				return new BisectionPartitioner(false);
+			case loadBalancedBisection:
+				return new BisectionPartitioner(true);
+			default:
+				throw new IllegalArgumentException("Unknown node partitioning: " + qsimConfig.getNodePartitioning());
+		}
+	}
+
+}
@@ -0,0 +1,230 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim.qnetsimengine;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runner of the {@link QNetsimEngineWithWorkStealing}. Each runner lives in its own thread for the whole mobsim.
+ * A time step consists of three phases of the shared {@link Phaser}: waiting for the start of the time step,
+ * moving the nodes, and moving the links.
+ * <p>
+ * When a runner is done with its own active nodes (or links), it claims chunks of the active nodes (or links)
+ * of the other runners. Every element is still moved exactly once per time step, and each element only modifies
+ * its own state and that of its direct neighbours, so the outcome of the simulation does not depend on which thread
+ * moved an element. As with the {@link QNetsimEngineWithThreadpool}, the order of events from different threads within
+ * a time step is not defined.
+ */
+final class QNetsimEngineRunnerWithWorkStealing extends AbstractQNetsimEngineRunner implements Runnable {
+
+	private static final int CHUNK_SIZE = 16;
+
+	/*
+	 * Phases of the phaser within one time step. The phaser advances three times per time step.
+	 */
+	private static final int MOVING_NODES = 1;
+	private static final int MOVING_LINKS = 2;
+
+	private final Phaser phaser;
+	private final QNetsimEngineWithWorkStealing engine;
+	private List<QNetsimEngineRunnerWithWorkStealing> runners;
+	private int index;
+	private volatile boolean simulationRunning = true;
+
+	private final ActiveElements<QNodeI> nodes = new ActiveElements<>();
+	private final ActiveElements<QLinkI> links = new ActiveElements<>();
+
+	QNetsimEngineRunnerWithWorkStealing(Phaser phaser, QNetsimEngineWithWorkStealing engine) {
+		this.phaser = phaser;
+		this.engine = engine;
+	}
+
+	/*package*/ void setRunners(List<QNetsimEngineRunnerWithWorkStealing> runners) {
+		this.runners = runners;
+		this.index = runners.indexOf(this);
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				// wait for the start of the time step
+				if (this.phaser.arriveAndAwaitAdvance() < 0 || !this.simulationRunning) {
+					break;
+				}
+
+				long start = System.nanoTime();
+				startMeasure();
+				moveAll(true);
+				this.nodesRunTime += System.nanoTime() - start;
+
+				if (this.phaser.arriveAndAwaitAdvance() < 0) {
+					break;
+				}
+
+				start = System.nanoTime();
+				moveAll(false);
+				endMeasure();
+				this.linksRunTime += System.nanoTime() - start;
+
+				if (this.phaser.arriveAndAwaitAdvance() < 0) {
+					break;
+				}
+			}
+		} catch (Throwable e) {
+			this.engine.setException(e);
+			this.phaser.forceTermination();
+		}
+	}
+
+	/*
+	 * Moves the own elements first, then helps the other runners, starting with the next one.
+	 */
+	private void moveAll(boolean movingNodes) {
+		int phase = this.phaser.getPhase();
+		for (int i = 0; i < this.runners.size(); i++) {
+			QNetsimEngineRunnerWithWorkStealing runner = this.runners.get((this.index + i) % this.runners.size());
+			if (movingNodes) {
+				ActiveElements<QNodeI> nodes = runner.nodes;
+				nodes.prepare(phase);
+				for (int from = nodes.claim(); from < nodes.size; from = nodes.claim()) {
+					int to = Math.min(from + CHUNK_SIZE, nodes.size);
+					for (int j = from; j < to; j++) {
+						nodes.remainsActive[j] = moveNode(nodes.get(j));
+					}
+				}
+			} else {
+				ActiveElements<QLinkI> links = runner.links;
+				links.prepare(phase);
+				for (int from = links.claim(); from < links.size; from = links.claim()) {
+					int to = Math.min(from + CHUNK_SIZE, links.size);
+					for (int j = from; j < to; j++) {
+						links.remainsActive[j] = moveLink(links.get(j));
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void afterSim() {
+		this.simulationRunning = false;
+	}
+
+	/*
+	 * Links are activated while nodes are moved, possibly by other threads that help this runner.
+	 */
+	@Override
+	protected void registerLinkAsActive(QLinkI link) {
+		if (this.phaser.getPhase() % 3 == MOVING_LINKS) {
+			throw new RuntimeException("Tried to activate a QLink at a time where this was not allowed. Aborting!");
+		}
+		this.links.activated.add(link);
+	}
+
+	/*
+	 * Nodes are activated while links are moved, possibly by other threads.
+	 */
+	@Override
+	protected void registerNodeAsActive(QNodeI node) {
+		if (this.phaser.getPhase() % 3 == MOVING_NODES) {
+			throw new RuntimeException("Tried to activate a QNode at a time where this was not allowed. Aborting!");
+		}
+		this.nodes.activated.add(node);
+	}
+
+	/*
+	 * Only called between time steps.
+	 */
+	@Override
+	public int getNumberOfSimulatedLinks() {
+		return this.links.countActive();
+	}
+
+	@Override
+	public int getNumberOfSimulatedNodes() {
+		return this.nodes.countActive();
+	}
+
+	/**
+	 * The active elements of one kind of a runner. At the beginning of each phase, the elements that remained active in
+	 * the previous phase and the newly activated ones are collected in an array, from which all runners claim chunks.
+	 * The array is prepared lazily by the first runner accessing it in a phase.
+	 */
+	private static final class ActiveElements<T> {
+
+		private final Queue<T> activated = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger next = new AtomicInteger();
+		private Object[] elements = new Object[16];
+		private boolean[] remainsActive = new boolean[16];
+		private int size = 0;
+		private int preparedPhase = -1;
+
+		synchronized void prepare(int phase) {
+			if (this.preparedPhase == phase) {
+				return;
+			}
+			int n = 0;
+			for (int i = 0; i < this.size; i++) {
+				if (this.remainsActive[i]) {
+					this.elements[n++] = this.elements[i];
+				}
+			}
+			T element;
+			while ((element = this.activated.poll()) != null) {
+				if (n == this.elements.length) {
+					this.elements = Arrays.copyOf(this.elements, 2 * n);
+					this.remainsActive = new boolean[2 * n];
+				}
+				this.elements[n++] = element;
+			}
+			if (n < this.size) {
+				Arrays.fill(this.elements, n, this.size, null);
+			}
+			this.size = n;
+			this.next.set(0);
+			this.preparedPhase = phase;
+		}
+
+		int claim() {
+			return this.next.getAndAdd(CHUNK_SIZE);
+		}
+
+		@SuppressWarnings("unchecked")
+		T get(int i) {
+			return (T) this.elements[i];
+		}
+
+		int countActive() {
+			int count = this.activated.size();
+			for (int i = 0; i < this.size; i++) {
+				if (this.remainsActive[i]) {
+					count++;
+				}
+			}
+			return count;
+		}
+	}
+}
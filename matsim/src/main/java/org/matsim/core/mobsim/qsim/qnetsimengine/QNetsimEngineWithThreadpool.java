@@ -52,12 +52,17 @@ final class QNetsimEngineWithThreadpool extends AbstractQNetsimEngine<QNetsimEng
 		this(sim, null);
 	}
 
-	@Inject
 	public QNetsimEngineWithThreadpool(final QSim sim, QNetworkFactory netsimNetworkFactory) {
 		super(sim, netsimNetworkFactory);
 		this.numOfRunners = this.numOfThreads;
 	}
 
+	@Inject
+	public QNetsimEngineWithThreadpool(final QSim sim, QNetworkFactory netsimNetworkFactory, QNetsimEnginePartitioner partitioner) {
+		super(sim, netsimNetworkFactory, partitioner);
+		this.numOfRunners = this.numOfThreads;
+	}
+
 	@Override
 	public void finishMultiThreading() {
 		this.pool.shutdown();
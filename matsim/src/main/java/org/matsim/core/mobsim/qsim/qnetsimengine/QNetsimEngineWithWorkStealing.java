@@ -0,0 +1,114 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim.qnetsimengine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Phaser;
+
+import javax.inject.Inject;
+
+import org.matsim.core.mobsim.qsim.QSim;
+
+/**
+ * Coordinates the movement of vehicles on the links and the nodes, like the {@link QNetsimEngineWithThreadpool}, but
+ * with runner threads that live for the whole mobsim. The runners are synchronized with a {@link Phaser} instead of
+ * submitting tasks to an executor twice per time step, and runners that are done with their own nodes or links help
+ * the others (see {@link QNetsimEngineRunnerWithWorkStealing}). This reduces both the synchronization overhead in
+ * time steps with little traffic and the time spent waiting for the slowest runner.
+ */
+final class QNetsimEngineWithWorkStealing extends AbstractQNetsimEngine<QNetsimEngineRunnerWithWorkStealing> {
+
+	private final int numOfRunners;
+	private Phaser phaser;
+	private List<Thread> threads;
+	private volatile Throwable exception = null;
+
+	public QNetsimEngineWithWorkStealing(final QSim sim) {
+		this(sim, null);
+	}
+
+	public QNetsimEngineWithWorkStealing(final QSim sim, QNetworkFactory netsimNetworkFactory) {
+		super(sim, netsimNetworkFactory);
+		this.numOfRunners = this.numOfThreads;
+	}
+
+	@Inject
+	public QNetsimEngineWithWorkStealing(final QSim sim, QNetworkFactory netsimNetworkFactory, QNetsimEnginePartitioner partitioner) {
+		super(sim, netsimNetworkFactory, partitioner);
+		this.numOfRunners = this.numOfThreads;
+	}
+
+	@Override
+	protected void run(double time) {
+		for (AbstractQNetsimEngineRunner engine : this.getQnetsimEngineRunner()) {
+			engine.setTime(time);
+		}
+
+		// start of the time step, end of moving nodes, end of moving links
+		for (int i = 0; i < 3; i++) {
+			if (this.phaser.arriveAndAwaitAdvance() < 0) {
+				throw new RuntimeException(this.exception);
+			}
+		}
+	}
+
+	/*package*/ void setException(Throwable exception) {
+		this.exception = exception;
+	}
+
+	@Override
+	protected List<QNetsimEngineRunnerWithWorkStealing> initQSimEngineRunners() {
+		// the runners and the thread calling run(...)
+		this.phaser = new Phaser(this.numOfRunners + 1);
+		List<QNetsimEngineRunnerWithWorkStealing> engines = new ArrayList<>();
+		for (int i = 0; i < this.numOfRunners; i++) {
+			engines.add(new QNetsimEngineRunnerWithWorkStealing(this.phaser, this));
+		}
+		for (QNetsimEngineRunnerWithWorkStealing engine : engines) {
+			engine.setRunners(engines);
+		}
+		return engines;
+	}
+
+	@Override
+	protected void initMultiThreading() {
+		this.threads = new ArrayList<>();
+		for (int i = 0; i < this.numOfRunners; i++) {
+			Thread thread = new Thread(this.getQnetsimEngineRunner().get(i), "QNetsimEngine_WorkStealingThread_" + i);
+			thread.setDaemon(true);
+			this.threads.add(thread);
+			thread.start();
+		}
+	}
+
+	@Override
+	protected void finishMultiThreading() {
+		// the runners check simulationRunning after the start of the next time step, and then terminate
+		this.phaser.arriveAndAwaitAdvance();
+		try {
+			for (Thread thread : this.threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
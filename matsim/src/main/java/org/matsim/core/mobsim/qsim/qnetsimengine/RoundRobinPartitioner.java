@@ -0,0 +1,44 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim.qnetsimengine;
+
+import java.util.Collection;
+
+import org.matsim.api.core.v01.IdMap;
+import org.matsim.api.core.v01.network.Node;
+
+/**
+ * Assigns the nodes to the runners in turn. This balances the number of nodes per runner, but neither the work nor the
+ * locality.
+ */
+final class RoundRobinPartitioner implements QNetsimEnginePartitioner {
+
+	@Override
+	public IdMap<Node, Integer> partition(Collection<? extends Node> nodes, int numberOfRunners) {
+		IdMap<Node, Integer> partition = new IdMap<>(Node.class, nodes.size());
+		int roundRobin = 0;
+		for (Node node : nodes) {
+			partition.put(node.getId(), roundRobin % numberOfRunners);
+			roundRobin++;
+		}
+		return partition;
+	}
+
+}
@@ -62,6 +62,12 @@ class VehicularDepartureHandler implements DepartureHandler {
 		return false;
 	}
 
+	@Override
+	public boolean isThreadSafe() {
+		// with teleported vehicles, the vehicle is removed from a link that may be simulated by another thread
+		return vehicleBehavior != VehicleBehavior.teleport;
+	}
+
 	private void handleCarDeparture(double now, MobsimDriverAgent agent, Id<Link> linkId) {
 		// The situation where a leg starts and ends at the same link used to be
 		// handled specially, for all agents except AbstractTransitDriverAgents.
@@ -52,6 +52,7 @@ public final class MatsimNetworkReader extends MatsimXmlParser {
 
 	private final Network network;
 	private Map<Class<?>, AttributeConverter<?>> converters = new HashMap<>();
+	private int numberOfThreads = 1;
 
 	/**
 	 * Creates a new reader for MATSim network files.
@@ -115,7 +116,7 @@ public final class MatsimNetworkReader extends MatsimXmlParser {
 				log.info("using network_v1-reader.");
 				break;
 			case NETWORK_V2:
-				this.delegate = new NetworkReaderMatsimV2(inputCRS, targetCRS, this.network);
+				this.delegate = new NetworkReaderMatsimV2(inputCRS, targetCRS, this.network, this.numberOfThreads);
 				((NetworkReaderMatsimV2) delegate).putAttributeConverters( converters );
 				log.info("using network_v2-reader.");
 				break;
@@ -124,6 +125,13 @@ public final class MatsimNetworkReader extends MatsimXmlParser {
 		}
 	}
 
+	/**
+	 * Sets the number of threads used to build the links of <code>network_v2</code> files. Defaults to 1.
+	 */
+	public void setNumberOfThreads(int numberOfThreads) {
+		this.numberOfThreads = numberOfThreads;
+	}
+
 	public void putAttributeConverter(Class<?> clazz, AttributeConverter<?> converter) {
 		this.converters.put( clazz, converter );
 	}
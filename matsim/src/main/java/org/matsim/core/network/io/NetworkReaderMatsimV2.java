@@ -32,12 +32,14 @@ import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 import org.matsim.core.utils.io.MatsimXmlParser;
+import org.matsim.core.utils.io.XmlElementPipeline;
 import org.matsim.core.utils.misc.StringUtils;
 import org.matsim.core.utils.misc.Time;
 import org.matsim.utils.objectattributes.AttributeConverter;
 import org.matsim.utils.objectattributes.attributable.AttributesXmlReaderDelegate;
 import org.xml.sax.Attributes;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -45,10 +47,13 @@ import java.util.Stack;
 
 /**
  * A reader for network-files of MATSim according to <code>network_v1.dtd</code>.
+ * <p>
+ * The links are read in parallel by copies of this reader (see {@link XmlElementPipeline}) and are added to the
+ * network in the order of the file.
  *
  * @author mrieser
  */
-final class NetworkReaderMatsimV2 extends MatsimXmlParser {
+final class NetworkReaderMatsimV2 extends MatsimXmlParser implements XmlElementPipeline.ElementReader<Link> {
 
 	private final static String NETWORK = "network";
 	private final static String LINKS = "links";
@@ -60,18 +65,32 @@ final class NetworkReaderMatsimV2 extends MatsimXmlParser {
 	private final Network network;
 
 	private final AttributesXmlReaderDelegate attributesDelegate = new AttributesXmlReaderDelegate();
+	private final Map<Class<?>, AttributeConverter<?>> attributeConverters = new HashMap<>();
 	private org.matsim.utils.objectattributes.attributable.Attributes currentAttributes = null;
 
 	private final String externalInputCRS;
 	private final String targetCRS;
 	private CoordinateTransformation coordinateTransformation = new IdentityTransformation();
 
+	private final int numberOfThreads;
+	private final boolean isLinkReader;
+	private XmlElementPipeline<Link> linkPipeline = null;
+	private Link lastLink = null;
+
 	private final static Logger log = Logger.getLogger(NetworkReaderMatsimV2.class);
 
 	NetworkReaderMatsimV2(
 	        final String inputCRS,
 			final String targetCRS,
 			final Network network) {
+		this(inputCRS, targetCRS, network, 1);
+	}
+
+	NetworkReaderMatsimV2(
+			final String inputCRS,
+			final String targetCRS,
+			final Network network,
+			final int numberOfThreads) {
 		this.externalInputCRS = inputCRS;
 		this.targetCRS = targetCRS;
 		if (externalInputCRS != null && targetCRS != null) {
@@ -79,10 +98,29 @@ final class NetworkReaderMatsimV2 extends MatsimXmlParser {
 			ProjectionUtils.putCRS(network, targetCRS);
 		}
 		this.network = network;
+		this.numberOfThreads = numberOfThreads;
+		this.isLinkReader = false;
+	}
+
+	/**
+	 * Creates a reader for the links, sharing the settings of the given reader.
+	 */
+	private NetworkReaderMatsimV2(final NetworkReaderMatsimV2 parent) {
+		this.externalInputCRS = parent.externalInputCRS;
+		this.targetCRS = parent.targetCRS;
+		this.network = parent.network;
+		this.coordinateTransformation = parent.coordinateTransformation;
+		this.numberOfThreads = 1;
+		this.isLinkReader = true;
+		// the converters are not thread-safe, so every reader gets its own delegate
+		this.attributesDelegate.putAttributeConverters(parent.attributeConverters);
 	}
 
 	@Override
 	public void startTag(final String name, final Attributes atts, final Stack<String> context) {
+		if (this.linkPipeline != null && this.linkPipeline.startTag(name, atts, context)) {
+			return;
+		}
 		switch( name ) {
 			case NODE:
 				startNode(atts);
@@ -95,6 +133,11 @@ final class NetworkReaderMatsimV2 extends MatsimXmlParser {
 				break;
 			case LINKS:
 				startLinks(atts);
+				if (!this.isLinkReader) {
+					// all nodes are known at this point, the link readers only look them up
+					this.linkPipeline = new XmlElementPipeline<>(LINK, this.numberOfThreads,
+							() -> new NetworkReaderMatsimV2(this), this.network::addLink);
+				}
 				break;
 			case ATTRIBUTES:
 				/* fall-through */
@@ -106,7 +149,16 @@ final class NetworkReaderMatsimV2 extends MatsimXmlParser {
 
 	@Override
 	public void endTag(final String name, final String content, final Stack<String> context) {
+		if (this.linkPipeline != null && this.linkPipeline.endTag(name, content, context)) {
+			return;
+		}
 		switch( name ) {
+			case LINKS:
+				if (this.linkPipeline != null) {
+					this.linkPipeline.finish();
+					this.linkPipeline = null;
+				}
+				break;
 			case ATTRIBUTES:
                 if (context.peek().equals(NETWORK)) {
 					String inputCRS = (String) network.getAttributes().getAttribute(ProjectionUtils.INPUT_CRS_ATT);
@@ -222,7 +274,8 @@ final class NetworkReaderMatsimV2 extends MatsimXmlParser {
 		l.setFreespeed(Double.parseDouble(atts.getValue("freespeed")));
 		l.setCapacity(Double.parseDouble(atts.getValue("capacity")));
 		l.setNumberOfLanes(Double.parseDouble(atts.getValue("permlanes")));
-		this.network.addLink(l);
+		// added to the network by the link pipeline
+		this.lastLink = l;
 		{
 			String value = atts.getValue(NetworkUtils.ORIGID);
 			if ( value != null ) {
@@ -252,7 +305,13 @@ final class NetworkReaderMatsimV2 extends MatsimXmlParser {
 		currentAttributes = l.getAttributes();
 	}
 
+	@Override
+	public Link getElement() {
+		return this.lastLink;
+	}
+
 	public void putAttributeConverters(Map<Class<?>, AttributeConverter<?>> converters) {
 		this.attributesDelegate.putAttributeConverters( converters );
+		this.attributeConverters.putAll( converters );
 	}
 }
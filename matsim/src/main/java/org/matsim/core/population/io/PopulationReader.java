@@ -20,6 +20,9 @@
 
 package org.matsim.core.population.io;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Stack;
@@ -31,7 +34,9 @@ import org.matsim.core.scenario.ProjectionUtils;
 import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
+import org.matsim.core.utils.io.IOUtils;
 import org.matsim.core.utils.io.MatsimXmlParser;
+import org.matsim.core.utils.io.UncheckedIOException;
 import org.matsim.utils.objectattributes.AttributeConverter;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
@@ -91,6 +96,24 @@ public final class PopulationReader extends MatsimXmlParser {
 		attributeConverters.putAll( converters );
 	}
 
+	/**
+	 * Reads a population in the binary format written by {@link PopulationWriter#writeBinary(String)}. The chunks
+	 * of the file are decoded in parallel.
+	 */
+	public void parseBinary(final URL url) {
+		parseBinary(url, Runtime.getRuntime().availableProcessors());
+	}
+
+	public void parseBinary(final URL url, final int numberOfThreads) {
+		log.info("starting to read binary population from " + url + " ...");
+		try (InputStream stream = IOUtils.getInputStream(url)) {
+			new PopulationReaderBinary(this.inputCRS, this.targetCRS, this.scenario, this.attributeConverters, numberOfThreads)
+					.parse(stream);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
 	@Override
 	public void startTag(final String name, final Attributes atts, final Stack<String> context) {
 		this.delegate.startTag(name, atts, context);
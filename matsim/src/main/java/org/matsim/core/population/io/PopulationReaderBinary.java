@@ -0,0 +1,422 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.population.PersonUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteFactories;
+import org.matsim.core.scenario.ProjectionUtils;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
+import org.matsim.core.utils.geometry.transformations.TransformationFactory;
+import org.matsim.core.utils.io.UncheckedIOException;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.utils.objectattributes.AttributeConverter;
+import org.matsim.utils.objectattributes.ObjectAttributesConverter;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+import org.matsim.vehicles.Vehicle;
+
+import static org.matsim.core.population.io.PopulationWriterBinary.*;
+
+/**
+ * Reads a population written by {@link PopulationWriterBinary}. The chunks are read sequentially, but decoded in
+ * parallel. The persons are added to the population in the order they were written.
+ */
+final class PopulationReaderBinary {
+
+	private final static Logger log = Logger.getLogger(PopulationReaderBinary.class);
+
+	private final Scenario scenario;
+	private final String externalInputCRS;
+	private final String targetCRS;
+	private final Map<Class<?>, AttributeConverter<?>> converters;
+	private final int numberOfThreads;
+	private CoordinateTransformation coordinateTransformation = new IdentityTransformation();
+
+	PopulationReaderBinary(final String inputCRS, final String targetCRS, final Scenario scenario,
+			final Map<Class<?>, AttributeConverter<?>> converters, final int numberOfThreads) {
+		this.externalInputCRS = inputCRS;
+		this.targetCRS = targetCRS;
+		this.scenario = scenario;
+		this.converters = converters;
+		this.numberOfThreads = Math.max(1, numberOfThreads);
+		if (targetCRS != null && inputCRS != null) {
+			this.coordinateTransformation = TransformationFactory.getCoordinateTransformation(inputCRS, targetCRS);
+			ProjectionUtils.putCRS(scenario.getPopulation(), targetCRS);
+		}
+	}
+
+	void parse(final InputStream stream) {
+		ReadableByteChannel in = Channels.newChannel(stream);
+		ExecutorService executor = Executors.newFixedThreadPool(this.numberOfThreads, r -> {
+			Thread thread = new Thread(r, "PopulationReaderBinary");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 4).order(ByteOrder.LITTLE_ENDIAN);
+			if (!readFully(in, header)) {
+				throw new EOFException("binary population file is missing its header");
+			}
+			header.flip();
+			byte[] magic = new byte[MAGIC.length];
+			header.get(magic);
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new IllegalArgumentException("not a binary population file.");
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new IllegalArgumentException("unsupported version of binary population file: " + version);
+			}
+
+			Population population = this.scenario.getPopulation();
+			ByteBuffer populationChunk = readChunk(in);
+			if (populationChunk == null) {
+				throw new EOFException("binary population file is missing the population");
+			}
+			newDecoder(populationChunk).decodePopulation(population);
+			String inputCRS = ProjectionUtils.getCRS(population);
+			if (inputCRS != null && this.targetCRS != null) {
+				if (this.externalInputCRS != null) {
+					// warn or crash?
+					log.warn("coordinate transformation defined both in config and in input file: setting from input file will be used");
+				}
+				this.coordinateTransformation = TransformationFactory.getCoordinateTransformation(inputCRS, this.targetCRS);
+				ProjectionUtils.putCRS(population, this.targetCRS);
+			}
+
+			// decode chunks in parallel, but add the persons in order. Limit the number of chunks in memory.
+			Queue<Future<List<Person>>> pending = new ArrayDeque<>();
+			ByteBuffer chunk;
+			while ((chunk = readChunk(in)) != null) {
+				ChunkDecoder decoder = newDecoder(chunk);
+				pending.add(executor.submit(decoder::decodePersons));
+				if (pending.size() >= 2 * this.numberOfThreads) {
+					addPersons(population, pending.remove().get());
+				}
+			}
+			while (!pending.isEmpty()) {
+				addPersons(population, pending.remove().get());
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void addPersons(final Population population, final List<Person> persons) {
+		for (Person person : persons) {
+			population.addPerson(person);
+		}
+	}
+
+	private ChunkDecoder newDecoder(final ByteBuffer chunk) {
+		// ObjectAttributesConverter caches converters and is not thread-safe
+		return new ChunkDecoder(chunk, new ObjectAttributesConverter(this.converters), this.coordinateTransformation,
+				this.scenario.getPopulation().getFactory().getRouteFactories());
+	}
+
+	/**
+	 * @return the next chunk, without its length, or <code>null</code> at the end of the file.
+	 */
+	private static ByteBuffer readChunk(final ReadableByteChannel in) throws IOException {
+		ByteBuffer lengthBuffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+		if (!readFully(in, lengthBuffer)) {
+			return null;
+		}
+		ByteBuffer chunk = ByteBuffer.allocate(lengthBuffer.getInt(0)).order(ByteOrder.LITTLE_ENDIAN);
+		if (!readFully(in, chunk)) {
+			throw new EOFException("binary population file ends within a chunk");
+		}
+		chunk.flip();
+		return chunk;
+	}
+
+	/**
+	 * @return <code>false</code> if the channel was at its end before anything was read.
+	 */
+	private static boolean readFully(final ReadableByteChannel in, final ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (in.read(buffer) < 0) {
+				if (buffer.position() == 0) {
+					return false;
+				}
+				throw new EOFException("unexpected end of binary population file");
+			}
+		}
+		return true;
+	}
+
+	private static final class ChunkDecoder {
+		private final ByteBuffer buffer;
+		private final ObjectAttributesConverter attributesConverter;
+		private final CoordinateTransformation coordinateTransformation;
+		private final RouteFactories routeFactories;
+		private final String[] strings;
+		private final Id<Link>[] linkIds;
+
+		@SuppressWarnings("unchecked")
+		ChunkDecoder(final ByteBuffer buffer, final ObjectAttributesConverter attributesConverter,
+				final CoordinateTransformation coordinateTransformation, final RouteFactories routeFactories) {
+			this.buffer = buffer;
+			this.attributesConverter = attributesConverter;
+			this.coordinateTransformation = coordinateTransformation;
+			this.routeFactories = routeFactories;
+			this.strings = new String[buffer.getInt()];
+			for (int i = 0; i < this.strings.length; i++) {
+				int length = buffer.getInt();
+				this.strings[i] = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+				buffer.position(buffer.position() + length);
+			}
+			this.linkIds = new Id[this.strings.length];
+		}
+
+		void decodePopulation(final Population population) {
+			population.setName(getString());
+			getAttributes(population.getAttributes());
+		}
+
+		List<Person> decodePersons() {
+			int count = this.buffer.getInt();
+			List<Person> persons = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				persons.add(getPerson());
+			}
+			return persons;
+		}
+
+		private Person getPerson() {
+			Person person = PopulationUtils.getFactory().createPerson(Id.create(getString(), Person.class));
+			getAttributes(person.getAttributes());
+			int plans = this.buffer.getInt();
+			for (int i = 0; i < plans; i++) {
+				getPlan(person);
+			}
+			return person;
+		}
+
+		private void getPlan(final Person person) {
+			boolean selected = this.buffer.get() == 1;
+			double score = this.buffer.getDouble();
+			Plan plan = PersonUtils.createAndAddPlan(person, selected);
+			if (!Double.isNaN(score)) {
+				plan.setScore(score);
+			}
+			String type = getString();
+			if (type != null) {
+				plan.setType(type);
+			}
+			getAttributes(plan.getAttributes());
+			int elements = this.buffer.getInt();
+			for (int i = 0; i < elements; i++) {
+				byte element = this.buffer.get();
+				if (element == ACTIVITY) {
+					plan.addActivity(getActivity());
+				} else if (element == LEG) {
+					plan.addLeg(getLeg());
+				} else {
+					throw new IllegalArgumentException("unknown plan element " + element + " in binary population file.");
+				}
+			}
+		}
+
+		private Activity getActivity() {
+			byte flags = this.buffer.get();
+			String type = getString();
+			Id<Link> linkId = (flags & ACT_HAS_LINK) != 0 ? getLinkId() : null;
+			String facilityId = getString();
+			Coord coord = null;
+			if ((flags & ACT_HAS_COORD) != 0) {
+				double x = this.buffer.getDouble();
+				double y = this.buffer.getDouble();
+				coord = (flags & ACT_HAS_Z) != 0 ? new Coord(x, y, this.buffer.getDouble()) : new Coord(x, y);
+				coord = this.coordinateTransformation.transform(coord);
+			}
+			Activity act = PopulationUtils.createActivityFromCoordAndLinkId(type, coord, linkId);
+			if (facilityId != null) {
+				act.setFacilityId(Id.create(facilityId, ActivityFacility.class));
+			}
+			double startTime = this.buffer.getDouble();
+			if (!Double.isNaN(startTime)) {
+				act.setStartTime(startTime);
+			}
+			double maxDuration = this.buffer.getDouble();
+			if (!Double.isNaN(maxDuration)) {
+				act.setMaximumDuration(maxDuration);
+			}
+			double endTime = this.buffer.getDouble();
+			if (!Double.isNaN(endTime)) {
+				act.setEndTime(endTime);
+			}
+			getAttributes(act.getAttributes());
+			return act;
+		}
+
+		private Leg getLeg() {
+			Leg leg = PopulationUtils.createLeg(getString().intern());
+			double departureTime = this.buffer.getDouble();
+			if (!Double.isNaN(departureTime)) {
+				leg.setDepartureTime(departureTime);
+			}
+			double travelTime = this.buffer.getDouble();
+			if (!Double.isNaN(travelTime)) {
+				leg.setTravelTime(travelTime);
+			}
+			getAttributes(leg.getAttributes());
+			if (this.buffer.get() == 1) {
+				leg.setRoute(getRoute());
+			}
+			return leg;
+		}
+
+		private Route getRoute() {
+			String routeType = getString();
+			Id<Link> startLinkId = getLinkId();
+			Id<Link> endLinkId = getLinkId();
+			Route route = this.routeFactories.createRoute(this.routeFactories.getRouteClassForType(routeType), startLinkId, endLinkId);
+			double travelTime = this.buffer.getDouble();
+			if (!Double.isNaN(travelTime)) {
+				route.setTravelTime(travelTime);
+			}
+			route.setDistance(this.buffer.getDouble());
+			byte kind = this.buffer.get();
+			if (kind == ROUTE_LINKS) {
+				String vehicleId = getString();
+				double travelCost = this.buffer.getDouble();
+				int count = this.buffer.getInt();
+				List<Id<Link>> links = new ArrayList<>(count);
+				for (int i = 0; i < count; i++) {
+					links.add(getLinkId());
+				}
+				if (!(route instanceof NetworkRoute)) {
+					throw new IllegalArgumentException("route type " + routeType + " is stored as network route, but the route factory creates " + route.getClass());
+				}
+				NetworkRoute networkRoute = (NetworkRoute) route;
+				networkRoute.setLinkIds(startLinkId, links, endLinkId);
+				networkRoute.setTravelCost(travelCost);
+				if (vehicleId != null) {
+					networkRoute.setVehicleId(Id.create(vehicleId, Vehicle.class));
+				}
+			} else {
+				String description = getString();
+				if (description != null) {
+					route.setRouteDescription(description);
+				}
+			}
+			return route;
+		}
+
+		private void getAttributes(final Attributes attributes) {
+			int count = this.buffer.getInt();
+			for (int i = 0; i < count; i++) {
+				String key = getString();
+				byte type = this.buffer.get();
+				switch (type) {
+					case ATTR_STRING:
+						attributes.putAttribute(key, getString());
+						break;
+					case ATTR_INTEGER:
+						attributes.putAttribute(key, this.buffer.getInt());
+						break;
+					case ATTR_DOUBLE:
+						attributes.putAttribute(key, this.buffer.getDouble());
+						break;
+					case ATTR_BOOLEAN:
+						attributes.putAttribute(key, this.buffer.get() == 1);
+						break;
+					case ATTR_LONG:
+						attributes.putAttribute(key, this.buffer.getLong());
+						break;
+					case ATTR_FLOAT:
+						attributes.putAttribute(key, this.buffer.getFloat());
+						break;
+					case ATTR_CONVERTED:
+						String className = getString();
+						Object value = this.attributesConverter.convert(className, getString());
+						// same as in xml: values without converter are dropped
+						if (value != null) {
+							attributes.putAttribute(key, value);
+						}
+						break;
+					default:
+						throw new IllegalArgumentException("unknown attribute type " + type + " in binary population file.");
+				}
+			}
+		}
+
+		private String getString() {
+			int index = this.buffer.getInt();
+			return index < 0 ? null : this.strings[index];
+		}
+
+		private Id<Link> getLinkId() {
+			int index = this.buffer.getInt();
+			if (index < 0) {
+				return null;
+			}
+			Id<Link> linkId = this.linkIds[index];
+			if (linkId == null) {
+				linkId = Id.create(this.strings[index], Link.class);
+				this.linkIds[index] = linkId;
+			}
+			return linkId;
+		}
+	}
+}
@@ -20,6 +20,7 @@
 package org.matsim.core.population.io;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Stack;
 
@@ -46,6 +47,7 @@ import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 import org.matsim.core.utils.io.MatsimXmlParser;
+import org.matsim.core.utils.io.XmlElementPipeline;
 import org.matsim.core.utils.misc.Time;
 import org.matsim.facilities.ActivityFacility;
 import org.matsim.utils.objectattributes.AttributeConverter;
@@ -57,12 +59,15 @@ import com.google.inject.Inject;
 
 /**
  * A reader for plans files of MATSim according to <code>population_v6.dtd</code>.
+ * <p>
+ * The persons are read in parallel by copies of this reader (see {@link XmlElementPipeline}), using the number of
+ * threads from the global config group, and are added to the population in the order of the file.
  *
  * @author thibautd
  * @author mrieser
  * @author balmermi
  */
-/* deliberately package */ class PopulationReaderMatsimV6 extends MatsimXmlParser implements MatsimReader {
+/* deliberately package */ class PopulationReaderMatsimV6 extends MatsimXmlParser implements MatsimReader, XmlElementPipeline.ElementReader<Person> {
     private static final Logger log = Logger.getLogger(PopulationReaderMatsimV6.class);
 
 	private final static String POPULATION = "population";
@@ -101,6 +106,7 @@ import com.google.inject.Inject;
 
 	// TODO: infrastructure to configure converters
 	private final AttributesXmlReaderDelegate attributesReader = new AttributesXmlReaderDelegate();
+	private final Map<Class<?>, AttributeConverter<?>> attributeConverters = new HashMap<>();
 
 	private final Scenario scenario;
 	private final Population plans;
@@ -119,6 +125,9 @@ import com.google.inject.Inject;
 
 	private Activity prevAct = null;
 
+	private final boolean isPersonReader;
+	private XmlElementPipeline<Person> personPipeline = null;
+	private Person lastPerson = null;
 
     PopulationReaderMatsimV6(
             final String inputCRS,
@@ -128,23 +137,48 @@ import com.google.inject.Inject;
 		this.targetCRS = targetCRS;
 		this.scenario = scenario;
 		this.plans = scenario.getPopulation();
+		this.isPersonReader = false;
 	    if (targetCRS != null && externalInputCRS !=null) {
 		    this.coordinateTransformation = TransformationFactory.getCoordinateTransformation(externalInputCRS, targetCRS);
 		    ProjectionUtils.putCRS(this.plans, targetCRS);
 	    }
 	}
 
+	/**
+	 * Creates a reader for the persons, sharing the settings of the given reader.
+	 */
+	private PopulationReaderMatsimV6(final PopulationReaderMatsimV6 parent) {
+		this.externalInputCRS = parent.externalInputCRS;
+		this.targetCRS = parent.targetCRS;
+		this.scenario = parent.scenario;
+		this.plans = parent.plans;
+		this.coordinateTransformation = parent.coordinateTransformation;
+		this.isPersonReader = true;
+		// the converters are not thread-safe, so every reader gets its own delegate
+		this.attributesReader.putAttributeConverters(parent.attributeConverters);
+	}
+
 	public void putAttributeConverter( final Class<?> clazz , AttributeConverter<?> converter ) {
 		attributesReader.putAttributeConverter( clazz , converter );
+		attributeConverters.put( clazz , converter );
 	}
 
 	@Inject
 	public void putAttributeConverters( final Map<Class<?>, AttributeConverter<?>> converters ) {
 		attributesReader.putAttributeConverters( converters );
+		attributeConverters.putAll( converters );
 	}
 
 	@Override
 	public void startTag(final String name, final Attributes atts, final Stack<String> context) {
+		if (this.personPipeline == null && !this.isPersonReader && PERSON.equals(name)) {
+			// created at the first person, so the person readers see the final coordinate transformation
+			this.personPipeline = new XmlElementPipeline<>(PERSON, this.scenario.getConfig().global().getNumberOfThreads(),
+					() -> new PopulationReaderMatsimV6(this), this.plans::addPerson);
+		}
+		if (this.personPipeline != null && this.personPipeline.startTag(name, atts, context)) {
+			return;
+		}
 		switch( name ) {
 			case POPULATION:
 				startPopulation(atts);
@@ -195,9 +229,17 @@ import com.google.inject.Inject;
 
 	@Override
 	public void endTag(final String name, final String content, final Stack<String> context) {
+		if (this.personPipeline != null && this.personPipeline.endTag(name, content, context)) {
+			return;
+		}
 		switch ( name ) {
+			case POPULATION:
+				if (this.personPipeline != null) {
+					this.personPipeline.finish();
+				}
+				break;
 			case PERSON:
-				this.plans.addPerson(this.currperson);
+				this.lastPerson = this.currperson;
 				this.currperson = null;
 				break;
 			case ATTRIBUTE:
@@ -233,6 +275,11 @@ import com.google.inject.Inject;
 		}
 	}
 
+	@Override
+	public Person getElement() {
+		return this.lastPerson;
+	}
+
 	private void startPopulation(final Attributes atts) {
 		this.plans.setName(atts.getValue(ATTR_POPULATION_DESC));
 	}
@@ -35,6 +35,7 @@ import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
 import org.matsim.core.utils.io.AbstractMatsimWriter;
+import org.matsim.core.utils.io.IOUtils;
 import org.matsim.core.utils.io.UncheckedIOException;
 import org.matsim.core.utils.misc.Counter;
 import org.matsim.utils.objectattributes.AttributeConverter;
@@ -192,6 +193,22 @@ public final class PopulationWriter extends AbstractMatsimWriter implements Mats
 		}
 	}
 
+	/**
+	 * Writes the population in a binary format, see {@link PopulationWriterBinary}. The persons are encoded in
+	 * parallel and written in the order of the population, all persons are written independent of the fraction.
+	 * The file can be read with {@link PopulationReader#parseBinary(java.net.URL)}, and is meant for checkpoints
+	 * rather than for exchanging populations.
+	 */
+	public final void writeBinary(final String filename) {
+		writeBinary(filename, Runtime.getRuntime().availableProcessors());
+	}
+
+	public final void writeBinary(final String filename, final int numberOfThreads) {
+		new PopulationWriterBinary(this.population, this.coordinateTransformation, this.converters, numberOfThreads)
+				.write(IOUtils.getOutputStream(IOUtils.getFileUrl(filename), false));
+		log.info("Population written to: " + filename);
+	}
+
 	public final void writeV0(final String filename) {
 		this.handler = new PopulationWriterHandlerImplV0( coordinateTransformation , this.network);
 		write(filename);
@@ -0,0 +1,413 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.population.PersonUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.core.utils.io.UncheckedIOException;
+import org.matsim.core.utils.misc.OptionalTime;
+import org.matsim.utils.objectattributes.AttributeConverter;
+import org.matsim.utils.objectattributes.ObjectAttributesConverter;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+
+/**
+ * Writes a population in a compact binary format which can be read much faster than xml, see
+ * {@link PopulationReader#parseBinary(java.net.URL)}. It is meant for checkpoints of large populations, e.g. to
+ * resume a run, not as a replacement of the xml format for exchanging populations.
+ * <p>
+ * The file starts with the 8 bytes {@link #MAGIC} and an int with the {@link #VERSION}, followed by chunks (little
+ * endian). The first chunk describes the population, all following chunks contain up to {@link #PERSONS_PER_CHUNK}
+ * persons each:
+ * <pre>
+ * int     chunk length in bytes (excluding this field)
+ * int     k = number of strings, followed by k times (int length, utf-8 bytes)
+ * int     n = number of persons (not present in the population chunk)
+ * ...     the population or the persons
+ * </pre>
+ * Every chunk has its own table of strings (ids, types, modes, attribute values), which are referenced by their
+ * index in the table, -1 standing for <code>null</code>. This way, chunks can be encoded and decoded independently
+ * and in parallel. Network routes are stored as arrays of string indices, undefined times as NaN, and attributes
+ * with their type, so the common types do not need to be converted to and from strings.
+ */
+final class PopulationWriterBinary {
+
+	private final static Logger log = Logger.getLogger(PopulationWriterBinary.class);
+
+	static final byte[] MAGIC = "MATSIMPB".getBytes(StandardCharsets.US_ASCII);
+	static final int VERSION = 1;
+	static final int PERSONS_PER_CHUNK = 1024;
+
+	static final byte ACTIVITY = 0;
+	static final byte LEG = 1;
+
+	static final byte ACT_HAS_LINK = 1;
+	static final byte ACT_HAS_COORD = 2;
+	static final byte ACT_HAS_Z = 4;
+
+	static final byte ROUTE_DESCRIPTION = 0;
+	static final byte ROUTE_LINKS = 1;
+
+	static final byte ATTR_STRING = 0;
+	static final byte ATTR_INTEGER = 1;
+	static final byte ATTR_DOUBLE = 2;
+	static final byte ATTR_BOOLEAN = 3;
+	static final byte ATTR_LONG = 4;
+	static final byte ATTR_FLOAT = 5;
+	static final byte ATTR_CONVERTED = 6;
+
+	private final Population population;
+	private final CoordinateTransformation coordinateTransformation;
+	private final Map<Class<?>, AttributeConverter<?>> converters;
+	private final int numberOfThreads;
+
+	PopulationWriterBinary(final Population population, final CoordinateTransformation coordinateTransformation,
+			final Map<Class<?>, AttributeConverter<?>> converters, final int numberOfThreads) {
+		this.population = population;
+		this.coordinateTransformation = coordinateTransformation;
+		this.converters = converters;
+		this.numberOfThreads = Math.max(1, numberOfThreads);
+	}
+
+	void write(final OutputStream stream) {
+		ExecutorService executor = Executors.newFixedThreadPool(this.numberOfThreads, r -> {
+			Thread thread = new Thread(r, "PopulationWriterBinary");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try (WritableByteChannel out = Channels.newChannel(stream)) {
+			ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 4).order(ByteOrder.LITTLE_ENDIAN);
+			header.put(MAGIC);
+			header.putInt(VERSION);
+			header.flip();
+			write(out, header);
+			write(out, newEncoder().encodePopulation(this.population));
+
+			// encode chunks in parallel, but write them in order. Limit the number of chunks in memory.
+			Queue<Future<ByteBuffer>> pending = new ArrayDeque<>();
+			Iterator<? extends Person> persons = this.population.getPersons().values().iterator();
+			long personCount = 0;
+			while (persons.hasNext()) {
+				List<Person> chunk = new ArrayList<>(PERSONS_PER_CHUNK);
+				while (persons.hasNext() && chunk.size() < PERSONS_PER_CHUNK) {
+					chunk.add(persons.next());
+				}
+				personCount += chunk.size();
+				pending.add(executor.submit(() -> newEncoder().encodePersons(chunk)));
+				if (pending.size() >= 2 * this.numberOfThreads) {
+					write(out, pending.remove().get());
+				}
+			}
+			while (!pending.isEmpty()) {
+				write(out, pending.remove().get());
+			}
+			log.info("wrote " + personCount + " persons in binary format.");
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private ChunkEncoder newEncoder() {
+		// ObjectAttributesConverter caches converters and is not thread-safe
+		return new ChunkEncoder(new ObjectAttributesConverter(this.converters), this.coordinateTransformation);
+	}
+
+	private static void write(final WritableByteChannel out, final ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+
+	/**
+	 * Encodes one chunk: the payload is encoded first, as the string table is only complete afterwards.
+	 */
+	private static final class ChunkEncoder {
+		private final ObjectAttributesConverter attributesConverter;
+		private final CoordinateTransformation coordinateTransformation;
+		private final Map<String, Integer> strings = new HashMap<>();
+		private final List<byte[]> stringBytes = new ArrayList<>();
+		private ByteBuffer payload = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+		ChunkEncoder(final ObjectAttributesConverter attributesConverter, final CoordinateTransformation coordinateTransformation) {
+			this.attributesConverter = attributesConverter;
+			this.coordinateTransformation = coordinateTransformation;
+		}
+
+		ByteBuffer encodePopulation(final Population population) {
+			putString(population.getName());
+			putAttributes(population.getAttributes());
+			return finish();
+		}
+
+		ByteBuffer encodePersons(final List<Person> persons) {
+			ensure(4);
+			this.payload.putInt(persons.size());
+			for (Person person : persons) {
+				putPerson(person);
+			}
+			return finish();
+		}
+
+		private ByteBuffer finish() {
+			int length = 4 + this.payload.position();
+			for (byte[] s : this.stringBytes) {
+				length += 4 + s.length;
+			}
+			ByteBuffer chunk = ByteBuffer.allocate(4 + length).order(ByteOrder.LITTLE_ENDIAN);
+			chunk.putInt(length);
+			chunk.putInt(this.stringBytes.size());
+			for (byte[] s : this.stringBytes) {
+				chunk.putInt(s.length);
+				chunk.put(s);
+			}
+			this.payload.flip();
+			chunk.put(this.payload);
+			chunk.flip();
+			return chunk;
+		}
+
+		private void putPerson(final Person person) {
+			putString(person.getId().toString());
+			putAttributes(person.getAttributes());
+			ensure(4);
+			this.payload.putInt(person.getPlans().size());
+			for (Plan plan : person.getPlans()) {
+				putPlan(plan);
+			}
+		}
+
+		private void putPlan(final Plan plan) {
+			ensure(1 + 8);
+			this.payload.put(PersonUtils.isSelected(plan) ? (byte) 1 : (byte) 0);
+			this.payload.putDouble(plan.getScore() == null ? Double.NaN : plan.getScore());
+			putString(plan.getType());
+			putAttributes(plan.getAttributes());
+			int countPosition = reserveInt();
+			int count = 0;
+			for (PlanElement pe : plan.getPlanElements()) {
+				if (pe instanceof Activity) {
+					putActivity((Activity) pe);
+					count++;
+				} else if (pe instanceof Leg) {
+					putLeg((Leg) pe);
+					count++;
+				}
+			}
+			this.payload.putInt(countPosition, count);
+		}
+
+		private void putActivity(final Activity act) {
+			byte flags = 0;
+			Coord coord = null;
+			if (act.getLinkId() != null) {
+				flags |= ACT_HAS_LINK;
+			}
+			if (act.getCoord() != null) {
+				coord = this.coordinateTransformation.transform(act.getCoord());
+				flags |= ACT_HAS_COORD;
+				if (coord.hasZ()) {
+					flags |= ACT_HAS_Z;
+				}
+			}
+			ensure(2);
+			this.payload.put(ACTIVITY);
+			this.payload.put(flags);
+			putString(act.getType());
+			if (act.getLinkId() != null) {
+				putString(act.getLinkId().toString());
+			}
+			putString(act.getFacilityId() == null ? null : act.getFacilityId().toString());
+			ensure(6 * 8);
+			if (coord != null) {
+				this.payload.putDouble(coord.getX());
+				this.payload.putDouble(coord.getY());
+				if (coord.hasZ()) {
+					this.payload.putDouble(coord.getZ());
+				}
+			}
+			putTime(act.getStartTime());
+			putTime(act.getMaximumDuration());
+			putTime(act.getEndTime());
+			putAttributes(act.getAttributes());
+		}
+
+		private void putLeg(final Leg leg) {
+			ensure(1);
+			this.payload.put(LEG);
+			putString(leg.getMode());
+			ensure(2 * 8);
+			putTime(leg.getDepartureTime());
+			putTime(leg.getTravelTime());
+			putAttributes(leg.getAttributes());
+			Route route = leg.getRoute();
+			ensure(1);
+			this.payload.put(route == null ? (byte) 0 : (byte) 1);
+			if (route != null) {
+				putRoute(route);
+			}
+		}
+
+		private void putRoute(final Route route) {
+			putString(route.getRouteType());
+			putString(route.getStartLinkId() == null ? null : route.getStartLinkId().toString());
+			putString(route.getEndLinkId() == null ? null : route.getEndLinkId().toString());
+			ensure(2 * 8 + 1);
+			putTime(route.getTravelTime());
+			this.payload.putDouble(route.getDistance());
+			if (route instanceof NetworkRoute) {
+				NetworkRoute networkRoute = (NetworkRoute) route;
+				this.payload.put(ROUTE_LINKS);
+				putString(networkRoute.getVehicleId() == null ? null : networkRoute.getVehicleId().toString());
+				List<Id<Link>> linkIds = networkRoute.getLinkIds();
+				ensure(8 + 4 + 4 * linkIds.size());
+				this.payload.putDouble(networkRoute.getTravelCost());
+				this.payload.putInt(linkIds.size());
+				for (Id<Link> linkId : linkIds) {
+					this.payload.putInt(intern(linkId.toString()));
+				}
+			} else {
+				this.payload.put(ROUTE_DESCRIPTION);
+				putString(route.getRouteDescription());
+			}
+		}
+
+		private void putAttributes(final Attributes attributes) {
+			int countPosition = reserveInt();
+			int count = 0;
+			for (Map.Entry<String, Object> entry : attributes.getAsMap().entrySet()) {
+				Object value = entry.getValue();
+				ensure(4 + 1 + 8);
+				if (value instanceof String) {
+					this.payload.putInt(intern(entry.getKey()));
+					this.payload.put(ATTR_STRING);
+					putString((String) value);
+				} else if (value instanceof Integer) {
+					this.payload.putInt(intern(entry.getKey()));
+					this.payload.put(ATTR_INTEGER);
+					this.payload.putInt((Integer) value);
+				} else if (value instanceof Double) {
+					this.payload.putInt(intern(entry.getKey()));
+					this.payload.put(ATTR_DOUBLE);
+					this.payload.putDouble((Double) value);
+				} else if (value instanceof Boolean) {
+					this.payload.putInt(intern(entry.getKey()));
+					this.payload.put(ATTR_BOOLEAN);
+					this.payload.put((Boolean) value ? (byte) 1 : (byte) 0);
+				} else if (value instanceof Long) {
+					this.payload.putInt(intern(entry.getKey()));
+					this.payload.put(ATTR_LONG);
+					this.payload.putLong((Long) value);
+				} else if (value instanceof Float) {
+					this.payload.putInt(intern(entry.getKey()));
+					this.payload.put(ATTR_FLOAT);
+					this.payload.putFloat((Float) value);
+				} else {
+					// same as in xml: attributes that cannot be converted are not written
+					String converted = value == null ? null : this.attributesConverter.convertToString(value);
+					if (converted == null) {
+						continue;
+					}
+					this.payload.putInt(intern(entry.getKey()));
+					this.payload.put(ATTR_CONVERTED);
+					putString(value.getClass().getName());
+					putString(converted);
+				}
+				count++;
+			}
+			this.payload.putInt(countPosition, count);
+		}
+
+		private void putTime(final OptionalTime time) {
+			this.payload.putDouble(time.isDefined() ? time.seconds() : Double.NaN);
+		}
+
+		private void putString(final String s) {
+			ensure(4);
+			this.payload.putInt(s == null ? -1 : intern(s));
+		}
+
+		private int reserveInt() {
+			ensure(4);
+			int position = this.payload.position();
+			this.payload.putInt(0);
+			return position;
+		}
+
+		private int intern(final String s) {
+			Integer index = this.strings.get(s);
+			if (index == null) {
+				index = this.strings.size();
+				this.strings.put(s, index);
+				this.stringBytes.add(s.getBytes(StandardCharsets.UTF_8));
+			}
+			return index;
+		}
+
+		private void ensure(final int bytes) {
+			if (this.payload.remaining() < bytes) {
+				ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * this.payload.capacity(), this.payload.position() + bytes))
+						.order(ByteOrder.LITTLE_ENDIAN);
+				this.payload.flip();
+				larger.put(this.payload);
+				this.payload = larger;
+			}
+		}
+	}
+}
@@ -1,10 +1,9 @@
 /* *********************************************************************** *
  * project: org.matsim.*
- * MapBasedDataContainerProvider.java
  *                                                                         *
  * *********************************************************************** *
  *                                                                         *
- * copyright       : (C) 2013 by the members listed in the COPYING,        *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
  *                   LICENSE and WARRANTY file.                            *
  * email           : info at matsim dot org                                *
  *                                                                         *
@@ -18,36 +17,26 @@
  *                                                                         *
  * *********************************************************************** */
 
-package org.matsim.core.trafficmonitoring;
+package org.matsim.core.population.routes;
 
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Route;
 
-import java.util.Map;
+/**
+ * Creates network routes that store their links as an array of link indices, see {@link Id#index()}.
+ * The routes are written and read in the same format as the routes created by {@link LinkNetworkRouteFactory}.
+ */
+public final class IndexedNetworkRouteFactory implements RouteFactory {
 
-class MapBasedDataContainerProvider implements DataContainerProvider {
-
-	private final Map<Id<Link>, TravelTimeData> linkData;
-	private final TravelTimeDataFactory ttDataFactory;
-	
-	public MapBasedDataContainerProvider(Map<Id<Link>, TravelTimeData> linkData, TravelTimeDataFactory ttDataFactory) {
-		this.linkData = linkData;
-		this.ttDataFactory = ttDataFactory;
-	}
-	
-	@Override 
-	public TravelTimeData getTravelTimeData(final Id<Link> linkId, final boolean createIfMissing) {
-		TravelTimeData data = this.linkData.get(linkId);
-		if ((null == data) && createIfMissing) {
-			data = this.ttDataFactory.createTravelTimeData(linkId) ;
-			this.linkData.put(linkId, data);
-		}
-		return data;
+	@Override
+	public Route createRoute(final Id<Link> startLinkId, final Id<Link> endLinkId) {
+		return new IndexedNetworkRouteImpl(startLinkId, endLinkId);
 	}
-		
+
 	@Override
-	public TravelTimeData getTravelTimeData(Link link, boolean createIfMissing) {
-		return this.getTravelTimeData(link.getId(), createIfMissing);
+	public String getCreatedRouteType() {
+		return IndexedNetworkRouteImpl.ROUTE_TYPE;
 	}
-	
+
 }
@@ -0,0 +1,230 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population.routes;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.vehicles.Vehicle;
+
+/**
+ * Implementation of {@link NetworkRoute} which internally stores the route as an array of link indices
+ * (see {@link Id#index()}). Compared to {@link LinkNetworkRouteImpl}, this needs 4 bytes per link instead of a
+ * reference per link plus the overhead of the list, which makes a difference for large populations with many
+ * routes in memory.
+ * <p>
+ * {@link #getLinkIds()} does not copy the route, but returns a view that looks up the ids by their index.
+ * The array is never modified once set, so clones share it.
+ */
+final class IndexedNetworkRouteImpl extends AbstractRoute implements NetworkRoute {
+
+	/*package*/ final static String ROUTE_TYPE = "links";
+
+	private static final int[] EMPTY_ROUTE = new int[0];
+
+	private int[] route = EMPTY_ROUTE;
+	private List<Id<Link>> linkIds = new LinkIdsView();
+	private double travelCost = Double.NaN;
+	private Id<Vehicle> vehicleId = null;
+
+	IndexedNetworkRouteImpl(final Id<Link> startLinkId, final Id<Link> endLinkId) {
+		super(startLinkId, endLinkId);
+	}
+
+	IndexedNetworkRouteImpl(final Id<Link> startLinkId, final List<Id<Link>> linkIds, final Id<Link> endLinkId) {
+		super(startLinkId, endLinkId);
+		setLinkIds(startLinkId, linkIds, endLinkId);
+	}
+
+	private IndexedNetworkRouteImpl(final Id<Link> startLinkId, final int[] route, final Id<Link> endLinkId) {
+		super(startLinkId, endLinkId);
+		this.route = route;
+	}
+
+	/**
+	 * Read-only view on the link ids of the route.
+	 */
+	private final class LinkIdsView extends AbstractList<Id<Link>> implements RandomAccess {
+		@Override
+		public Id<Link> get(final int index) {
+			return Id.get(IndexedNetworkRouteImpl.this.route[index], Link.class);
+		}
+
+		@Override
+		public int size() {
+			return IndexedNetworkRouteImpl.this.route.length;
+		}
+	}
+
+	@Override
+	public IndexedNetworkRouteImpl clone() {
+		IndexedNetworkRouteImpl cloned = (IndexedNetworkRouteImpl) super.clone();
+		// the route array is never modified, so it can be shared, but the view must refer to the clone
+		cloned.linkIds = cloned.new LinkIdsView();
+		return cloned;
+	}
+
+	@Override
+	public List<Id<Link>> getLinkIds() {
+		return this.linkIds;
+	}
+
+	@Override
+	public NetworkRoute getSubRoute(Id<Link> fromLinkId, Id<Link> toLinkId) {
+		/*
+		 * the index where the link after fromLinkId can be found in the route:
+		 * fromIndex==0 --> fromLinkId == startLinkId,
+		 * fromIndex==1 --> fromLinkId == first link in the route, etc.
+		 */
+		int fromIndex = -1;
+		/*
+		 * the index where toLinkId can be found in the route
+		 */
+		int toIndex = -1;
+		int fromLinkIndex = fromLinkId.index();
+		int toLinkIndex = toLinkId.index();
+
+		if (fromLinkId.equals(this.getStartLinkId())) {
+			fromIndex = 0;
+		} else {
+			for (int i = 0, n = this.route.length; (i < n) && (fromIndex < 0); i++) {
+				if (fromLinkIndex == this.route[i]) {
+					fromIndex = i+1;
+				}
+			}
+			if (fromIndex < 0 && fromLinkId.equals(this.getEndLinkId())) {
+				fromIndex = this.route.length;
+			}
+			if (fromIndex < 0) {
+				throw new IllegalArgumentException("Cannot create subroute because fromLinkId is not part of the route.");
+			}
+		}
+
+		if (fromLinkId.equals(toLinkId)) {
+			toIndex = fromIndex - 1;
+		} else {
+			for (int i = fromIndex, n = this.route.length; (i < n) && (toIndex < 0); i++) {
+				if (fromLinkIndex == this.route[i]) {
+					fromIndex = i+1; // in case of a loop, cut it short
+				}
+				if (toLinkIndex == this.route[i]) {
+					toIndex = i;
+				}
+			}
+			if (toIndex < 0 && toLinkId.equals(this.getEndLinkId())) {
+				toIndex = this.route.length;
+			}
+			if (toIndex < 0) {
+				throw new IllegalArgumentException("Cannot create subroute because toLinkId is not part of the route.");
+			}
+		}
+		if (toIndex > fromIndex) {
+			int[] subRoute = new int[toIndex - fromIndex];
+			System.arraycopy(this.route, fromIndex, subRoute, 0, subRoute.length);
+			return new IndexedNetworkRouteImpl(fromLinkId, subRoute, toLinkId);
+		}
+		return new IndexedNetworkRouteImpl(fromLinkId, EMPTY_ROUTE, toLinkId);
+	}
+
+	@Override
+	public double getTravelCost() {
+		return this.travelCost;
+	}
+
+	@Override
+	public void setTravelCost(final double travelCost) {
+		this.travelCost = travelCost;
+	}
+
+	@Override
+	public void setLinkIds(final Id<Link> startLinkId, final List<Id<Link>> srcRoute, final Id<Link> endLinkId) {
+		setStartLinkId(startLinkId);
+		setEndLinkId(endLinkId);
+		if (srcRoute == null || srcRoute.isEmpty()) {
+			this.route = EMPTY_ROUTE;
+		} else {
+			int[] route = new int[srcRoute.size()];
+			int i = 0;
+			for (Id<Link> linkId : srcRoute) {
+				route[i++] = linkId.index();
+			}
+			this.route = route;
+		}
+	}
+
+	@Override
+	public Id<Vehicle> getVehicleId() {
+		return this.vehicleId;
+	}
+
+	@Override
+	public void setVehicleId(final Id<Vehicle> vehicleId) {
+		this.vehicleId = vehicleId;
+	}
+
+	@Override
+	public String getRouteDescription() {
+		StringBuilder desc = new StringBuilder(100);
+		desc.append(this.getStartLinkId().toString());
+		for (Id<Link> linkId : this.getLinkIds()) {
+			desc.append(" ");
+			desc.append(linkId.toString());
+		}
+		// If the start links equals the end link additionally check if its is a round trip.
+		if (!this.getEndLinkId().equals(this.getStartLinkId()) || this.route.length > 0) {
+			desc.append(" ");
+			desc.append(this.getEndLinkId().toString());
+		}
+		return desc.toString();
+	}
+
+	@Override
+	public void setRouteDescription(String routeDescription) {
+		List<Id<Link>> linkIds = NetworkUtils.getLinkIds(routeDescription);
+		Id<Link> startLinkId = getStartLinkId();
+		Id<Link> endLinkId = getEndLinkId();
+		if (linkIds.size() > 0) {
+			startLinkId = linkIds.remove(0);
+			setStartLinkId(startLinkId);
+		}
+		if (linkIds.size() > 0) {
+			endLinkId = linkIds.remove(linkIds.size() - 1);
+			setEndLinkId(endLinkId);
+		}
+		this.setLinkIds(startLinkId, linkIds, endLinkId);
+	}
+
+	@Override
+	public String getRouteType() {
+		return ROUTE_TYPE;
+	}
+
+	@Override
+	public String toString() {
+		String str = super.toString();
+		str += " linkIds=" + this.getLinkIds() ;
+		str += " travelCost=" + this.getTravelCost() ;
+		return str ;
+	}
+}
@@ -0,0 +1,441 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.router;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.router.util.TravelDisutility;
+
+/**
+ * Metric independent contraction hierarchy of a network, together with the per time bin customizations used by
+ * {@link ContractionHierarchies}.
+ * <p>
+ * The nodes are ordered by a geometric nested dissection and contracted without witness searches, i.e. every
+ * pair of higher ranked neighbors of a contracted node gets connected. The resulting hierarchy is valid for any
+ * metric, so new link costs only require a cheap customization (one pass over the lower triangles of every edge)
+ * instead of a new contraction. Internally, nodes are identified by their rank, edges always point from the lower
+ * to the higher ranked node and store the costs of both directions.
+ */
+final class ContractedNetwork {
+
+	private static final Logger log = Logger.getLogger(ContractedNetwork.class);
+
+	/** cells of the nested dissection with at most this many nodes are not split any further */
+	private static final int MIN_CELL_SIZE = 32;
+
+	final Network network;
+	final Node[] nodes;
+	final Link[] links;
+	final int[] parent;
+	final int[] firstEdge;
+	final int[] edgeTail;
+	final int[] edgeHead;
+
+	private final int[] rankByIdIndex;
+	private final int[] linkEdge;
+	private final boolean[] linkUpward;
+
+	private final double binSize;
+	private final int numberOfBins;
+	// customizations are only shared by travel disutilities that are equal, i.e. compute the same costs
+	private final Map<TravelDisutility, Customizations> customizations = new ConcurrentHashMap<>();
+
+	ContractedNetwork(final Network network, final double binSize, final double maxTime) {
+		this.network = network;
+		this.binSize = binSize;
+		this.numberOfBins = (int) (maxTime / binSize) + 1;
+
+		Node[] originalNodes = network.getNodes().values().toArray(new Node[0]);
+		int n = originalNodes.length;
+		int[] idIndexToNode = new int[Id.getNumberOfIds(Node.class)];
+		Arrays.fill(idIndexToNode, -1);
+		for (int i = 0; i < n; i++) {
+			idIndexToNode[originalNodes[i].getId().index()] = i;
+		}
+		this.links = network.getLinks().values().toArray(new Link[0]);
+
+		// undirected adjacency of the original network
+		int[] adjStart = new int[n + 1];
+		for (Link link : this.links) {
+			int from = idIndexToNode[link.getFromNode().getId().index()];
+			int to = idIndexToNode[link.getToNode().getId().index()];
+			if (from != to) {
+				adjStart[from + 1]++;
+				adjStart[to + 1]++;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			adjStart[i + 1] += adjStart[i];
+		}
+		int[] adjacency = new int[adjStart[n]];
+		int[] fill = Arrays.copyOf(adjStart, n);
+		for (Link link : this.links) {
+			int from = idIndexToNode[link.getFromNode().getId().index()];
+			int to = idIndexToNode[link.getToNode().getId().index()];
+			if (from != to) {
+				adjacency[fill[from]++] = to;
+				adjacency[fill[to]++] = from;
+			}
+		}
+
+		// node order
+		int[] order = new NestedDissection(originalNodes, adjStart, adjacency).order();
+		int[] rank = new int[n];
+		this.nodes = new Node[n];
+		for (int r = 0; r < n; r++) {
+			rank[order[r]] = r;
+			this.nodes[r] = originalNodes[order[r]];
+		}
+		this.rankByIdIndex = new int[idIndexToNode.length];
+		for (int i = 0; i < idIndexToNode.length; i++) {
+			this.rankByIdIndex[i] = idIndexToNode[i] < 0 ? -1 : rank[idIndexToNode[i]];
+		}
+
+		// contraction: the upper neighbors of a node, except the lowest one, become upper neighbors of the lowest one
+		int[][] upper = new int[n][];
+		int[] upperSize = new int[n];
+		for (int r = 0; r < n; r++) {
+			int node = order[r];
+			int[] list = new int[adjStart[node + 1] - adjStart[node]];
+			int size = 0;
+			for (int a = adjStart[node]; a < adjStart[node + 1]; a++) {
+				int other = rank[adjacency[a]];
+				if (other > r) {
+					list[size++] = other;
+				}
+			}
+			upper[r] = list;
+			upperSize[r] = size;
+		}
+		this.parent = new int[n];
+		this.firstEdge = new int[n + 1];
+		for (int r = 0; r < n; r++) {
+			int[] list = upper[r];
+			int size = sortUnique(list, upperSize[r]);
+			upper[r] = size == list.length ? list : Arrays.copyOf(list, size);
+			upperSize[r] = size;
+			this.firstEdge[r + 1] = this.firstEdge[r] + size;
+			if (size == 0) {
+				this.parent[r] = -1;
+				continue;
+			}
+			int p = list[0];
+			this.parent[r] = p;
+			int required = upperSize[p] + size - 1;
+			if (upper[p].length < required) {
+				upper[p] = Arrays.copyOf(upper[p], Math.max(required, upper[p].length * 2));
+			}
+			System.arraycopy(list, 1, upper[p], upperSize[p], size - 1);
+			upperSize[p] = required;
+		}
+		int m = this.firstEdge[n];
+		this.edgeTail = new int[m];
+		this.edgeHead = new int[m];
+		for (int r = 0; r < n; r++) {
+			Arrays.fill(this.edgeTail, this.firstEdge[r], this.firstEdge[r + 1], r);
+			System.arraycopy(upper[r], 0, this.edgeHead, this.firstEdge[r], upperSize[r]);
+			upper[r] = null;
+		}
+
+		this.linkEdge = new int[this.links.length];
+		this.linkUpward = new boolean[this.links.length];
+		for (int l = 0; l < this.links.length; l++) {
+			int from = getRank(this.links[l].getFromNode());
+			int to = getRank(this.links[l].getToNode());
+			if (from == to) {
+				this.linkEdge[l] = -1;
+			} else if (from < to) {
+				this.linkEdge[l] = findEdge(from, to);
+				this.linkUpward[l] = true;
+			} else {
+				this.linkEdge[l] = findEdge(to, from);
+			}
+		}
+		log.info("contracted network with " + n + " nodes and " + this.links.length + " links, the hierarchy contains " + m + " edges.");
+	}
+
+	/**
+	 * @return the rank of the node, or -1 if the node is not part of this network.
+	 */
+	int getRank(final Node node) {
+		int index = node.getId().index();
+		if (index >= this.rankByIdIndex.length) {
+			return -1;
+		}
+		int rank = this.rankByIdIndex[index];
+		return rank >= 0 && this.nodes[rank] == node ? rank : -1;
+	}
+
+	/**
+	 * @return the edge between the two nodes, <code>lower</code> having the lower rank, or -1 if there is none.
+	 */
+	int findEdge(final int lower, final int higher) {
+		int pos = Arrays.binarySearch(this.edgeHead, this.firstEdge[lower], this.firstEdge[lower + 1], higher);
+		return pos < 0 ? -1 : pos;
+	}
+
+	/**
+	 * Returns the customization for the given travel disutility and the time bin containing <code>time</code>,
+	 * customizing it if this bin was not yet used with this (or an equal) disutility since the last call to
+	 * {@link #clearCustomizations()}. The costs are computed without a person or vehicle, at the start of the bin.
+	 */
+	Customization getCustomization(final double time, final TravelDisutility travelDisutility) {
+		int bin = time <= 0 ? 0 : Math.min((int) (time / this.binSize), this.numberOfBins - 1);
+		Customizations byBin = this.customizations.computeIfAbsent(travelDisutility, d -> new Customizations(this.numberOfBins));
+		Customization customization = byBin.bins.get(bin);
+		if (customization == null) {
+			synchronized (byBin.locks[bin]) {
+				customization = byBin.bins.get(bin);
+				if (customization == null) {
+					customization = customize(travelDisutility, bin * this.binSize);
+					byBin.bins.set(bin, customization);
+				}
+			}
+		}
+		return customization;
+	}
+
+	void clearCustomizations() {
+		this.customizations.clear();
+	}
+
+	private Customization customize(final TravelDisutility travelDisutility, final double time) {
+		Customization c = new Customization(this.edgeHead.length);
+		for (int l = 0; l < this.links.length; l++) {
+			int e = this.linkEdge[l];
+			if (e < 0) {
+				continue;
+			}
+			float cost = (float) travelDisutility.getLinkTravelDisutility(this.links[l], time, null, null);
+			if (this.linkUpward[l]) {
+				if (cost < c.up[e]) {
+					c.up[e] = cost;
+					c.viaUp[e] = -(l + 1);
+				}
+			} else if (cost < c.down[e]) {
+				c.down[e] = cost;
+				c.viaDown[e] = -(l + 1);
+			}
+		}
+		// the edges from a node to its upper neighbors are final once all lower nodes are handled
+		for (int x = 0; x < this.nodes.length; x++) {
+			int end = this.firstEdge[x + 1];
+			for (int xu = this.firstEdge[x]; xu < end; xu++) {
+				int u = this.edgeHead[xu];
+				int uv = this.firstEdge[u];
+				for (int xv = xu + 1; xv < end; xv++) {
+					int v = this.edgeHead[xv];
+					while (this.edgeHead[uv] != v) {
+						uv++;
+					}
+					float cost = c.down[xu] + c.up[xv];
+					if (cost < c.up[uv]) {
+						c.up[uv] = cost;
+						c.viaUp[uv] = x;
+					}
+					cost = c.down[xv] + c.up[xu];
+					if (cost < c.down[uv]) {
+						c.down[uv] = cost;
+						c.viaDown[uv] = x;
+					}
+				}
+			}
+		}
+		return c;
+	}
+
+	private static int sortUnique(final int[] values, final int size) {
+		Arrays.sort(values, 0, size);
+		int unique = 0;
+		for (int i = 0; i < size; i++) {
+			if (unique == 0 || values[unique - 1] != values[i]) {
+				values[unique++] = values[i];
+			}
+		}
+		return unique;
+	}
+
+	/**
+	 * Edge weights for one time bin. <code>up</code> is the cost from the lower to the higher ranked node of an edge,
+	 * <code>down</code> the cost of the opposite direction. The via arrays describe how to unpack an edge: a value
+	 * <code>&gt;= 0</code> is the middle node of a shortcut, a negative value <code>-(l+1)</code> refers to link
+	 * <code>l</code>.
+	 */
+	private static final class Customizations {
+		final AtomicReferenceArray<Customization> bins;
+		final Object[] locks;
+
+		Customizations(final int numberOfBins) {
+			this.bins = new AtomicReferenceArray<>(numberOfBins);
+			this.locks = new Object[numberOfBins];
+			for (int i = 0; i < numberOfBins; i++) {
+				this.locks[i] = new Object();
+			}
+		}
+	}
+
+	static final class Customization {
+		final float[] up;
+		final float[] down;
+		final int[] viaUp;
+		final int[] viaDown;
+
+		Customization(final int numberOfEdges) {
+			this.up = new float[numberOfEdges];
+			this.down = new float[numberOfEdges];
+			this.viaUp = new int[numberOfEdges];
+			this.viaDown = new int[numberOfEdges];
+			Arrays.fill(this.up, Float.POSITIVE_INFINITY);
+			Arrays.fill(this.down, Float.POSITIVE_INFINITY);
+		}
+	}
+
+	/**
+	 * Recursively bisects the nodes along the longer side of their bounding box. The nodes of the first half having
+	 * a neighbor in the second half form the separator, which is ranked above both halves.
+	 */
+	private static final class NestedDissection {
+		private final double[] x;
+		private final double[] y;
+		private final int[] adjStart;
+		private final int[] adjacency;
+		private final int[] cells;
+		private final int[] label;
+		private final int[] order;
+		private int orderSize = 0;
+		private int nextLabel = 0;
+
+		NestedDissection(final Node[] nodes, final int[] adjStart, final int[] adjacency) {
+			int n = nodes.length;
+			this.x = new double[n];
+			this.y = new double[n];
+			for (int i = 0; i < n; i++) {
+				this.x[i] = nodes[i].getCoord().getX();
+				this.y[i] = nodes[i].getCoord().getY();
+			}
+			this.adjStart = adjStart;
+			this.adjacency = adjacency;
+			this.cells = new int[n];
+			for (int i = 0; i < n; i++) {
+				this.cells[i] = i;
+			}
+			this.label = new int[n];
+			Arrays.fill(this.label, -1);
+			this.order = new int[n];
+		}
+
+		int[] order() {
+			dissect(0, this.cells.length);
+			return this.order;
+		}
+
+		private void dissect(final int from, final int to) {
+			if (to - from <= MIN_CELL_SIZE) {
+				System.arraycopy(this.cells, from, this.order, this.orderSize, to - from);
+				this.orderSize += to - from;
+				return;
+			}
+			double minX = Double.POSITIVE_INFINITY;
+			double maxX = Double.NEGATIVE_INFINITY;
+			double minY = Double.POSITIVE_INFINITY;
+			double maxY = Double.NEGATIVE_INFINITY;
+			for (int i = from; i < to; i++) {
+				int node = this.cells[i];
+				minX = Math.min(minX, this.x[node]);
+				maxX = Math.max(maxX, this.x[node]);
+				minY = Math.min(minY, this.y[node]);
+				maxY = Math.max(maxY, this.y[node]);
+			}
+			int mid = (from + to) >>> 1;
+			select(from, to - 1, mid, maxX - minX >= maxY - minY ? this.x : this.y);
+
+			int secondHalf = this.nextLabel++;
+			for (int i = mid; i < to; i++) {
+				this.label[this.cells[i]] = secondHalf;
+			}
+			// move the separator nodes to the end of the first half
+			int separatorStart = mid;
+			for (int i = mid - 1; i >= from; i--) {
+				int node = this.cells[i];
+				if (hasNeighborWithLabel(node, secondHalf)) {
+					separatorStart--;
+					this.cells[i] = this.cells[separatorStart];
+					this.cells[separatorStart] = node;
+				}
+			}
+			dissect(from, separatorStart);
+			dissect(mid, to);
+			System.arraycopy(this.cells, separatorStart, this.order, this.orderSize, mid - separatorStart);
+			this.orderSize += mid - separatorStart;
+		}
+
+		private boolean hasNeighborWithLabel(final int node, final int label) {
+			for (int a = this.adjStart[node]; a < this.adjStart[node + 1]; a++) {
+				if (this.label[this.adjacency[a]] == label) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Partially sorts <code>cells[left..right]</code> such that the element at position <code>k</code> has the
+		 * same coordinate as if the range was sorted completely.
+		 */
+		private void select(int left, int right, final int k, final double[] coord) {
+			int[] a = this.cells;
+			while (left < right) {
+				double pivot = coord[a[(left + right) >>> 1]];
+				int i = left;
+				int j = right;
+				while (i <= j) {
+					while (coord[a[i]] < pivot) {
+						i++;
+					}
+					while (coord[a[j]] > pivot) {
+						j--;
+					}
+					if (i <= j) {
+						int tmp = a[i];
+						a[i] = a[j];
+						a[j] = tmp;
+						i++;
+						j--;
+					}
+				}
+				if (k <= j) {
+					right = j;
+				} else if (k >= i) {
+					left = i;
+				} else {
+					return;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,222 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.router;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.router.ContractedNetwork.Customization;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.costcalculators.RandomizingTimeDistanceTravelDisutilityFactory;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+
+/**
+ * <p>
+ * Least cost path calculator using a customizable contraction hierarchy ({@link ContractedNetwork}). The search runs
+ * on the link costs of the time bin containing the departure time, walking up the elimination tree from both the
+ * start and the end node, so no priority queue is required. The resulting path is then evaluated link by link with
+ * the actual travel times and disutilities, so the returned travel time and cost are the same as for {@link Dijkstra}
+ * for the same path.
+ * </p>
+ * <p>
+ * As the costs are customized per time bin, and without a person or vehicle, the search does not take into account
+ * cost changes within a time bin or person specific disutilities. Randomized disutilities (see
+ * {@link RandomizingTimeDistanceTravelDisutilityFactory#withoutRandomness(TravelDisutility)}) are searched with their
+ * expected costs, the randomization only affects the returned cost. Instances are not thread-safe.
+ * </p>
+ *
+ * @see ContractionHierarchiesFactory
+ */
+public class ContractionHierarchies implements LeastCostPathCalculator {
+
+	private static final Logger log = Logger.getLogger(ContractionHierarchies.class);
+
+	private final ContractedNetwork network;
+	private final TravelDisutility travelCosts;
+	private final TravelDisutility customizationCosts;
+	private final TravelTime travelTimes;
+
+	private final double[] forwardCost;
+	private final double[] backwardCost;
+	private final int[] forwardEdge;
+	private final int[] backwardEdge;
+	private int[] stack = new int[64];
+
+	/**
+	 * @param customizationCosts the disutility used for the search, i.e. evaluated without person and vehicle. The
+	 * 		returned paths are evaluated with <code>travelCosts</code>.
+	 */
+	ContractionHierarchies(final ContractedNetwork network, final TravelDisutility travelCosts, final TravelDisutility customizationCosts,
+			final TravelTime travelTimes) {
+		this.network = network;
+		this.travelCosts = travelCosts;
+		this.customizationCosts = customizationCosts;
+		this.travelTimes = travelTimes;
+		int n = network.nodes.length;
+		this.forwardCost = new double[n];
+		this.backwardCost = new double[n];
+		this.forwardEdge = new int[n];
+		this.backwardEdge = new int[n];
+		Arrays.fill(this.forwardCost, Double.POSITIVE_INFINITY);
+		Arrays.fill(this.backwardCost, Double.POSITIVE_INFINITY);
+	}
+
+	@Override
+	public Path calcLeastCostPath(final Node fromNode, final Node toNode, final double startTime, final Person person, final Vehicle vehicle) {
+		int start = this.network.getRank(fromNode);
+		int end = this.network.getRank(toNode);
+		if (start < 0 || end < 0) {
+			throw new IllegalArgumentException("The nodes passed as parameters are not part of the network stored by "+
+					getClass().getSimpleName() + ": the validity of the results cannot be guaranteed. Aborting!");
+		}
+		if (start == end) {
+			return new Path(Collections.singletonList(fromNode), Collections.emptyList(), 0.0, 0.0);
+		}
+
+		Customization customization = this.network.getCustomization(startTime, this.customizationCosts);
+		search(start, customization.up, this.forwardCost, this.forwardEdge);
+		search(end, customization.down, this.backwardCost, this.backwardEdge);
+
+		int meetingNode = -1;
+		double bestCost = Double.POSITIVE_INFINITY;
+		for (int x = start; x >= 0; x = this.network.parent[x]) {
+			double cost = this.forwardCost[x] + this.backwardCost[x];
+			if (cost < bestCost) {
+				bestCost = cost;
+				meetingNode = x;
+			}
+		}
+
+		List<Link> links = null;
+		if (meetingNode >= 0) {
+			links = new ArrayList<>();
+			unpackForward(start, meetingNode, customization, links);
+			for (int x = meetingNode; x != end; x = this.network.edgeTail[this.backwardEdge[x]]) {
+				unpack(this.backwardEdge[x], false, customization, links);
+			}
+		}
+		reset(start, this.forwardCost);
+		reset(end, this.backwardCost);
+
+		if (links == null) {
+			log.warn("No route was found from node " + fromNode.getId() + " to node " + toNode.getId() + ". Some possible reasons:");
+			log.warn("  * Network is not connected.  Run NetworkCleaner().") ;
+			log.warn("  * Network for considered mode does not even exist.  Modes need to be entered for each link in network.xml.");
+			log.warn("  * Network for considered mode is not connected to starting or ending point of route.  Setting insertingAccessEgressWalk to true may help.");
+			log.warn("This will now return null, but it may fail later with a null pointer exception.");
+			return null;
+		}
+
+		List<Node> nodes = new ArrayList<>(links.size() + 1);
+		nodes.add(fromNode);
+		double time = startTime;
+		double cost = 0.0;
+		for (Link link : links) {
+			nodes.add(link.getToNode());
+			cost += this.travelCosts.getLinkTravelDisutility(link, time, person, vehicle);
+			time += this.travelTimes.getLinkTravelTime(link, time, person, vehicle);
+		}
+		return new Path(nodes, links, time - startTime, cost);
+	}
+
+	/**
+	 * Upward search from the given node. All nodes reachable upwards are ancestors in the elimination tree, so
+	 * handling them in the order of the tree settles each node before it is relaxed.
+	 */
+	private void search(final int node, final float[] weights, final double[] costs, final int[] edges) {
+		ContractedNetwork net = this.network;
+		costs[node] = 0.0;
+		for (int x = node; x >= 0; x = net.parent[x]) {
+			double cost = costs[x];
+			if (cost == Double.POSITIVE_INFINITY) {
+				continue;
+			}
+			for (int e = net.firstEdge[x], end = net.firstEdge[x + 1]; e < end; e++) {
+				double newCost = cost + weights[e];
+				int head = net.edgeHead[e];
+				if (newCost < costs[head]) {
+					costs[head] = newCost;
+					edges[head] = e;
+				}
+			}
+		}
+	}
+
+	private void reset(final int node, final double[] costs) {
+		for (int x = node; x >= 0; x = this.network.parent[x]) {
+			costs[x] = Double.POSITIVE_INFINITY;
+		}
+	}
+
+	private void unpackForward(final int start, final int node, final Customization customization, final List<Link> links) {
+		int count = 0;
+		for (int x = node; x != start; x = this.network.edgeTail[this.forwardEdge[x]]) {
+			count++;
+		}
+		int[] edges = new int[count];
+		for (int x = node; x != start; x = this.network.edgeTail[this.forwardEdge[x]]) {
+			edges[--count] = this.forwardEdge[x];
+		}
+		for (int e : edges) {
+			unpack(e, true, customization, links);
+		}
+	}
+
+	/**
+	 * Appends the links represented by the given edge, <code>upward</code> meaning from the lower to the higher ranked
+	 * node, in travel order.
+	 */
+	private void unpack(final int edge, final boolean upward, final Customization customization, final List<Link> links) {
+		ContractedNetwork net = this.network;
+		int size = 0;
+		this.stack[size++] = (edge << 1) | (upward ? 1 : 0);
+		while (size > 0) {
+			int entry = this.stack[--size];
+			int e = entry >>> 1;
+			boolean up = (entry & 1) != 0;
+			int via = up ? customization.viaUp[e] : customization.viaDown[e];
+			if (via < 0) {
+				links.add(net.links[-via - 1]);
+				continue;
+			}
+			int xu = net.findEdge(via, net.edgeTail[e]);
+			int xv = net.findEdge(via, net.edgeHead[e]);
+			if (size + 2 > this.stack.length) {
+				this.stack = Arrays.copyOf(this.stack, this.stack.length * 2);
+			}
+			// pushed in reverse order of travel
+			if (up) {
+				this.stack[size++] = (xv << 1) | 1;
+				this.stack[size++] = xu << 1;
+			} else {
+				this.stack[size++] = (xu << 1) | 1;
+				this.stack[size++] = xv << 1;
+			}
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.router;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.config.groups.TravelTimeCalculatorConfigGroup;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.listener.IterationStartsListener;
+import org.matsim.core.router.costcalculators.RandomizingTimeDistanceTravelDisutilityFactory;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.LeastCostPathCalculatorFactory;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+
+/**
+ * Creates {@link ContractionHierarchies} instances. The contraction of a network is done once, the first time a
+ * calculator for it is requested, and shared by all calculators. The link costs are customized lazily per time bin
+ * and per travel disutility, and discarded at the start of every iteration, so the next routing uses the updated
+ * travel times and disutilities without contracting the network again.
+ * <p>
+ * Calculators share customizations only if their travel disutilities are equal. The disutilities created by
+ * {@link RandomizingTimeDistanceTravelDisutilityFactory} for the same travel time and parameters are (after removing
+ * the randomization) equal, so the routers of all threads share them. Other disutilities are customized once per
+ * instance, which requires memory for every calculator routing in the same time bins.
+ * <p>
+ * The costs of a time bin are those at the start of the bin, cost changes within the bin are ignored by the search.
+ * The bins are at least {@value #DEFAULT_CUSTOMIZATION_BIN_SIZE} seconds long when the factory is injected; use
+ * {@link #ContractionHierarchiesFactory(double, double)} for finer bins.
+ */
+@Singleton
+public class ContractionHierarchiesFactory implements LeastCostPathCalculatorFactory, IterationStartsListener {
+
+	/** customizing every travel time bin would require too much memory on large networks */
+	public static final double DEFAULT_CUSTOMIZATION_BIN_SIZE = 3600.0;
+
+	private final double binSize;
+	private final double maxTime;
+	private final Map<Network, ContractedNetwork> contractedNetworks = new HashMap<>();
+
+	@Inject
+	public ContractionHierarchiesFactory(final TravelTimeCalculatorConfigGroup travelTimeCalculatorConfigGroup) {
+		this(Math.max(DEFAULT_CUSTOMIZATION_BIN_SIZE, travelTimeCalculatorConfigGroup.getTraveltimeBinSize()), travelTimeCalculatorConfigGroup.getMaxTime());
+	}
+
+	public ContractionHierarchiesFactory() {
+		this(DEFAULT_CUSTOMIZATION_BIN_SIZE, 30 * 3600.0);
+	}
+
+	public ContractionHierarchiesFactory(final double binSize, final double maxTime) {
+		this.binSize = binSize;
+		this.maxTime = maxTime;
+	}
+
+	@Override
+	public synchronized LeastCostPathCalculator createPathCalculator(final Network network,
+			final TravelDisutility travelCosts, final TravelTime travelTimes) {
+		ContractedNetwork contractedNetwork = this.contractedNetworks.get(network);
+		if (contractedNetwork == null) {
+			contractedNetwork = new ContractedNetwork(network, this.binSize, this.maxTime);
+			this.contractedNetworks.put(network, contractedNetwork);
+		}
+		TravelDisutility customizationCosts = RandomizingTimeDistanceTravelDisutilityFactory.withoutRandomness(travelCosts);
+		return new ContractionHierarchies(contractedNetwork, travelCosts, customizationCosts, travelTimes);
+	}
+
+	/**
+	 * Discards the customized link costs, they are re-computed when they are used next.
+	 */
+	public synchronized void resetCustomizations() {
+		for (ContractedNetwork contractedNetwork : this.contractedNetworks.values()) {
+			contractedNetwork.clearCustomizations();
+		}
+	}
+
+	@Override
+	public void notifyIterationStarts(final IterationStartsEvent event) {
+		resetCustomizations();
+	}
+}
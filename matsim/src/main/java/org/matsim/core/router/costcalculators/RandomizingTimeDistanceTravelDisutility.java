@@ -103,4 +103,55 @@ final class RandomizingTimeDistanceTravelDisutility implements TravelDisutility
 		return (link.getLength() / link.getFreespeed()) * this.marginalCostOfTime + this.marginalCostOfDistance * link.getLength();
 	}
 
+	/**
+	 * @return the disutility with the expected value of the random factor, which is one due to the normalization.
+	 */
+	TravelDisutility withoutRandomness() {
+		return new ExpectedTravelDisutility(this.timeCalculator, this.marginalCostOfTime, this.marginalCostOfDistance);
+	}
+
+	/**
+	 * Does not need a person. Instances with the same travel time and marginal costs are equal, so they can be used
+	 * to share data computed from the disutility, e.g. by routers of different threads.
+	 */
+	private static final class ExpectedTravelDisutility implements TravelDisutility {
+		private final TravelTime timeCalculator;
+		private final double marginalCostOfTime;
+		private final double marginalCostOfDistance;
+
+		ExpectedTravelDisutility(final TravelTime timeCalculator, final double marginalCostOfTime, final double marginalCostOfDistance) {
+			this.timeCalculator = timeCalculator;
+			this.marginalCostOfTime = marginalCostOfTime;
+			this.marginalCostOfDistance = marginalCostOfDistance;
+		}
+
+		@Override
+		public double getLinkTravelDisutility(final Link link, final double time, final Person person, final Vehicle vehicle) {
+			double travelTime = this.timeCalculator.getLinkTravelTime(link, time, person, vehicle);
+			return this.marginalCostOfTime * travelTime + this.marginalCostOfDistance * link.getLength();
+		}
+
+		@Override
+		public double getLinkMinimumTravelDisutility(final Link link) {
+			return (link.getLength() / link.getFreespeed()) * this.marginalCostOfTime + this.marginalCostOfDistance * link.getLength();
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof ExpectedTravelDisutility)) {
+				return false;
+			}
+			ExpectedTravelDisutility other = (ExpectedTravelDisutility) obj;
+			return this.timeCalculator == other.timeCalculator
+					&& Double.compare(this.marginalCostOfTime, other.marginalCostOfTime) == 0
+					&& Double.compare(this.marginalCostOfDistance, other.marginalCostOfDistance) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * System.identityHashCode(this.timeCalculator) + Double.hashCode(this.marginalCostOfTime))
+					+ Double.hashCode(this.marginalCostOfDistance);
+		}
+	}
+
 }
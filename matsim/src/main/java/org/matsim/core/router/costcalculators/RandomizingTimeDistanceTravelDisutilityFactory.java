@@ -94,6 +94,20 @@ public class RandomizingTimeDistanceTravelDisutilityFactory implements TravelDis
 				sigma);
 	}
 
+	/**
+	 * Removes the per-person randomization from disutilities created by this factory, for algorithms that evaluate
+	 * link costs without a person, e.g. to precompute them.
+	 *
+	 * @return a disutility with the expected value of the randomized one, or the given disutility if it was not
+	 * 		created by this factory
+	 */
+	public static TravelDisutility withoutRandomness( final TravelDisutility travelDisutility ) {
+		if ( travelDisutility instanceof RandomizingTimeDistanceTravelDisutility ) {
+			return ((RandomizingTimeDistanceTravelDisutility) travelDisutility).withoutRandomness();
+		}
+		return travelDisutility;
+	}
+
 	private void logWarningsIfNecessary(final PlanCalcScoreConfigGroup cnScoringGroup) {
 		if ( wrnCnt.getAndIncrement() < 1 ) {
 			if ( cnScoringGroup.getModes().get( mode ).getMonetaryDistanceRate() > 0. ) {
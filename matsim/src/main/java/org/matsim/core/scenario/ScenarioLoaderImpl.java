@@ -140,6 +140,7 @@ class ScenarioLoaderImpl {
 							config.global().getCoordinateSystem(),
 							this.scenario.getNetwork());
             reader.putAttributeConverters( attributeConverters );
+            reader.setNumberOfThreads( this.config.global().getNumberOfThreads() );
             reader.parse(networkUrl);
 
 			if ((this.config.network().getChangeEventsInputFile()!= null) && this.config.network().isTimeVariantNetwork()) {
@@ -199,7 +200,11 @@ class ScenarioLoaderImpl {
 
             final PopulationReader reader = new PopulationReader(targetCRS, internalCRS, this.scenario);
             reader.putAttributeConverters( attributeConverters );
-            reader.parse( populationFileName );
+            if ( populationFileName.getFile().endsWith( ".bin" ) ) {
+                reader.parseBinary( populationFileName, this.config.global().getNumberOfThreads() );
+            } else {
+                reader.parse( populationFileName );
+            }
 
 			PopulationUtils.printPlansCount(this.scenario.getPopulation()) ;
 		}
@@ -41,6 +41,7 @@ import org.matsim.api.core.v01.population.Plan;
 import org.matsim.api.core.v01.population.Population;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.api.internal.HasPersonId;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup;
 import org.matsim.core.controler.ControlerListenerManager;
 import org.matsim.core.controler.events.IterationStartsEvent;
 import org.matsim.core.controler.listener.IterationStartsListener;
@@ -54,8 +55,11 @@ import org.matsim.vehicles.Vehicle;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.matsim.core.router.TripStructureUtils.Trip;
@@ -64,6 +68,12 @@ import static org.matsim.core.router.TripStructureUtils.Trip;
  * This class helps EventsToScore by keeping ScoringFunctions for the entire Population - one per Person -, and dispatching Activities
  * and Legs to the ScoringFunctions. It also gives out the ScoringFunctions, so they can be given other events by EventsToScore.
  * It is not independently useful. Please do not make public.
+ * <p>
+ * If more than one scoring thread is configured, the persons are partitioned over worker threads by their index.
+ * Every worker owns the scoring functions, partial scores and trip records of its persons; the event handler
+ * methods only resolve the person an event is about and pass it on to the worker of that person. As all
+ * input of a person is processed by the same worker in the original order, the scores are the same as with
+ * a single thread.
  * 
  * @author michaz
  *
@@ -92,9 +102,23 @@ import static org.matsim.core.router.TripStructureUtils.Trip;
 	
 	private Vehicle2DriverEventHandler vehicles2Drivers = new Vehicle2DriverEventHandler();
 
+	private final int numberOfThreads;
+	private ScoringWorker[] workers = null;
+
 	@Inject
+	ScoringFunctionsForPopulation( ControlerListenerManager controlerListenerManager, EventsManager eventsManager, EventsToActivities eventsToActivities, EventsToLegs eventsToLegs,
+						 Population population, ScoringFunctionFactory scoringFunctionFactory, PlanCalcScoreConfigGroup planCalcScoreConfigGroup) {
+		this(controlerListenerManager, eventsManager, eventsToActivities, eventsToLegs, population, scoringFunctionFactory, planCalcScoreConfigGroup.getNumberOfScoringThreads());
+	}
+
 	ScoringFunctionsForPopulation( ControlerListenerManager controlerListenerManager, EventsManager eventsManager, EventsToActivities eventsToActivities, EventsToLegs eventsToLegs,
 						 Population population, ScoringFunctionFactory scoringFunctionFactory) {
+		this(controlerListenerManager, eventsManager, eventsToActivities, eventsToLegs, population, scoringFunctionFactory, 1);
+	}
+
+	ScoringFunctionsForPopulation( ControlerListenerManager controlerListenerManager, EventsManager eventsManager, EventsToActivities eventsToActivities, EventsToLegs eventsToLegs,
+						 Population population, ScoringFunctionFactory scoringFunctionFactory, int numberOfThreads) {
+		this.numberOfThreads = numberOfThreads;
 		controlerListenerManager.addControlerListener(new IterationStartsListener() {
 			@Override
 			public void notifyIterationStarts(IterationStartsEvent event) {
@@ -115,6 +139,15 @@ import static org.matsim.core.router.TripStructureUtils.Trip;
 			this.partialScores.put(person.getId(), new TDoubleArrayList());
 			this.tripRecords.put(person.getId(), PopulationUtils.createPlan());
 		}
+		stopWorkers();
+		this.exception.set(null);
+		if (this.numberOfThreads > 1) {
+			this.workers = new ScoringWorker[this.numberOfThreads];
+			for (int i = 0; i < this.numberOfThreads; i++) {
+				this.workers[i] = new ScoringWorker(i);
+				this.workers[i].thread.start();
+			}
+		}
 	}
 
 	@Override
@@ -125,21 +158,13 @@ import static org.matsim.core.router.TripStructureUtils.Trip;
 		// link enter/leave events are NOT passed on, for performance reasons.
 		// kai/dominik, dec'12
 		if (o instanceof HasPersonId) {
-			ScoringFunction scoringFunction = getScoringFunctionForAgent(((HasPersonId) o).getPersonId());
-			if (scoringFunction != null) {
-				if (o instanceof PersonStuckEvent) {
-					scoringFunction.agentStuck(o.getTime());
-				} else if (o instanceof PersonMoneyEvent) {
-					scoringFunction.addMoney(((PersonMoneyEvent) o).getAmount());
-					// yy looking at this, I am a bit skeptic if it truly makes sense to not pass this additionally into the general events handling function below.
-					// A use case might be different utilities of money by money transaction type (e.g. toll, fare, reimbursement, ...).  kai, mar'17
-				} else if (o instanceof PersonScoreEvent) {
-					scoringFunction.addScore(((PersonScoreEvent) o).getAmount());
+			Id<Person> personId = ((HasPersonId) o).getPersonId();
+			if (this.workers != null) {
+				if (personId != null) {
+					getWorker(personId).add(personId, o);
 				}
-//				else {
-					scoringFunction.handleEvent(o);
-					// passing this on in any case, see comment above.  kai, mar'17
-//				}
+			} else {
+				scoreEvent(personId, o);
 			}
 		}
 
@@ -161,16 +186,50 @@ import static org.matsim.core.router.TripStructureUtils.Trip;
 		if ( o instanceof LinkEnterEvent ) {
 			Id<Vehicle> vehicleId = ((LinkEnterEvent)o).getVehicleId();
 			Id<Person> driverId = this.vehicles2Drivers.getDriverOfVehicle(vehicleId);
-			ScoringFunction scoringFunction = getScoringFunctionForAgent( driverId );
-			// (this will NOT do the scoring function lookup twice since LinkEnterEvent is not an instance of HasPersonId.  kai, mar'17)
-			if (scoringFunction != null) {
-				scoringFunction.handleEvent(o);
+			if (this.workers != null) {
+				// the driver is resolved here, as the vehicle-driver relation depends on the order of all events
+				if (driverId != null) {
+					getWorker(driverId).add(driverId, o);
+				}
+			} else {
+				scoreEvent(driverId, o);
 			}
 		}
 	}
 
+	/**
+	 * Passes an event to the scoring function of the person. Link enter events are passed on for the driver of the
+	 * vehicle; as they do not implement HasPersonId, they end up in scoringFunction.handleEvent(...) only.
+	 */
+	private void scoreEvent(Id<Person> personId, Event o) {
+		ScoringFunction scoringFunction = getScoringFunctionForAgent(personId);
+		if (scoringFunction != null) {
+				if (o instanceof PersonStuckEvent) {
+					scoringFunction.agentStuck(o.getTime());
+				} else if (o instanceof PersonMoneyEvent) {
+					scoringFunction.addMoney(((PersonMoneyEvent) o).getAmount());
+					// yy looking at this, I am a bit skeptic if it truly makes sense to not pass this additionally into the general events handling function below.
+					// A use case might be different utilities of money by money transaction type (e.g. toll, fare, reimbursement, ...).  kai, mar'17
+				} else if (o instanceof PersonScoreEvent) {
+					scoringFunction.addScore(((PersonScoreEvent) o).getAmount());
+				}
+//				else {
+					scoringFunction.handleEvent(o);
+					// passing this on in any case, see comment above.  kai, mar'17
+//				}
+		}
+	}
+
 	@Override
 	synchronized public void handleLeg(PersonExperiencedLeg o) {
+		if (this.workers != null) {
+			getWorker(o.getAgentId()).add(o.getAgentId(), o);
+		} else {
+			scoreLeg(o);
+		}
+	}
+
+	private void scoreLeg(PersonExperiencedLeg o) {
 		Id<Person> agentId = o.getAgentId();
 		Leg leg = o.getLeg();
 		ScoringFunction scoringFunction = ScoringFunctionsForPopulation.this.getScoringFunctionForAgent(agentId);
@@ -187,6 +246,14 @@ import static org.matsim.core.router.TripStructureUtils.Trip;
 
 	@Override
 	synchronized public void handleActivity(PersonExperiencedActivity o) {
+		if (this.workers != null) {
+			getWorker(o.getAgentId()).add(o.getAgentId(), o);
+		} else {
+			scoreActivity(o);
+		}
+	}
+
+	private void scoreActivity(PersonExperiencedActivity o) {
 		Id<Person> agentId = o.getAgentId();
 		Activity activity = o.getActivity();
 		ScoringFunction scoringFunction = ScoringFunctionsForPopulation.this.getScoringFunctionForAgent(agentId);
@@ -243,6 +310,11 @@ import static org.matsim.core.router.TripStructureUtils.Trip;
 	}
 
 	public void finishScoringFunctions() {
+		// the workers also finish the scoring functions of their persons
+		boolean finishedByWorkers = this.workers != null;
+		if (finishedByWorkers) {
+			stopWorkers();
+		}
 		// Rethrow an exception in a scoring function (user code) if there was one.
 		Throwable throwable = this.exception.get();
 		if (throwable != null) {
@@ -252,6 +324,9 @@ import static org.matsim.core.router.TripStructureUtils.Trip;
 				throw new RuntimeException(throwable);
 			}
 		}
+		if (finishedByWorkers) {
+			return;
+		}
 		for (ScoringFunction sf : this.agentScorers.values()) {
 			sf.finish();
 		}
@@ -260,6 +335,27 @@ import static org.matsim.core.router.TripStructureUtils.Trip;
 		}
 	}
 
+	private ScoringWorker getWorker(Id<Person> personId) {
+		return this.workers[personId.index() % this.workers.length];
+	}
+
+	private synchronized void stopWorkers() {
+		if (this.workers == null) {
+			return;
+		}
+		for (ScoringWorker worker : this.workers) {
+			worker.close();
+		}
+		try {
+			for (ScoringWorker worker : this.workers) {
+				worker.thread.join();
+			}
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		this.workers = null;
+	}
+
 	public void writePartialScores(String iterationFilename) {
 		try ( BufferedWriter out = IOUtils.getBufferedWriter(iterationFilename) ) {
 			for (Entry<Id<Person>, TDoubleCollection> entry : this.partialScores.entrySet()) {
@@ -281,4 +377,103 @@ import static org.matsim.core.router.TripStructureUtils.Trip;
 
 	}
 
+	/**
+	 * Scores the persons of one partition. Input is collected in batches, so the lock of the queue is only needed
+	 * once per batch.
+	 */
+	private final class ScoringWorker implements Runnable {
+		private static final int BATCH_SIZE = 1024;
+
+		private final int partition;
+		private final Thread thread;
+		private final BlockingQueue<Object[]> queue = new LinkedBlockingQueue<>();
+		private Object[] batch = new Object[2 * BATCH_SIZE];
+		private int batchSize = 0;
+
+		ScoringWorker(int partition) {
+			this.partition = partition;
+			this.thread = new Thread(this, "Scoring-" + partition);
+			this.thread.setDaemon(true);
+		}
+
+		// person ids and input are stored alternately in the batch
+		void add(Id<Person> personId, Object input) {
+			this.batch[this.batchSize++] = personId;
+			this.batch[this.batchSize++] = input;
+			if (this.batchSize == this.batch.length) {
+				flush();
+			}
+		}
+
+		private void flush() {
+			if (this.batchSize > 0) {
+				this.queue.add(Arrays.copyOf(this.batch, this.batchSize));
+				Arrays.fill(this.batch, null);
+				this.batchSize = 0;
+			}
+		}
+
+		void close() {
+			flush();
+			this.queue.add(new Object[0]);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void run() {
+			boolean closed = false;
+			try {
+				while (true) {
+					Object[] items = this.queue.take();
+					if (items.length == 0) {
+						closed = true;
+						break;
+					}
+					if (exception.get() != null) {
+						continue;
+					}
+					for (int i = 0; i < items.length; i += 2) {
+						Object input = items[i + 1];
+						if (input instanceof PersonExperiencedLeg) {
+							scoreLeg((PersonExperiencedLeg) input);
+						} else if (input instanceof PersonExperiencedActivity) {
+							scoreActivity((PersonExperiencedActivity) input);
+						} else {
+							scoreEvent((Id<Person>) items[i], (Event) input);
+						}
+					}
+				}
+				if (exception.get() == null) {
+					finishPartition();
+				}
+			} catch (Throwable e) {
+				exception.compareAndSet(null, e);
+				if (!closed) {
+					// keep on taking input until the end, so nobody waits for this worker
+					drain();
+				}
+			}
+		}
+
+		private void finishPartition() {
+			for (Entry<Id<Person>, ScoringFunction> entry : agentScorers.entrySet()) {
+				if (entry.getKey().index() % numberOfThreads == this.partition) {
+					ScoringFunction sf = entry.getValue();
+					sf.finish();
+					partialScores.get(entry.getKey()).add(sf.getScore());
+				}
+			}
+		}
+
+		private void drain() {
+			try {
+				while (this.queue.take().length > 0) {
+					// just ignore it
+				}
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
 }
@@ -22,61 +22,77 @@ package org.matsim.core.trafficmonitoring;
 
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
-import org.matsim.api.core.v01.network.Network;
-import org.matsim.core.router.priorityqueue.HasIndex;
 
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  *  Uses an array to store DataContainer object for the TravelTimeCalculator.
- *  It is tried to get a DataContainer's position in the array is taken from the
- *  the Link, which is possible if routing networks are used (there, link implement
- *  the HasIndex interface).
- *  
- *  If regular network are used, calls are forwarded to a MapBasedDataContainerProvider,
- *  which represents the lookup approach used so far.
- *  
+ *  The position of a link's DataContainer in the array is the index of the link's id,
+ *  so both the event handling part (where only link ids are available) and the
+ *  TravelTime part (where links are available, possibly from a routing network) can
+ *  access the data without any map lookup or allocation.
+ *
+ *  Reading does not need any lock; containers are created under the lock of this object,
+ *  so several event handling threads may use the provider concurrently.
+ *
  * @author cdobler
  */
 class ArrayBasedDataContainerProvider implements DataContainerProvider {
 
-	private final TravelTimeData[] arrayLinkData;
-	private final DataContainerProvider delegate;
-	
-	public ArrayBasedDataContainerProvider(Map<Id<Link>, TravelTimeData> linkData, TravelTimeDataFactory ttDataFactory,
-			Network network) {
-		this.arrayLinkData = new TravelTimeData[network.getLinks().size()];
-		this.delegate = new MapBasedDataContainerProvider(linkData, ttDataFactory);
+	private volatile AtomicReferenceArray<TravelTimeData> arrayLinkData;
+	private final Function<Id<Link>, TravelTimeData> ttDataFactory;
+
+	public ArrayBasedDataContainerProvider(Function<Id<Link>, TravelTimeData> ttDataFactory) {
+		this.arrayLinkData = new AtomicReferenceArray<>(Math.max(16, Id.getNumberOfIds(Link.class)));
+		this.ttDataFactory = ttDataFactory;
 	}
-	
-	/*
-	 * This method is called from the EventHandler part of the TravelTimeCalculator.
-	 * There, only link ids are available. We cannot optimize this. 
-	 */
+
 	@Override
 	public TravelTimeData getTravelTimeData(final Id<Link> linkId, final boolean createIfMissing) {
-		return this.delegate.getTravelTimeData(linkId, createIfMissing);
+		int index = linkId.index();
+		AtomicReferenceArray<TravelTimeData> array = this.arrayLinkData;
+		TravelTimeData data = index < array.length() ? array.get(index) : null;
+		if (data == null && createIfMissing) {
+			data = createTravelTimeData(linkId);
+		}
+		return data;
 	}
-	
-	/*
-	 * This method is called from the TravelTime part of the TravelTimeCalculator.
-	 * There, links are available. we can optimize this by using an array instead of a map.
-	 * 
-	 *  Probably pre-initialize all DataContainers to avoid the null-check?
-	 */
+
 	@Override
 	public TravelTimeData getTravelTimeData(Link link, boolean createIfMissing) {
-		if (link instanceof HasIndex) {
-			int index = ((HasIndex) link).getArrayIndex();
-			TravelTimeData data = this.arrayLinkData[index];
-			if (data == null) {
-				data = this.delegate.getTravelTimeData(link, createIfMissing);
-				this.arrayLinkData[index] = data;
+		return this.getTravelTimeData(link.getId(), createIfMissing);
+	}
+
+	private synchronized TravelTimeData createTravelTimeData(final Id<Link> linkId) {
+		int index = linkId.index();
+		AtomicReferenceArray<TravelTimeData> array = this.arrayLinkData;
+		if (index >= array.length()) {
+			// ids may be created after this object, e.g. for links added to the network later on
+			AtomicReferenceArray<TravelTimeData> larger = new AtomicReferenceArray<>(Math.max(index + 1, array.length() * 2));
+			for (int i = 0; i < array.length(); i++) {
+				larger.set(i, array.get(i));
+			}
+			this.arrayLinkData = larger;
+			array = larger;
+		}
+		TravelTimeData data = array.get(index);
+		if (data == null) {
+			data = this.ttDataFactory.apply(linkId);
+			array.set(index, data);
+		}
+		return data;
+	}
+
+	void forEach(Consumer<TravelTimeData> consumer) {
+		AtomicReferenceArray<TravelTimeData> array = this.arrayLinkData;
+		for (int i = 0; i < array.length(); i++) {
+			TravelTimeData data = array.get(i);
+			if (data != null) {
+				consumer.accept(data);
 			}
-			return data;
-		} else {
-			return this.delegate.getTravelTimeData(link, createIfMissing);
 		}
 	}
-	
+
 }
@@ -0,0 +1,119 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.trafficmonitoring;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Stores the link-to-link travel time data of the TravelTimeCalculator. The turns of a link are kept in small
+ * arrays at the position of the from-link's id index; as a link has only a few outgoing links, the to-link is
+ * found by a linear search. Lookups need neither a lock nor any allocation.
+ */
+class LinkToLinkDataContainerProvider {
+
+	private static final Turns NO_TURNS = new Turns(new int[0], new TravelTimeData[0]);
+
+	private volatile AtomicReferenceArray<Turns> turnsPerFromLink;
+	private final Function<Id<Link>, TravelTimeData> ttDataFactory;
+
+	LinkToLinkDataContainerProvider(Function<Id<Link>, TravelTimeData> ttDataFactory) {
+		this.turnsPerFromLink = new AtomicReferenceArray<>(Math.max(16, Id.getNumberOfIds(Link.class)));
+		this.ttDataFactory = ttDataFactory;
+	}
+
+	TravelTimeData getTravelTimeData(final Id<Link> fromLinkId, final Id<Link> toLinkId) {
+		int index = fromLinkId.index();
+		AtomicReferenceArray<Turns> array = this.turnsPerFromLink;
+		Turns turns = index < array.length() ? array.get(index) : null;
+		if (turns != null) {
+			TravelTimeData data = turns.get(toLinkId.index());
+			if (data != null) {
+				return data;
+			}
+		}
+		return createTravelTimeData(fromLinkId, toLinkId);
+	}
+
+	private synchronized TravelTimeData createTravelTimeData(final Id<Link> fromLinkId, final Id<Link> toLinkId) {
+		int index = fromLinkId.index();
+		AtomicReferenceArray<Turns> array = this.turnsPerFromLink;
+		if (index >= array.length()) {
+			AtomicReferenceArray<Turns> larger = new AtomicReferenceArray<>(Math.max(index + 1, array.length() * 2));
+			for (int i = 0; i < array.length(); i++) {
+				larger.set(i, array.get(i));
+			}
+			this.turnsPerFromLink = larger;
+			array = larger;
+		}
+		Turns turns = array.get(index);
+		if (turns == null) {
+			turns = NO_TURNS;
+		}
+		TravelTimeData data = turns.get(toLinkId.index());
+		if (data == null) {
+			// copy on write, so readers always see a consistent object
+			data = this.ttDataFactory.apply(fromLinkId);
+			int n = turns.toLinks.length;
+			int[] toLinks = Arrays.copyOf(turns.toLinks, n + 1);
+			TravelTimeData[] dataArray = Arrays.copyOf(turns.data, n + 1);
+			toLinks[n] = toLinkId.index();
+			dataArray[n] = data;
+			array.set(index, new Turns(toLinks, dataArray));
+		}
+		return data;
+	}
+
+	void forEach(Consumer<TravelTimeData> consumer) {
+		AtomicReferenceArray<Turns> array = this.turnsPerFromLink;
+		for (int i = 0; i < array.length(); i++) {
+			Turns turns = array.get(i);
+			if (turns != null) {
+				for (TravelTimeData data : turns.data) {
+					consumer.accept(data);
+				}
+			}
+		}
+	}
+
+	private static final class Turns {
+		final int[] toLinks;
+		final TravelTimeData[] data;
+
+		Turns(int[] toLinks, TravelTimeData[] data) {
+			this.toLinks = toLinks;
+			this.data = data;
+		}
+
+		TravelTimeData get(int toLinkIndex) {
+			for (int i = 0; i < this.toLinks.length; i++) {
+				if (this.toLinks[i] == toLinkIndex) {
+					return this.data[i];
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -44,14 +44,10 @@ import org.matsim.core.gbl.Gbl;
 import org.matsim.core.router.util.LinkToLinkTravelTime;
 import org.matsim.core.router.util.TravelTime;
 import org.matsim.core.utils.collections.CollectionUtils;
-import org.matsim.core.utils.collections.Tuple;
 import org.matsim.vehicles.Vehicle;
 import org.matsim.vehicles.VehicleType;
 
-import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Calculates actual travel times on link from events and optionally also the link-to-link 
@@ -64,6 +60,10 @@ import java.util.concurrent.ConcurrentHashMap;
  * use {@link TravelTimeDataHashMap},}
  * as that one does not use any memory to time bins where no traffic occurred. By default,
  * {@link TravelTimeDataArray} is used.
+ * <br>
+ * All data is stored in arrays indexed by the index of the link and vehicle ids, so no map lookups are needed
+ * neither while handling events nor when travel times are requested. Events may be handled by several threads
+ * concurrently.
  *
  * @author dgrether
  * @author mrieser
@@ -81,15 +81,13 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 	TimeSlotComputation aggregator;
 
 
-	private Map<Id<Link>, TravelTimeData> linkData;
-
-	private Map<Tuple<Id<Link>, Id<Link>>, TravelTimeData> linkToLinkData;
+	private final ArrayBasedDataContainerProvider dataContainerProvider;
 
-	private final DataContainerProvider dataContainerProvider;
+	private LinkToLinkDataContainerProvider linkToLinkData;
 
-	private final Map<Id<Vehicle>, LinkEnterEvent> linkEnterEvents;
+	// the link and time each vehicle entered last, and vehicles that are ignored as their mode is not analyzed
+	private final VehicleLinkEnterTimes linkEnterTimes;
 
-	private final Set<Id<Vehicle>> vehiclesToIgnore;
 	private final Set<String> analyzedModes;
 
 	private final boolean filterAnalyzedModes;
@@ -236,8 +234,6 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 		this.travelTimeGetter = new AveragingTravelTimeGetter( this.aggregator ) ;
 		this.ttDataFactory = new TravelTimeDataArrayFactory(network, this.numSlots);
 		if (this.calculateLinkTravelTimes){
-			this.linkData = new ConcurrentHashMap<>((int) (network.getLinks().size() * 1.4));
-
 			/*
 			 * So far, link data objects were stored in a HashMap. This lookup strategy is used
 			 * by a MapBasedDataContainerProvider.
@@ -248,19 +244,14 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 			 * increases the routing performance by 20-30%.
 			 * cdobler, oct'13
 			 */
-			//		this.dataContainerProvider = new MapBasedDataContainerProvider(linkData, ttDataFactory);
-			this.dataContainerProvider = new ArrayBasedDataContainerProvider(linkData, ttDataFactory, network);
+			// The ArrayBasedDataContainerProvider now uses the index of the link ids, which is available for all links.
+			// The factory is looked up on every creation, as it may be replaced after construction (see configure(...)).
+			this.dataContainerProvider = new ArrayBasedDataContainerProvider(linkId -> this.ttDataFactory.createTravelTimeData(linkId));
 		} else this.dataContainerProvider = null;
 		if (this.calculateLinkToLinkTravelTimes){
-			// assume that every link has 2 outgoing links as default
-			this.linkToLinkData = new ConcurrentHashMap<>((int) (network.getLinks().size() * 1.4 * 2));
+			this.linkToLinkData = new LinkToLinkDataContainerProvider(linkId -> this.ttDataFactory.createTravelTimeData(linkId));
 		}
-		this.linkEnterEvents = new ConcurrentHashMap<>();
-
-		// if we just look at one mode, we need to ignore all vehicles with a different mode. However, the info re the mode is only in
-		// the vehicleEntersTraffic event.  So we need to memorize the ignored vehicles from there ...
-		this.vehiclesToIgnore = new HashSet<>();
-
+		this.linkEnterTimes = new VehicleLinkEnterTimes();
 
 		this.reset(0);
 
@@ -270,42 +261,46 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 	public void handleEvent(final LinkEnterEvent e) {
 		/* if only some modes are analyzed, we check whether the vehicles
 		 * performs a trip with one of those modes. if not, we skip the event. */
-		if (filterAnalyzedModes && vehiclesToIgnore.contains(e.getVehicleId())) return;
-
-		LinkEnterEvent oldEvent = this.linkEnterEvents.put(e.getVehicleId(), e);
-		if ((oldEvent != null) && this.calculateLinkToLinkTravelTimes) {
-			Tuple<Id<Link>, Id<Link>> fromToLink = new Tuple<>(oldEvent.getLinkId(), e.getLinkId());
-			TravelTimeData data = getLinkToLinkTravelTimeData(fromToLink );
-			double enterTime = oldEvent.getTime();
-
-			final int timeSlot = this.aggregator.getTimeSlotIndex(enterTime );
-			data.addTravelTime(timeSlot, e.getTime() - enterTime );
-			data.setNeedsConsolidation( true );
+		if (filterAnalyzedModes && this.linkEnterTimes.isIgnored(e.getVehicleId())) return;
+
+		if (this.calculateLinkToLinkTravelTimes) {
+			Id<Link> previousLinkId = this.linkEnterTimes.getEnterLink(e.getVehicleId());
+			if (previousLinkId != null) {
+				TravelTimeData data = this.linkToLinkData.getTravelTimeData(previousLinkId, e.getLinkId());
+				double enterTime = this.linkEnterTimes.getEnterTime(e.getVehicleId());
+				addTravelTime(data, enterTime, e.getTime());
+			}
 		}
+		this.linkEnterTimes.enterLink(e.getVehicleId(), e.getLinkId(), e.getTime());
 	}
 
 	@Override
 	public void handleEvent(final LinkLeaveEvent e) {
 		if (this.calculateLinkTravelTimes) {
-			LinkEnterEvent oldEvent = this.linkEnterEvents.get(e.getVehicleId());
-			if (oldEvent != null) {
+			double enterTime = this.linkEnterTimes.getEnterTime(e.getVehicleId());
+			if (!Double.isNaN(enterTime)) {
 				TravelTimeData data = this.dataContainerProvider.getTravelTimeData(e.getLinkId(), true);
-				double enterTime = oldEvent.getTime();
-
-				final int timeSlot = this.aggregator.getTimeSlotIndex(enterTime );
-				data.addTravelTime(timeSlot, e.getTime() - enterTime );
-				data.setNeedsConsolidation( true );
+				addTravelTime(data, enterTime, e.getTime());
 			}
 		}
 	}
 
+	private void addTravelTime(TravelTimeData data, double enterTime, double leaveTime) {
+		final int timeSlot = this.aggregator.getTimeSlotIndex(enterTime );
+		// events of different vehicles may be handled concurrently
+		synchronized (data) {
+			data.addTravelTime(timeSlot, leaveTime - enterTime );
+			data.setNeedsConsolidation( true );
+		}
+	}
+
 	@Override
 	public void handleEvent(VehicleEntersTrafficEvent event) {
 		/* if filtering transport modes is enabled and the vehicles
 		 * starts a leg on a non analyzed transport mode, add the vehicle
 		 * to the filtered vehicles set. */
 		if (filterAnalyzedModes && !analyzedModes.contains(event.getNetworkMode())) {
-			this.vehiclesToIgnore.add(event.getVehicleId());
+			this.linkEnterTimes.setIgnored(event.getVehicleId(), true);
 		}
 	}
 
@@ -314,10 +309,10 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 		/* remove EnterEvents from list when a vehicle arrives.
 		 * otherwise, the activity duration would counted as travel time, when the
 		 * vehicle departs again and leaves the link! */
-		this.linkEnterEvents.remove(event.getVehicleId());
+		this.linkEnterTimes.remove(event.getVehicleId());
 
 		// try to remove vehicles from set with filtered vehicles
-		if (filterAnalyzedModes) this.vehiclesToIgnore.remove(event.getVehicleId());
+		if (filterAnalyzedModes) this.linkEnterTimes.setIgnored(event.getVehicleId(), false);
 	}
 
 	@Override
@@ -325,15 +320,17 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 		/* remove EnterEvents from list when a bus stops on a link.
 		 * otherwise, the stop time would counted as travel time, when the
 		 * bus departs again and leaves the link! */
-		this.linkEnterEvents.remove(event.getVehicleId());
+		this.linkEnterTimes.remove(event.getVehicleId());
 	}
 
 	@Override
 	public void handleEvent(VehicleAbortsEvent event) {
-		LinkEnterEvent e = this.linkEnterEvents.remove(event.getVehicleId());
-		if (e != null) {
-			TravelTimeData data = this.dataContainerProvider.getTravelTimeData(e.getLinkId(), true);
-			data.setNeedsConsolidation( true );
+		Id<Link> linkId = this.linkEnterTimes.remove(event.getVehicleId());
+		if (linkId != null) {
+			TravelTimeData data = this.dataContainerProvider.getTravelTimeData(linkId, true);
+			synchronized (data) {
+				data.setNeedsConsolidation( true );
+			}
 
 			//			this.aggregator.addStuckEventTravelTime(data, e.getTime(), event.getTime());
 			// this functionality is no longer there.
@@ -348,16 +345,7 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 		}
 
 		// try to remove vehicle from set with filtered vehicles
-		if (filterAnalyzedModes) this.vehiclesToIgnore.remove(event.getVehicleId());
-	}
-
-	private TravelTimeData getLinkToLinkTravelTimeData( Tuple<Id<Link>, Id<Link>> fromLinkToLink ) {
-		TravelTimeData data = this.linkToLinkData.get(fromLinkToLink);
-		if ( null == data ) {
-			data = this.ttDataFactory.createTravelTimeData(fromLinkToLink.getFirst()) ;
-			this.linkToLinkData.put(fromLinkToLink, data);
-		}
-		return data;
+		if (filterAnalyzedModes) this.linkEnterTimes.setIgnored(event.getVehicleId(), false);
 	}
 
 	/*
@@ -412,7 +400,7 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 			throw new IllegalStateException("No link to link travel time is available " +
 									    "if calculation is switched off by config option!");
 		}
-		TravelTimeData data = this.getLinkToLinkTravelTimeData(new Tuple<>(fromLinkId, toLinkId) );
+		TravelTimeData data = this.linkToLinkData.getTravelTimeData(fromLinkId, toLinkId);
 		if ( data.isNeedingConsolidation() ) {
 			consolidateData(data);
 		}
@@ -422,19 +410,19 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 	@Override
 	public void reset(int iteration) {
 		if (this.calculateLinkTravelTimes) {
-			for (TravelTimeData data : this.linkData.values()){
-				data.resetTravelTimes();
-				data.setNeedsConsolidation( false );
-			}
+			this.dataContainerProvider.forEach(TravelTimeCalculator::resetTravelTimeData);
 		}
 		if (this.calculateLinkToLinkTravelTimes){
-			for (TravelTimeData data : this.linkToLinkData.values()){
-				data.resetTravelTimes();
-				data.setNeedsConsolidation( false );
-			}
+			this.linkToLinkData.forEach(TravelTimeCalculator::resetTravelTimeData);
+		}
+		this.linkEnterTimes.clear();
+	}
+
+	private static void resetTravelTimeData(TravelTimeData data) {
+		synchronized (data) {
+			data.resetTravelTimes();
+			data.setNeedsConsolidation( false );
 		}
-		this.linkEnterEvents.clear();
-		this.vehiclesToIgnore.clear();
 	}
 
 	/**
@@ -0,0 +1,168 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.trafficmonitoring;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Remembers for every vehicle the link it entered last and when, and whether the vehicle should be ignored by the
+ * TravelTimeCalculator. The data is stored in pages of arrays, indexed by the index of the vehicle's id. Each page
+ * has its own lock, so concurrent updates for different vehicles rarely have to wait for each other.
+ */
+class VehicleLinkEnterTimes {
+
+	private static final int PAGE_BITS = 10;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	private volatile AtomicReferenceArray<Page> pages;
+
+	VehicleLinkEnterTimes() {
+		this.pages = new AtomicReferenceArray<>((Id.getNumberOfIds(Vehicle.class) >> PAGE_BITS) + 1);
+	}
+
+	void enterLink(Id<Vehicle> vehicleId, Id<Link> linkId, double time) {
+		int index = vehicleId.index();
+		Page page = getPage(index, true);
+		int i = index & PAGE_MASK;
+		synchronized (page) {
+			page.enterTimes[i] = time;
+			page.enterLinks[i] = linkId;
+		}
+	}
+
+	/**
+	 * @return the time at which the vehicle entered its current link, or <code>NaN</code> if unknown.
+	 */
+	double getEnterTime(Id<Vehicle> vehicleId) {
+		int index = vehicleId.index();
+		Page page = getPage(index, false);
+		if (page == null) {
+			return Double.NaN;
+		}
+		synchronized (page) {
+			return page.enterTimes[index & PAGE_MASK];
+		}
+	}
+
+	/**
+	 * @return the link the vehicle entered last, or <code>null</code> if unknown.
+	 */
+	Id<Link> getEnterLink(Id<Vehicle> vehicleId) {
+		int index = vehicleId.index();
+		Page page = getPage(index, false);
+		if (page == null) {
+			return null;
+		}
+		synchronized (page) {
+			return page.enterLinks[index & PAGE_MASK];
+		}
+	}
+
+	/**
+	 * Forgets the link the vehicle entered last.
+	 *
+	 * @return the link the vehicle entered last, or <code>null</code> if unknown.
+	 */
+	Id<Link> remove(Id<Vehicle> vehicleId) {
+		int index = vehicleId.index();
+		Page page = getPage(index, false);
+		if (page == null) {
+			return null;
+		}
+		int i = index & PAGE_MASK;
+		synchronized (page) {
+			Id<Link> linkId = page.enterLinks[i];
+			page.enterTimes[i] = Double.NaN;
+			page.enterLinks[i] = null;
+			return linkId;
+		}
+	}
+
+	void setIgnored(Id<Vehicle> vehicleId, boolean ignored) {
+		int index = vehicleId.index();
+		Page page = getPage(index, ignored);
+		if (page != null) {
+			synchronized (page) {
+				page.ignored[index & PAGE_MASK] = ignored;
+			}
+		}
+	}
+
+	boolean isIgnored(Id<Vehicle> vehicleId) {
+		int index = vehicleId.index();
+		Page page = getPage(index, false);
+		if (page == null) {
+			return false;
+		}
+		synchronized (page) {
+			return page.ignored[index & PAGE_MASK];
+		}
+	}
+
+	synchronized void clear() {
+		this.pages = new AtomicReferenceArray<>(this.pages.length());
+	}
+
+	private Page getPage(int vehicleIndex, boolean create) {
+		int pageIndex = vehicleIndex >> PAGE_BITS;
+		AtomicReferenceArray<Page> pages = this.pages;
+		Page page = pageIndex < pages.length() ? pages.get(pageIndex) : null;
+		if (page == null && create) {
+			page = createPage(pageIndex);
+		}
+		return page;
+	}
+
+	private synchronized Page createPage(int pageIndex) {
+		AtomicReferenceArray<Page> pages = this.pages;
+		if (pageIndex >= pages.length()) {
+			// only the references to the pages are copied, the pages themselves are shared
+			AtomicReferenceArray<Page> larger = new AtomicReferenceArray<>(Math.max(pageIndex + 1, pages.length() * 2));
+			for (int i = 0; i < pages.length(); i++) {
+				larger.set(i, pages.get(i));
+			}
+			this.pages = larger;
+			pages = larger;
+		}
+		Page page = pages.get(pageIndex);
+		if (page == null) {
+			page = new Page();
+			pages.set(pageIndex, page);
+		}
+		return page;
+	}
+
+	private static final class Page {
+		final double[] enterTimes = new double[PAGE_SIZE];
+		@SuppressWarnings("unchecked")
+		final Id<Link>[] enterLinks = new Id[PAGE_SIZE];
+		final boolean[] ignored = new boolean[PAGE_SIZE];
+
+		Page() {
+			Arrays.fill(this.enterTimes, Double.NaN);
+		}
+	}
+}
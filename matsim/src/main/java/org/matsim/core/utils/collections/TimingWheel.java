@@ -0,0 +1,274 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.utils.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * A hierarchical timing wheel to schedule elements at a point in time, with a resolution of one second.
+ * <p>
+ * Elements due within the current block of 4096 seconds are stored in one bucket per second, elements due
+ * within the current 64 blocks in one bucket per block, and all others in an overflow list. When the time
+ * advances into a new block, the elements of the corresponding bucket are distributed into the buckets per second.
+ * Adding and removing an element thus takes <code>O(1)</code>, and each element is moved at most twice before it
+ * is due. Only the elements that are due are sorted, in a small priority queue.
+ * <p>
+ * {@link #poll(double)} returns the due elements in the order of their time, and elements with the same time in the order
+ * of the given comparator, just like a {@link java.util.PriorityQueue} sorted by time and that comparator would.
+ * Time must not go backwards between calls to {@link #poll(double)}.
+ * <p>
+ * Elements are identified by object identity. Each element can be contained only once; adding it again replaces the
+ * previous entry. Removed elements are only marked as removed and discarded once their bucket is processed.
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class TimingWheel<T> {
+
+	private static final int LEVEL0_BITS = 12;
+	private static final int LEVEL1_BITS = 6;
+	private static final long LEVEL0_MASK = (1L << LEVEL0_BITS) - 1;
+	private static final long LEVEL1_MASK = (1L << LEVEL1_BITS) - 1;
+	private static final long SUPERBLOCK_MASK = (1L << (LEVEL0_BITS + LEVEL1_BITS)) - 1;
+
+	private static final class Entry<T> {
+		private final T element;
+		private final double time;
+		private final long second;
+		private boolean removed = false;
+		private Entry<T> next = null;
+
+		Entry(T element, double time) {
+			this.element = element;
+			this.time = time;
+			this.second = (long) Math.floor(time);
+		}
+	}
+
+	private final Map<T, Entry<T>> entries = new IdentityHashMap<>();
+	@SuppressWarnings("unchecked")
+	private final Entry<T>[] level0 = new Entry[1 << LEVEL0_BITS];
+	@SuppressWarnings("unchecked")
+	private final Entry<T>[] level1 = new Entry[1 << LEVEL1_BITS];
+	private Entry<T> overflow = null;
+	private final PriorityQueue<Entry<T>> due;
+
+	private boolean started = false;
+	private long currentSecond = 0;
+	private double lastPollTime = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * @param comparator defines the order of elements due at the same time
+	 */
+	public TimingWheel(Comparator<? super T> comparator) {
+		this.due = new PriorityQueue<>((e0, e1) -> {
+			int cmp = Double.compare(e0.time, e1.time);
+			return cmp != 0 ? cmp : comparator.compare(e0.element, e1.element);
+		});
+	}
+
+	/**
+	 * Schedules the element at the given time. If the element is already scheduled, the previous entry is replaced.
+	 */
+	public void add(T element, double time) {
+		if (Double.isNaN(time) || Double.isInfinite(time)) {
+			throw new IllegalArgumentException("Cannot schedule an element at time " + time);
+		}
+		Entry<T> entry = new Entry<>(element, time);
+		Entry<T> previous = this.entries.put(element, entry);
+		if (previous != null) {
+			previous.removed = true;
+		}
+		if (this.started && time <= this.lastPollTime) {
+			this.due.add(entry);
+		} else {
+			place(entry);
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the element was scheduled
+	 */
+	public boolean remove(T element) {
+		Entry<T> entry = this.entries.remove(element);
+		if (entry == null) {
+			return false;
+		}
+		entry.removed = true;
+		return true;
+	}
+
+	public boolean contains(T element) {
+		return this.entries.containsKey(element);
+	}
+
+	/**
+	 * @return the time the element is scheduled at, or <code>Double.NaN</code> if it is not scheduled.
+	 */
+	public double getTime(T element) {
+		Entry<T> entry = this.entries.get(element);
+		return entry == null ? Double.NaN : entry.time;
+	}
+
+	/**
+	 * Removes and returns the next element scheduled at or before <code>time</code>.
+	 *
+	 * @return the next due element, or <code>null</code> if no element is due.
+	 */
+	public T poll(double time) {
+		if (!this.started || time > this.lastPollTime) {
+			advance(time);
+		}
+		Entry<T> entry;
+		while ((entry = this.due.poll()) != null) {
+			if (!entry.removed) {
+				entry.removed = true;
+				this.entries.remove(entry.element);
+				return entry.element;
+			}
+		}
+		return null;
+	}
+
+	public int size() {
+		return this.entries.size();
+	}
+
+	public boolean isEmpty() {
+		return this.entries.isEmpty();
+	}
+
+	/**
+	 * @return all scheduled elements, in the order they would be polled.
+	 */
+	public List<T> getElements() {
+		List<Entry<T>> sorted = new ArrayList<>(this.entries.values());
+		sorted.sort(this.due.comparator());
+		List<T> elements = new ArrayList<>(sorted.size());
+		for (Entry<T> entry : sorted) {
+			elements.add(entry.element);
+		}
+		return elements;
+	}
+
+	public void clear() {
+		this.entries.clear();
+		Arrays.fill(this.level0, null);
+		Arrays.fill(this.level1, null);
+		this.overflow = null;
+		this.due.clear();
+		this.started = false;
+		this.lastPollTime = Double.NEGATIVE_INFINITY;
+	}
+
+	private void advance(double time) {
+		long target = (long) Math.floor(time);
+		if (!this.started) {
+			// elements added before the first poll were put into the overflow list
+			this.started = true;
+			this.currentSecond = target;
+			Entry<T> entry = this.overflow;
+			this.overflow = null;
+			placeAll(entry);
+		}
+		while (this.currentSecond < target) {
+			int slot = (int) (this.currentSecond & LEVEL0_MASK);
+			Entry<T> entry = this.level0[slot];
+			this.level0[slot] = null;
+			while (entry != null) {
+				Entry<T> next = entry.next;
+				if (!entry.removed) {
+					this.due.add(entry);
+				}
+				entry = next;
+			}
+			this.currentSecond++;
+			if ((this.currentSecond & LEVEL0_MASK) == 0) {
+				cascade();
+			}
+		}
+		// the bucket of the current second may also contain elements that are due later within this second
+		int slot = (int) (this.currentSecond & LEVEL0_MASK);
+		Entry<T> entry = this.level0[slot];
+		this.level0[slot] = null;
+		while (entry != null) {
+			Entry<T> next = entry.next;
+			if (!entry.removed) {
+				if (entry.time <= time) {
+					this.due.add(entry);
+				} else {
+					entry.next = this.level0[slot];
+					this.level0[slot] = entry;
+				}
+			}
+			entry = next;
+		}
+		this.lastPollTime = time;
+	}
+
+	private void cascade() {
+		if ((this.currentSecond & SUPERBLOCK_MASK) == 0) {
+			Entry<T> entry = this.overflow;
+			this.overflow = null;
+			placeAll(entry);
+		}
+		int slot = (int) ((this.currentSecond >> LEVEL0_BITS) & LEVEL1_MASK);
+		Entry<T> entry = this.level1[slot];
+		this.level1[slot] = null;
+		placeAll(entry);
+	}
+
+	private void placeAll(Entry<T> entry) {
+		while (entry != null) {
+			Entry<T> next = entry.next;
+			if (!entry.removed) {
+				place(entry);
+			}
+			entry = next;
+		}
+	}
+
+	private void place(Entry<T> entry) {
+		if (!this.started) {
+			entry.next = this.overflow;
+			this.overflow = entry;
+			return;
+		}
+		// elements that are overdue are put into the bucket of the current second
+		long second = Math.max(entry.second, this.currentSecond);
+		if ((second >> LEVEL0_BITS) == (this.currentSecond >> LEVEL0_BITS)) {
+			int slot = (int) (second & LEVEL0_MASK);
+			entry.next = this.level0[slot];
+			this.level0[slot] = entry;
+		} else if ((second >> (LEVEL0_BITS + LEVEL1_BITS)) == (this.currentSecond >> (LEVEL0_BITS + LEVEL1_BITS))) {
+			int slot = (int) ((second >> LEVEL0_BITS) & LEVEL1_MASK);
+			entry.next = this.level1[slot];
+			this.level1[slot] = entry;
+		} else {
+			entry.next = this.overflow;
+			this.overflow = entry;
+		}
+	}
+}
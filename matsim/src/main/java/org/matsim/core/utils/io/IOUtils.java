@@ -114,6 +114,8 @@ import java.util.zip.GZIPOutputStream;
  * <li><code>*.zst</code>: ZStandard compression</li>
  * </ul>
  *
+ * GZIP and ZStandard output can be compressed on several threads, see {@link #setCompressionThreads(int)}.
+ *
  * <h2>Encryption</h2>
  *
  * Files ending with {@code .enc} are assumed to be encrypted and will be handled with {@link CipherUtils}.
@@ -138,6 +140,12 @@ final public class IOUtils {
 		COMPRESSION_EXTENSIONS.put("zst", CompressionType.ZSTD);
 	}
 
+	// Number of threads used to compress gzip and zstd output, 1 compresses on the calling thread.
+	private static volatile int compressionThreads = 1;
+
+	// Compression level of zstd output, the same whether it is compressed on the calling thread or in parallel.
+	/*package*/ static final int ZSTD_COMPRESSION_LEVEL = 6;
+
 	// Define a number of charsets that are / have been used.
 	public static final Charset CHARSET_UTF8 = StandardCharsets.UTF_8;
 	public static final Charset CHARSET_WINDOWS_ISO88591 = StandardCharsets.ISO_8859_1;
@@ -315,7 +323,12 @@ final public class IOUtils {
 
 			OutputStream outputStream = new FileOutputStream(file, append);
 
-			if (compression != null) {
+			int threads = compressionThreads;
+			if (threads > 1 && compression == CompressionType.GZIP) {
+				outputStream = new ParallelCompressionOutputStream(outputStream, ParallelCompressionOutputStream.Format.GZIP, threads);
+			} else if (threads > 1 && compression == CompressionType.ZSTD) {
+				outputStream = new ParallelCompressionOutputStream(outputStream, ParallelCompressionOutputStream.Format.ZSTD, threads);
+			} else if (compression != null) {
 				switch (compression) {
 					case GZIP:
 						outputStream = new GZIPOutputStream(outputStream);
@@ -327,7 +340,7 @@ final public class IOUtils {
 						outputStream = new CompressorStreamFactory().createCompressorOutputStream(CompressorStreamFactory.BZIP2, outputStream);
 						break;
 					case ZSTD:
-						outputStream = new ZstdOutputStream(outputStream, 6);
+						outputStream = new ZstdOutputStream(outputStream, ZSTD_COMPRESSION_LEVEL);
 						break;
 				}
 			}
@@ -338,6 +351,21 @@ final public class IOUtils {
 		}
 	}
 
+	/**
+	 * Sets the number of threads used to compress GZIP and ZStandard output of streams opened afterwards. With more
+	 * than one thread, the data is compressed in independent blocks of 1 MB, resulting in files with several gzip
+	 * members or zstd frames. Such files are slightly larger, but can be read like any other compressed file. The
+	 * compression level does not depend on the number of threads (zstd level 6, the gzip default level). The
+	 * default is 1, i.e. the data is compressed on the writing thread.
+	 */
+	public static void setCompressionThreads(int numberOfThreads) {
+		compressionThreads = numberOfThreads;
+	}
+
+	public static int getCompressionThreads() {
+		return compressionThreads;
+	}
+
 	/**
 	 * Creates a writer for an output URL. If the URL has a compression extension,
 	 * the method will try to open the compressed file using the proper
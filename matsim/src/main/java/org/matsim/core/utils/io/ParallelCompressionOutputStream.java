@@ -0,0 +1,177 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.utils.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import com.github.luben.zstd.Zstd;
+
+/**
+ * Compresses the written data in independent blocks on several threads, similar to <code>pigz</code>. Every block
+ * becomes a complete gzip member or zstd frame. The concatenated members or frames form a valid file that can be
+ * read by {@link IOUtils#getInputStream(java.net.URL)} and by the usual command line tools.
+ * <p>
+ * The blocks are written to the underlying stream in order. At most two blocks per thread are buffered, so the
+ * writing thread waits if the compression cannot keep up. Files that fit into a single block are compressed on
+ * the writing thread, without starting any threads.
+ */
+final class ParallelCompressionOutputStream extends OutputStream {
+
+	enum Format { GZIP, ZSTD }
+
+	private static final int BLOCK_SIZE = 1024 * 1024;
+
+	private final OutputStream out;
+	private final Format format;
+	private final int numberOfThreads;
+
+	private ExecutorService executor = null;
+	private final Queue<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+	private byte[] block = new byte[BLOCK_SIZE];
+	private int blockLength = 0;
+	private boolean anyBlockWritten = false;
+	private boolean closed = false;
+
+	ParallelCompressionOutputStream(OutputStream out, Format format, int numberOfThreads) {
+		this.out = out;
+		this.format = format;
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (this.blockLength == BLOCK_SIZE) {
+			submitBlock();
+		}
+		this.block[this.blockLength++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (this.blockLength == BLOCK_SIZE) {
+				submitBlock();
+			}
+			int count = Math.min(len, BLOCK_SIZE - this.blockLength);
+			System.arraycopy(b, off, this.block, this.blockLength, count);
+			this.blockLength += count;
+			off += count;
+			len -= count;
+		}
+	}
+
+	/**
+	 * Writes the blocks that are already compressed. Like {@link GZIPOutputStream#flush()}, this does not force the
+	 * compression of the data written since the last full block.
+	 */
+	@Override
+	public void flush() throws IOException {
+		writeBlocks(false);
+		this.out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		try {
+			if (this.blockLength > 0 || !this.anyBlockWritten) {
+				// an empty file still gets one (empty) member or frame, so it can be read again
+				byte[] lastBlock = Arrays.copyOf(this.block, this.blockLength);
+				if (this.executor == null) {
+					this.out.write(compress(lastBlock));
+				} else {
+					this.pendingBlocks.add(this.executor.submit(() -> compress(lastBlock)));
+				}
+			}
+			this.block = null;
+			writeBlocks(true);
+		} finally {
+			if (this.executor != null) {
+				this.executor.shutdownNow();
+			}
+			this.out.close();
+		}
+	}
+
+	private void submitBlock() throws IOException {
+		if (this.executor == null) {
+			AtomicInteger threadCounter = new AtomicInteger();
+			this.executor = Executors.newFixedThreadPool(this.numberOfThreads, runnable -> {
+				Thread thread = new Thread(runnable, "ParallelCompression-" + threadCounter.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		byte[] fullBlock = this.block;
+		this.pendingBlocks.add(this.executor.submit(() -> compress(fullBlock)));
+		this.anyBlockWritten = true;
+		this.block = new byte[BLOCK_SIZE];
+		this.blockLength = 0;
+		writeBlocks(false);
+	}
+
+	private void writeBlocks(boolean all) throws IOException {
+		while (!this.pendingBlocks.isEmpty()) {
+			Future<byte[]> head = this.pendingBlocks.peek();
+			if (!all && !head.isDone() && this.pendingBlocks.size() <= 2 * this.numberOfThreads) {
+				return;
+			}
+			try {
+				this.out.write(head.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while compressing");
+			} catch (ExecutionException e) {
+				throw new IOException("compression of a block failed", e.getCause());
+			}
+			this.pendingBlocks.poll();
+		}
+	}
+
+	private byte[] compress(byte[] data) throws IOException {
+		switch (this.format) {
+			case GZIP:
+				ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4 + 64);
+				try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+					gzip.write(data);
+				}
+				return compressed.toByteArray();
+			case ZSTD:
+				return Zstd.compress(data, IOUtils.ZSTD_COMPRESSION_LEVEL);
+			default:
+				throw new IllegalStateException("unknown format " + this.format);
+		}
+	}
+}
@@ -0,0 +1,258 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.utils.io;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Stack;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Builds objects from independent, repeated elements of a xml file (persons, links, transit lines, ...) on several
+ * threads, while the SAX parser keeps tokenizing the file.
+ * <p>
+ * A {@link MatsimXmlParser} forwards its <code>startTag</code> and <code>endTag</code> calls to the pipeline first.
+ * Everything from the start to the end of an element with the configured name (a <i>unit</i>) is recorded and
+ * consumed by the pipeline; batches of units are then replayed on worker threads, each with its own
+ * {@link ElementReader}. The built objects are handed to the consumer on the parser thread and in the order of the
+ * file, so the consumer can add them to a container that is not thread-safe or that relies on the insertion order.
+ * Call {@link #finish()} at the end of the section containing the units; it hands out the remaining objects.
+ * <p>
+ * With one thread, the units are read directly on the parser thread, without recording anything.
+ *
+ * @param <T> the type of the objects built from the units
+ */
+public final class XmlElementPipeline<T> {
+
+	/**
+	 * Builds one object from the tags of a unit. The tags are passed exactly as a {@link MatsimXmlParser} would pass
+	 * them, with the context of the unit's start tag at the bottom of the stack.
+	 */
+	public interface ElementReader<T> {
+		void startTag(String name, Attributes atts, Stack<String> context);
+
+		void endTag(String name, String content, Stack<String> context);
+
+		/**
+		 * @return the object built from the unit whose end tag was passed last
+		 */
+		T getElement();
+	}
+
+	// submit a batch once it has about that many tags, so that also units with many nested elements spread nicely
+	private static final int TAGS_PER_BATCH = 1024;
+
+	private final String elementName;
+	private final Consumer<T> consumer;
+	private final ElementReader<T> directReader;
+	private final ThreadLocal<ElementReader<T>> workerReaders;
+	private final ThreadPoolExecutor executor;
+	private final int maxPendingBatches;
+
+	private final Queue<Future<List<T>>> pendingBatches = new ArrayDeque<>();
+	private List<Unit> batch = new ArrayList<>();
+	private int batchTags = 0;
+	private Unit currentUnit = null;
+	private int depth = 0;
+
+	public XmlElementPipeline(String elementName, int numberOfThreads, Supplier<? extends ElementReader<T>> readerFactory, Consumer<T> consumer) {
+		this.elementName = elementName;
+		this.consumer = consumer;
+		if (numberOfThreads > 1) {
+			this.directReader = null;
+			this.workerReaders = ThreadLocal.withInitial(readerFactory);
+			AtomicInteger threadCounter = new AtomicInteger();
+			this.executor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+				Thread thread = new Thread(runnable, "XmlElementPipeline-" + elementName + "-" + threadCounter.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			});
+			// do not keep idle threads alive if the pipeline is abandoned because the file could not be parsed
+			this.executor.allowCoreThreadTimeOut(true);
+			this.maxPendingBatches = 2 * numberOfThreads;
+		} else {
+			this.directReader = readerFactory.get();
+			this.workerReaders = null;
+			this.executor = null;
+			this.maxPendingBatches = 0;
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the tag belongs to a unit and was consumed by the pipeline
+	 */
+	public boolean startTag(String name, Attributes atts, Stack<String> context) {
+		if (this.depth == 0) {
+			if (!this.elementName.equals(name)) {
+				return false;
+			}
+			if (this.executor != null) {
+				this.currentUnit = new Unit(context);
+			}
+		}
+		this.depth++;
+		if (this.executor == null) {
+			this.directReader.startTag(name, atts, context);
+		} else {
+			this.currentUnit.tags.add(new StartTag(name, new AttributesImpl(atts)));
+		}
+		return true;
+	}
+
+	/**
+	 * @return <code>true</code> if the tag belongs to a unit and was consumed by the pipeline
+	 */
+	public boolean endTag(String name, String content, Stack<String> context) {
+		if (this.depth == 0) {
+			return false;
+		}
+		this.depth--;
+		if (this.executor == null) {
+			this.directReader.endTag(name, content, context);
+			if (this.depth == 0) {
+				this.consumer.accept(this.directReader.getElement());
+			}
+			return true;
+		}
+		this.currentUnit.tags.add(new EndTag(name, content));
+		if (this.depth == 0) {
+			this.batch.add(this.currentUnit);
+			this.batchTags += this.currentUnit.tags.size();
+			this.currentUnit = null;
+			if (this.batchTags >= TAGS_PER_BATCH) {
+				submitBatch();
+				consumeBatches(false);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Waits for all units read so far and hands the objects built from them to the consumer. The pipeline can be used
+	 * for further units afterwards, e.g. if another section with the same elements follows.
+	 */
+	public void finish() {
+		if (this.executor == null) {
+			return;
+		}
+		if (!this.batch.isEmpty()) {
+			submitBatch();
+		}
+		consumeBatches(true);
+	}
+
+	private void submitBatch() {
+		List<Unit> units = this.batch;
+		this.batch = new ArrayList<>();
+		this.batchTags = 0;
+		this.pendingBatches.add(this.executor.submit(() -> readUnits(units)));
+	}
+
+	private List<T> readUnits(List<Unit> units) {
+		ElementReader<T> reader = this.workerReaders.get();
+		List<T> elements = new ArrayList<>(units.size());
+		for (Unit unit : units) {
+			Stack<String> context = unit.context;
+			for (Tag tag : unit.tags) {
+				// same order of calls as in MatsimXmlParser.startElement() and endElement()
+				if (tag instanceof StartTag) {
+					reader.startTag(tag.name, ((StartTag)tag).atts, context);
+					context.push(tag.name);
+				} else {
+					context.pop();
+					reader.endTag(tag.name, ((EndTag)tag).content, context);
+				}
+			}
+			elements.add(reader.getElement());
+		}
+		return elements;
+	}
+
+	private void consumeBatches(boolean all) {
+		while (!this.pendingBatches.isEmpty()) {
+			Future<List<T>> head = this.pendingBatches.peek();
+			if (!all && !head.isDone() && this.pendingBatches.size() <= this.maxPendingBatches) {
+				return;
+			}
+			List<T> elements;
+			try {
+				elements = head.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				this.executor.shutdownNow();
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException)e.getCause();
+				}
+				throw new RuntimeException(e.getCause());
+			}
+			this.pendingBatches.poll();
+			elements.forEach(this.consumer);
+		}
+	}
+
+	private static final class Unit {
+		private final Stack<String> context = new Stack<>();
+		private final List<Tag> tags = new ArrayList<>();
+
+		Unit(Stack<String> context) {
+			this.context.addAll(context);
+		}
+	}
+
+	private static abstract class Tag {
+		final String name;
+
+		Tag(String name) {
+			this.name = name;
+		}
+	}
+
+	private static final class StartTag extends Tag {
+		final Attributes atts;
+
+		StartTag(String name, Attributes atts) {
+			super(name);
+			this.atts = atts;
+		}
+	}
+
+	private static final class EndTag extends Tag {
+		final String content;
+
+		EndTag(String name, String content) {
+			super(name);
+			this.content = content;
+		}
+	}
+}
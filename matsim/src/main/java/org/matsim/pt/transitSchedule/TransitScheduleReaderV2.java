@@ -38,6 +38,7 @@ import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 import org.matsim.core.utils.io.MatsimXmlParser;
+import org.matsim.core.utils.io.XmlElementPipeline;
 import org.matsim.core.utils.misc.Time;
 import org.matsim.pt.transitSchedule.api.Departure;
 import org.matsim.pt.transitSchedule.api.TransitLine;
@@ -53,10 +54,14 @@ import org.xml.sax.Attributes;
 
 /**
  * Reads a transit schedule from a XML file in the format described by <code>transitSchedule_v1.dtd</code>.
+ * <p>
+ * The transit lines are read in parallel by copies of this reader (see {@link XmlElementPipeline}) and are added to
+ * the schedule in the order of the file. If the reader is created with a scenario, the number of threads is taken
+ * from the global config group, otherwise the lines are read on one thread.
  *
  * @author mrieser
  */
-public class TransitScheduleReaderV2 extends MatsimXmlParser {
+public class TransitScheduleReaderV2 extends MatsimXmlParser implements XmlElementPipeline.ElementReader<TransitLine> {
 	private static Logger log = Logger.getLogger(TransitScheduleReaderV2.class);
 
 	private final String externalInputCRS;
@@ -73,36 +78,68 @@ public class TransitScheduleReaderV2 extends MatsimXmlParser {
 	private org.matsim.utils.objectattributes.attributable.Attributes currentAttributes = null;
 
 	private CoordinateTransformation coordinateTransformation = new IdentityTransformation();
-	private final StringCache cache = new StringCache();
+	private final StringCache cache;
+
+	private final int numberOfThreads;
+	private final boolean isLineReader;
+	private XmlElementPipeline<TransitLine> linePipeline = null;
+	private TransitLine lastTransitLine = null;
 
 	public TransitScheduleReaderV2(final TransitSchedule schedule, final RouteFactories routeFactory) {
-		this( null, null , schedule , routeFactory );
+		this( null, null , schedule , routeFactory, 1 );
 	}
 
 	public TransitScheduleReaderV2(
 			final String externalInputCRS,
 			final String targetCRS,
 			final Scenario scenario) {
-		this( externalInputCRS, targetCRS , scenario.getTransitSchedule() , scenario.getPopulation().getFactory().getRouteFactories() );
+		this( externalInputCRS, targetCRS , scenario.getTransitSchedule() , scenario.getPopulation().getFactory().getRouteFactories(),
+				scenario.getConfig().global().getNumberOfThreads() );
 	}
 
 	private TransitScheduleReaderV2(
 	        String externalInputCRS,
 			String targetCRS,
 			TransitSchedule schedule,
-			RouteFactories routeFactory) {
+			RouteFactories routeFactory,
+			int numberOfThreads) {
 		this.externalInputCRS = externalInputCRS;
 		this.targetCRS = targetCRS;
 		this.schedule = schedule;
 		this.routeFactory = routeFactory;
+		this.cache = new StringCache();
+		this.numberOfThreads = numberOfThreads;
+		this.isLineReader = false;
 		if (externalInputCRS != null && targetCRS != null) {
 			this.coordinateTransformation = TransformationFactory.getCoordinateTransformation(externalInputCRS, targetCRS);
 			ProjectionUtils.putCRS(this.schedule, targetCRS);
 		}
 	}
 
+	/**
+	 * Creates a reader for the transit lines, sharing the settings of the given reader.
+	 */
+	private TransitScheduleReaderV2(TransitScheduleReaderV2 parent) {
+		this.externalInputCRS = parent.externalInputCRS;
+		this.targetCRS = parent.targetCRS;
+		this.schedule = parent.schedule;
+		this.routeFactory = parent.routeFactory;
+		this.cache = parent.cache;
+		this.coordinateTransformation = parent.coordinateTransformation;
+		this.numberOfThreads = 1;
+		this.isLineReader = true;
+	}
+
 	@Override
 	public void startTag(final String name, final Attributes atts, final Stack<String> context) {
+		if (this.linePipeline == null && !this.isLineReader && Constants.TRANSIT_LINE.equals(name)) {
+			// all stop facilities are known at this point, the line readers only look them up
+			this.linePipeline = new XmlElementPipeline<>(Constants.TRANSIT_LINE, this.numberOfThreads,
+					() -> new TransitScheduleReaderV2(this), this.schedule::addTransitLine);
+		}
+		if (this.linePipeline != null && this.linePipeline.startTag(name, atts, context)) {
+			return;
+		}
 		if (Constants.STOP_FACILITY.equals(name)) {
 			boolean isBlocking = Boolean.parseBoolean(atts.getValue(Constants.IS_BLOCKING));
 			Coord coord = atts.getValue(Constants.Z) == null ?
@@ -132,7 +169,6 @@ public class TransitScheduleReaderV2 extends MatsimXmlParser {
 			if (atts.getValue(Constants.NAME) != null) {
 				this.currentTransitLine.setName(atts.getValue(Constants.NAME));
 			}
-			this.schedule.addTransitLine(this.currentTransitLine);
 		} else if (Constants.TRANSIT_ROUTE.equals(name)) {
 			Id<TransitRoute> id = Id.create(atts.getValue(Constants.ID), TransitRoute.class);
 			this.currentTransitRoute = new TempTransitRoute(id);
@@ -191,6 +227,12 @@ public class TransitScheduleReaderV2 extends MatsimXmlParser {
 
 	@Override
 	public void endTag(final String name, final String content, final Stack<String> context) {
+		if (this.linePipeline != null && this.linePipeline.endTag(name, content, context)) {
+			return;
+		}
+		if (Constants.TRANSIT_SCHEDULE.equals(name) && this.linePipeline != null) {
+			this.linePipeline.finish();
+		}
 		if (Constants.DEPARTURE.equals(name)) {
 			this.currentDeparture = null;
 		}
@@ -220,6 +262,7 @@ public class TransitScheduleReaderV2 extends MatsimXmlParser {
 			this.currentTransitLine.addRoute(transitRoute);
 			this.currentTransitRoute = null;
 		} else if (Constants.TRANSIT_LINE.equals(name)) {
+			this.lastTransitLine = this.currentTransitLine;
 			this.currentTransitLine = null;
 		} else if (Constants.ATTRIBUTE.equals(name)) {
 			this.attributesDelegate.endTag(name, content, context);
@@ -240,6 +283,11 @@ public class TransitScheduleReaderV2 extends MatsimXmlParser {
 		}
 	}
 
+	@Override
+	public TransitLine getElement() {
+		return this.lastTransitLine;
+	}
+
 	private static class TempTransitRoute {
 		protected final Id<TransitRoute> id;
 		protected final org.matsim.utils.objectattributes.attributable.Attributes attributes = new org.matsim.utils.objectattributes.attributable.Attributes();
@@ -20,8 +20,8 @@
 
 package org.matsim.vis.snapshotwriters;
 
+import org.apache.log4j.Logger;
 import org.matsim.core.config.Config;
-import org.matsim.core.config.groups.ExternalMobimConfigGroup;
 import org.matsim.core.mobsim.framework.ObservableMobsim;
 import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
 import org.matsim.core.mobsim.framework.events.MobsimBeforeCleanupEvent;
@@ -32,20 +32,83 @@ import org.matsim.core.mobsim.framework.listeners.MobsimInitializedListener;
 import org.matsim.core.mobsim.qsim.interfaces.Netsim;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Collects the positions of all agents on the network every snapshot period and passes them to the
+ * {@link SnapshotWriter}s.
+ * <p>
+ * The positions are collected in parallel, one partition of the links per mobsim thread, into position lists that are
+ * reused for later snapshots. The writers are called in a background thread, so the mobsim can continue while a
+ * snapshot is written. At most {@link #SNAPSHOT_BUFFERS} snapshots are in flight; if the writers fall behind, the mobsim
+ * waits for them. Writers that pass the positions on to the events manager are still called on the mobsim thread.
+ */
 public class SnapshotWriterManager implements MobsimBeforeCleanupListener, MobsimAfterSimStepListener, MobsimInitializedListener {
-	
+
+	private static final Logger log = Logger.getLogger(SnapshotWriterManager.class);
+
+	/** number of snapshots that can be collected before the mobsim has to wait for the writers */
+	private static final int SNAPSHOT_BUFFERS = 4;
+
+	/** links are only split into several partitions if each partition gets at least this many links */
+	private static final int MIN_LINKS_PER_PARTITION = 1000;
+
+	private static final Snapshot END_OF_SNAPSHOTS = new Snapshot(0);
+
 	private final List<SnapshotWriter> snapshotWriters = new ArrayList<SnapshotWriter>();
-	
+
+	/** writers called on the mobsim thread */
+	private final List<SnapshotWriter> synchronousWriters = new ArrayList<>();
+
+	/** writers called on the writer thread */
+	private final List<SnapshotWriter> backgroundWriters = new ArrayList<>();
+
 	/** time since last snapshot */
 	private double snapshotTime = 0.0;
 
 	final private int snapshotPeriod;
 
+	private final int numberOfThreads;
+
+	private VisLink[][] linkPartitions = null;
+	private ExecutorService collectors = null;
+	private BlockingQueue<Snapshot> freeSnapshots = null;
+	private BlockingQueue<Snapshot> pendingSnapshots = null;
+	private Thread writerThread = null;
+	private volatile Throwable writerFailure = null;
+
+	/**
+	 * The positions of one snapshot, one list per link partition.
+	 */
+	private static final class Snapshot {
+		double time;
+		final List<List<AgentSnapshotInfo>> positions;
+
+		Snapshot(int partitions) {
+			this.positions = new ArrayList<>(partitions);
+			for (int i = 0; i < partitions; i++) {
+				this.positions.add(new ArrayList<>());
+			}
+		}
+
+		void clear() {
+			for (List<AgentSnapshotInfo> partition : this.positions) {
+				partition.clear();
+			}
+		}
+	}
+
 	public SnapshotWriterManager(Config config) {
 		snapshotPeriod = findSnapshotPeriod(config);
+		numberOfThreads = config.qsim() == null ? 1 : Math.max(1, config.qsim().getNumberOfThreads());
 	}
 
 	// yuck
@@ -76,9 +139,29 @@ public class SnapshotWriterManager implements MobsimBeforeCleanupListener, Mobsi
 	}
 
 	private void closeSnapshotWriters() {
-		for (SnapshotWriter writer : this.snapshotWriters) {
+		if (this.collectors != null) {
+			this.collectors.shutdown();
+			this.collectors = null;
+		}
+		if (this.writerThread != null) {
+			// the background writers are finished by the writer thread once all snapshots are written.
+			try {
+				this.pendingSnapshots.put(END_OF_SNAPSHOTS);
+				this.writerThread.join();
+			} catch (InterruptedException ex) {
+				throw new RuntimeException(ex);
+			}
+			this.writerThread = null;
+		} else {
+			for (SnapshotWriter writer : this.backgroundWriters) {
+				writer.finish();
+			}
+		}
+		for (SnapshotWriter writer : this.synchronousWriters) {
 			writer.finish();
 		}
+		this.linkPartitions = null;
+		checkWriterFailure();
 	}
 
 	@Override
@@ -89,29 +172,156 @@ public class SnapshotWriterManager implements MobsimBeforeCleanupListener, Mobsi
 			doSnapshot(time, (VisMobsim) e.getQueueSimulation());
 		}
 	}
-	
+
 	private void doSnapshot(final double time, VisMobsim visMobsim) {
 		if (!this.snapshotWriters.isEmpty()) {
-			Collection<AgentSnapshotInfo> positions = new ArrayList<AgentSnapshotInfo>();
-			for (VisLink link : visMobsim.getVisNetwork().getVisLinks().values()) {
-				link.getVisData().addAgentSnapshotInfo(positions);
+			if (this.linkPartitions == null) {
+				initialize(visMobsim);
+			}
+			checkWriterFailure();
+
+			Snapshot snapshot;
+			try {
+				// blocks if all buffers are waiting to be written
+				snapshot = this.freeSnapshots.take();
+			} catch (InterruptedException ex) {
+				throw new RuntimeException(ex);
 			}
-			
+			snapshot.time = time;
+			collectPositions(snapshot);
+
 			// We do not put non-network agents in movies.
 			// Otherwise, we would add snapshots from visMobsim.getNonNetworkAgentSnapshots() here.
-			
-			for (SnapshotWriter writer : this.snapshotWriters) {
-				writer.beginSnapshot(time);
-				for (AgentSnapshotInfo position : positions) {
+
+			write(this.synchronousWriters, snapshot);
+			if (this.writerThread != null) {
+				this.pendingSnapshots.add(snapshot);
+			} else {
+				write(this.backgroundWriters, snapshot);
+				snapshot.clear();
+				this.freeSnapshots.add(snapshot);
+			}
+		}
+	}
+
+	private void initialize(VisMobsim visMobsim) {
+		List<VisLink> links = new ArrayList<>(visMobsim.getVisNetwork().getVisLinks().values());
+		int partitions = Math.max(1, Math.min(this.numberOfThreads, links.size() / MIN_LINKS_PER_PARTITION));
+		this.linkPartitions = new VisLink[partitions][];
+		for (int i = 0; i < partitions; i++) {
+			// contiguous ranges, so the positions are in the same order as with a single partition
+			int from = (int) ((long) links.size() * i / partitions);
+			int to = (int) ((long) links.size() * (i + 1) / partitions);
+			this.linkPartitions[i] = links.subList(from, to).toArray(new VisLink[0]);
+		}
+		if (partitions > 1) {
+			AtomicInteger threadCounter = new AtomicInteger();
+			this.collectors = Executors.newFixedThreadPool(partitions, r -> {
+				Thread thread = new Thread(r, "SnapshotCollector-" + threadCounter.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		this.freeSnapshots = new ArrayBlockingQueue<>(SNAPSHOT_BUFFERS);
+		for (int i = 0; i < SNAPSHOT_BUFFERS; i++) {
+			this.freeSnapshots.add(new Snapshot(partitions));
+		}
+		if (!this.backgroundWriters.isEmpty()) {
+			this.pendingSnapshots = new ArrayBlockingQueue<>(SNAPSHOT_BUFFERS + 1);
+			this.writerFailure = null;
+			this.writerThread = new Thread(this::writeSnapshots, "SnapshotWriter");
+			this.writerThread.setDaemon(true);
+			this.writerThread.start();
+		}
+		log.info("writing snapshots with " + partitions + " collector thread(s) and "
+				+ (this.writerThread == null ? "no" : "a") + " background writer thread.");
+	}
+
+	private void collectPositions(Snapshot snapshot) {
+		if (this.collectors == null) {
+			collectPositions(this.linkPartitions[0], snapshot.positions.get(0));
+			return;
+		}
+		List<Callable<Void>> tasks = new ArrayList<>(this.linkPartitions.length);
+		for (int i = 0; i < this.linkPartitions.length; i++) {
+			VisLink[] links = this.linkPartitions[i];
+			List<AgentSnapshotInfo> positions = snapshot.positions.get(i);
+			tasks.add(() -> {
+				collectPositions(links, positions);
+				return null;
+			});
+		}
+		try {
+			for (Future<Void> future : this.collectors.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException | ExecutionException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	private static void collectPositions(VisLink[] links, List<AgentSnapshotInfo> positions) {
+		for (VisLink link : links) {
+			link.getVisData().addAgentSnapshotInfo(positions);
+		}
+	}
+
+	private static void write(List<SnapshotWriter> writers, Snapshot snapshot) {
+		for (SnapshotWriter writer : writers) {
+			writer.beginSnapshot(snapshot.time);
+			for (List<AgentSnapshotInfo> partition : snapshot.positions) {
+				for (AgentSnapshotInfo position : partition) {
 					writer.addAgent(position);
 				}
-				writer.endSnapshot();
 			}
+			writer.endSnapshot();
+		}
+	}
+
+	private void writeSnapshots() {
+		try {
+			Snapshot snapshot;
+			while ((snapshot = this.pendingSnapshots.take()) != END_OF_SNAPSHOTS) {
+				// after a failure, the remaining snapshots are only recycled so the mobsim does not wait forever.
+				if (this.writerFailure == null) {
+					try {
+						write(this.backgroundWriters, snapshot);
+					} catch (RuntimeException | Error ex) {
+						this.writerFailure = ex;
+					}
+				}
+				snapshot.clear();
+				this.freeSnapshots.put(snapshot);
+			}
+			if (this.writerFailure == null) {
+				for (SnapshotWriter writer : this.backgroundWriters) {
+					writer.finish();
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException | Error ex) {
+			this.writerFailure = ex;
+		}
+	}
+
+	private void checkWriterFailure() {
+		Throwable failure = this.writerFailure;
+		if (failure != null) {
+			this.writerFailure = null;
+			throw new RuntimeException("writing snapshots failed", failure);
 		}
 	}
 
 	public final void addSnapshotWriter(SnapshotWriter snapshotWriter) {
 		this.snapshotWriters.add(snapshotWriter);
+		if (snapshotWriter instanceof PositionEventsWriter) {
+			// position events go to the events manager, in order with the other events of the time step.
+			this.synchronousWriters.add(snapshotWriter);
+		} else {
+			this.backgroundWriters.add(snapshotWriter);
+		}
 	}
 
 }
@@ -302,6 +302,10 @@ public final class EditTrips {
 						newTripElements.remove(0);
 						wantsToLeaveStop = false;
 						WithinDayAgentUtils.resetCaches(agent);
+						if (transitAgentTracker != null) {
+							// the agent waits for a vehicle to another destination
+							transitAgentTracker.updateDesiredDestination(ptPassengerAgent, currentOrNextStop.getId());
+						}
 					}
 				}
 			}
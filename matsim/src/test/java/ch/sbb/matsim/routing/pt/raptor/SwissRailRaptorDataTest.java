@@ -6,9 +6,19 @@ package ch.sbb.matsim.routing.pt.raptor;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
+import org.matsim.pt.transitSchedule.api.Departure;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitRouteStop;
+import org.matsim.pt.transitSchedule.api.TransitScheduleFactory;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * @author mrieser / SBB
  */
@@ -82,4 +92,87 @@ public class SwissRailRaptorDataTest {
         Assert.assertEquals("number of transfers should have stayed the same.", data2.transfers.length, data4.transfers.length);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testUpdate() {
+        Fixture f = new Fixture();
+        f.init();
+
+        f.config.transitRouter().setMaxBeelineWalkConnectionDistance(100);
+        RaptorStaticConfig raptorConfig = RaptorUtils.createStaticConfig(f.config);
+        SwissRailRaptorData data = SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null);
+
+        // unchanged schedule
+        SwissRailRaptorData data2 = data.update(f.schedule, null, f.network);
+        assertSameData(SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null), data2);
+
+        // remove a route, add a new line and add an earlier departure to an existing route
+        TransitScheduleFactory builder = f.schedule.getFactory();
+        TransitRoute redRoute = f.redLine.getRoutes().get(Id.create("red C > G", TransitRoute.class));
+        f.redLine.removeRoute(redRoute);
+        TransitLine yellowLine = builder.createTransitLine(Id.create("yellow", TransitLine.class));
+        List<TransitRouteStop> stops = new ArrayList<>();
+        for (TransitRouteStop stop : redRoute.getStops()) {
+            stops.add(builder.createTransitRouteStopBuilder(stop.getStopFacility()).departureOffset(stop.getDepartureOffset().seconds()).build());
+        }
+        TransitRoute yellowRoute = builder.createTransitRoute(Id.create("yellow C > G", TransitRoute.class), redRoute.getRoute(), stops, "bus");
+        yellowRoute.addDeparture(builder.createDeparture(Id.create("y>01", Departure.class), 6.5 * 3600));
+        yellowLine.addRoute(yellowRoute);
+        f.schedule.addTransitLine(yellowLine);
+        TransitRoute greenRoute = f.greenLine.getRoutes().values().iterator().next();
+        greenRoute.addDeparture(builder.createDeparture(Id.create("g>early", Departure.class), 4.0 * 3600));
+
+        SwissRailRaptorData data3 = data2.update(f.schedule, null, f.network);
+        assertSameData(SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null), data3);
+
+        // changed minimal transfer times require a complete re-calculation
+        f.schedule.getMinimalTransferTimes().set(Id.create(19, TransitStopFacility.class), Id.create(9, TransitStopFacility.class), 345);
+        SwissRailRaptorData data4 = data3.update(f.schedule, null, f.network);
+        assertSameData(SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null), data4);
+    }
+
+    @Test
+    public void testUpdateMovedStop() {
+        Fixture f = new Fixture();
+        f.init();
+
+        f.config.transitRouter().setMaxBeelineWalkConnectionDistance(100);
+        RaptorStaticConfig raptorConfig = RaptorUtils.createStaticConfig(f.config);
+        SwissRailRaptorData data = SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null);
+
+        // move stop 0 from (4000, 5002) next to the stops 2 and 3 at (8000, 5000)
+        TransitStopFacility movedStop = f.schedule.getFacilities().get(Id.create("0", TransitStopFacility.class));
+        movedStop.setCoord(new Coord(8000, 5050));
+
+        SwissRailRaptorData data2 = data.update(f.schedule, null, f.network);
+        assertSameData(SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null), data2);
+        Assert.assertSame(movedStop, data2.findNearestStop(8000, 5060));
+        Assert.assertTrue(data2.findNearbyStops(8000, 5000, 60).contains(movedStop));
+        Assert.assertFalse(data2.findNearbyStops(4000, 5000, 10).contains(movedStop));
+
+        // later updates must see the stop at its new position as well
+        SwissRailRaptorData data3 = data2.update(f.schedule, null, f.network);
+        assertSameData(SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null), data3);
+        Assert.assertSame(movedStop, data3.findNearestStop(8000, 5060));
+    }
+
+    private static void assertSameData(SwissRailRaptorData expected, SwissRailRaptorData actual) {
+        Assert.assertEquals(expected.countStops, actual.countStops);
+        Assert.assertEquals(expected.routes.length, actual.routes.length);
+        Assert.assertArrayEquals(expected.departures, actual.departures);
+        Assert.assertArrayEquals(getTransferDescriptions(expected), getTransferDescriptions(actual));
+    }
+
+    private static String[] getTransferDescriptions(SwissRailRaptorData data) {
+        String[] descriptions = new String[data.transfers.length];
+        for (int i = 0; i < data.transfers.length; i++) {
+            SwissRailRaptorData.RTransfer t = data.transfers[i];
+            SwissRailRaptorData.RRouteStop fromStop = data.routeStops[t.fromRouteStop];
+            SwissRailRaptorData.RRouteStop toStop = data.routeStops[t.toRouteStop];
+            descriptions[i] = fromStop.route.getId() + "/" + fromStop.routeStop.getStopFacility().getId() + " > "
+                    + toStop.route.getId() + "/" + toStop.routeStop.getStopFacility().getId() + " " + t.transferTime + " " + t.transferDistance;
+        }
+        Arrays.sort(descriptions);
+        return descriptions;
+    }
+
+}
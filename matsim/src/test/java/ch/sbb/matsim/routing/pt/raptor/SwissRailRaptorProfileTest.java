@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) Schweizerische Bundesbahnen SBB, 2020.
+ */
+
+package ch.sbb.matsim.routing.pt.raptor;
+
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorCore.ProfileEntry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.core.utils.misc.Time;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the profile (range query) functionality of SwissRailRaptor
+ */
+public class SwissRailRaptorProfileTest {
+
+    private static final int MAX_TRANSFERS = 5;
+
+    @Test
+    public void testProfile_directConnection() {
+        Fixture f = new Fixture();
+        f.init();
+        SwissRailRaptor raptor = createRaptor(f);
+
+        TransitStopFacility fromStop = f.schedule.getFacilities().get(Id.create(23, TransitStopFacility.class));
+        Map<Id<TransitStopFacility>, List<ProfileEntry>> profiles = raptor.calcProfile(Collections.singleton(fromStop), 7*3600 + 30*60, 8*3600 + 30*60, MAX_TRANSFERS);
+
+        // the green line from 23 reaches 18 without transfer, departing 07:41, arriving 07:50 (see SwissRailRaptorTreeTest)
+        List<ProfileEntry> profile = profiles.get(Id.create(18, TransitStopFacility.class));
+        Assert.assertNotNull(profile);
+        boolean found = false;
+        for (ProfileEntry entry : profile) {
+            if (entry.departureTime == Time.parseTime("07:41:00")) {
+                Assert.assertEquals(Time.parseTime("07:50:00"), entry.arrivalTime, 0.0);
+                Assert.assertEquals(0, entry.transferCount);
+                found = true;
+            }
+        }
+        Assert.assertTrue("departure at 07:41 not part of the profile.", found);
+    }
+
+    @Test
+    public void testProfile_paretoOptimal() {
+        Fixture f = new Fixture();
+        f.init();
+        SwissRailRaptor raptor = createRaptor(f);
+
+        TransitStopFacility fromStop = f.schedule.getFacilities().get(Id.create(23, TransitStopFacility.class));
+        Map<Id<TransitStopFacility>, List<ProfileEntry>> profiles = raptor.calcProfile(Collections.singleton(fromStop), 6*3600, 10*3600, MAX_TRANSFERS);
+        Assert.assertFalse(profiles.isEmpty());
+
+        for (List<ProfileEntry> profile : profiles.values()) {
+            int lastDepartureTime = Integer.MAX_VALUE;
+            for (ProfileEntry entry : profile) {
+                Assert.assertTrue(entry.departureTime <= lastDepartureTime);
+                Assert.assertTrue(entry.arrivalTime >= entry.departureTime);
+                lastDepartureTime = entry.departureTime;
+                for (ProfileEntry other : profile) {
+                    boolean dominates = other != entry
+                            && other.departureTime >= entry.departureTime
+                            && other.arrivalTime <= entry.arrivalTime
+                            && other.transferCount <= entry.transferCount;
+                    Assert.assertFalse(other + " dominates " + entry, dominates);
+                }
+            }
+        }
+    }
+
+    /**
+     * The profile for a time window must contain the same earliest arrivals as separate profile queries starting later
+     * within the window, for every number of transfers.
+     */
+    @Test
+    public void testProfile_sameAsLaterQueries() {
+        Fixture f = new Fixture();
+        f.init();
+        SwissRailRaptor raptor = createRaptor(f);
+
+        TransitStopFacility fromStop = f.schedule.getFacilities().get(Id.create(23, TransitStopFacility.class));
+        int latestDepartureTime = 9*3600;
+        Map<Id<TransitStopFacility>, List<ProfileEntry>> profiles = raptor.calcProfile(Collections.singleton(fromStop), 6*3600, latestDepartureTime, MAX_TRANSFERS);
+
+        for (int depTime = 6*3600; depTime <= latestDepartureTime; depTime += 5*60) {
+            Map<Id<TransitStopFacility>, List<ProfileEntry>> laterProfiles = raptor.calcProfile(Collections.singleton(fromStop), depTime, latestDepartureTime, MAX_TRANSFERS);
+            for (TransitStopFacility stop : f.schedule.getFacilities().values()) {
+                for (int transfers = 0; transfers <= MAX_TRANSFERS; transfers++) {
+                    int expected = earliestArrival(laterProfiles.get(stop.getId()), depTime, transfers);
+                    int actual = earliestArrival(profiles.get(stop.getId()), depTime, transfers);
+                    Assert.assertEquals("stop " + stop.getId() + ", departure " + Time.writeTime(depTime) + ", " + transfers + " transfers", expected, actual);
+                }
+            }
+        }
+    }
+
+    private static int earliestArrival(List<ProfileEntry> profile, int minDepartureTime, int maxTransfers) {
+        int earliest = Integer.MAX_VALUE;
+        if (profile != null) {
+            for (ProfileEntry entry : profile) {
+                if (entry.departureTime >= minDepartureTime && entry.transferCount <= maxTransfers) {
+                    earliest = Math.min(earliest, entry.arrivalTime);
+                }
+            }
+        }
+        return earliest;
+    }
+
+    private static SwissRailRaptor createRaptor(Fixture f) {
+        RaptorStaticConfig config = RaptorUtils.createStaticConfig(f.config);
+        config.setOptimization(RaptorStaticConfig.RaptorOptimization.OneToAllRouting);
+        SwissRailRaptorData data = SwissRailRaptorData.create(f.scenario.getTransitSchedule(), null, config, f.scenario.getNetwork(), null);
+        return new SwissRailRaptor.Builder(data, f.scenario.getConfig()).build();
+    }
+}
@@ -21,13 +21,24 @@ package org.matsim.core.controler.corelisteners;
 
 import org.junit.Rule;
 import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
 import org.matsim.core.config.Config;
 import org.matsim.core.controler.Controler;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.testcases.MatsimTestUtils;
 
 import java.io.File;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -108,4 +119,96 @@ public class PlansDumpingIT {
 		assertTrue(new File(c.getControlerIO().getIterationFilename(9, "plans.xml.gz")).exists());
 		assertTrue(new File(c.getControlerIO().getIterationFilename(10, "plans.xml.gz")).exists());
 	}
+
+	@Test
+	public void testCheckpoint_Resume() {
+		Config config = this.util.loadConfig("test/scenarios/equil/config_plans1.xml");
+		config.controler().setLastIteration(4);
+		config.controler().setWritePlansInterval(0);
+		config.controler().setWriteCheckpointInterval(2);
+		Controler c = new Controler(config);
+		c.getConfig().controler().setWriteEventsInterval(0);
+		c.getConfig().controler().setCreateGraphs(false);
+
+		c.run();
+
+		assertTrue(new File(c.getControlerIO().getIterationFilename(0, "plans.bin")).exists());
+		assertFalse(new File(c.getControlerIO().getIterationFilename(1, "plans.bin")).exists());
+		assertTrue(new File(c.getControlerIO().getIterationFilename(2, "plans.bin")).exists());
+		assertFalse(new File(c.getControlerIO().getIterationFilename(3, "plans.bin")).exists());
+		assertTrue(new File(c.getControlerIO().getIterationFilename(4, "plans.bin")).exists());
+
+		Config resumeConfig = this.util.loadConfig("test/scenarios/equil/config_plans1.xml");
+		resumeConfig.plans().setInputFile(new File(c.getControlerIO().getIterationFilename(2, "plans.bin")).getAbsolutePath());
+		resumeConfig.controler().setOutputDirectory(this.util.getOutputDirectory() + "resumed/");
+		resumeConfig.controler().setFirstIteration(2);
+		resumeConfig.controler().setLastIteration(3);
+		resumeConfig.controler().setWritePlansInterval(1);
+		Controler resumed = new Controler(resumeConfig);
+		resumed.getConfig().controler().setWriteEventsInterval(0);
+		resumed.getConfig().controler().setCreateGraphs(false);
+
+		resumed.run();
+
+		assertEquals(c.getScenario().getPopulation().getPersons().size(), resumed.getScenario().getPopulation().getPersons().size());
+		assertTrue(new File(resumed.getControlerIO().getIterationFilename(3, "plans.xml.gz")).exists());
+	}
+
+	@Test
+	public void testPlansDump_StateBeforeMobsim() {
+		Config config = this.util.loadConfig("test/scenarios/equil/config_plans1.xml");
+		config.controler().setLastIteration(0);
+		config.controler().setWritePlansInterval(1);
+		Controler c = new Controler(config);
+		c.getConfig().controler().setWriteEventsInterval(0);
+		c.getConfig().controler().setCreateGraphs(false);
+
+		c.run();
+
+		// the plans are written in the background, but must not contain the scores computed after the mobsim
+		Population dumped = PopulationUtils.readPopulation(c.getControlerIO().getIterationFilename(0, "plans.xml.gz"));
+		assertEquals(c.getScenario().getPopulation().getPersons().size(), dumped.getPersons().size());
+		for (Person person : c.getScenario().getPopulation().getPersons().values()) {
+			assertNotNull(person.getSelectedPlan().getScore());
+			assertNull(dumped.getPersons().get(person.getId()).getSelectedPlan().getScore());
+		}
+	}
+
+	@Test
+	public void testPlansDump_KeepsZCoordinate() {
+		Config config = this.util.loadConfig("test/scenarios/equil/config_plans1.xml");
+		config.controler().setLastIteration(0);
+		config.controler().setWritePlansInterval(1);
+		config.controler().setWriteCheckpointInterval(1);
+		Scenario scenario = ScenarioUtils.loadScenario(config);
+		for (Person person : scenario.getPopulation().getPersons().values()) {
+			for (PlanElement pe : person.getSelectedPlan().getPlanElements()) {
+				if (pe instanceof Activity) {
+					Activity act = (Activity) pe;
+					act.setCoord(new Coord(act.getCoord().getX(), act.getCoord().getY(), 42.5));
+				}
+			}
+		}
+		Controler c = new Controler(scenario);
+		c.getConfig().controler().setWriteEventsInterval(0);
+		c.getConfig().controler().setCreateGraphs(false);
+
+		c.run();
+
+		assertZCoordinates(PopulationUtils.readPopulation(c.getControlerIO().getIterationFilename(0, "plans.xml.gz")));
+		assertZCoordinates(PopulationUtils.readPopulation(c.getControlerIO().getIterationFilename(0, "plans.bin")));
+	}
+
+	private static void assertZCoordinates(Population population) {
+		assertFalse(population.getPersons().isEmpty());
+		for (Person person : population.getPersons().values()) {
+			for (PlanElement pe : person.getSelectedPlan().getPlanElements()) {
+				if (pe instanceof Activity) {
+					Coord coord = ((Activity) pe).getCoord();
+					assertTrue(coord.hasZ());
+					assertEquals(42.5, coord.getZ(), 0.0);
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,136 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
+import org.matsim.api.core.v01.events.handler.LinkLeaveEventHandler;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.testcases.utils.EventsCollector;
+import org.matsim.vehicles.Vehicle;
+
+public class ParallelEventsManagerImplTest {
+
+	/**
+	 * Every handler must see all events it is interested in, in the order they were created, also over several
+	 * iterations in which the handlers may be moved to other threads.
+	 */
+	@Test
+	public void testEventOrderOverIterations() {
+		EventsManager events = new ParallelEventsManagerImpl(3, 1000);
+		EventsCollector collector = new EventsCollector();
+		SlowEnterHandler slowHandler = new SlowEnterHandler();
+		LeaveHandler leaveHandler = new LeaveHandler();
+		LeaveHandler leaveHandler2 = new LeaveHandler();
+		events.addHandler(collector);
+		events.addHandler(slowHandler);
+		events.addHandler(leaveHandler);
+		events.addHandler(leaveHandler2);
+
+		int count = 10000;
+		for (int iteration = 0; iteration < 3; iteration++) {
+			events.resetHandlers(iteration);
+			events.initProcessing();
+			for (int i = 0; i < count; i++) {
+				events.processEvent(new LinkEnterEvent(i, Id.create(i, Vehicle.class), Id.create("l", Link.class)));
+				events.processEvent(new LinkLeaveEvent(i, Id.create(i, Vehicle.class), Id.create("l", Link.class)));
+			}
+			events.finishProcessing();
+
+			Assert.assertEquals(2 * count, collector.getEvents().size());
+			for (int i = 0; i < 2 * count; i++) {
+				Assert.assertEquals(i / 2, collector.getEvents().get(i).getTime(), 0.0);
+			}
+			assertOrdered(count, slowHandler.times);
+			assertOrdered(count, leaveHandler.times);
+			assertOrdered(count, leaveHandler2.times);
+		}
+	}
+
+	/**
+	 * Events created by handlers while the events are processed must be handled as well, also after the mobsim has
+	 * called finishProcessing().
+	 */
+	@Test
+	public void testEventsFromHandlers() {
+		EventsManager events = new ParallelEventsManagerImpl(2, 100);
+		LeaveHandler leaveHandler = new LeaveHandler();
+		events.addHandler((LinkEnterEventHandler) event -> events.processEvent(new LinkLeaveEvent(event.getTime(), event.getVehicleId(), event.getLinkId())));
+		events.addHandler(leaveHandler);
+
+		int count = 5000;
+		events.initProcessing();
+		for (int i = 0; i < count; i++) {
+			events.processEvent(new LinkEnterEvent(i, Id.create(i, Vehicle.class), Id.create("l", Link.class)));
+		}
+		events.finishProcessing();
+		assertOrdered(count, leaveHandler.times);
+
+		events.processEvent(new LinkEnterEvent(count, Id.create(count, Vehicle.class), Id.create("l", Link.class)));
+		assertOrdered(count + 1, leaveHandler.times);
+	}
+
+	private static void assertOrdered(int count, List<Double> times) {
+		Assert.assertEquals(count, times.size());
+		for (int i = 0; i < count; i++) {
+			Assert.assertEquals(i, times.get(i), 0.0);
+		}
+	}
+
+	private static class SlowEnterHandler implements LinkEnterEventHandler {
+		final List<Double> times = new ArrayList<>();
+		double sum = 0;
+
+		@Override
+		public void handleEvent(LinkEnterEvent event) {
+			this.times.add(event.getTime());
+			for (int i = 0; i < 1000; i++) {
+				this.sum += Math.sqrt(i + event.getTime());
+			}
+		}
+
+		@Override
+		public void reset(int iteration) {
+			this.times.clear();
+		}
+	}
+
+	private static class LeaveHandler implements LinkLeaveEventHandler {
+		final List<Double> times = new ArrayList<>();
+
+		@Override
+		public void handleEvent(LinkLeaveEvent event) {
+			this.times.add(event.getTime());
+		}
+
+		@Override
+		public void reset(int iteration) {
+			this.times.clear();
+		}
+	}
+}
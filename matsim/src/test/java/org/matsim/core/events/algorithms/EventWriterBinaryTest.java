@@ -0,0 +1,188 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events.algorithms;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.ActivityStartEvent;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.GenericEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.PersonMoneyEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.api.experimental.events.TeleportationArrivalEvent;
+import org.matsim.core.config.groups.ControlerConfigGroup;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.MatsimEventsReader;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.testcases.utils.EventsCollector;
+import org.matsim.vehicles.Vehicle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+public class EventWriterBinaryTest {
+
+	@Rule
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testSpecialCharacters() {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		EventWriterBinary writer = new EventWriterBinary(baos);
+
+		writer.handleEvent(new LinkLeaveEvent(3600.0, Id.create("vehicle>3", Vehicle.class), Id.create("link<2", Link.class)));
+		writer.handleEvent(new LinkLeaveEvent(3601.0, Id.create("vehicle\"4 ä", Vehicle.class), Id.create("link'3", Link.class)));
+		writer.closeFile();
+
+		List<Event> events = readStream(baos);
+
+		Assert.assertEquals("there must be 2 events.", 2, events.size());
+		LinkLeaveEvent event1 = (LinkLeaveEvent) events.get(0);
+		LinkLeaveEvent event2 = (LinkLeaveEvent) events.get(1);
+
+		Assert.assertEquals(3600.0, event1.getTime(), 0.0);
+		Assert.assertEquals("link<2", event1.getLinkId().toString());
+		Assert.assertEquals("vehicle>3", event1.getVehicleId().toString());
+
+		Assert.assertEquals(3601.0, event2.getTime(), 0.0);
+		Assert.assertEquals("link'3", event2.getLinkId().toString());
+		Assert.assertEquals("vehicle\"4 ä", event2.getVehicleId().toString());
+	}
+
+	@Test
+	public void testNullAttribute() {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		EventWriterBinary writer = new EventWriterBinary(baos);
+
+		GenericEvent event = new GenericEvent("TEST", 3600.0);
+		event.getAttributes().put("dummy", null);
+		writer.handleEvent(event);
+		writer.closeFile();
+
+		List<Event> events = readStream(baos);
+
+		Assert.assertEquals("there must be 1 event.", 1, events.size());
+
+		GenericEvent event1 = (GenericEvent) events.get(0);
+		Assert.assertTrue(event1.getAttributes().containsKey("dummy"));
+		Assert.assertNull(event1.getAttributes().get("dummy"));
+	}
+
+	@Test
+	public void testNumericAttributes() {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		EventWriterBinary writer = new EventWriterBinary(baos);
+
+		Id<Person> person = Id.create("1", Person.class);
+		writer.handleEvent(new ActivityStartEvent(10.0, person, Id.create("2", Link.class), null, "home", new Coord(-1.5, 2.0E7)));
+		writer.handleEvent(new PersonMoneyEvent(11.0, person, 0.1 + 0.2, "toll", null));
+		GenericEvent generic = new GenericEvent("TEST", 12.0);
+		// strings which look like numbers, but are not written like this by Double.toString
+		for (String value : new String[] { "007", "1.50", "1e3", "1.2.3", "-", "NaN", "Infinity", "3.0" }) {
+			generic.getAttributes().put("a" + value, value);
+		}
+		writer.handleEvent(generic);
+		writer.closeFile();
+
+		List<Event> events = readStream(baos);
+		Assert.assertEquals(3, events.size());
+		ActivityStartEvent actStart = (ActivityStartEvent) events.get(0);
+		Assert.assertEquals(new Coord(-1.5, 2.0E7), actStart.getCoord());
+		Assert.assertEquals("1", actStart.getPersonId().toString());
+		Assert.assertEquals("2", actStart.getLinkId().toString());
+		Assert.assertEquals(0.1 + 0.2, ((PersonMoneyEvent) events.get(1)).getAmount(), 0.0);
+		Assert.assertEquals(generic.getAttributes(), events.get(2).getAttributes());
+	}
+
+	/**
+	 * Numbers are not stored in the dictionary, so it does not grow with the number of events.
+	 */
+	@Test
+	public void testDictionaryDoesNotGrowWithNumbers() {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		EventWriterBinary writer = new EventWriterBinary(baos);
+		Id<Person> person = Id.create("p", Person.class);
+		for (int i = 0; i < 10000; i++) {
+			writer.handleEvent(new TeleportationArrivalEvent(i, person, i * 1.1, "walk"));
+		}
+		// event type, the three attribute names, person and mode
+		Assert.assertEquals(6, writer.dictionarySize());
+		writer.closeFile();
+
+		List<Event> events = readStream(baos);
+		Assert.assertEquals(10000, events.size());
+		for (int i = 0; i < 10000; i++) {
+			Assert.assertEquals(i * 1.1, ((TeleportationArrivalEvent) events.get(i)).getDistance(), 0.0);
+		}
+	}
+
+	/**
+	 * Writes more events than fit into one chunk and reads them back from a file, which is memory-mapped.
+	 */
+	@Test
+	public void testMultipleChunksFromFile() {
+		String filename = this.utils.getOutputDirectory() + "events.bin";
+		EventWriterBinary writer = new EventWriterBinary(filename);
+		int count = EventWriterBinary.CHUNK_SIZE * 2 + 17;
+		for (int i = 0; i < count; i++) {
+			writer.handleEvent(new LinkLeaveEvent(i, Id.create("v" + (i % 100), Vehicle.class), Id.create("l" + (i % 1000), Link.class)));
+		}
+		GenericEvent generic = new GenericEvent("custom", count);
+		generic.getAttributes().put("key", "value");
+		writer.handleEvent(generic);
+		writer.closeFile();
+
+		EventsManager events = EventsUtils.createEventsManager();
+		EventsCollector collector = new EventsCollector();
+		events.addHandler(collector);
+		events.initProcessing();
+		new MatsimEventsReader(events).readFile(filename);
+		events.finishProcessing();
+
+		List<Event> read = collector.getEvents();
+		Assert.assertEquals(count + 1, read.size());
+		for (int i = 0; i < count; i++) {
+			LinkLeaveEvent event = (LinkLeaveEvent) read.get(i);
+			Assert.assertEquals(i, event.getTime(), 0.0);
+			Assert.assertEquals("v" + (i % 100), event.getVehicleId().toString());
+			Assert.assertEquals("l" + (i % 1000), event.getLinkId().toString());
+		}
+		GenericEvent last = (GenericEvent) read.get(count);
+		Assert.assertEquals("custom", last.getEventType());
+		Assert.assertEquals("value", last.getAttributes().get("key"));
+	}
+
+	private static List<Event> readStream(ByteArrayOutputStream baos) {
+		EventsManager events = EventsUtils.createEventsManager();
+		EventsCollector collector = new EventsCollector();
+		events.addHandler(collector);
+		events.initProcessing();
+		new MatsimEventsReader(events).readStream(new ByteArrayInputStream(baos.toByteArray()), ControlerConfigGroup.EventsFileFormat.binary);
+		events.finishProcessing();
+		return collector.getEvents();
+	}
+}
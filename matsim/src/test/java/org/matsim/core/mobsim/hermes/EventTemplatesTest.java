@@ -0,0 +1,171 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.hermes;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.ActivityEndEvent;
+import org.matsim.api.core.v01.events.ActivityStartEvent;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.PersonArrivalEvent;
+import org.matsim.api.core.v01.events.PersonEntersVehicleEvent;
+import org.matsim.api.core.v01.events.TransitDriverStartsEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.api.experimental.events.TeleportationArrivalEvent;
+import org.matsim.core.api.experimental.events.VehicleArrivesAtFacilityEvent;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.pt.transitSchedule.api.Departure;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class EventTemplatesTest {
+
+	@Test
+	public void testCreateEvents() {
+		Id<Person> person = Id.createPersonId("p1");
+		Id<Link> link = Id.createLinkId("l1");
+		Id<Vehicle> vehicle = Id.createVehicleId("v1");
+		Id<TransitStopFacility> stop = Id.create("s1", TransitStopFacility.class);
+
+		EventTemplates templates = new EventTemplates();
+		templates.addActivityStart(person, link, null, "work", new Coord(1.0, 2.0));
+		templates.addActivityEnd(person, link, null, "work");
+		templates.addVehicleEntersTraffic(person, link, vehicle, "car");
+		templates.addTeleportationArrival(person, 1234.5, "walk");
+		templates.addVehicleArrivesAtStop(vehicle, stop, 100.0);
+		templates.addTransitDriverStarts(person, vehicle, Id.create("line", TransitLine.class),
+				Id.create("route", TransitRoute.class), Id.create("dep", Departure.class));
+		Assert.assertEquals(6, templates.size());
+		Assert.assertEquals(EventTemplates.ActivityEndType, templates.type(1));
+
+		ActivityStartEvent actStart = (ActivityStartEvent) templates.createEvent(0, 10);
+		Assert.assertEquals(10.0, actStart.getTime(), 0.0);
+		Assert.assertEquals(person, actStart.getPersonId());
+		Assert.assertEquals(link, actStart.getLinkId());
+		Assert.assertNull(actStart.getFacilityId());
+		Assert.assertEquals("work", actStart.getActType());
+		Assert.assertEquals(new Coord(1.0, 2.0), actStart.getCoord());
+
+		Assert.assertEquals("work", ((ActivityEndEvent) templates.createEvent(1, 20)).getActType());
+
+		VehicleEntersTrafficEvent entersTraffic = (VehicleEntersTrafficEvent) templates.createEvent(2, 30);
+		Assert.assertEquals(vehicle, entersTraffic.getVehicleId());
+		Assert.assertEquals("car", entersTraffic.getNetworkMode());
+
+		TeleportationArrivalEvent teleport = (TeleportationArrivalEvent) templates.createEvent(3, 40);
+		Assert.assertEquals(1234.5, teleport.getDistance(), 0.0);
+		Assert.assertEquals("walk", teleport.getMode());
+
+		// the delay is derived from the scheduled time and the actual time of the event
+		VehicleArrivesAtFacilityEvent arrives = (VehicleArrivesAtFacilityEvent) templates.createEvent(4, 130);
+		Assert.assertEquals(stop, arrives.getFacilityId());
+		Assert.assertEquals(30.0, arrives.getDelay(), 0.0);
+
+		TransitDriverStartsEvent driverStarts = (TransitDriverStartsEvent) templates.createEvent(5, 50);
+		Assert.assertEquals("dep", driverStarts.getDepartureId().toString());
+
+		templates.clear();
+		Assert.assertEquals(0, templates.size());
+	}
+
+	@Test
+	public void testManyEventsAndTrim() {
+		Id<Person> person = Id.createPersonId("p1");
+		Id<Vehicle> vehicle = Id.createVehicleId("v1");
+		EventTemplates templates = new EventTemplates();
+		// templates of different lengths, so that events between the checkpoints have to be skipped
+		for (int i = 0; i < 20; i++) {
+			templates.addLinkEnter(vehicle, Id.createLinkId("l" + i));
+			templates.addActivityEnd(person, Id.createLinkId("l" + i), null, "act" + i);
+			templates.addTeleportationArrival(person, i, "walk");
+		}
+		templates.trimToSize();
+		templates.addPersonArrival(person, Id.createLinkId("end"), "walk");
+		Assert.assertEquals(61, templates.size());
+
+		for (int i = 0; i < 20; i++) {
+			Assert.assertEquals(EventTemplates.LinkEnterType, templates.type(3 * i));
+			Assert.assertEquals(Id.createLinkId("l" + i), ((LinkEnterEvent) templates.createEvent(3 * i, i)).getLinkId());
+			Assert.assertEquals("act" + i, ((ActivityEndEvent) templates.createEvent(3 * i + 1, i)).getActType());
+			Assert.assertEquals(i, ((TeleportationArrivalEvent) templates.createEvent(3 * i + 2, i)).getDistance(), 0.0);
+		}
+		Assert.assertEquals(Id.createLinkId("end"), ((PersonArrivalEvent) templates.createEvent(60, 100)).getLinkId());
+	}
+
+	@Test
+	public void testSetVehicle() {
+		Id<Person> person = Id.createPersonId("p1");
+		EventTemplates templates = new EventTemplates();
+		templates.addPersonEntersVehicle(person, Id.createVehicleId("tr_X"));
+		templates.setVehicle(0, Id.createVehicleId("bus1"));
+		Assert.assertEquals(Id.createVehicleId("bus1"), ((PersonEntersVehicleEvent) templates.createEvent(0, 0)).getVehicleId());
+
+		templates.addActivityEnd(person, Id.createLinkId("l1"), null, "home");
+		try {
+			templates.setVehicle(1, Id.createVehicleId("bus1"));
+			Assert.fail("vehicle can only be set on enter and leave vehicle events");
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testFlushBuffer() {
+		Id<Person> person = Id.createPersonId("p1");
+		EventTemplates templates = new EventTemplates();
+		templates.addActivityEnd(person, Id.createLinkId("l1"), null, "home");
+		templates.addPersonEntersVehicle(person, Id.createVehicleId("v1"));
+		Agent[] agents = { new Agent(0, 0, new Agent.PlanArray(), templates) };
+
+		EventBuffer buffer = new EventBuffer();
+		buffer.add(new ActivityEndEvent(4, person, Id.createLinkId("l2"), null, "other"));
+		EventBuffer first = new EventBuffer();
+		first.add(agents[0], 0, 5, 0);
+		first.add(new ActivityEndEvent(6, person, Id.createLinkId("l2"), null, "other"), 2);
+		EventBuffer second = new EventBuffer();
+		second.add(new ActivityEndEvent(5.5, person, Id.createLinkId("l2"), null, "other"), 1);
+		second.add(agents[0], 1, 7, 3);
+		buffer.addAllInKeyOrder(new EventBuffer[] { first, second });
+		Assert.assertEquals(5, buffer.size());
+		Assert.assertEquals(0, first.size());
+		Assert.assertEquals(0, second.size());
+
+		List<String> events = new ArrayList<>();
+		EventsManager eventsManager = EventsUtils.createEventsManager();
+		eventsManager.addHandler((BasicEventHandler) event -> events.add(event.getEventType() + "@" + event.getTime()));
+		eventsManager.initProcessing();
+		buffer.flush(eventsManager, agents);
+		eventsManager.finishProcessing();
+
+		Assert.assertEquals(List.of("actend@4.0", "actend@5.0", "actend@5.5", "actend@6.0", "PersonEntersVehicle@7.0"), events);
+		Assert.assertEquals(0, buffer.size());
+	}
+}
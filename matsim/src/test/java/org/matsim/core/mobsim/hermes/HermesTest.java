@@ -23,6 +23,7 @@ package org.matsim.core.mobsim.hermes;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -237,6 +238,218 @@ public class HermesTest {
 		Assert.assertEquals("wrong time in second event.", 7.0*3600 + 11, collector.events.get(3).getTime(), MatsimTestCase.EPSILON);
 	}
 
+	/**
+	 * Two agents cross the three links of the fixture, which end up in three different realms.
+	 * The events must be the same as when simulating everything in one realm.
+	 */
+	@Test
+	public void testMultipleRealms() {
+		Fixture f = new Fixture();
+
+		for (int i = 0; i < 2; i++) {
+			Person person = PopulationUtils.getFactory().createPerson(Id.create(i, Person.class));
+			Plan plan = PersonUtils.createAndAddPlan(person, true);
+			Activity a1 = PopulationUtils.createAndAddActivityFromLinkId(plan, "h", f.link1.getId());
+			a1.setEndTime(6*3600 + i);
+			Leg leg = PopulationUtils.createAndAddLeg( plan, TransportMode.car );
+			TripStructureUtils.setRoutingMode( leg, TransportMode.car );
+			NetworkRoute route = f.scenario.getPopulation().getFactory().getRouteFactories().createRoute(NetworkRoute.class, f.link1.getId(), f.link3.getId());
+			route.setLinkIds(f.link1.getId(), f.linkIds2, f.link3.getId());
+			leg.setRoute(route);
+			PopulationUtils.createAndAddActivityFromLinkId(plan, "w", f.link3.getId());
+			f.plans.addPerson(person);
+		}
+		PrepareForSimUtils.createDefaultPrepareForSim(f.scenario).run();
+
+		List<String> singleRealm = runAndCollectEvents(f.scenario, 1);
+		List<String> threeRealms = runAndCollectEvents(f.scenario, 3);
+		List<String> threeRealmsAgain = runAndCollectEvents(f.scenario, 3);
+
+		Assert.assertEquals("wrong number of link enter events.", 4, singleRealm.stream().filter(e -> e.contains(LinkEnterEvent.EVENT_TYPE)).count());
+		Assert.assertEquals("events differ between one and three realms.", singleRealm, threeRealms);
+		Assert.assertEquals("events differ between runs with three realms.", threeRealms, threeRealmsAgain);
+	}
+
+	/**
+	 * Many agents cross the realm boundaries of a congested grid network, often in the same second and competing for
+	 * the same links. The events must be the same as with a single realm.
+	 */
+	@Test
+	public void testMultipleRealmsWithCongestion() {
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		Network network = scenario.getNetwork();
+		network.setCapacityPeriod(3600);
+		int size = 6;
+		Node[][] nodes = new Node[size][size];
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				nodes[x][y] = NetworkUtils.createAndAddNode(network, Id.createNodeId(x + "_" + y), new Coord(100 * x, 100 * y));
+			}
+		}
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				if (x + 1 < size) {
+					addGridLink(network, nodes[x][y], nodes[x + 1][y]);
+					addGridLink(network, nodes[x + 1][y], nodes[x][y]);
+				}
+				if (y + 1 < size) {
+					addGridLink(network, nodes[x][y], nodes[x][y + 1]);
+					addGridLink(network, nodes[x][y + 1], nodes[x][y]);
+				}
+			}
+		}
+
+		Random random = new Random(4711);
+		for (int i = 0; i < 400; i++) {
+			int fromX = random.nextInt(size);
+			int fromY = random.nextInt(size);
+			int toX = random.nextInt(size);
+			int toY = (fromX == toX) ? (fromY + 1 + random.nextInt(size - 1)) % size : random.nextInt(size);
+			// the agent starts on a link entering the first node and ends on a link leaving the last node.
+			Id<Link> startLinkId = gridLinkId(nodes[fromX == 0 ? 1 : fromX - 1][fromY], nodes[fromX][fromY]);
+			Id<Link> endLinkId = gridLinkId(nodes[toX][toY], nodes[toX == 0 ? 1 : toX - 1][toY]);
+			List<Id<Link>> linkIds = new ArrayList<>();
+			for (int x = fromX, y = fromY; x != toX || y != toY; ) {
+				int nextX = x == toX ? x : x < toX ? x + 1 : x - 1;
+				int nextY = x == toX ? (y < toY ? y + 1 : y - 1) : y;
+				linkIds.add(gridLinkId(nodes[x][y], nodes[nextX][nextY]));
+				x = nextX;
+				y = nextY;
+			}
+
+			Person person = PopulationUtils.getFactory().createPerson(Id.create(i, Person.class));
+			Plan plan = PersonUtils.createAndAddPlan(person, true);
+			Activity a1 = PopulationUtils.createAndAddActivityFromLinkId(plan, "h", startLinkId);
+			a1.setEndTime(6*3600 + random.nextInt(60));
+			Leg leg = PopulationUtils.createAndAddLeg( plan, TransportMode.car );
+			TripStructureUtils.setRoutingMode( leg, TransportMode.car );
+			NetworkRoute route = scenario.getPopulation().getFactory().getRouteFactories().createRoute(NetworkRoute.class, startLinkId, endLinkId);
+			route.setLinkIds(startLinkId, linkIds, endLinkId);
+			leg.setRoute(route);
+			PopulationUtils.createAndAddActivityFromLinkId(plan, "w", endLinkId);
+			scenario.getPopulation().addPerson(person);
+		}
+		PrepareForSimUtils.createDefaultPrepareForSim(scenario).run();
+
+		List<String> singleRealm = runAndCollectEvents(scenario, 1);
+		Assert.assertEquals("not all agents arrived.", 400, singleRealm.stream().filter(e -> e.contains(PersonArrivalEvent.EVENT_TYPE)).count());
+		for (int realms = 2; realms <= 4; realms++) {
+			Assert.assertEquals("events differ between one and " + realms + " realms.", singleRealm, runAndCollectEvents(scenario, realms));
+		}
+	}
+
+	private static void addGridLink(Network network, Node from, Node to) {
+		// short links with low capacity, so the agents queue up and spill back across realm boundaries.
+		NetworkUtils.createAndAddLink(network, gridLinkId(from, to), from, to, 30, 10, 600, 1);
+	}
+
+	private static Id<Link> gridLinkId(Node from, Node to) {
+		return Id.createLinkId(from.getId() + "-" + to.getId());
+	}
+
+	/**
+	 * Between iterations, only the agents whose selected plan changed are imported again. The events must be the same
+	 * as when importing the scenario from scratch.
+	 */
+	@Test
+	public void testReimportChangedPlans() {
+		Fixture f = new Fixture();
+
+		for (int i = 0; i < 2; i++) {
+			Person person = PopulationUtils.getFactory().createPerson(Id.create(i, Person.class));
+			Plan plan = PersonUtils.createAndAddPlan(person, true);
+			Activity a1 = PopulationUtils.createAndAddActivityFromLinkId(plan, "h", f.link1.getId());
+			a1.setEndTime(6*3600 + i);
+			Leg leg = PopulationUtils.createAndAddLeg( plan, TransportMode.car );
+			TripStructureUtils.setRoutingMode( leg, TransportMode.car );
+			NetworkRoute route = f.scenario.getPopulation().getFactory().getRouteFactories().createRoute(NetworkRoute.class, f.link1.getId(), f.link3.getId());
+			route.setLinkIds(f.link1.getId(), f.linkIds2, f.link3.getId());
+			leg.setRoute(route);
+			PopulationUtils.createAndAddActivityFromLinkId(plan, "w", f.link3.getId());
+			f.plans.addPerson(person);
+		}
+		PrepareForSimUtils.createDefaultPrepareForSim(f.scenario).run();
+
+		List<String> collected = new ArrayList<>();
+		EventsManager events = EventsUtils.createEventsManager();
+		events.addHandler((BasicEventHandler) event -> collected.add(event.toString()));
+
+		createHermes(f.scenario, events, false).run();
+		List<String> firstIteration = new ArrayList<>(collected);
+
+		// the first agent departs one hour later with a new plan, the second agent keeps its plan.
+		Person person = f.plans.getPersons().get(Id.create(0, Person.class));
+		Plan newPlan = person.createCopyOfSelectedPlanAndMakeSelected();
+		((Activity) newPlan.getPlanElements().get(0)).setEndTime(7*3600);
+		collected.clear();
+		createHermes(f.scenario, events, false).run();
+		List<String> secondIteration = new ArrayList<>(collected);
+
+		ScenarioImporter.flush();
+		collected.clear();
+		createHermes(f.scenario, events, false).run();
+		List<String> fromScratch = new ArrayList<>(collected);
+
+		Assert.assertNotEquals("changed plan was not imported again.", firstIteration, secondIteration);
+		Assert.assertEquals("events differ from a full import.", fromScratch, secondIteration);
+		Assert.assertEquals("wrong number of link enter events.", 4, secondIteration.stream().filter(e -> e.contains(LinkEnterEvent.EVENT_TYPE)).count());
+		Assert.assertTrue("the first agent should depart one hour later.",
+				secondIteration.stream().anyMatch(e -> e.contains(PersonDepartureEvent.EVENT_TYPE) && e.contains("time=\"25200.0\"")));
+	}
+
+	/**
+	 * A route which is modified in place, without replacing the plan or the route object, must be imported again.
+	 */
+	@Test
+	public void testReimportRouteChangedInPlace() {
+		Fixture f = new Fixture();
+		// a detour parallel to link 2
+		Link detour = NetworkUtils.createAndAddLink(f.network, Id.create("4", Link.class), f.node2, f.node3, 2000, 100, 6000, 2);
+
+		Person person = PopulationUtils.getFactory().createPerson(Id.create(0, Person.class));
+		Plan plan = PersonUtils.createAndAddPlan(person, true);
+		Activity a1 = PopulationUtils.createAndAddActivityFromLinkId(plan, "h", f.link1.getId());
+		a1.setEndTime(6*3600);
+		Leg leg = PopulationUtils.createAndAddLeg( plan, TransportMode.car );
+		TripStructureUtils.setRoutingMode( leg, TransportMode.car );
+		NetworkRoute route = f.scenario.getPopulation().getFactory().getRouteFactories().createRoute(NetworkRoute.class, f.link1.getId(), f.link3.getId());
+		route.setLinkIds(f.link1.getId(), f.linkIds2, f.link3.getId());
+		leg.setRoute(route);
+		PopulationUtils.createAndAddActivityFromLinkId(plan, "w", f.link3.getId());
+		f.plans.addPerson(person);
+		PrepareForSimUtils.createDefaultPrepareForSim(f.scenario).run();
+
+		List<String> collected = new ArrayList<>();
+		EventsManager events = EventsUtils.createEventsManager();
+		events.addHandler((BasicEventHandler) event -> collected.add(event.toString()));
+
+		createHermes(f.scenario, events, false).run();
+		Assert.assertTrue("the agent should use link 2.", collected.stream().anyMatch(e -> e.contains(LinkEnterEvent.EVENT_TYPE) && e.contains("link=\"2\"")));
+
+		route.setLinkIds(f.link1.getId(), Collections.singletonList(detour.getId()), f.link3.getId());
+		collected.clear();
+		createHermes(f.scenario, events, false).run();
+		List<String> secondIteration = new ArrayList<>(collected);
+
+		ScenarioImporter.flush();
+		collected.clear();
+		createHermes(f.scenario, events, false).run();
+		List<String> fromScratch = new ArrayList<>(collected);
+
+		Assert.assertEquals("events differ from a full import.", fromScratch, secondIteration);
+		Assert.assertTrue("the agent should use the detour.", secondIteration.stream().anyMatch(e -> e.contains(LinkEnterEvent.EVENT_TYPE) && e.contains("link=\"4\"")));
+		Assert.assertFalse("the agent should not use link 2 anymore.", secondIteration.stream().anyMatch(e -> e.contains(LinkEnterEvent.EVENT_TYPE) && e.contains("link=\"2\"")));
+	}
+
+	private static List<String> runAndCollectEvents(Scenario scenario, int realms) {
+		scenario.getConfig().hermes().setNumberOfRealms(realms);
+		List<String> collected = new ArrayList<>();
+		EventsManager events = EventsUtils.createEventsManager();
+		events.addHandler((BasicEventHandler) event -> collected.add(event.toString()));
+		createHermes(scenario, events, false).run();
+		return collected;
+	}
+
 	/**
 	 * A single agent is simulated that uses teleportation for its one and only leg.
 	 *
@@ -0,0 +1,172 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.jdeqsim;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.gbl.MatsimRandom;
+import org.matsim.core.scenario.ScenarioUtils;
+
+/**
+ * Checks that the parallel scheduler produces the same events for any number of threads, including a single partition,
+ * where no message is ever undone, and compares them to the events of the sequential scheduler.
+ */
+public class ParallelSchedulerTest extends AbstractJDEQSimTest {
+
+	@Test
+	public void testEquil() {
+		assertSameEventsForAllNumbersOfThreads("test/scenarios/equil/config.xml", 1.0);
+	}
+
+	@Test
+	public void testEquilCongested() {
+		// spill-backs and deadlock prevention across partitions
+		assertSameEventsForAllNumbersOfThreads("test/scenarios/equil/config.xml", 0.05);
+	}
+
+	@Test
+	public void testBerlin() {
+		assertSameEventsForAllNumbersOfThreads("test/scenarios/berlin/config.xml", 1.0);
+	}
+
+	@Test
+	public void testEquilSequentialWithoutTies() {
+		assertSameEventsAsSequentialScheduler("test/scenarios/equil/config.xml", 1.0, 60.0);
+	}
+
+	@Test
+	public void testEquilCongestedSequentialWithoutTies() {
+		assertSameEventsAsSequentialScheduler("test/scenarios/equil/config.xml", 0.05, 60.0);
+	}
+
+	@Test
+	public void testEquilSequential() {
+		assertSameEventsAsSequentialScheduler("test/scenarios/equil/config.xml", 1.0, 0.0);
+	}
+
+	@Test
+	public void testEquilCongestedSequential() {
+		assertSameEventsAsSequentialScheduler("test/scenarios/equil/config.xml", 0.05, 0.0);
+	}
+
+	/**
+	 * Compares the events to those of the sequential {@link Scheduler}, which handles messages with the same time and
+	 * priority in the order of its heap. If the departures are spread by the given interval, so that no vehicles compete
+	 * for a road at the same time, the events must be the same. Otherwise, only the links and event types of every person
+	 * must be the same, because the order of vehicles which enter a road at the same time may differ.
+	 */
+	private void assertSameEventsAsSequentialScheduler(String configFile, double capacityFactor, double departureInterval) {
+		List<Map<Id<Person>, List<String>>> eventsPerRun = new ArrayList<>();
+		for (int numberOfThreads : new int[] { 1, 2 }) {
+			Config config = ConfigUtils.loadConfig(configFile);
+			JDEQSimConfigGroup jdeqSimConfig = ConfigUtils.addOrGetModule(config, JDEQSimConfigGroup.NAME, JDEQSimConfigGroup.class);
+			jdeqSimConfig.setFlowCapacityFactor(capacityFactor);
+			jdeqSimConfig.setStorageCapacityFactor(capacityFactor);
+			jdeqSimConfig.setNumberOfThreads(numberOfThreads);
+			MatsimRandom.reset(config.global().getRandomSeed());
+			Scenario scenario = ScenarioUtils.loadScenario(config);
+			int index = 0;
+			for (Person person : scenario.getPopulation().getPersons().values()) {
+				Activity first = (Activity) person.getSelectedPlan().getPlanElements().get(0);
+				first.setEndTime(first.getEndTime().seconds() + departureInterval * index++);
+			}
+
+			this.eventsByPerson = new HashMap<>();
+			this.vehicleToDriver = new HashMap<>();
+			this.allEvents = new LinkedList<>();
+			runJDEQSim(scenario);
+
+			checkAscendingTimeStamps();
+			checkEventsCorrespondToPlans(scenario.getPopulation());
+			Map<Id<Person>, List<String>> events = new TreeMap<>();
+			for (Map.Entry<Id<Person>, List<Event>> entry : this.eventsByPerson.entrySet()) {
+				List<String> personEvents = new ArrayList<>();
+				for (Event event : entry.getValue()) {
+					if (departureInterval > 0) {
+						personEvents.add(event.toString());
+					} else {
+						Map<String, String> attributes = event.getAttributes();
+						attributes.remove(Event.ATTRIBUTE_TIME);
+						personEvents.add(attributes.toString());
+					}
+				}
+				events.put(entry.getKey(), personEvents);
+			}
+			eventsPerRun.add(events);
+		}
+		assertEquals(eventsPerRun.get(0), eventsPerRun.get(1));
+	}
+
+	private void assertSameEventsForAllNumbersOfThreads(String configFile, double capacityFactor) {
+		List<String> expectedEvents = null;
+		for (int numberOfThreads = 1; numberOfThreads <= 4; numberOfThreads++) {
+			Config config = ConfigUtils.loadConfig(configFile);
+			JDEQSimConfigGroup jdeqSimConfig = ConfigUtils.addOrGetModule(config, JDEQSimConfigGroup.NAME, JDEQSimConfigGroup.class);
+			jdeqSimConfig.setFlowCapacityFactor(capacityFactor);
+			jdeqSimConfig.setStorageCapacityFactor(capacityFactor);
+			jdeqSimConfig.setNumberOfThreads(numberOfThreads);
+			MatsimRandom.reset(config.global().getRandomSeed());
+			Scenario scenario = ScenarioUtils.loadScenario(config);
+
+			this.eventsByPerson = new HashMap<>();
+			this.vehicleToDriver = new HashMap<>();
+			this.allEvents = new LinkedList<>();
+			if (numberOfThreads == 1) {
+				runJDEQSim(scenario, events -> new JDEQSimulation(jdeqSimConfig, scenario, events) {
+					@Override
+					Scheduler createScheduler() {
+						return new ParallelScheduler(scenario.getNetwork(), 1, 1, Double.MAX_VALUE);
+					}
+				});
+			} else {
+				runJDEQSim(scenario);
+			}
+
+			assertEquals(scenario.getPopulation().getPersons().size(), this.eventsByPerson.size());
+			checkAscendingTimeStamps();
+			checkEventsCorrespondToPlans(scenario.getPopulation());
+			List<String> events = new ArrayList<>();
+			for (Event event : this.allEvents) {
+				events.add(event.toString());
+			}
+			if (expectedEvents == null) {
+				expectedEvents = events;
+			} else {
+				assertEquals("events with " + numberOfThreads + " threads", expectedEvents, events);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,146 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.jdeqsim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.matsim.core.mobsim.jdeqsim.util.DummyMessage;
+import org.matsim.testcases.MatsimTestCase;
+
+public class TestCalendarMessageQueue extends MatsimTestCase {
+
+	public void testPutMessage() {
+		MessageQueue mq = new CalendarMessageQueue();
+		Message m1 = createMessage(2, 0);
+		Message m2 = createMessage(1, 0);
+		mq.putMessage(m1);
+		mq.putMessage(m2);
+		assertEquals(2, mq.getQueueSize());
+		assertSame(m2, mq.getNextMessage());
+		assertSame(m1, mq.getNextMessage());
+		assertTrue(mq.isEmpty());
+		assertNull(mq.getNextMessage());
+	}
+
+	public void testRemoveMessage() {
+		MessageQueue mq = new CalendarMessageQueue();
+		Message m1 = createMessage(1, 0);
+		Message m2 = createMessage(1, 0);
+		mq.putMessage(m1);
+		mq.putMessage(m2);
+		mq.removeMessage(m1);
+		assertEquals(1, mq.getQueueSize());
+		assertFalse(mq.isEmpty());
+		assertSame(m2, mq.getNextMessage());
+		assertEquals(0, mq.getQueueSize());
+		assertTrue(mq.isEmpty());
+	}
+
+	public void testMessagePriority() {
+		MessageQueue mq = new CalendarMessageQueue();
+		Message m1 = createMessage(1, 10);
+		Message m2 = createMessage(1, 5);
+		Message m3 = createMessage(1, 20);
+		mq.putMessage(m1);
+		mq.putMessage(m2);
+		mq.putMessage(m3);
+		assertSame(m3, mq.getNextMessage());
+		assertSame(m1, mq.getNextMessage());
+		assertSame(m2, mq.getNextMessage());
+		assertTrue(mq.isEmpty());
+	}
+
+	/**
+	 * Messages far in the future and in the past are kept outside of the buckets of the current block.
+	 */
+	public void testMessagesOutsideOfCurrentBlock() {
+		MessageQueue mq = new CalendarMessageQueue();
+		Message later = createMessage(20000.5, 0);
+		Message never = createMessage(Double.MAX_VALUE, 0);
+		Message first = createMessage(-5, 0);
+		Message second = createMessage(4095.9, 0);
+		Message third = createMessage(4096, 0);
+		mq.putMessage(later);
+		mq.putMessage(never);
+		mq.putMessage(first);
+		mq.putMessage(second);
+		mq.putMessage(third);
+		assertSame(first, mq.getNextMessage());
+		assertSame(second, mq.getNextMessage());
+		// scheduled while the simulation is already in the next block
+		Message fourth = createMessage(4097, 0);
+		mq.putMessage(fourth);
+		assertSame(third, mq.getNextMessage());
+		assertSame(fourth, mq.getNextMessage());
+		assertSame(later, mq.getNextMessage());
+		assertSame(never, mq.getNextMessage());
+		assertTrue(mq.isEmpty());
+	}
+
+	/**
+	 * Simulates a traffic simulation where each handled message schedules a later one, and compares the order to
+	 * {@link MessageQueue}.  All messages have different times, so the order is unique.
+	 */
+	public void testSameOrderAsMessageQueue() {
+		Random random = new Random(4711);
+		MessageQueue expected = new MessageQueue();
+		MessageQueue actual = new CalendarMessageQueue(0.5);
+		List<Message> killed = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			Message m = createMessage(random.nextDouble() * 86400, 0);
+			expected.putMessage(m);
+			actual.putMessage(m);
+		}
+		int processed = 0;
+		while (!expected.isEmpty()) {
+			Message m = expected.getNextMessage();
+			if (m == null) {
+				break;
+			}
+			assertSame(m, actual.getNextMessage());
+			assertEquals(expected.getQueueSize(), actual.getQueueSize());
+			processed++;
+			if (processed < 5000) {
+				Message next = createMessage(m.getMessageArrivalTime() + random.nextDouble() * (random.nextInt(10) == 0 ? 10000 : 60), 0);
+				expected.putMessage(next);
+				actual.putMessage(next);
+				if (random.nextInt(20) == 0) {
+					expected.removeMessage(next);
+					actual.removeMessage(next);
+					killed.add(next);
+				}
+			}
+		}
+		assertNull(actual.getNextMessage());
+		assertTrue(actual.isEmpty());
+		assertTrue(killed.size() > 0);
+		assertEquals(5999 - killed.size(), processed);
+	}
+
+	private static Message createMessage(double time, int priority) {
+		Message m = new DummyMessage();
+		m.setMessageArrivalTime(time);
+		m.setPriority(priority);
+		return m;
+	}
+
+}
@@ -45,6 +45,23 @@ public class TestDESStarter_equilPlans100 extends AbstractJDEQSimTest {
 		super.checkAscendingTimeStamps();
 		super.checkEventsCorrespondToPlans(scenario.getPopulation());
 	}
+
+	@Test
+	public void test_equilPlans100_calendarQueueWithMessagePooling() {
+		Config config = ConfigUtils.loadConfig("test/scenarios/equil/config.xml");
+		JDEQSimConfigGroup jdeqSimConfig = ConfigUtils.addOrGetModule(config, JDEQSimConfigGroup.NAME, JDEQSimConfigGroup.class);
+		jdeqSimConfig.setMessageQueue(JDEQSimConfigGroup.MessageQueueType.calendarQueue);
+		jdeqSimConfig.setMessagePooling(true);
+		MatsimRandom.reset(config.global().getRandomSeed());
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		ScenarioUtils.loadScenario(scenario);
+
+		this.runJDEQSim(scenario);
+
+		assertEquals(scenario.getPopulation().getPersons().size(), super.eventsByPerson.size());
+		super.checkAscendingTimeStamps();
+		super.checkEventsCorrespondToPlans(scenario.getPopulation());
+	}
 	
 	/* 
 	 * This test is turned off, because it cannot pass.
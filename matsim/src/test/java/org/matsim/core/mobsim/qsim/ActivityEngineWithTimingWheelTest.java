@@ -0,0 +1,145 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.PersonStuckEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.QSimConfigGroup.ActivityEndsQueue;
+import org.matsim.core.controler.PrepareForSimUtils;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+
+public class ActivityEngineWithTimingWheelTest {
+
+	/**
+	 * Agents with many identical and some fractional activity end times must leave their activities in the same order
+	 * as with the default activity engine.
+	 */
+	@Test
+	public void testSameEventsAsPriorityQueue() {
+		List<Event> expected = runQSim(ActivityEndsQueue.priorityQueue);
+		List<Event> actual = runQSim(ActivityEndsQueue.timingWheel);
+
+		Assert.assertEquals(expected.size(), actual.size());
+		Set<String> expectedStuck = new HashSet<>();
+		Set<String> actualStuck = new HashSet<>();
+		for (int i = 0; i < expected.size(); i++) {
+			if (expected.get(i) instanceof PersonStuckEvent) {
+				// the order of the stuck events at the end of the simulation is not defined
+				expectedStuck.add(expected.get(i).toString());
+				actualStuck.add(actual.get(i).toString());
+			} else {
+				Assert.assertEquals(expected.get(i).toString(), actual.get(i).toString());
+			}
+		}
+		Assert.assertFalse(expectedStuck.isEmpty());
+		Assert.assertEquals(expectedStuck, actualStuck);
+	}
+
+	private static List<Event> runQSim(ActivityEndsQueue activityEndsQueue) {
+		Config config = ConfigUtils.createConfig();
+		config.qsim().setActivityEndsQueue(activityEndsQueue);
+		config.qsim().setEndTime(30 * 3600);
+		Scenario scenario = ScenarioUtils.createScenario(config);
+
+		Network network = scenario.getNetwork();
+		Node node1 = network.getFactory().createNode(Id.createNodeId(1), new Coord(0, 0));
+		Node node2 = network.getFactory().createNode(Id.createNodeId(2), new Coord(1000, 0));
+		network.addNode(node1);
+		network.addNode(node2);
+		Link link1 = network.getFactory().createLink(Id.createLinkId(1), node1, node2);
+		Link link2 = network.getFactory().createLink(Id.createLinkId(2), node2, node1);
+		network.addLink(link1);
+		network.addLink(link2);
+
+		PopulationFactory pf = scenario.getPopulation().getFactory();
+		for (int i = 0; i < 500; i++) {
+			Person person = pf.createPerson(Id.createPersonId(i));
+			Plan plan = pf.createPlan();
+			Activity home = pf.createActivityFromLinkId("home", link1.getId());
+			// many agents leave at the same time, some of them not at a full second
+			home.setEndTime(6 * 3600 + (i % 17) * 60 + (i % 5 == 0 ? 0.5 : 0.0));
+			plan.addActivity(home);
+			plan.addLeg(createWalkLeg(pf, link1, link2, 300 + (i % 7) * 60));
+			Activity work = pf.createActivityFromLinkId("work", link2.getId());
+			if (i % 3 == 0) {
+				work.setMaximumDuration(8 * 3600 + (i % 11) * 60);
+			} else if (i % 50 == 1) {
+				// ends after the end of the simulation, so the agent gets stuck
+				work.setEndTime(40 * 3600);
+			} else {
+				work.setEndTime(17 * 3600 + (i % 13) * 60);
+			}
+			plan.addActivity(work);
+			plan.addLeg(createWalkLeg(pf, link2, link1, 600));
+			plan.addActivity(pf.createActivityFromLinkId("home", link1.getId()));
+			person.addPlan(plan);
+			scenario.getPopulation().addPerson(person);
+		}
+
+		List<Event> events = new ArrayList<>();
+		EventsManager eventsManager = EventsUtils.createEventsManager();
+		eventsManager.addHandler((BasicEventHandler) events::add);
+
+		PrepareForSimUtils.createDefaultPrepareForSim(scenario).run();
+		new QSimBuilder(config)
+				.useDefaults()
+				.build(scenario, eventsManager)
+				.run();
+		return events;
+	}
+
+	private static Leg createWalkLeg(PopulationFactory pf, Link fromLink, Link toLink, double travelTime) {
+		Leg leg = pf.createLeg(TransportMode.walk);
+		TripStructureUtils.setRoutingMode(leg, TransportMode.walk);
+		Route route = RouteUtils.createGenericRouteImpl(fromLink.getId(), toLink.getId());
+		route.setTravelTime(travelTime);
+		route.setDistance(1000);
+		leg.setRoute(route);
+		leg.setTravelTime(travelTime);
+		return leg;
+	}
+}
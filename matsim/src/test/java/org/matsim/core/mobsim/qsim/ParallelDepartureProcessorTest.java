@@ -0,0 +1,325 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.ActivityEndEvent;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.events.PersonEntersVehicleEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.api.experimental.events.TeleportationArrivalEvent;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.QSimConfigGroup.NetsimEngineScheduling;
+import org.matsim.core.controler.PrepareForSimUtils;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.core.gbl.MatsimRandom;
+import org.matsim.core.mobsim.framework.MobsimDriverAgent;
+import org.matsim.core.mobsim.qsim.agents.AgentFactory;
+import org.matsim.core.mobsim.qsim.agents.DefaultAgentFactory;
+import org.matsim.core.mobsim.qsim.interfaces.MobsimVehicle;
+import org.matsim.core.mobsim.qsim.interfaces.Netsim;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.misc.OptionalTime;
+import org.matsim.facilities.Facility;
+import org.matsim.vehicles.Vehicle;
+
+import com.google.inject.Provides;
+
+public class ParallelDepartureProcessorTest {
+
+	@Test
+	public void testSameEventsAsSequentialDepartures() {
+		List<String> expected = runQSim(false, NetsimEngineScheduling.threadpool);
+		// per agent two activity ends and departures, 267 vehicle entries, 133 + 400 teleportations
+		Assert.assertEquals(2 * 400 + 2 * 400 + 267 + 533, expected.size());
+		Assert.assertEquals(expected, runQSim(true, NetsimEngineScheduling.threadpool));
+		Assert.assertEquals(expected, runQSim(true, NetsimEngineScheduling.workStealing));
+	}
+
+	/**
+	 * Agents which do not declare their activity end thread-safe end their activities on the thread of the QSim.
+	 */
+	@Test
+	public void testActivityEndNotThreadSafe() {
+		Set<Thread> sequentialThreads = ConcurrentHashMap.newKeySet();
+		List<String> expected = runQSim(false, NetsimEngineScheduling.threadpool, sequentialThreads);
+		Assert.assertEquals(Collections.singleton(Thread.currentThread()), sequentialThreads);
+
+		Set<Thread> parallelThreads = ConcurrentHashMap.newKeySet();
+		Assert.assertEquals(expected, runQSim(true, NetsimEngineScheduling.threadpool, parallelThreads));
+		Assert.assertEquals(Collections.singleton(Thread.currentThread()), parallelThreads);
+	}
+
+	private static List<String> runQSim(boolean parallelDepartures, NetsimEngineScheduling scheduling) {
+		return runQSim(parallelDepartures, scheduling, null);
+	}
+
+	/**
+	 * Runs a 10x10 grid where two thirds of the agents drive to the next node in their row and the others walk there.  All
+	 * agents walk back.
+	 *
+	 * @param activityEndThreads if not null, every second agent does not declare its activity end thread-safe, and the
+	 * threads on which these agents end their activities are collected
+	 * @return the events of the departures, which are thrown by the main thread also with multiple threads
+	 */
+	private static List<String> runQSim(boolean parallelDepartures, NetsimEngineScheduling scheduling, Set<Thread> activityEndThreads) {
+		Config config = ConfigUtils.createConfig();
+		config.qsim().setNumberOfThreads(4);
+		config.qsim().setParallelDepartures(parallelDepartures);
+		config.qsim().setNetsimEngineScheduling(scheduling);
+		config.qsim().setEndTime(24 * 3600);
+		Scenario scenario = ScenarioUtils.createScenario(config);
+
+		int size = 10;
+		Network network = scenario.getNetwork();
+		NetworkFactory nf = network.getFactory();
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				network.addNode(nf.createNode(Id.createNodeId(x + "_" + y), new Coord(x * 500, y * 500)));
+			}
+		}
+		for (int x = 0; x + 1 < size; x++) {
+			for (int y = 0; y < size; y++) {
+				addLink(network, x + "_" + y, (x + 1) + "_" + y);
+				addLink(network, (x + 1) + "_" + y, x + "_" + y);
+			}
+		}
+
+		PopulationFactory pf = scenario.getPopulation().getFactory();
+		for (int i = 0; i < 400; i++) {
+			int y = i % size;
+			int x = (i / size) % (size - 1);
+			Id<Link> startLinkId = Id.createLinkId(x + "_" + y + "-" + (x + 1) + "_" + y);
+			Id<Link> endLinkId = Id.createLinkId((x + 1) + "_" + y + "-" + x + "_" + y);
+
+			Person person = pf.createPerson(Id.createPersonId(i));
+			Plan plan = pf.createPlan();
+			Activity home = pf.createActivityFromLinkId("h", startLinkId);
+			home.setEndTime(6 * 3600 + i % 37);
+			plan.addActivity(home);
+			if (i % 3 == 0) {
+				plan.addLeg(createWalkLeg(pf, startLinkId, endLinkId));
+			} else {
+				Leg leg = pf.createLeg(TransportMode.car);
+				TripStructureUtils.setRoutingMode(leg, TransportMode.car);
+				leg.setRoute(RouteUtils.createLinkNetworkRouteImpl(startLinkId, endLinkId));
+				plan.addLeg(leg);
+			}
+			Activity work = pf.createActivityFromLinkId("w", endLinkId);
+			work.setEndTime(16 * 3600 + i % 11);
+			plan.addActivity(work);
+			plan.addLeg(createWalkLeg(pf, endLinkId, startLinkId));
+			plan.addActivity(pf.createActivityFromLinkId("h", startLinkId));
+			person.addPlan(plan);
+			scenario.getPopulation().addPerson(person);
+		}
+
+		List<String> departureEvents = new ArrayList<>();
+		EventsManager events = EventsUtils.createEventsManager();
+		events.addHandler((BasicEventHandler) (Event event) -> {
+			if (event instanceof ActivityEndEvent || event instanceof PersonDepartureEvent || event instanceof PersonEntersVehicleEvent
+					|| event instanceof TeleportationArrivalEvent) {
+				synchronized (departureEvents) {
+					departureEvents.add(event.toString());
+				}
+			}
+		});
+
+		PrepareForSimUtils.createDefaultPrepareForSim(scenario).run();
+		MatsimRandom.reset(config.global().getRandomSeed());
+		QSimBuilder builder = new QSimBuilder(config).useDefaults();
+		if (activityEndThreads != null) {
+			builder.addOverridingQSimModule(new AbstractQSimModule() {
+				@Override
+				protected void configureQSim() {
+				}
+
+				@Provides
+				AgentFactory provideAgentFactory(Netsim simulation) {
+					AgentFactory delegate = new DefaultAgentFactory(simulation);
+					return person -> {
+						MobsimDriverAgent agent = (MobsimDriverAgent) delegate.createMobsimAgentFromPerson(person);
+						return person.getId().index() % 2 == 0 ? new NotThreadSafeAgent(agent, activityEndThreads) : agent;
+					};
+				}
+			});
+		}
+		builder.build(scenario, events).run();
+		return departureEvents;
+	}
+
+	private static final class NotThreadSafeAgent implements MobsimDriverAgent {
+		private final MobsimDriverAgent delegate;
+		private final Set<Thread> activityEndThreads;
+
+		NotThreadSafeAgent(MobsimDriverAgent delegate, Set<Thread> activityEndThreads) {
+			this.delegate = delegate;
+			this.activityEndThreads = activityEndThreads;
+		}
+
+		@Override
+		public void endActivityAndComputeNextState(double now) {
+			this.activityEndThreads.add(Thread.currentThread());
+			this.delegate.endActivityAndComputeNextState(now);
+		}
+
+		@Override
+		public Id<Person> getId() {
+			return this.delegate.getId();
+		}
+
+		@Override
+		public State getState() {
+			return this.delegate.getState();
+		}
+
+		@Override
+		public double getActivityEndTime() {
+			return this.delegate.getActivityEndTime();
+		}
+
+		@Override
+		public void endLegAndComputeNextState(double now) {
+			this.delegate.endLegAndComputeNextState(now);
+		}
+
+		@Override
+		public void setStateToAbort(double now) {
+			this.delegate.setStateToAbort(now);
+		}
+
+		@Override
+		public OptionalTime getExpectedTravelTime() {
+			return this.delegate.getExpectedTravelTime();
+		}
+
+		@Override
+		public Double getExpectedTravelDistance() {
+			return this.delegate.getExpectedTravelDistance();
+		}
+
+		@Override
+		public void notifyArrivalOnLinkByNonNetworkMode(Id<Link> linkId) {
+			this.delegate.notifyArrivalOnLinkByNonNetworkMode(linkId);
+		}
+
+		@Override
+		public Id<Link> getCurrentLinkId() {
+			return this.delegate.getCurrentLinkId();
+		}
+
+		@Override
+		public Id<Link> getDestinationLinkId() {
+			return this.delegate.getDestinationLinkId();
+		}
+
+		@Override
+		public String getMode() {
+			return this.delegate.getMode();
+		}
+
+		@Override
+		public Facility getCurrentFacility() {
+			return this.delegate.getCurrentFacility();
+		}
+
+		@Override
+		public Facility getDestinationFacility() {
+			return this.delegate.getDestinationFacility();
+		}
+
+		@Override
+		public Id<Link> chooseNextLinkId() {
+			return this.delegate.chooseNextLinkId();
+		}
+
+		@Override
+		public void notifyMoveOverNode(Id<Link> newLinkId) {
+			this.delegate.notifyMoveOverNode(newLinkId);
+		}
+
+		@Override
+		public boolean isWantingToArriveOnCurrentLink() {
+			return this.delegate.isWantingToArriveOnCurrentLink();
+		}
+
+		@Override
+		public void setVehicle(MobsimVehicle veh) {
+			this.delegate.setVehicle(veh);
+		}
+
+		@Override
+		public MobsimVehicle getVehicle() {
+			return this.delegate.getVehicle();
+		}
+
+		@Override
+		public Id<Vehicle> getPlannedVehicleId() {
+			return this.delegate.getPlannedVehicleId();
+		}
+	}
+
+	private static Leg createWalkLeg(PopulationFactory pf, Id<Link> startLinkId, Id<Link> endLinkId) {
+		Leg leg = pf.createLeg(TransportMode.walk);
+		TripStructureUtils.setRoutingMode(leg, TransportMode.walk);
+		Route route = RouteUtils.createGenericRouteImpl(startLinkId, endLinkId);
+		route.setTravelTime(600);
+		route.setDistance(500);
+		leg.setRoute(route);
+		return leg;
+	}
+
+	private static void addLink(Network network, String fromNodeId, String toNodeId) {
+		Node fromNode = network.getNodes().get(Id.createNodeId(fromNodeId));
+		Node toNode = network.getNodes().get(Id.createNodeId(toNodeId));
+		Link link = network.getFactory().createLink(Id.createLinkId(fromNodeId + "-" + toNodeId), fromNode, toNode);
+		link.setLength(500);
+		link.setFreespeed(10);
+		link.setCapacity(300);
+		link.setNumberOfLanes(1);
+		network.addLink(link);
+	}
+}
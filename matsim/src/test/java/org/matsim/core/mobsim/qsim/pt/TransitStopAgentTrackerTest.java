@@ -29,9 +29,13 @@ import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.events.EventsUtils;
 import org.matsim.pt.fakes.FakeAgent;
 import org.matsim.pt.transitSchedule.TransitScheduleFactoryImpl;
+import org.matsim.pt.transitSchedule.api.TransitRouteStop;
 import org.matsim.pt.transitSchedule.api.TransitScheduleFactory;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 
+import java.util.Arrays;
+import java.util.List;
+
 
 /**
  * @author mrieser
@@ -114,4 +118,112 @@ public class TransitStopAgentTrackerTest extends TestCase {
 			log.info("catched expected exception.", e);
 		}
 	}
+
+	public void testGetAgentsAtFacilityByDestination() {
+		EventsManager events = EventsUtils.createEventsManager();
+		TransitStopAgentTracker tracker = new TransitStopAgentTracker(events);
+		TransitScheduleFactory builder = new TransitScheduleFactoryImpl();
+		TransitStopFacility stop1 = builder.createTransitStopFacility(Id.create(1, TransitStopFacility.class), new Coord((double) 2, (double) 3), false);
+		TransitStopFacility stop2 = builder.createTransitStopFacility(Id.create(2, TransitStopFacility.class), new Coord((double) 3, (double) 4), false);
+		TransitStopFacility stop3 = builder.createTransitStopFacility(Id.create(3, TransitStopFacility.class), new Coord((double) 4, (double) 5), false);
+		PTPassengerAgent agent1 = new DestinationAgent(stop2);
+		PTPassengerAgent agent2 = new DestinationAgent(stop3);
+		PTPassengerAgent agent3 = new FakeAgent(null, null);
+		PTPassengerAgent agent4 = new DestinationAgent(stop2);
+
+		tracker.addAgentToStop(10, agent1, stop1.getId());
+		tracker.addAgentToStop(11, agent2, stop1.getId());
+		tracker.addAgentToStop(12, agent3, stop1.getId());
+		tracker.addAgentToStop(13, agent4, stop1.getId());
+
+		TransitRouteStop routeStop2 = builder.createTransitRouteStop(stop2, 60, 60);
+		TransitRouteStop routeStop3 = builder.createTransitRouteStop(stop3, 120, 120);
+
+		// agents without destination are always candidates, all candidates are in the order of arrival
+		assertEquals(Arrays.asList(agent1, agent3, agent4), tracker.getAgentsAtFacility(stop1.getId(), Arrays.asList(routeStop2)));
+		assertEquals(Arrays.asList(agent2, agent3), tracker.getAgentsAtFacility(stop1.getId(), Arrays.asList(routeStop3)));
+		List<TransitRouteStop> loop = Arrays.asList(routeStop3, routeStop2, routeStop3);
+		assertEquals(Arrays.asList(agent1, agent2, agent3, agent4), tracker.getAgentsAtFacility(stop1.getId(), loop));
+		assertTrue(tracker.getAgentsAtFacility(stop2.getId(), loop).isEmpty());
+
+		tracker.removeAgentFromStop(agent1, stop1.getId());
+		tracker.removeAgentFromStop(agent3, stop1.getId());
+		assertEquals(Arrays.asList(agent4), tracker.getAgentsAtFacility(stop1.getId(), Arrays.asList(routeStop2)));
+		assertEquals(Arrays.asList(agent2, agent4), tracker.getAgentsAtFacility(stop1.getId()));
+		assertEquals(Arrays.asList(agent2, agent4), tracker.getAgentsAtStop().get(stop1.getId()));
+
+		try {
+			tracker.getAgentsAtFacility(stop1.getId(), loop).remove(0);
+			fail("missing exception, list should be immutable.");
+		}
+		catch (UnsupportedOperationException e) {
+			log.info("catched expected exception.", e);
+		}
+	}
+
+	public void testUpdateDesiredDestination() {
+		EventsManager events = EventsUtils.createEventsManager();
+		TransitStopAgentTracker tracker = new TransitStopAgentTracker(events);
+		TransitScheduleFactory builder = new TransitScheduleFactoryImpl();
+		TransitStopFacility stop1 = builder.createTransitStopFacility(Id.create(1, TransitStopFacility.class), new Coord((double) 2, (double) 3), false);
+		TransitStopFacility stop2 = builder.createTransitStopFacility(Id.create(2, TransitStopFacility.class), new Coord((double) 3, (double) 4), false);
+		TransitStopFacility stop3 = builder.createTransitStopFacility(Id.create(3, TransitStopFacility.class), new Coord((double) 4, (double) 5), false);
+		DestinationAgent agent1 = new DestinationAgent(stop2);
+		DestinationAgent agent2 = new DestinationAgent(stop3);
+		tracker.addAgentToStop(10, agent1, stop1.getId());
+		tracker.addAgentToStop(11, agent2, stop1.getId());
+
+		TransitRouteStop routeStop2 = builder.createTransitRouteStop(stop2, 60, 60);
+		TransitRouteStop routeStop3 = builder.createTransitRouteStop(stop3, 120, 120);
+
+		agent1.destinationStop = stop3;
+		tracker.updateDesiredDestination(agent1, stop1.getId());
+		// the agent keeps its place in the order of arrival
+		assertEquals(Arrays.asList(agent1, agent2), tracker.getAgentsAtFacility(stop1.getId(), Arrays.asList(routeStop3)));
+		assertTrue(tracker.getAgentsAtFacility(stop1.getId(), Arrays.asList(routeStop2)).isEmpty());
+	}
+
+	public void testRemoveAgentsFromStop() {
+		EventsManager events = EventsUtils.createEventsManager();
+		TransitStopAgentTracker tracker = new TransitStopAgentTracker(events);
+		TransitScheduleFactory builder = new TransitScheduleFactoryImpl();
+		TransitStopFacility stop1 = builder.createTransitStopFacility(Id.create(1, TransitStopFacility.class), new Coord((double) 2, (double) 3), false);
+		TransitStopFacility stop2 = builder.createTransitStopFacility(Id.create(2, TransitStopFacility.class), new Coord((double) 3, (double) 4), false);
+		PTPassengerAgent agent1 = new DestinationAgent(stop2);
+		PTPassengerAgent agent2 = new DestinationAgent(stop2);
+		PTPassengerAgent agent3 = new FakeAgent(null, null);
+
+		tracker.addAgentToStop(10, agent1, stop1.getId());
+		// the agents at a stop are a view, like before
+		List<PTPassengerAgent> agentsAtStop1 = tracker.getAgentsAtFacility(stop1.getId());
+		tracker.addAgentToStop(11, agent2, stop1.getId());
+		tracker.addAgentToStop(12, agent3, stop1.getId());
+		assertEquals(Arrays.asList(agent1, agent2, agent3), agentsAtStop1);
+
+		tracker.removeAgentsFromStop(Arrays.asList(agent1, agent3), stop1.getId());
+		assertEquals(Arrays.asList(agent2), agentsAtStop1);
+		TransitRouteStop routeStop2 = builder.createTransitRouteStop(stop2, 60, 60);
+		assertEquals(Arrays.asList(agent2), tracker.getAgentsAtFacility(stop1.getId(), Arrays.asList(routeStop2)));
+		tracker.removeAgentsFromStop(Arrays.asList(agent1), stop1.getId()); // cannot be removed
+		assertEquals(Arrays.asList(agent2), agentsAtStop1);
+	}
+
+	private static class DestinationAgent extends FakeAgent {
+		private TransitStopFacility destinationStop;
+
+		DestinationAgent(final TransitStopFacility destinationStop) {
+			super(null, destinationStop);
+			this.destinationStop = destinationStop;
+		}
+
+		@Override
+		public Id<TransitStopFacility> getDesiredDestinationStopId() {
+			return this.destinationStop.getId();
+		}
+
+		@Override
+		public boolean isBoardingOnlyToDesiredDestination() {
+			return true;
+		}
+	}
 }
@@ -0,0 +1,218 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim.qnetsimengine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.IdMap;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.PersonArrivalEvent;
+import org.matsim.api.core.v01.events.handler.PersonArrivalEventHandler;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.QSimConfigGroup.NodePartitioning;
+import org.matsim.core.controler.PrepareForSimUtils;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.mobsim.qsim.QSimBuilder;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+
+public class QNetsimEnginePartitionerTest {
+
+	@Test
+	public void testRoundRobin() {
+		List<Node> nodes = createGridNodes(5);
+		IdMap<Node, Integer> partition = new RoundRobinPartitioner().partition(nodes, 3);
+		Assert.assertEquals(nodes.size(), partition.size());
+		for (int i = 0; i < nodes.size(); i++) {
+			Assert.assertEquals(i % 3, partition.get(nodes.get(i).getId()).intValue());
+		}
+	}
+
+	@Test
+	public void testBisection() {
+		List<Node> nodes = createGridNodes(10);
+		IdMap<Node, Integer> partition = new BisectionPartitioner(false).partition(nodes, 4);
+		Assert.assertEquals(nodes.size(), partition.size());
+
+		int[] nodesPerRunner = new int[4];
+		for (Node node : nodes) {
+			nodesPerRunner[partition.get(node.getId())]++;
+		}
+		for (int count : nodesPerRunner) {
+			Assert.assertEquals(25, count);
+		}
+
+		// the four quadrants of the grid must each be handled by a single runner
+		for (Node node : nodes) {
+			Node corner = findNode(nodes, node.getCoord().getX() < 5 ? 0 : 9, node.getCoord().getY() < 5 ? 0 : 9);
+			Assert.assertEquals(partition.get(corner.getId()), partition.get(node.getId()));
+		}
+	}
+
+	@Test
+	public void testBisectionWithUnevenNumberOfRunners() {
+		List<Node> nodes = createGridNodes(9);
+		IdMap<Node, Integer> partition = new BisectionPartitioner(false).partition(nodes, 3);
+
+		int[] nodesPerRunner = new int[3];
+		for (Node node : nodes) {
+			nodesPerRunner[partition.get(node.getId())]++;
+		}
+		for (int count : nodesPerRunner) {
+			Assert.assertEquals(27, count);
+		}
+	}
+
+	@Test
+	public void testLoadBalancedBisection() {
+		List<Node> nodes = createGridNodes(10);
+		BisectionPartitioner partitioner = new BisectionPartitioner(true);
+		Assert.assertTrue(partitioner.isMeasuringWork());
+
+		// all the work happens in the two left-most columns of the grid
+		IdMap<Node, Long> work = new IdMap<>(Node.class);
+		for (Node node : nodes) {
+			work.put(node.getId(), node.getCoord().getX() < 2 ? 100L : 0L);
+		}
+		partitioner.notifyMeasuredWork(work);
+		IdMap<Node, Integer> partition = partitioner.partition(nodes, 2);
+
+		int[] nodesPerRunner = new int[2];
+		double[] workPerRunner = new double[2];
+		for (Node node : nodes) {
+			int runner = partition.get(node.getId());
+			nodesPerRunner[runner]++;
+			workPerRunner[runner] += 1 + work.get(node.getId());
+		}
+		Assert.assertTrue("the busy region should be handled by fewer nodes", nodesPerRunner[0] < nodesPerRunner[1]);
+		Assert.assertEquals(1.0, workPerRunner[0] / workPerRunner[1], 0.1);
+	}
+
+	@Test
+	public void testSameResultsWithAllPartitionings() {
+		List<Double> expected = runQSim(NodePartitioning.roundRobin);
+		Assert.assertFalse(expected.isEmpty());
+		Assert.assertEquals(expected, runQSim(NodePartitioning.bisection));
+		Assert.assertEquals(expected, runQSim(NodePartitioning.loadBalancedBisection));
+	}
+
+	private static List<Double> runQSim(NodePartitioning nodePartitioning) {
+		Config config = ConfigUtils.createConfig();
+		config.qsim().setNumberOfThreads(4);
+		config.qsim().setNodePartitioning(nodePartitioning);
+		config.qsim().setEndTime(24 * 3600);
+		Scenario scenario = ScenarioUtils.createScenario(config);
+
+		// a ring of 8 nodes, every agent drives around it once
+		Network network = scenario.getNetwork();
+		NetworkFactory nf = network.getFactory();
+		int nOfNodes = 8;
+		for (int i = 0; i < nOfNodes; i++) {
+			double angle = 2 * Math.PI * i / nOfNodes;
+			network.addNode(nf.createNode(Id.createNodeId(i), new Coord(1000 * Math.cos(angle), 1000 * Math.sin(angle))));
+		}
+		List<Id<Link>> linkIds = new ArrayList<>();
+		for (int i = 0; i < nOfNodes; i++) {
+			Link link = nf.createLink(Id.createLinkId(i), network.getNodes().get(Id.createNodeId(i)), network.getNodes().get(Id.createNodeId((i + 1) % nOfNodes)));
+			link.setLength(800);
+			link.setFreespeed(10);
+			link.setCapacity(600);
+			link.setNumberOfLanes(1);
+			network.addLink(link);
+			linkIds.add(link.getId());
+		}
+
+		PopulationFactory pf = scenario.getPopulation().getFactory();
+		for (int i = 0; i < 200; i++) {
+			Person person = pf.createPerson(Id.createPersonId(i));
+			Plan plan = pf.createPlan();
+			int startLink = i % nOfNodes;
+			Activity home = pf.createActivityFromLinkId("h", linkIds.get(startLink));
+			home.setEndTime(6 * 3600 + i * 5);
+			plan.addActivity(home);
+			Leg leg = pf.createLeg(TransportMode.car);
+			TripStructureUtils.setRoutingMode(leg, TransportMode.car);
+			List<Id<Link>> routeLinkIds = new ArrayList<>();
+			for (int j = 1; j < nOfNodes; j++) {
+				routeLinkIds.add(linkIds.get((startLink + j) % nOfNodes));
+			}
+			NetworkRoute route = RouteUtils.createLinkNetworkRouteImpl(linkIds.get(startLink), routeLinkIds, linkIds.get(startLink));
+			leg.setRoute(route);
+			plan.addLeg(leg);
+			plan.addActivity(pf.createActivityFromLinkId("h", linkIds.get(startLink)));
+			person.addPlan(plan);
+			scenario.getPopulation().addPerson(person);
+		}
+
+		List<Double> arrivalTimes = Collections.synchronizedList(new ArrayList<>());
+		EventsManager events = EventsUtils.createEventsManager();
+		events.addHandler((PersonArrivalEventHandler) (PersonArrivalEvent event) -> arrivalTimes.add(event.getTime()));
+
+		PrepareForSimUtils.createDefaultPrepareForSim(scenario).run();
+		new QSimBuilder(config)
+				.useDefaults()
+				.build(scenario, events)
+				.run();
+
+		Collections.sort(arrivalTimes);
+		return arrivalTimes;
+	}
+
+	private static List<Node> createGridNodes(int size) {
+		List<Node> nodes = new ArrayList<>();
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				nodes.add(NetworkUtils.createNode(Id.createNodeId(x + "_" + y), new Coord(x, y)));
+			}
+		}
+		return nodes;
+	}
+
+	private static Node findNode(List<Node> nodes, double x, double y) {
+		for (Node node : nodes) {
+			if (node.getCoord().getX() == x && node.getCoord().getY() == y) {
+				return node;
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,173 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim.qnetsimengine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.PersonArrivalEvent;
+import org.matsim.api.core.v01.events.handler.PersonArrivalEventHandler;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.QSimConfigGroup.NetsimEngineScheduling;
+import org.matsim.core.config.groups.QSimConfigGroup.NodePartitioning;
+import org.matsim.core.controler.PrepareForSimUtils;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.gbl.MatsimRandom;
+import org.matsim.core.mobsim.qsim.QSimBuilder;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+
+public class QNetsimEngineWithWorkStealingTest {
+
+	@Test
+	public void testSameResultsAsThreadpool() {
+		Map<Id<Person>, Double> expected = runQSim(NetsimEngineScheduling.threadpool, 4, NodePartitioning.roundRobin);
+		Assert.assertEquals(400, expected.size());
+		Assert.assertEquals(expected, runQSim(NetsimEngineScheduling.workStealing, 4, NodePartitioning.roundRobin));
+		Assert.assertEquals(expected, runQSim(NetsimEngineScheduling.workStealing, 2, NodePartitioning.roundRobin));
+		Assert.assertEquals(expected, runQSim(NetsimEngineScheduling.workStealing, 3, NodePartitioning.bisection));
+	}
+
+	/**
+	 * With a single thread, the nodes share one random number generator, so the order in which the nodes are moved
+	 * must be the same as in the {@link QNetsimEngineWithThreadpool}.
+	 */
+	@Test
+	public void testSameResultsAsThreadpoolWithSingleThread() {
+		Map<Id<Person>, Double> expected = runQSim(NetsimEngineScheduling.threadpool, 1, NodePartitioning.roundRobin);
+		Assert.assertEquals(400, expected.size());
+		Assert.assertEquals(expected, runQSim(NetsimEngineScheduling.workStealing, 1, NodePartitioning.roundRobin));
+	}
+
+	/**
+	 * Runs a 10x10 grid with congestion, where every agent drives along a row and then along a column.
+	 *
+	 * @return the arrival time of each agent
+	 */
+	private static Map<Id<Person>, Double> runQSim(NetsimEngineScheduling scheduling, int numberOfThreads, NodePartitioning nodePartitioning) {
+		Config config = ConfigUtils.createConfig();
+		config.qsim().setNetsimEngineScheduling(scheduling);
+		config.qsim().setNumberOfThreads(numberOfThreads);
+		config.qsim().setNodePartitioning(nodePartitioning);
+		config.qsim().setEndTime(24 * 3600);
+		Scenario scenario = ScenarioUtils.createScenario(config);
+
+		int size = 10;
+		Network network = scenario.getNetwork();
+		NetworkFactory nf = network.getFactory();
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				network.addNode(nf.createNode(Id.createNodeId(x + "_" + y), new Coord(x * 500, y * 500)));
+			}
+		}
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				if (x + 1 < size) {
+					addLinks(network, x + "_" + y, (x + 1) + "_" + y);
+				}
+				if (y + 1 < size) {
+					addLinks(network, x + "_" + y, x + "_" + (y + 1));
+				}
+			}
+		}
+
+		PopulationFactory pf = scenario.getPopulation().getFactory();
+		for (int i = 0; i < 400; i++) {
+			int y = i % size;
+			int x = (i / size) % size;
+			// from the west border along row y to column x, then north or south along column x
+			List<Id<Link>> linkIds = new ArrayList<>();
+			for (int j = 0; j < x; j++) {
+				linkIds.add(Id.createLinkId(j + "_" + y + "-" + (j + 1) + "_" + y));
+			}
+			int targetY = y < size / 2 ? size - 1 : 0;
+			int step = targetY > y ? 1 : -1;
+			for (int j = y; j != targetY; j += step) {
+				linkIds.add(Id.createLinkId(x + "_" + j + "-" + x + "_" + (j + step)));
+			}
+			Id<Link> startLinkId = linkIds.remove(0);
+			Id<Link> endLinkId = linkIds.remove(linkIds.size() - 1);
+
+			Person person = pf.createPerson(Id.createPersonId(i));
+			Plan plan = pf.createPlan();
+			Activity home = pf.createActivityFromLinkId("h", startLinkId);
+			home.setEndTime(6 * 3600 + i % 37);
+			plan.addActivity(home);
+			Leg leg = pf.createLeg(TransportMode.car);
+			TripStructureUtils.setRoutingMode(leg, TransportMode.car);
+			NetworkRoute route = RouteUtils.createLinkNetworkRouteImpl(startLinkId, linkIds, endLinkId);
+			leg.setRoute(route);
+			plan.addLeg(leg);
+			plan.addActivity(pf.createActivityFromLinkId("w", endLinkId));
+			person.addPlan(plan);
+			scenario.getPopulation().addPerson(person);
+		}
+
+		Map<Id<Person>, Double> arrivalTimes = new ConcurrentHashMap<>();
+		EventsManager events = EventsUtils.createEventsManager();
+		events.addHandler((PersonArrivalEventHandler) (PersonArrivalEvent event) -> arrivalTimes.put(event.getPersonId(), event.getTime()));
+
+		PrepareForSimUtils.createDefaultPrepareForSim(scenario).run();
+		// the nodes draw their random numbers from local instances
+		MatsimRandom.reset(config.global().getRandomSeed());
+		new QSimBuilder(config)
+				.useDefaults()
+				.build(scenario, events)
+				.run();
+		return arrivalTimes;
+	}
+
+	private static void addLinks(Network network, String node1, String node2) {
+		Node n1 = network.getNodes().get(Id.createNodeId(node1));
+		Node n2 = network.getNodes().get(Id.createNodeId(node2));
+		addLink(network, n1, n2);
+		addLink(network, n2, n1);
+	}
+
+	private static void addLink(Network network, Node fromNode, Node toNode) {
+		Link link = network.getFactory().createLink(Id.createLinkId(fromNode.getId() + "-" + toNode.getId()), fromNode, toNode);
+		link.setLength(500);
+		link.setFreespeed(10);
+		link.setCapacity(300);
+		link.setNumberOfLanes(1);
+		network.addLink(link);
+	}
+}
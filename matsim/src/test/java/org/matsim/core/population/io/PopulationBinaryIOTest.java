@@ -0,0 +1,199 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population.io;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.PlansConfigGroup;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.vehicles.Vehicle;
+
+public class PopulationBinaryIOTest {
+
+	@Rule
+	public final MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testWriteAndRead() {
+		Population population = createPopulation(2 * PopulationWriterBinary.PERSONS_PER_CHUNK + 10);
+		String file = this.utils.getOutputDirectory() + "/population.bin";
+		new PopulationWriter(population).writeBinary(file, 3);
+
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		new PopulationReader(scenario).parseBinary(IOUtils.getFileUrl(file), 3);
+		Population readPopulation = scenario.getPopulation();
+
+		Assert.assertEquals(new ArrayList<>(population.getPersons().keySet()), new ArrayList<>(readPopulation.getPersons().keySet()));
+		Assert.assertEquals(toXml(population), toXml(readPopulation));
+
+		Person person = readPopulation.getPersons().get(Id.createPersonId("p5"));
+		Assert.assertEquals(5, person.getAttributes().getAttribute("age"));
+		Assert.assertEquals(5L, person.getAttributes().getAttribute("long"));
+		Assert.assertEquals(new Coord(5, 1), person.getAttributes().getAttribute("home"));
+		Assert.assertEquals(Boolean.TRUE, person.getAttributes().getAttribute("odd"));
+		Assert.assertEquals(2.5f, person.getAttributes().getAttribute("float"));
+		Assert.assertEquals(25.0, person.getPlans().get(0).getScore(), 0.0);
+		Assert.assertNull(person.getPlans().get(1).getScore());
+		Assert.assertEquals(person.getPlans().get(1), person.getSelectedPlan());
+
+		Leg carLeg = (Leg) person.getPlans().get(0).getPlanElements().get(1);
+		NetworkRoute route = (NetworkRoute) carLeg.getRoute();
+		Assert.assertEquals(Arrays.asList(Id.createLinkId("2"), Id.createLinkId("3")), route.getLinkIds());
+		Assert.assertEquals(42.0, route.getTravelCost(), 0.0);
+		Assert.assertEquals(Id.create("v5", Vehicle.class), route.getVehicleId());
+	}
+
+	@Test
+	public void testLoadScenario() {
+		Population population = createPopulation(10);
+		String file = this.utils.getOutputDirectory() + "/population.bin";
+		new PopulationWriter(population).writeBinary(file);
+
+		Config config = ConfigUtils.createConfig();
+		config.plans().setInputFile(file);
+		config.plans().setNetworkRouteType(PlansConfigGroup.NetworkRouteType.IndexedNetworkRoute);
+		Scenario scenario = ScenarioUtils.loadScenario(config);
+		// the scenario loader adds the coordinate system of the scenario
+		scenario.getPopulation().getAttributes().removeAttribute("coordinateReferenceSystem");
+
+		Assert.assertEquals(toXml(population), toXml(scenario.getPopulation()));
+		Leg carLeg = (Leg) scenario.getPopulation().getPersons().get(Id.createPersonId("p3")).getPlans().get(0).getPlanElements().get(1);
+		Assert.assertEquals("the route should be created by the configured route factory",
+				"IndexedNetworkRouteImpl", carLeg.getRoute().getClass().getSimpleName());
+	}
+
+	@Test
+	public void testTransformedCoordWithoutZ() {
+		Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+		PopulationFactory pf = population.getFactory();
+		Person person = pf.createPerson(Id.createPersonId("p"));
+		Plan plan = pf.createPlan();
+		Activity home = pf.createActivityFromCoord("home", new Coord(1, 2, 3));
+		home.setEndTime(8 * 3600);
+		plan.addActivity(home);
+		plan.addLeg(pf.createLeg(TransportMode.walk));
+		plan.addActivity(pf.createActivityFromCoord("work", new Coord(4, 5)));
+		person.addPlan(plan);
+		population.addPerson(person);
+
+		// the transformation drops the z coordinate, the flags must describe the written coord
+		String file = this.utils.getOutputDirectory() + "/population.bin";
+		new PopulationWriter(coord -> new Coord(coord.getX() + 10, coord.getY()), population).writeBinary(file);
+
+		Population readPopulation = PopulationUtils.readPopulation(file);
+		List<PlanElement> elements = readPopulation.getPersons().get(Id.createPersonId("p")).getSelectedPlan().getPlanElements();
+		Assert.assertEquals(new Coord(11, 2), ((Activity) elements.get(0)).getCoord());
+		Assert.assertFalse(((Activity) elements.get(0)).getCoord().hasZ());
+		Assert.assertEquals("work", ((Activity) elements.get(2)).getType());
+		Assert.assertEquals(new Coord(14, 5), ((Activity) elements.get(2)).getCoord());
+	}
+
+	private static String toXml(Population population) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new PopulationWriter(population).writeV6(out);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static Population createPopulation(int persons) {
+		Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+		population.setName("binary test population");
+		population.getAttributes().putAttribute("source", "test");
+		PopulationFactory pf = population.getFactory();
+		// not sorted, to check that the order of the persons is kept
+		for (int i = persons - 1; i >= 0; i--) {
+			Person person = pf.createPerson(Id.createPersonId("p" + i));
+			person.getAttributes().putAttribute("age", i);
+			person.getAttributes().putAttribute("long", (long) i);
+			person.getAttributes().putAttribute("home", new Coord(i, 1));
+			person.getAttributes().putAttribute("odd", i % 2 == 1);
+			person.getAttributes().putAttribute("float", i / 2.0f);
+
+			Plan plan = pf.createPlan();
+			plan.setScore(i * i * 1.0);
+			plan.setType("with car");
+			plan.getAttributes().putAttribute("generation", 3);
+			Activity home = pf.createActivityFromLinkId("home", Id.createLinkId("1"));
+			home.setCoord(new Coord(i, 0));
+			home.setEndTime(8 * 3600 + i);
+			plan.addActivity(home);
+			Leg car = pf.createLeg(TransportMode.car);
+			car.setDepartureTime(8 * 3600 + i);
+			car.setTravelTime(600);
+			NetworkRoute route = pf.getRouteFactories().createRoute(NetworkRoute.class, Id.createLinkId("1"), Id.createLinkId("4"));
+			route.setLinkIds(Id.createLinkId("1"), Arrays.asList(Id.createLinkId("2"), Id.createLinkId("3")), Id.createLinkId("4"));
+			route.setTravelTime(590);
+			route.setDistance(1234.5);
+			route.setTravelCost(42.0);
+			route.setVehicleId(Id.create("v" + i, Vehicle.class));
+			car.setRoute(route);
+			plan.addLeg(car);
+			Activity work = pf.createActivityFromCoord("work", new Coord(100, 200, 10));
+			work.setFacilityId(Id.create("f" + i, ActivityFacility.class));
+			work.setStartTime(9 * 3600);
+			work.setMaximumDuration(8 * 3600);
+			work.getAttributes().putAttribute("purpose", "earning money");
+			plan.addActivity(work);
+			person.addPlan(plan);
+
+			Plan walkPlan = pf.createPlan();
+			walkPlan.addActivity(pf.createActivityFromLinkId("home", Id.createLinkId("1")));
+			Leg walk = pf.createLeg(TransportMode.walk);
+			walk.getAttributes().putAttribute("routingMode", TransportMode.walk);
+			Route genericRoute = pf.getRouteFactories().createRoute(Route.class, Id.createLinkId("1"), Id.<Link>createLinkId("4"));
+			genericRoute.setDistance(800);
+			genericRoute.setRouteDescription("along the river");
+			walk.setRoute(genericRoute);
+			walkPlan.addLeg(walk);
+			walkPlan.addActivity(pf.createActivityFromLinkId("work", Id.createLinkId("4")));
+			person.addPlan(walkPlan);
+			person.setSelectedPlan(i % 2 == 1 ? walkPlan : plan);
+
+			population.addPerson(person);
+		}
+		return population;
+	}
+}
@@ -0,0 +1,195 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.router;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.router.costcalculators.FreespeedTravelTimeAndDisutility;
+import org.matsim.core.router.costcalculators.RandomizingTimeDistanceTravelDisutilityFactory;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.LeastCostPathCalculator.Path;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+
+public class ContractionHierarchiesTest extends AbstractLeastCostPathCalculatorTest {
+
+	@Override
+	protected LeastCostPathCalculator getLeastCostPathCalculator(final Network network) {
+		FreespeedTravelTimeAndDisutility travelTimeCostCalculator = new FreespeedTravelTimeAndDisutility(new PlanCalcScoreConfigGroup());
+		return new ContractionHierarchiesFactory().createPathCalculator(network, travelTimeCostCalculator, travelTimeCostCalculator);
+	}
+
+	public void testSameCostsAsDijkstra() {
+		Network network = createRandomGrid(30, 20, new Random(4711));
+		FreespeedTravelTimeAndDisutility travelTimeCostCalculator = new FreespeedTravelTimeAndDisutility(new PlanCalcScoreConfigGroup());
+		LeastCostPathCalculator dijkstra = new Dijkstra(network, travelTimeCostCalculator, travelTimeCostCalculator);
+		LeastCostPathCalculator ch = new ContractionHierarchiesFactory().createPathCalculator(network, travelTimeCostCalculator, travelTimeCostCalculator);
+		assertSameCosts(network, dijkstra, ch, 8 * 3600);
+	}
+
+	public void testCustomizationPerIteration() {
+		Network network = createRandomGrid(15, 15, new Random(42));
+		ContractionHierarchiesFactory factory = new ContractionHierarchiesFactory();
+		ScaledTravelTime travelTime = new ScaledTravelTime();
+		LeastCostPathCalculator ch = factory.createPathCalculator(network, travelTime, travelTime);
+		LeastCostPathCalculator dijkstra = new Dijkstra(network, travelTime, travelTime);
+		assertSameCosts(network, dijkstra, ch, 8 * 3600);
+
+		// links in the morning get congested, the contraction is re-used with the new costs
+		travelTime.congestedUntil = 12 * 3600;
+		factory.resetCustomizations();
+		assertSameCosts(network, dijkstra, ch, 8 * 3600);
+		assertSameCosts(network, dijkstra, ch, 14 * 3600);
+	}
+
+	public void testCustomizationPerDisutility() {
+		Network network = createRandomGrid(15, 15, new Random(42));
+		ContractionHierarchiesFactory factory = new ContractionHierarchiesFactory();
+		ScaledTravelTime freeflow = new ScaledTravelTime();
+		ScaledTravelTime congested = new ScaledTravelTime();
+		congested.congestedUntil = 12 * 3600;
+		LeastCostPathCalculator freeflowCh = factory.createPathCalculator(network, freeflow, freeflow);
+		LeastCostPathCalculator congestedCh = factory.createPathCalculator(network, congested, congested);
+
+		// both calculators route in the same time bin, each must use the costs of its own disutility
+		assertSameCosts(network, new Dijkstra(network, freeflow, freeflow), freeflowCh, 8 * 3600);
+		assertSameCosts(network, new Dijkstra(network, congested, congested), congestedCh, 8 * 3600);
+	}
+
+	/**
+	 * The default config uses a randomizing travel disutility, which cannot be evaluated without a person.
+	 */
+	public void testDefaultConfig() {
+		Config config = ConfigUtils.createConfig();
+		assertTrue(config.plansCalcRoute().getRoutingRandomness() > 0);
+		config.planCalcScore().getModes().get(TransportMode.car).setMonetaryDistanceRate(-0.0002);
+		Network network = createRandomGrid(15, 15, new Random(42));
+		FreespeedTravelTimeAndDisutility travelTime = new FreespeedTravelTimeAndDisutility(config.planCalcScore());
+		RandomizingTimeDistanceTravelDisutilityFactory disutilityFactory = new RandomizingTimeDistanceTravelDisutilityFactory(TransportMode.car, config);
+		ContractionHierarchiesFactory factory = new ContractionHierarchiesFactory(config.travelTimeCalculator());
+		LeastCostPathCalculator ch = factory.createPathCalculator(network, disutilityFactory.createTravelDisutility(travelTime), travelTime);
+
+		// the search uses the expected disutility, so the paths are the ones of a router without randomness
+		TravelDisutility expected = RandomizingTimeDistanceTravelDisutilityFactory.withoutRandomness(disutilityFactory.createTravelDisutility(travelTime));
+		LeastCostPathCalculator dijkstra = new Dijkstra(network, expected, travelTime);
+		Person person = PopulationUtils.getFactory().createPerson(Id.createPersonId("1"));
+		List<Node> nodes = new ArrayList<>(network.getNodes().values());
+		Random random = new Random(123);
+		for (int i = 0; i < 100; i++) {
+			Node from = nodes.get(random.nextInt(nodes.size()));
+			Node to = nodes.get(random.nextInt(nodes.size()));
+			Path expectedPath = dijkstra.calcLeastCostPath(from, to, 8 * 3600, person, null);
+			Path actualPath = ch.calcLeastCostPath(from, to, 8 * 3600, person, null);
+			assertEquals(expectedPath.travelTime, actualPath.travelTime, 1e-3);
+		}
+	}
+
+	private static void assertSameCosts(final Network network, final LeastCostPathCalculator expected, final LeastCostPathCalculator actual, final double time) {
+		List<Node> nodes = new ArrayList<>(network.getNodes().values());
+		Random random = new Random(123);
+		for (int i = 0; i < 200; i++) {
+			Node from = nodes.get(random.nextInt(nodes.size()));
+			Node to = nodes.get(random.nextInt(nodes.size()));
+			Path expectedPath = expected.calcLeastCostPath(from, to, time, null, null);
+			Path actualPath = actual.calcLeastCostPath(from, to, time, null, null);
+			assertEquals(expectedPath.travelCost, actualPath.travelCost, 1e-3);
+			assertEquals(from, actualPath.getFromNode());
+			assertEquals(to, actualPath.getToNode());
+			for (int l = 0; l < actualPath.links.size(); l++) {
+				Link link = actualPath.links.get(l);
+				assertEquals(actualPath.nodes.get(l), link.getFromNode());
+				assertEquals(actualPath.nodes.get(l + 1), link.getToNode());
+			}
+		}
+	}
+
+	/**
+	 * A grid with links in both directions and random freespeeds, some of them only in one direction.
+	 */
+	private static Network createRandomGrid(final int width, final int height, final Random random) {
+		Network network = NetworkUtils.createNetwork();
+		Node[][] nodes = new Node[width][height];
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				nodes[x][y] = NetworkUtils.createAndAddNode(network, Id.create(x + "_" + y, Node.class), new Coord(x * 100.0, y * 100.0));
+			}
+		}
+		int linkCount = 0;
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				if (x + 1 < width) {
+					linkCount = addLinks(network, nodes[x][y], nodes[x + 1][y], linkCount, random);
+				}
+				if (y + 1 < height) {
+					linkCount = addLinks(network, nodes[x][y], nodes[x][y + 1], linkCount, random);
+				}
+			}
+		}
+		return network;
+	}
+
+	private static int addLinks(final Network network, final Node a, final Node b, int linkCount, final Random random) {
+		boolean oneWay = random.nextDouble() < 0.2;
+		boolean reversed = random.nextBoolean();
+		if (!oneWay || !reversed) {
+			NetworkUtils.createAndAddLink(network, Id.create(linkCount++, Link.class), a, b, 100.0, 5.0 + 25.0 * random.nextDouble(), 1000.0, 1.0);
+		}
+		if (!oneWay || reversed) {
+			NetworkUtils.createAndAddLink(network, Id.create(linkCount++, Link.class), b, a, 100.0, 5.0 + 25.0 * random.nextDouble(), 1000.0, 1.0);
+		}
+		return linkCount;
+	}
+
+	private static class ScaledTravelTime implements TravelTime, TravelDisutility {
+		double congestedUntil = 0;
+
+		@Override
+		public double getLinkTravelTime(final Link link, final double time, final Person person, final Vehicle vehicle) {
+			double freespeedTravelTime = link.getLength() / link.getFreespeed();
+			boolean congested = time < this.congestedUntil && link.getId().index() % 3 == 0;
+			return congested ? 5 * freespeedTravelTime : freespeedTravelTime;
+		}
+
+		@Override
+		public double getLinkTravelDisutility(final Link link, final double time, final Person person, final Vehicle vehicle) {
+			return getLinkTravelTime(link, time, person, vehicle);
+		}
+
+		@Override
+		public double getLinkMinimumTravelDisutility(final Link link) {
+			return link.getLength() / link.getFreespeed();
+		}
+	}
+}
@@ -161,6 +161,20 @@ public class RoutingIT {
 		});
 	}
 
+	@Test
+	public void testContractionHierarchies() {
+		doTest(new RouterProvider() {
+			@Override
+			public String getName() {
+				return "ContractionHierarchies";
+			}
+			@Override
+			public LeastCostPathCalculatorFactory getFactory(final Network network, final TravelDisutility costCalc, final TravelTime timeCalc) {
+				return new ContractionHierarchiesFactory();
+			}
+		});
+	}
+
 	private void doTest(final RouterProvider provider) {
 //		final Config config = loadConfig("test/input/" + this.getClass().getCanonicalName().replace('.', '/') + "/config.xml");
 		final Config config = ConfigUtils.loadConfig( utils.getClassInputDirectory() + "/config.xml" );
@@ -28,8 +28,13 @@ import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
 import org.matsim.api.core.v01.events.PersonMoneyEvent;
 import org.matsim.api.core.v01.events.PersonScoreEvent;
+import org.matsim.api.core.v01.events.PersonStuckEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
+import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.population.Activity;
 import org.matsim.api.core.v01.population.Leg;
 import org.matsim.api.core.v01.population.Person;
@@ -42,6 +47,7 @@ import org.matsim.core.events.EventsUtils;
 import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.vehicles.Vehicle;
 
 /**
  * @author mrieser / Simunto GmbH
@@ -126,6 +132,114 @@ public class ScoringFunctionsForPopulationTest {
 		Assert.assertEquals(1.234+2.345, rsf.separateScoreSum, 1e-7);
 	}
 
+	/**
+	 * Scoring with several threads must give the same scores as with one thread, for every person.
+	 */
+	@Test
+	public void testPartitionedScoring() {
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		Population population = scenario.getPopulation();
+		PopulationFactory pf = population.getFactory();
+		int personCount = 101;
+		for (int i = 0; i < personCount; i++) {
+			population.addPerson(pf.createPerson(Id.create(i, Person.class)));
+		}
+
+		ScoringFunctionsForPopulation serial = scorePopulation(population, 1);
+		ScoringFunctionsForPopulation partitioned = scorePopulation(population, 4);
+		for (Person person : population.getPersons().values()) {
+			double expected = serial.getScoringFunctionForAgent(person.getId()).getScore();
+			Assert.assertEquals(expected, partitioned.getScoringFunctionForAgent(person.getId()).getScore(), 0.0);
+			Assert.assertEquals(1.0, ((SequenceScoringFunction) partitioned.getScoringFunctionForAgent(person.getId())).finished, 0.0);
+		}
+	}
+
+	private static ScoringFunctionsForPopulation scorePopulation(Population population, int numberOfThreads) {
+		PopulationFactory pf = population.getFactory();
+		ControlerListenerManagerImpl controlerListenerManager = new ControlerListenerManagerImpl();
+		EventsManager eventsManager = EventsUtils.createEventsManager();
+		ScoringFunctionsForPopulation sf = new ScoringFunctionsForPopulation(controlerListenerManager, eventsManager, new EventsToActivities(),
+				new EventsToLegs(ScenarioUtils.createScenario(ConfigUtils.createConfig())), population, person -> new SequenceScoringFunction(), numberOfThreads);
+		controlerListenerManager.fireControlerIterationStartsEvent(0, false);
+
+		eventsManager.initProcessing();
+		for (int trip = 0; trip < 5; trip++) {
+			for (Person person : population.getPersons().values()) {
+				Id<Person> personId = person.getId();
+				Id<Vehicle> vehicleId = Id.create(personId.toString(), Vehicle.class);
+				Id<Link> linkId = Id.create(trip, Link.class);
+				double time = trip * 3600 + personId.index();
+				sf.handleActivity(new PersonExperiencedActivity(personId, pf.createActivityFromCoord("act" + trip, new Coord(trip, 0))));
+				eventsManager.processEvent(new VehicleEntersTrafficEvent(time, personId, linkId, vehicleId, TransportMode.car, 1.0));
+				eventsManager.processEvent(new LinkEnterEvent(time + 1, vehicleId, linkId));
+				eventsManager.processEvent(new PersonMoneyEvent(time + 2, personId, personId.index() + trip, "toll", "operator"));
+				eventsManager.processEvent(new VehicleLeavesTrafficEvent(time + 3, personId, linkId, vehicleId, TransportMode.car, 1.0));
+				sf.handleLeg(new PersonExperiencedLeg(personId, pf.createLeg(trip % 2 == 0 ? TransportMode.car : TransportMode.walk)));
+			}
+		}
+		eventsManager.processEvent(new PersonStuckEvent(24 * 3600, Id.create(7, Person.class), null, TransportMode.car));
+		eventsManager.finishProcessing();
+		sf.finishScoringFunctions();
+		return sf;
+	}
+
+	/**
+	 * Computes a score which depends on all the input and its order.
+	 */
+	private static class SequenceScoringFunction implements ScoringFunction {
+		double score = 0;
+		double finished = 0;
+
+		private void add(double value) {
+			this.score = this.score * 1.1 + value;
+		}
+
+		@Override
+		public void handleActivity(Activity activity) {
+			add(activity.getType().hashCode() % 100);
+		}
+
+		@Override
+		public void handleLeg(Leg leg) {
+			add(leg.getMode().hashCode() % 100);
+		}
+
+		@Override
+		public void handleTrip(TripStructureUtils.Trip trip) {
+			add(trip.getTripElements().size());
+		}
+
+		@Override
+		public void agentStuck(double time) {
+			add(-1000);
+		}
+
+		@Override
+		public void addMoney(double amount) {
+			add(amount);
+		}
+
+		@Override
+		public void addScore(double amount) {
+			add(amount);
+		}
+
+		@Override
+		public void finish() {
+			this.finished++;
+		}
+
+		@Override
+		public double getScore() {
+			return this.score;
+		}
+
+		@Override
+		public void handleEvent(Event event) {
+			add(event.getEventType().hashCode() % 10 + event.getTime());
+		}
+	}
+
 	private static class RecordingScoringFunction implements ScoringFunction {
 
 		int tripCounter = 0;
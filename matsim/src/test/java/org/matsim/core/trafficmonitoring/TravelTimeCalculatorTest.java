@@ -280,6 +280,57 @@ public class TravelTimeCalculatorTest extends MatsimTestCase {
 		assertEquals(freeSpeedTT, ttcalc.getLinkTravelTimes().getLinkTravelTime(link1, firstTimeBinStart + 5*timeBinSize + offset, null, null), EPSILON);
 	}
 	
+	/**
+	 * Events of different vehicles may be handled by several threads at the same time, the result must be the same
+	 * as if they were handled one after the other.
+	 */
+	public void testConcurrentEventHandling() throws InterruptedException {
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		Network network = scenario.getNetwork();
+		final Node node1 = NetworkUtils.createAndAddNode(network, Id.create("1", Node.class), new Coord(0, 0));
+		final Node node2 = NetworkUtils.createAndAddNode(network, Id.create("2", Node.class), new Coord(1000, 0));
+		final Node node3 = NetworkUtils.createAndAddNode(network, Id.create("3", Node.class), new Coord(2000, 0));
+		Link link1 = NetworkUtils.createAndAddLink(network, Id.create("1", Link.class), node1, node2, 1000.0, 100.0, 3600.0, 1.0 );
+		Link link2 = NetworkUtils.createAndAddLink(network, Id.create("2", Link.class), node2, node3, 1000.0, 100.0, 3600.0, 1.0 );
+
+		TravelTimeCalculator serial = new TravelTimeCalculator(network, 900, 12*3600, scenario.getConfig().travelTimeCalculator());
+		TravelTimeCalculator concurrent = new TravelTimeCalculator(network, 900, 12*3600, scenario.getConfig().travelTimeCalculator());
+		int numberOfThreads = 4;
+		int vehiclesPerThread = 2000;
+		for (int v = 0; v < numberOfThreads * vehiclesPerThread; v++) {
+			handleVehicle(serial, v, link1, link2);
+		}
+		Thread[] threads = new Thread[numberOfThreads];
+		for (int t = 0; t < numberOfThreads; t++) {
+			final int first = t * vehiclesPerThread;
+			threads[t] = new Thread(() -> {
+				for (int v = first; v < first + vehiclesPerThread; v++) {
+					handleVehicle(concurrent, v, link1, link2);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		for (double time = 0; time < 12*3600; time += 450) {
+			assertEquals(serial.getLinkTravelTimes().getLinkTravelTime(link1, time, null, null), concurrent.getLinkTravelTimes().getLinkTravelTime(link1, time, null, null), 1e-6);
+			assertEquals(serial.getLinkTravelTimes().getLinkTravelTime(link2, time, null, null), concurrent.getLinkTravelTimes().getLinkTravelTime(link2, time, null, null), 1e-6);
+		}
+	}
+
+	private static void handleVehicle(TravelTimeCalculator ttcalc, int v, Link link1, Link link2) {
+		Id<Vehicle> vehId = Id.create("concurrent" + v, Vehicle.class);
+		double time = 6 * 3600 + (v % 100) * 60;
+		ttcalc.handleEvent(new VehicleEntersTrafficEvent(time, null, link1.getId(), vehId, TransportMode.car, 1.0));
+		ttcalc.handleEvent(new LinkLeaveEvent(time, vehId, link1.getId()));
+		ttcalc.handleEvent(new LinkEnterEvent(time, vehId, link2.getId()));
+		ttcalc.handleEvent(new LinkLeaveEvent(time + 10 + v % 37, vehId, link2.getId()));
+		ttcalc.handleEvent(new LinkEnterEvent(time + 10 + v % 37, vehId, link1.getId()));
+		ttcalc.handleEvent(new LinkLeaveEvent(time + 20 + v % 41, vehId, link1.getId()));
+	}
+
 	/**
 	 * Test linear interpolation of aggregated travel times at different positions of a time bin. (Previous tests only test the midpoint of each time bin.)
 	 * 
@@ -0,0 +1,178 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.utils.collections;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+	private static final class Element {
+		private final int id;
+		private double time;
+
+		Element(int id, double time) {
+			this.id = id;
+			this.time = time;
+		}
+	}
+
+	private static final Comparator<Element> BY_ID = Comparator.comparingInt(e -> e.id);
+
+	@Test
+	public void testPollOrder() {
+		TimingWheel<Element> wheel = new TimingWheel<>(BY_ID);
+		Element e1 = new Element(1, 10.0);
+		Element e2 = new Element(2, 5.0);
+		Element e3 = new Element(3, 10.0);
+		Element e4 = new Element(4, 10.5);
+		wheel.add(e3, e3.time);
+		wheel.add(e1, e1.time);
+		wheel.add(e2, e2.time);
+		wheel.add(e4, e4.time);
+		Assert.assertEquals(4, wheel.size());
+
+		Assert.assertNull(wheel.poll(4.0));
+		Assert.assertSame(e2, wheel.poll(10.0));
+		Assert.assertSame(e1, wheel.poll(10.0));
+		Assert.assertSame(e3, wheel.poll(10.0));
+		Assert.assertNull(wheel.poll(10.0));
+		Assert.assertSame(e4, wheel.poll(11.0));
+		Assert.assertNull(wheel.poll(11.0));
+		Assert.assertTrue(wheel.isEmpty());
+	}
+
+	@Test
+	public void testRemoveAndReschedule() {
+		TimingWheel<Element> wheel = new TimingWheel<>(BY_ID);
+		Element e1 = new Element(1, 10.0);
+		Element e2 = new Element(2, 20.0);
+		wheel.add(e1, e1.time);
+		wheel.add(e2, e2.time);
+
+		Assert.assertTrue(wheel.remove(e1));
+		Assert.assertFalse(wheel.remove(e1));
+		Assert.assertFalse(wheel.contains(e1));
+		Assert.assertEquals(1, wheel.size());
+
+		wheel.add(e2, 5.0); // replaces the previous entry
+		Assert.assertEquals(1, wheel.size());
+		Assert.assertEquals(5.0, wheel.getTime(e2), 0.0);
+		Assert.assertSame(e2, wheel.poll(5.0));
+		Assert.assertNull(wheel.poll(30.0));
+	}
+
+	@Test
+	public void testAddingDueElementsWhilePolling() {
+		TimingWheel<Element> wheel = new TimingWheel<>(BY_ID);
+		Element e1 = new Element(1, 100.0);
+		Element e2 = new Element(2, 100.0);
+		Element e3 = new Element(3, 50.0);
+		wheel.add(e2, e2.time);
+		wheel.add(e1, e1.time);
+		Assert.assertSame(e1, wheel.poll(100.0));
+		// added while polling, but due earlier than the remaining element
+		wheel.add(e3, e3.time);
+		Assert.assertSame(e3, wheel.poll(100.0));
+		Assert.assertSame(e2, wheel.poll(100.0));
+		Assert.assertNull(wheel.poll(100.0));
+	}
+
+	@Test
+	public void testElementsBeforeFirstPoll() {
+		TimingWheel<Element> wheel = new TimingWheel<>(BY_ID);
+		Element e1 = new Element(1, -3600.0);
+		Element e2 = new Element(2, 7200.0);
+		wheel.add(e1, e1.time);
+		wheel.add(e2, e2.time);
+		// the first poll happens long after the first element is due
+		Assert.assertSame(e1, wheel.poll(3600.0));
+		Assert.assertNull(wheel.poll(3600.0));
+		Assert.assertSame(e2, wheel.poll(7200.0));
+	}
+
+	@Test
+	public void testSameOrderAsPriorityQueue() {
+		Comparator<Element> comparator = Comparator.comparingDouble((Element e) -> e.time).thenComparing(BY_ID);
+		PriorityQueue<Element> pq = new PriorityQueue<>(comparator);
+		TimingWheel<Element> wheel = new TimingWheel<>(BY_ID);
+		Random r = new Random(20201018);
+		List<Element> elements = new ArrayList<>();
+		for (int i = 0; i < 20000; i++) {
+			// times spanning more than one block of the second level, some of them not at full seconds
+			double time = r.nextInt(400000) + (r.nextInt(4) == 0 ? 0.5 : 0.0);
+			Element e = new Element(i, time);
+			elements.add(e);
+			pq.add(e);
+			wheel.add(e, time);
+		}
+		// reschedule some of the elements
+		for (int i = 0; i < 2000; i++) {
+			Element e = elements.get(r.nextInt(elements.size()));
+			pq.remove(e);
+			e.time = r.nextInt(400000);
+			pq.add(e);
+			wheel.add(e, e.time);
+		}
+		List<Element> expected = new ArrayList<>();
+		List<Element> actual = new ArrayList<>();
+		for (double time = 0; time <= 400000; time += 1.0) {
+			while (!pq.isEmpty() && pq.peek().time <= time) {
+				expected.add(pq.poll());
+			}
+			Element e;
+			while ((e = wheel.poll(time)) != null) {
+				actual.add(e);
+			}
+			Assert.assertEquals("at time " + time, expected.size(), actual.size());
+		}
+		Assert.assertEquals(elements.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertSame(expected.get(i), actual.get(i));
+		}
+	}
+
+	@Test
+	public void testGetElementsAndClear() {
+		TimingWheel<Element> wheel = new TimingWheel<>(BY_ID);
+		Element e1 = new Element(1, 1e7);
+		Element e2 = new Element(2, 30.0);
+		wheel.add(e1, e1.time);
+		wheel.add(e2, e2.time);
+		List<Element> elements = wheel.getElements();
+		Assert.assertEquals(2, elements.size());
+		Assert.assertSame(e2, elements.get(0));
+		Assert.assertSame(e1, elements.get(1));
+		wheel.clear();
+		Assert.assertTrue(wheel.isEmpty());
+		Assert.assertNull(wheel.poll(2e7));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInfiniteTime() {
+		new TimingWheel<>(BY_ID).add(new Element(1, 0), Double.POSITIVE_INFINITY);
+	}
+}
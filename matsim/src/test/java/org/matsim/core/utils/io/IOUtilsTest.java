@@ -284,6 +284,39 @@ public class IOUtilsTest {
 		Assert.assertEquals("compressed file should be equal 28 bytes, but is " + file.length(), 28, file.length());
 	}
 
+	@Test
+	public void testGetBufferedWriter_parallelCompression() throws IOException {
+		int previousThreads = IOUtils.getCompressionThreads();
+		IOUtils.setCompressionThreads(4);
+		try {
+			for (String extension : new String[] { ".gz", ".zst" }) {
+				// several blocks of compressed data
+				String filename = this.utils.getOutputDirectory() + "test.txt" + extension;
+				BufferedWriter writer = IOUtils.getBufferedWriter(filename);
+				for (int i = 0; i < 500000; i++) {
+					writer.write("line " + i + "\n");
+				}
+				writer.close();
+
+				BufferedReader reader = IOUtils.getBufferedReader(filename);
+				for (int i = 0; i < 500000; i++) {
+					Assert.assertEquals("line " + i, reader.readLine());
+				}
+				Assert.assertNull(reader.readLine());
+				reader.close();
+
+				// an empty file
+				String emptyFilename = this.utils.getOutputDirectory() + "empty.txt" + extension;
+				IOUtils.getBufferedWriter(emptyFilename).close();
+				reader = IOUtils.getBufferedReader(emptyFilename);
+				Assert.assertNull(reader.readLine());
+				reader.close();
+			}
+		} finally {
+			IOUtils.setCompressionThreads(previousThreads);
+		}
+	}
+
 	@Test
 	public void testGetInputStream_UTFwithoutBOM() throws IOException {
 		String filename = utils.getOutputDirectory() + "test.txt";
@@ -0,0 +1,149 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.utils.io;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xml.sax.Attributes;
+
+public class XmlElementPipelineTest {
+
+	private static final int ITEMS = 5000;
+
+	@Test
+	public void testOrderAndContent_singleThread() {
+		assertItems(readItems(1, -1));
+	}
+
+	@Test
+	public void testOrderAndContent_multipleThreads() {
+		assertItems(readItems(4, -1));
+	}
+
+	@Test
+	public void testExceptionInReader() {
+		try {
+			readItems(4, 1234);
+			Assert.fail("expected exception from the item reader");
+		} catch (RuntimeException e) {
+			Throwable cause = e;
+			while (cause != null && !"broken item 1234".equals(cause.getMessage())) {
+				cause = cause.getCause();
+			}
+			Assert.assertNotNull("exception of the item reader should be reported", cause);
+		}
+	}
+
+	private static void assertItems(List<String> items) {
+		Assert.assertEquals(ITEMS, items.size());
+		for (int i = 0; i < ITEMS; i++) {
+			Assert.assertEquals("root/items:" + i + "[" + i + ",a" + i + ",b" + i + "]", items.get(i));
+		}
+	}
+
+	private static List<String> readItems(int numberOfThreads, int brokenItem) {
+		StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n<root>\n<header name=\"h\"/>\n<items>\n");
+		for (int i = 0; i < ITEMS; i++) {
+			xml.append("<item id=\"").append(i).append("\"><value>a").append(i).append("</value>")
+					.append("<nested><value>b").append(i).append("</value></nested></item>\n");
+		}
+		xml.append("</items>\n<footer/>\n</root>");
+
+		ItemsParser parser = new ItemsParser(numberOfThreads, brokenItem);
+		parser.setValidating(false);
+		parser.parse(new ByteArrayInputStream(xml.toString().getBytes(StandardCharsets.UTF_8)));
+		Assert.assertEquals(2, parser.otherTags);
+		return parser.items;
+	}
+
+	private static class ItemsParser extends MatsimXmlParser {
+
+		private final List<String> items = new ArrayList<>();
+		private final XmlElementPipeline<String> pipeline;
+		private int otherTags = 0;
+
+		ItemsParser(int numberOfThreads, int brokenItem) {
+			this.pipeline = new XmlElementPipeline<>("item", numberOfThreads, () -> new ItemReader(brokenItem), this.items::add);
+		}
+
+		@Override
+		public void startTag(String name, Attributes atts, Stack<String> context) {
+			if (this.pipeline.startTag(name, atts, context)) {
+				return;
+			}
+			if (name.equals("header") || name.equals("footer")) {
+				this.otherTags++;
+			}
+		}
+
+		@Override
+		public void endTag(String name, String content, Stack<String> context) {
+			if (this.pipeline.endTag(name, content, context)) {
+				return;
+			}
+			if (name.equals("items")) {
+				this.pipeline.finish();
+			}
+		}
+	}
+
+	private static class ItemReader implements XmlElementPipeline.ElementReader<String> {
+
+		private final int brokenItem;
+		private StringBuilder current = null;
+		private String last = null;
+
+		ItemReader(int brokenItem) {
+			this.brokenItem = brokenItem;
+		}
+
+		@Override
+		public void startTag(String name, Attributes atts, Stack<String> context) {
+			if (name.equals("item")) {
+				int id = Integer.parseInt(atts.getValue("id"));
+				if (id == this.brokenItem) {
+					throw new IllegalStateException("broken item " + id);
+				}
+				this.current = new StringBuilder(String.join("/", context)).append(':').append(id).append('[').append(id);
+			}
+		}
+
+		@Override
+		public void endTag(String name, String content, Stack<String> context) {
+			if (name.equals("value")) {
+				this.current.append(',').append(content);
+			} else if (name.equals("item")) {
+				this.last = this.current.append(']').toString();
+				this.current = null;
+			}
+		}
+
+		@Override
+		public String getElement() {
+			return this.last;
+		}
+	}
+}
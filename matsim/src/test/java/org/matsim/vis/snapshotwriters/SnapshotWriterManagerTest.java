@@ -0,0 +1,113 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.vis.snapshotwriters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.PrepareForSimUtils;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.mobsim.qsim.QSim;
+import org.matsim.core.mobsim.qsim.QSimBuilder;
+import org.matsim.core.scenario.ScenarioUtils;
+
+public class SnapshotWriterManagerTest {
+
+	/**
+	 * Snapshots collected in several link partitions and written in the background must be the same as snapshots
+	 * collected by a single thread, also if the writer is slower than the mobsim.
+	 */
+	@Test
+	public void testParallelSnapshotsEqualSequentialSnapshots() {
+		Config config = ConfigUtils.loadConfig("test/scenarios/berlin/config.xml");
+		config.qsim().setSnapshotPeriod(900);
+		config.qsim().setEndTime(12 * 3600);
+		Scenario scenario = ScenarioUtils.loadScenario(config);
+		PrepareForSimUtils.createDefaultPrepareForSim(scenario).run();
+
+		config.qsim().setNumberOfThreads(1);
+		SnapshotWriterManager sequential = new SnapshotWriterManager(config);
+		RecordingWriter sequentialWriter = new RecordingWriter(0);
+		sequential.addSnapshotWriter(sequentialWriter);
+
+		config.qsim().setNumberOfThreads(4);
+		SnapshotWriterManager parallel = new SnapshotWriterManager(config);
+		RecordingWriter slowWriter = new RecordingWriter(20);
+		parallel.addSnapshotWriter(slowWriter);
+		config.qsim().setNumberOfThreads(1);
+
+		EventsManager events = EventsUtils.createEventsManager();
+		QSim qsim = new QSimBuilder(config).useDefaults().build(scenario, events);
+		qsim.addQueueSimulationListeners(sequential);
+		qsim.addQueueSimulationListeners(parallel);
+		qsim.run();
+
+		Assert.assertEquals(1, sequentialWriter.finished);
+		Assert.assertEquals(1, slowWriter.finished);
+		Assert.assertTrue("too few snapshots", sequentialWriter.snapshots.size() > 10);
+		Assert.assertTrue("no vehicles on the network", sequentialWriter.positions.size() > 1000);
+		Assert.assertEquals(sequentialWriter.snapshots, slowWriter.snapshots);
+		Assert.assertEquals(sequentialWriter.positions, slowWriter.positions);
+		Assert.assertNotEquals("snapshots should be written in the background", Thread.currentThread(), slowWriter.thread);
+	}
+
+	private static class RecordingWriter implements SnapshotWriter {
+		private final long delay;
+		final List<Double> snapshots = new ArrayList<>();
+		final List<String> positions = new ArrayList<>();
+		Thread thread;
+		int finished = 0;
+
+		RecordingWriter(long delay) {
+			this.delay = delay;
+		}
+
+		@Override
+		public void beginSnapshot(double time) {
+			this.snapshots.add(time);
+			this.thread = Thread.currentThread();
+		}
+
+		@Override
+		public void endSnapshot() {
+			try {
+				Thread.sleep(this.delay);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public void addAgent(AgentSnapshotInfo position) {
+			this.positions.add(position.getId() + " " + position.getLinkId() + " " + position.getEasting() + " " + position.getNorthing());
+		}
+
+		@Override
+		public void finish() {
+			this.finished++;
+		}
+	}
+}